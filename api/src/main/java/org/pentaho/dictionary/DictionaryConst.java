@@ -22,7 +22,10 @@
 
 package org.pentaho.dictionary;
 
+import org.pentaho.metaverse.api.ConfigurableLogicalIdGenerator;
+import org.pentaho.metaverse.api.HashedLogicalIdGenerator;
 import org.pentaho.metaverse.api.ILogicalIdGenerator;
+import org.pentaho.metaverse.api.LogicalIdStrategy;
 import org.pentaho.metaverse.api.MetaverseLogicalIdGenerator;
 
 /**
@@ -149,12 +152,37 @@ public class DictionaryConst {
    */
   public static final String PROPERTY_KETTLE_TYPE = "kettleType";
 
+  /**
+   * Property key for the "pluginId" of a step or job entry
+   */
+  public static final String PROPERTY_PLUGIN_ID = "pluginId";
+
+  /**
+   * Property key for the "stepType", the name of the plugin of a step
+   */
+  public static final String PROPERTY_STEP_TYPE = "stepType";
+
+  /**
+   * Property key for the "jobEntryType", the name of the plugin of a job entry
+   */
+  public static final String PROPERTY_JOB_ENTRY_TYPE = "jobEntryType";
+
+  /**
+   * Property key for the "_analyzer", the name of the analyzer class that created the node
+   */
+  public static final String PROPERTY_ANALYZER = "_analyzer";
+
   /**
    * Property key for the "logicalId", the value for the property should represent what logically identifies this node
    * as unique
    */
   public static final String PROPERTY_LOGICAL_ID = "logicalId";
 
+  /**
+   * Property key for the "logicalIdJson", the JSON a hashed logical id was generated from
+   */
+  public static final String PROPERTY_LOGICAL_ID_JSON = "logicalIdJson";
+
   /**
    * Property key for the "hostName"
    */
@@ -529,24 +557,45 @@ public class DictionaryConst {
    */
   public static final String CONTEXT_DEFAULT = CONTEXT_STATIC;
 
-  public static final ILogicalIdGenerator LOGICAL_ID_GENERATOR_DEFAULT = new MetaverseLogicalIdGenerator( new String[] {
+  /**
+   * Logical ids are JSON strings of the logical id property values, see {@link MetaverseLogicalIdGenerator}
+   */
+  public static final String LOGICAL_ID_STRATEGY_JSON = "json";
+
+  /**
+   * Logical ids are fixed width digests of the JSON strings, see {@link HashedLogicalIdGenerator}
+   */
+  public static final String LOGICAL_ID_STRATEGY_HASHED = "hashed";
+
+  public static final ILogicalIdGenerator LOGICAL_ID_GENERATOR_DEFAULT = createLogicalIdGenerator( new String[] {
     PROPERTY_NAMESPACE,
     PROPERTY_TYPE,
     PROPERTY_NAME,
   } );
 
-  public static final ILogicalIdGenerator LOGICAL_ID_GENERATOR_TARGET_AWARE = new MetaverseLogicalIdGenerator( new String[] {
+  /**
+   * Generates the same ids as {@link #LOGICAL_ID_GENERATOR_DEFAULT} for the components other nodes nest under (steps,
+   * job entries), storing the JSON of hashed ids with them
+   */
+  public static final ILogicalIdGenerator LOGICAL_ID_GENERATOR_COMPONENT =
+    createNamespaceLogicalIdGenerator( new String[] {
+      PROPERTY_NAMESPACE,
+      PROPERTY_TYPE,
+      PROPERTY_NAME,
+    } );
+
+  public static final ILogicalIdGenerator LOGICAL_ID_GENERATOR_TARGET_AWARE = createLogicalIdGenerator( new String[] {
     PROPERTY_NAMESPACE,
     PROPERTY_TYPE,
     PROPERTY_NAME,
     PROPERTY_TARGET_STEP } );
 
-  public static final ILogicalIdGenerator LOGICAL_ID_GENERATOR_FILE = new MetaverseLogicalIdGenerator( new String[] {
+  public static final ILogicalIdGenerator LOGICAL_ID_GENERATOR_FILE = createLogicalIdGenerator( new String[] {
     PROPERTY_PATH,
     PROPERTY_NAMESPACE
   } );
 
-  public static final ILogicalIdGenerator LOGICAL_ID_GENERATOR_DB_JDBC = new MetaverseLogicalIdGenerator( new String[] {
+  public static final ILogicalIdGenerator LOGICAL_ID_GENERATOR_DB_JDBC = createLogicalIdGenerator( new String[] {
     PROPERTY_TYPE,
     PROPERTY_HOST_NAME,
     PROPERTY_USER_NAME,
@@ -555,26 +604,27 @@ public class DictionaryConst {
     "accessTypeDesc"
   } );
 
-  public static final ILogicalIdGenerator LOGICAL_ID_GENERATOR_DB_JNDI = new MetaverseLogicalIdGenerator( new String[] {
+  public static final ILogicalIdGenerator LOGICAL_ID_GENERATOR_DB_JNDI = createLogicalIdGenerator( new String[] {
     PROPERTY_TYPE,
     PROPERTY_NAME,
     "accessTypeDesc"
   } );
 
-  public static final ILogicalIdGenerator LOGICAL_ID_GENERATOR_LOCATOR = new MetaverseLogicalIdGenerator( new String[] {
-    PROPERTY_TYPE,
-    PROPERTY_NAME
-  } );
+  public static final ILogicalIdGenerator LOGICAL_ID_GENERATOR_LOCATOR =
+    createNamespaceLogicalIdGenerator( new String[] {
+      PROPERTY_TYPE,
+      PROPERTY_NAME
+    } );
 
   public static final ILogicalIdGenerator LOGICAL_ID_GENERATOR_DOCUMENT =
-    new MetaverseLogicalIdGenerator( new String[] {
+    createNamespaceLogicalIdGenerator( new String[] {
       PROPERTY_TYPE,
       PROPERTY_PATH,
       PROPERTY_NAMESPACE
     } );
 
   public static final ILogicalIdGenerator LOGICAL_ID_GENERATOR_DB_TABLE =
-    new MetaverseLogicalIdGenerator( new String[] {
+    createLogicalIdGenerator( new String[] {
       PROPERTY_NAMESPACE,
       PROPERTY_TYPE,
       PROPERTY_NAME,
@@ -582,12 +632,34 @@ public class DictionaryConst {
     } );
 
   public static final ILogicalIdGenerator LOGICAL_ID_GENERATOR_DB_QUERY =
-    new MetaverseLogicalIdGenerator( new String[] {
+    createLogicalIdGenerator( new String[] {
       PROPERTY_NAMESPACE,
       PROPERTY_TYPE,
       PROPERTY_QUERY
     } );
 
+  /**
+   * Creates a logical id generator for the given property keys, which uses the configured {@link LogicalIdStrategy}
+   *
+   * @param logicalIdPropertyKeys property keys that indicate what makes a node logically unique
+   * @return the logical id generator
+   */
+  public static ILogicalIdGenerator createLogicalIdGenerator( String... logicalIdPropertyKeys ) {
+    return new ConfigurableLogicalIdGenerator( logicalIdPropertyKeys );
+  }
+
+  /**
+   * Creates a logical id generator for the nodes whose logical ids are used as namespaces (locators, documents, steps,
+   * job entries). When the ids are hashed, the JSON they are generated from is stored with these nodes, so that they
+   * can be resolved after a restart.
+   *
+   * @param logicalIdPropertyKeys property keys that indicate what makes a node logically unique
+   * @return the logical id generator
+   */
+  public static ILogicalIdGenerator createNamespaceLogicalIdGenerator( String... logicalIdPropertyKeys ) {
+    return new ConfigurableLogicalIdGenerator( true, logicalIdPropertyKeys );
+  }
+
   /**
    * Hides the constructor so that this class cannot be instanced
    */
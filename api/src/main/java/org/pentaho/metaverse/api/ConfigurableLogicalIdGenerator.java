@@ -0,0 +1,52 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.api;
+
+import org.pentaho.dictionary.DictionaryConst;
+
+/**
+ * A logical id generator that builds JSON or hashed logical ids, depending on the configured
+ * {@link LogicalIdStrategy}
+ */
+public class ConfigurableLogicalIdGenerator extends HashedLogicalIdGenerator {
+
+  public ConfigurableLogicalIdGenerator( String... logicalIdPropertyKeys ) {
+    super( logicalIdPropertyKeys );
+  }
+
+  public ConfigurableLogicalIdGenerator( boolean storeJson, String... logicalIdPropertyKeys ) {
+    super( storeJson, logicalIdPropertyKeys );
+  }
+
+  @Override
+  public String generateId( IHasProperties propertiesNode ) {
+    if ( LogicalIdStrategy.getInstance().isHashed() ) {
+      return super.generateId( propertiesNode );
+    }
+    String logicalId = buildLogicalId( propertiesNode );
+    if ( logicalId != null ) {
+      propertiesNode.setProperty( DictionaryConst.PROPERTY_LOGICAL_ID, logicalId );
+    }
+    return logicalId;
+  }
+}
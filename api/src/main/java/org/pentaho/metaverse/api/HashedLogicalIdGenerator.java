@@ -0,0 +1,210 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.api;
+
+import org.pentaho.dictionary.DictionaryConst;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A logical id generator that produces fixed width ids: the 128-bit MD5 digest (as 32 hex characters) of the JSON
+ * logical id that {@link MetaverseLogicalIdGenerator} would generate.
+ * <p/>
+ * Namespaces embed the logical id of the parent node, so a JSON logical id contains the logical ids of all of its
+ * ancestors and grows with the nesting depth. Since a hashed id is used as the namespace of the child nodes, the JSON
+ * that gets hashed only ever contains the (fixed width) id of the direct parent.
+ * <p/>
+ * The recently generated digests are kept in memory, so {@link #resolve(String)} can turn an id back into JSON. The
+ * table holds two generations of at most {@link #MAX_RESOLVED_IDS} / 2 ids each: when the current one is full it
+ * becomes the previous one, and the ids that are resolved from the previous one move to the current one, so the ids
+ * in use as namespaces stay resolvable. Generators created to store the JSON (those of the nodes whose ids are used as
+ * namespaces: locators, documents, steps and job entries) also set it on the node as its
+ * {@link DictionaryConst#PROPERTY_LOGICAL_ID_JSON} property, so it is stored with the vertex and the registered
+ * {@link ILogicalIdResolver} can resolve the id after a restart.
+ */
+public class HashedLogicalIdGenerator extends MetaverseLogicalIdGenerator {
+
+  private static final String DIGEST_ALGORITHM = "MD5";
+  private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  /**
+   * The number of characters in a hashed logical id
+   */
+  public static final int ID_LENGTH = 32;
+
+  /**
+   * The maximum number of digests kept in memory to resolve ids without a lookup
+   */
+  public static final int MAX_RESOLVED_IDS = 100000;
+
+  private static final int GENERATION_SIZE = MAX_RESOLVED_IDS / 2;
+
+  private static final ThreadLocal<MessageDigest> MESSAGE_DIGEST = new ThreadLocal<MessageDigest>() {
+    @Override
+    protected MessageDigest initialValue() {
+      try {
+        return MessageDigest.getInstance( DIGEST_ALGORITHM );
+      } catch ( NoSuchAlgorithmException e ) {
+        // every Java platform is required to support MD5
+        throw new IllegalStateException( e );
+      }
+    }
+  };
+
+  private static volatile ConcurrentMap<String, String> currentIds = new ConcurrentHashMap<String, String>();
+  private static volatile ConcurrentMap<String, String> previousIds = new ConcurrentHashMap<String, String>();
+
+  private static volatile ILogicalIdResolver resolver;
+
+  private final boolean storeJson;
+
+  public HashedLogicalIdGenerator( String... logicalIdPropertyKeys ) {
+    this( false, logicalIdPropertyKeys );
+  }
+
+  /**
+   * @param storeJson             whether the JSON an id is generated from is set on the node, so that the id can be
+   *                              resolved from its vertex
+   * @param logicalIdPropertyKeys property keys that indicate what makes a node logically unique
+   */
+  public HashedLogicalIdGenerator( boolean storeJson, String... logicalIdPropertyKeys ) {
+    super( logicalIdPropertyKeys );
+    this.storeJson = storeJson;
+  }
+
+  /**
+   * @return whether the JSON an id is generated from is set on the node
+   */
+  public boolean isStoreJson() {
+    return storeJson;
+  }
+
+  @Override
+  public String generateId( IHasProperties propertiesNode ) {
+    String json = buildLogicalId( propertiesNode );
+    if ( json == null ) {
+      return null;
+    }
+    String logicalId = digest( json );
+    if ( storeJson ) {
+      propertiesNode.setProperty( DictionaryConst.PROPERTY_LOGICAL_ID_JSON, json );
+    }
+    propertiesNode.setProperty( DictionaryConst.PROPERTY_LOGICAL_ID, logicalId );
+    return logicalId;
+  }
+
+  /**
+   * Hashes a JSON logical id and records it so it can be resolved later
+   *
+   * @param json the JSON logical id
+   * @return the hashed logical id
+   */
+  public static String digest( String json ) {
+    byte[] hash = MESSAGE_DIGEST.get().digest( json.getBytes( UTF_8 ) );
+    char[] hex = new char[ hash.length * 2 ];
+    for ( int i = 0; i < hash.length; i++ ) {
+      hex[ i * 2 ] = HEX_DIGITS[ ( hash[ i ] >> 4 ) & 0x0f ];
+      hex[ i * 2 + 1 ] = HEX_DIGITS[ hash[ i ] & 0x0f ];
+    }
+    String logicalId = new String( hex );
+    remember( logicalId, json );
+    return logicalId;
+  }
+
+  /**
+   * Returns the JSON that a hashed logical id was generated from
+   *
+   * @param logicalId the hashed logical id
+   * @return the JSON logical id, or null if the id is not a known hashed logical id
+   */
+  public static String resolve( String logicalId ) {
+    if ( logicalId == null || logicalId.length() != ID_LENGTH ) {
+      return null;
+    }
+    String json = currentIds.get( logicalId );
+    if ( json == null ) {
+      json = previousIds.get( logicalId );
+      ILogicalIdResolver currentResolver = resolver;
+      if ( json == null && currentResolver != null ) {
+        json = currentResolver.resolve( logicalId );
+      }
+      if ( json != null ) {
+        // the id is still in use, it is kept when the previous generation is dropped
+        remember( logicalId, json );
+      }
+    }
+    return json;
+  }
+
+  /**
+   * Sets the resolver used for the ids that are not in the in-memory table, e.g. ids loaded from a durable graph
+   *
+   * @param logicalIdResolver the resolver, or null for none
+   */
+  public static void setResolver( ILogicalIdResolver logicalIdResolver ) {
+    resolver = logicalIdResolver;
+  }
+
+  public static ILogicalIdResolver getResolver() {
+    return resolver;
+  }
+
+  /**
+   * @return the number of digests kept in memory
+   */
+  public static int getResolvedIdCount() {
+    return currentIds.size() + previousIds.size();
+  }
+
+  /**
+   * Forgets all of the recorded digests
+   */
+  public static synchronized void clearResolvedIds() {
+    previousIds = new ConcurrentHashMap<String, String>();
+    currentIds = new ConcurrentHashMap<String, String>();
+  }
+
+  private static void remember( String logicalId, String json ) {
+    ConcurrentMap<String, String> ids = currentIds;
+    if ( ids.size() >= GENERATION_SIZE ) {
+      ids = nextGeneration( ids );
+    }
+    ids.put( logicalId, json );
+  }
+
+  /**
+   * Drops the previous generation of digests and starts a new one, unless another thread already did
+   */
+  private static synchronized ConcurrentMap<String, String> nextGeneration( ConcurrentMap<String, String> full ) {
+    if ( currentIds == full ) {
+      previousIds = full;
+      currentIds = new ConcurrentHashMap<String, String>();
+    }
+    return currentIds;
+  }
+}
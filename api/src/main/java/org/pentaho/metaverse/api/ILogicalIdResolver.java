@@ -0,0 +1,39 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.api;
+
+/**
+ * Turns a hashed logical id back into the JSON logical id it was generated from
+ *
+ * @see HashedLogicalIdGenerator
+ */
+public interface ILogicalIdResolver {
+
+  /**
+   * Returns the JSON that a hashed logical id was generated from
+   *
+   * @param logicalId the hashed logical id
+   * @return the JSON logical id, or null if it is not known
+   */
+  String resolve( String logicalId );
+}
@@ -25,6 +25,8 @@ package org.pentaho.metaverse.api;
 
 import com.tinkerpop.blueprints.Graph;
 
+import java.util.Collection;
+
 /**
  * The IMetaverseBuilder is a Builder that creates and maintains a metaverse model, which contains nodes and links.
  */
@@ -57,6 +59,17 @@ public interface IMetaverseBuilder {
    */
   IMetaverseBuilder addLink( IMetaverseNode fromNode, String label, IMetaverseNode toNode );
 
+  /**
+   * Adds the specified nodes and links to the metaverse model in a single pass. Nodes that share a logical id are
+   * resolved to a single element, and link end-points that do not yet exist in the model are inserted as placeholder
+   * nodes, just as {@link #addLink(IMetaverseLink)} would do.
+   *
+   * @param nodes the nodes to add (may be null or empty)
+   * @param links the links to add (may be null or empty)
+   * @return the metaverse builder (for chaining)
+   */
+  IMetaverseBuilder addAll( Collection<IMetaverseNode> nodes, Collection<IMetaverseLink> links );
+
   /**
    * Deletes the specified node from the metaverse model.
    *
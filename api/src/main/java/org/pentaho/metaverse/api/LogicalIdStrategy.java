@@ -0,0 +1,62 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.api;
+
+import org.pentaho.dictionary.DictionaryConst;
+
+/**
+ * Holds the strategy the logical id generators of {@link DictionaryConst} build logical ids with, either
+ * {@link DictionaryConst#LOGICAL_ID_STRATEGY_JSON} (the default) or {@link DictionaryConst#LOGICAL_ID_STRATEGY_HASHED}.
+ * It is configured with the lineage.logicalId.strategy setting and should not change once nodes have been added to
+ * the metaverse, since the ids of the existing vertices are not converted.
+ */
+public class LogicalIdStrategy {
+
+  private static final LogicalIdStrategy INSTANCE = new LogicalIdStrategy();
+
+  private volatile boolean hashed;
+
+  protected LogicalIdStrategy() {
+  }
+
+  public static LogicalIdStrategy getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Sets the strategy, anything but {@link DictionaryConst#LOGICAL_ID_STRATEGY_HASHED} selects JSON logical ids
+   *
+   * @param strategy the strategy
+   */
+  public void setStrategy( String strategy ) {
+    hashed = strategy != null && DictionaryConst.LOGICAL_ID_STRATEGY_HASHED.equalsIgnoreCase( strategy.trim() );
+  }
+
+  public String getStrategy() {
+    return hashed ? DictionaryConst.LOGICAL_ID_STRATEGY_HASHED : DictionaryConst.LOGICAL_ID_STRATEGY_JSON;
+  }
+
+  public boolean isHashed() {
+    return hashed;
+  }
+}
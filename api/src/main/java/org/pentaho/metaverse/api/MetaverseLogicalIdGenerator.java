@@ -73,6 +73,20 @@ public class MetaverseLogicalIdGenerator implements ILogicalIdGenerator {
 
   @Override
   public String generateId( IHasProperties propertiesNode ) {
+    String logicalId = buildLogicalId( propertiesNode );
+    if ( logicalId != null ) {
+      propertiesNode.setProperty( DictionaryConst.PROPERTY_LOGICAL_ID, logicalId );
+    }
+    return logicalId;
+  }
+
+  /**
+   * Builds the JSON representation of the logical id property values of the node, without setting it on the node
+   *
+   * @param propertiesNode the object requiring a logical id
+   * @return the JSON string, or null if the node has no properties or no logical id property keys are defined
+   */
+  protected String buildLogicalId( IHasProperties propertiesNode ) {
 
     Set<String> propertyKeys = getLogicalIdPropertyKeys();
 
@@ -119,7 +133,6 @@ public class MetaverseLogicalIdGenerator implements ILogicalIdGenerator {
         sb.append( RIGHT_BRACE );
       }
       logicalId = sb.toString();
-      propertiesNode.setProperty( DictionaryConst.PROPERTY_LOGICAL_ID, logicalId );
     }
     return logicalId;
   }
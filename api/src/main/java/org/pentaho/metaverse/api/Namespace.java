@@ -51,7 +51,7 @@ public class Namespace implements INamespace {
   public INamespace getParentNamespace() {
     if ( namespace != null ) {
       try {
-        JsonNode jsonObject = objectMapper.readTree( namespace );
+        JsonNode jsonObject = objectMapper.readTree( getJson() );
         JsonNode namespaceNode = jsonObject.get( DictionaryConst.PROPERTY_NAMESPACE );
         if ( namespaceNode == null ) {
           return null;
@@ -76,7 +76,8 @@ public class Namespace implements INamespace {
   public INamespace getSiblingNamespace( String name, String type ) {
     if ( namespace != null ) {
       try {
-        JsonNode jsonObject = objectMapper.readTree( namespace );
+        String json = getJson();
+        JsonNode jsonObject = objectMapper.readTree( json );
 
         if ( jsonObject.isObject() ) {
           ObjectNode object = (ObjectNode) jsonObject;
@@ -84,11 +85,21 @@ public class Namespace implements INamespace {
           object.put( DictionaryConst.PROPERTY_TYPE, type );
         }
 
-        return new Namespace( objectMapper.writeValueAsString( jsonObject ) );
+        String sibling = objectMapper.writeValueAsString( jsonObject );
+        // a hashed namespace has hashed siblings
+        return new Namespace( json.equals( namespace ) ? sibling : HashedLogicalIdGenerator.digest( sibling ) );
       } catch ( Exception e ) {
         return null;
       }
     }
     return null;
   }
+
+  /**
+   * Returns the JSON form of this namespace, which is the namespace itself unless it is a hashed logical id
+   */
+  private String getJson() {
+    String json = HashedLogicalIdGenerator.resolve( namespace );
+    return json == null ? namespace : json;
+  }
 }
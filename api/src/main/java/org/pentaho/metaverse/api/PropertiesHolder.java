@@ -22,17 +22,28 @@
 
 package org.pentaho.metaverse.api;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * BasePropertiesHolder provides methods for getting and setting key/value pairs (i.e. properties)
+ * BasePropertiesHolder provides methods for getting and setting key/value pairs (i.e. properties). Besides the dirty
+ * flag it keeps a version that every change advances, and the version each key was last changed at, so that
+ * whoever copies the properties somewhere (each builder, for instance) can remember the version it copied and later
+ * copy only the keys changed since then. Changes made directly to the map returned by {@link #getProperties()} are not
+ * tracked.
  */
 public class PropertiesHolder implements IHasProperties {
 
   protected Map<String, Object> properties;
-  private boolean dirty = false;
+  private volatile boolean dirty = false;
+  private final AtomicLong version = new AtomicLong();
+  private final Map<String, Long> keyVersions = new ConcurrentHashMap<String, Long>();
 
   public PropertiesHolder() {
     properties = new HashMap<String, Object>();
@@ -72,8 +83,11 @@ public class PropertiesHolder implements IHasProperties {
    */
   @Override
   public void setProperty( String key, Object value ) {
+    Object old = properties.put( key, value );
     dirty = true;
-    properties.put( key, value );
+    if ( !isSame( old, value ) ) {
+      changed( key );
+    }
   }
 
   /**
@@ -84,8 +98,10 @@ public class PropertiesHolder implements IHasProperties {
    */
   @Override
   public Object removeProperty( String key ) {
+    Object value = properties.remove( key );
     dirty = true;
-    return properties.remove( key );
+    changed( key );
+    return value;
   }
 
   /**
@@ -114,8 +130,14 @@ public class PropertiesHolder implements IHasProperties {
    */
   @Override
   public void setProperties( Map<String, Object> props ) {
+    List<String> keys = new ArrayList<String>();
+    for ( Map.Entry<String, Object> entry : props.entrySet() ) {
+      if ( !isSame( properties.put( entry.getKey(), entry.getValue() ), entry.getValue() ) ) {
+        keys.add( entry.getKey() );
+      }
+    }
     dirty = true;
-    properties.putAll( props );
+    changed( keys );
   }
 
   /**
@@ -126,10 +148,11 @@ public class PropertiesHolder implements IHasProperties {
   @Override
   public void removeProperties( Set<String> keys ) {
     if ( keys != null ) {
-      dirty = true;
       for ( String key : keys ) {
         properties.remove( key );
       }
+      dirty = true;
+      changed( keys );
     }
   }
 
@@ -137,8 +160,10 @@ public class PropertiesHolder implements IHasProperties {
    * Removes all properties (key/value assignments).
    */
   @Override public void clearProperties() {
-    dirty = true;
+    List<String> keys = new ArrayList<String>( properties.keySet() );
     properties.clear();
+    dirty = true;
+    changed( keys );
   }
 
   /**
@@ -161,9 +186,61 @@ public class PropertiesHolder implements IHasProperties {
     return dirty;
   }
 
+  /**
+   * Marks the holder as dirty or clean. Marking it dirty also marks all of its keys as changed.
+   *
+   * @param dirty true if it is dirty, false if it is not
+   */
   @Override
   public void setDirty( boolean dirty ) {
     this.dirty = dirty;
+    if ( dirty && properties != null ) {
+      changed( new ArrayList<String>( properties.keySet() ) );
+    }
+  }
+
+  /**
+   * Gets the current version of the properties, which every change advances. Read it before reading the properties:
+   * a change made while they are being read then shows up as changed since that version.
+   *
+   * @return the version
+   */
+  public long getVersion() {
+    return version.get();
+  }
+
+  /**
+   * Gets the keys that have been set or removed after the given version.
+   *
+   * @param sinceVersion a version returned by {@link #getVersion()}
+   * @return the changed keys
+   */
+  public List<String> getChangedKeys( long sinceVersion ) {
+    List<String> keys = new ArrayList<String>();
+    for ( Map.Entry<String, Long> entry : keyVersions.entrySet() ) {
+      if ( entry.getValue() > sinceVersion ) {
+        keys.add( entry.getKey() );
+      }
+    }
+    return keys;
+  }
+
+  /**
+   * Records a change, which has to be made before it is recorded so that a copy made at the new version sees it
+   */
+  private void changed( String key ) {
+    keyVersions.put( key, version.incrementAndGet() );
+  }
+
+  private static boolean isSame( Object old, Object value ) {
+    return old == null ? value == null : old.equals( value );
+  }
+
+  private void changed( Collection<String> keys ) {
+    long changedVersion = version.incrementAndGet();
+    for ( String key : keys ) {
+      keyVersions.put( key, changedVersion );
+    }
   }
 
   @Override
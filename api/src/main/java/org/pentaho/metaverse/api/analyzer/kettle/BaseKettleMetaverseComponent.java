@@ -124,4 +124,18 @@ public abstract class BaseKettleMetaverseComponent implements IRequiresMetaverse
   protected ILogicalIdGenerator getLogicalIdGenerator() {
     return DictionaryConst.LOGICAL_ID_GENERATOR_DEFAULT;
   }
+
+  /**
+   * Returns the logical id generator of a node whose logical id is used as the namespace of other nodes, e.g. a step
+   * and its fields. It generates the same ids as {@link #getLogicalIdGenerator()}, but the default generator is
+   * replaced by one that stores the JSON of a hashed id with the node, so that the namespace can still be resolved
+   * once the id has left the in-memory table or after a restart.
+   *
+   * @return the logical id generator
+   */
+  protected ILogicalIdGenerator getNamespaceLogicalIdGenerator() {
+    ILogicalIdGenerator idGenerator = getLogicalIdGenerator();
+    return idGenerator == DictionaryConst.LOGICAL_ID_GENERATOR_DEFAULT
+      ? DictionaryConst.LOGICAL_ID_GENERATOR_COMPONENT : idGenerator;
+  }
 }
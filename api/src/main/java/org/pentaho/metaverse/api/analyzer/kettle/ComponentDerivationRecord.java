@@ -23,13 +23,13 @@
 package org.pentaho.metaverse.api.analyzer.kettle;
 
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
-import flexjson.JSONSerializer;
 import org.pentaho.metaverse.api.ChangeType;
 import org.pentaho.metaverse.api.StepField;
 import org.pentaho.metaverse.api.model.IInfo;
 import org.pentaho.metaverse.api.model.IOperation;
 import org.pentaho.metaverse.api.model.Operation;
 import org.pentaho.metaverse.api.model.Operations;
+import org.pentaho.metaverse.api.model.OperationsProperty;
 
 import java.util.List;
 
@@ -221,6 +221,6 @@ public class ComponentDerivationRecord {
 
   @Override
   public String toString() {
-    return new JSONSerializer().include( "*" ).serialize( operations );
+    return OperationsProperty.toJson( operations );
   }
 }
@@ -0,0 +1,94 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.metaverse.api.analyzer.kettle;
+
+import org.pentaho.di.core.plugins.PluginInterface;
+import org.pentaho.di.core.plugins.PluginRegistry;
+import org.pentaho.di.core.plugins.PluginTypeInterface;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches the names of the plugins (steps, job entries) by plugin type and id, so that analyzing a component does not
+ * search the plugin registry for the name of its plugin every time. Plugins that are not found are not cached, they
+ * are looked up again the next time. The cache is cleared when the registered analyzers change.
+ */
+public class PluginNameCache {
+
+  private static final ConcurrentMap<Class<? extends PluginTypeInterface>, ConcurrentMap<String, String>> NAMES =
+    new ConcurrentHashMap<Class<? extends PluginTypeInterface>, ConcurrentMap<String, String>>();
+
+  private PluginNameCache() {
+  }
+
+  /**
+   * Returns the name of a plugin
+   *
+   * @param pluginType the type of the plugin
+   * @param pluginId   the id of the plugin
+   * @return the name of the plugin, or null if it is not found
+   */
+  public static String getPluginName( Class<? extends PluginTypeInterface> pluginType, String pluginId ) {
+    if ( pluginType == null || pluginId == null ) {
+      return null;
+    }
+    ConcurrentMap<String, String> names = NAMES.get( pluginType );
+    if ( names == null ) {
+      NAMES.putIfAbsent( pluginType, new ConcurrentHashMap<String, String>() );
+      names = NAMES.get( pluginType );
+    }
+    String name = names.get( pluginId );
+    if ( name == null ) {
+      try {
+        PluginInterface plugin = PluginRegistry.getInstance().findPluginWithId( pluginType, pluginId );
+        name = plugin == null ? null : plugin.getName();
+      } catch ( Throwable t ) {
+        name = null;
+      }
+      if ( name != null ) {
+        names.put( pluginId, name );
+      }
+    }
+    return name;
+  }
+
+  /**
+   * Drops every cached name
+   */
+  public static void clear() {
+    NAMES.clear();
+  }
+
+  /**
+   * @return the number of cached names
+   */
+  public static int size() {
+    int size = 0;
+    for ( ConcurrentMap<String, String> names : NAMES.values() ) {
+      size += names.size();
+    }
+    return size;
+  }
+}
@@ -0,0 +1,41 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.api.analyzer.kettle.jobentry;
+
+import org.pentaho.di.job.entry.JobEntryInterface;
+
+/**
+ * A job entry analyzer that can hand out a separate instance of itself for each analysis. The state of an analysis
+ * (the job entry under analysis, its root node, its parent job, ...) is kept by the analyzer instance, so analyzing
+ * several job entries at the same time requires one instance per job entry.
+ */
+public interface IClonableJobEntryAnalyzer<S, T extends JobEntryInterface> extends IJobEntryAnalyzer<S, T> {
+
+  /**
+   * Returns a new instance of this analyzer with the same configuration (builder, object factory, connection analyzer,
+   * ...) and none of the state of an analysis.
+   *
+   * @return the new analyzer instance, or null if the analyzer is shared (its analyses are then serialized)
+   */
+  IClonableJobEntryAnalyzer<S, T> cloneAnalyzer();
+}
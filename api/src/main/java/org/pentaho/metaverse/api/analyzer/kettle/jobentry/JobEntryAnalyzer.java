@@ -22,9 +22,13 @@
 
 package org.pentaho.metaverse.api.analyzer.kettle.jobentry;
 
+import org.apache.commons.lang.StringUtils;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.parameters.UnknownParamException;
 import org.pentaho.di.core.plugins.JobEntryPluginType;
-import org.pentaho.di.core.plugins.PluginRegistry;
 import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.variables.VariableSpace;
+import org.pentaho.di.core.variables.Variables;
 import org.pentaho.di.job.Job;
 import org.pentaho.di.job.JobMeta;
 import org.pentaho.di.job.entry.JobEntryInterface;
@@ -34,6 +38,7 @@ import org.pentaho.metaverse.api.IConnectionAnalyzer;
 import org.pentaho.metaverse.api.IMetaverseNode;
 import org.pentaho.metaverse.api.MetaverseAnalyzerException;
 import org.pentaho.metaverse.api.analyzer.kettle.BaseKettleMetaverseComponent;
+import org.pentaho.metaverse.api.analyzer.kettle.PluginNameCache;
 import org.pentaho.metaverse.api.messages.Messages;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,7 +52,7 @@ import java.util.List;
  * Created by gmoran on 7/16/14.
  */
 public abstract class JobEntryAnalyzer<T extends JobEntryInterface> extends BaseKettleMetaverseComponent implements
-  IJobEntryAnalyzer<IMetaverseNode, T> {
+  IClonableJobEntryAnalyzer<IMetaverseNode, T> {
 
   private static final Logger LOGGER = LoggerFactory.getLogger( JobEntryAnalyzer.class );
 
@@ -98,15 +103,14 @@ public abstract class JobEntryAnalyzer<T extends JobEntryInterface> extends Base
 
     // Add yourself
     rootNode = createNodeFromDescriptor( descriptor );
-    String stepType = null;
-    try {
-      stepType =
-        PluginRegistry.getInstance().findPluginWithId( JobEntryPluginType.class, entry.getPluginId() ).getName();
-    } catch ( Throwable t ) {
+    // the fields use the logical id of the node as their namespace
+    rootNode.setLogicalIdGenerator( getNamespaceLogicalIdGenerator() );
+    String stepType = PluginNameCache.getPluginName( JobEntryPluginType.class, entry.getPluginId() );
+    if ( stepType == null ) {
       stepType = entry.getClass().getSimpleName();
     }
-    rootNode.setProperty( "pluginId", entry.getPluginId() );
-    rootNode.setProperty( "jobEntryType", stepType );
+    rootNode.setProperty( DictionaryConst.PROPERTY_PLUGIN_ID, entry.getPluginId() );
+    rootNode.setProperty( DictionaryConst.PROPERTY_JOB_ENTRY_TYPE, stepType );
     rootNode.setProperty( "copies", entry.getParentJob().getJobMeta().getJobCopies().size() );
     metaverseBuilder.addNode( rootNode );
 
@@ -180,6 +184,84 @@ public abstract class JobEntryAnalyzer<T extends JobEntryInterface> extends Base
     }
   }
 
+  @Override
+  public IClonableJobEntryAnalyzer<IMetaverseNode, T> cloneAnalyzer() {
+    JobEntryAnalyzer<T> clone = newInstance();
+    if ( clone == null ) {
+      return null;
+    }
+    if ( clone.getClass() != getClass() ) {
+      // a subclass of an analyzer that can be cloned, it did not opt in
+      LOGGER.debug( Messages.getString( "WARNING.JobEntryAnalyzer.NotCloned", getClass().getName() ) );
+      return null;
+    }
+    copyConfiguration( clone );
+    return clone;
+  }
+
+  /**
+   * Creates a new, unconfigured instance of this analyzer. Cloning is opt-in: an analyzer is only cloned when its own
+   * class overrides this method to return a new instance of itself, and only analyzers whose state is limited to their
+   * configuration and the analysis under way should do so. The others (including every analyzer that does not
+   * override this method, such as those of other plugins) are shared: each one analyzes one component at a time,
+   * across all of the documents being analyzed.
+   *
+   * @return the new instance, or null if the analyzer cannot be cloned
+   */
+  protected JobEntryAnalyzer<T> newInstance() {
+    return null;
+  }
+
+  /**
+   * Copies the configuration of this analyzer (but none of the state of an analysis) to a new instance of it.
+   * Analyzers that are configured with more than their builder, object factory and connection analyzer need to
+   * override this method to copy the rest of their configuration.
+   *
+   * @param clone the new instance
+   */
+  protected void copyConfiguration( JobEntryAnalyzer<T> clone ) {
+    clone.setMetaverseBuilder( metaverseBuilder );
+    clone.setMetaverseObjectFactory( metaverseObjectFactory );
+    clone.setConnectionAnalyzer( connectionAnalyzer );
+  }
+
+  /**
+   * Returns the variables the job entry is analyzed with: those of its job, with the parameters of the job activated.
+   * The job is shared by the analyses of its other entries, which can run at the same time, so the parameters are
+   * activated in a variable space of the entry's own rather than in the job.
+   *
+   * @param jobMeta the job of the job entry
+   * @return the variables
+   */
+  protected VariableSpace getEntryVariables( JobMeta jobMeta ) {
+    VariableSpace variables = new Variables();
+    String[] names = jobMeta.listVariables();
+    if ( names != null ) {
+      for ( String name : names ) {
+        variables.setVariable( name, jobMeta.getVariable( name ) );
+      }
+    }
+    String[] parameters = jobMeta.listParameters();
+    if ( parameters != null ) {
+      for ( String parameter : parameters ) {
+        String value;
+        String defaultValue;
+        try {
+          value = jobMeta.getParameterValue( parameter );
+          defaultValue = jobMeta.getParameterDefault( parameter );
+        } catch ( UnknownParamException e ) {
+          continue;
+        }
+        if ( !StringUtils.isEmpty( value ) ) {
+          variables.setVariable( parameter, value );
+        } else {
+          variables.setVariable( parameter, Const.NVL( defaultValue, "" ) );
+        }
+      }
+    }
+    return variables;
+  }
+
   public IConnectionAnalyzer<Object, T> getConnectionAnalyzer() {
     return connectionAnalyzer;
   }
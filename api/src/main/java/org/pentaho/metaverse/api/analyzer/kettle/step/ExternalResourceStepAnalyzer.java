@@ -165,6 +165,12 @@ public abstract class ExternalResourceStepAnalyzer<T extends BaseStepMeta> exten
     return inputFieldNode;
   }
 
+  @Override
+  protected void copyConfiguration( StepAnalyzer<T> clone ) {
+    super.copyConfiguration( clone );
+    ( (ExternalResourceStepAnalyzer<T>) clone ).setExternalResourceConsumer( externalResourceConsumer );
+  }
+
   public IStepExternalResourceConsumer getExternalResourceConsumer() {
     return externalResourceConsumer;
   }
@@ -0,0 +1,41 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.api.analyzer.kettle.step;
+
+import org.pentaho.di.trans.step.BaseStepMeta;
+
+/**
+ * A step analyzer that can hand out a separate instance of itself for each analysis. The state of an analysis (the
+ * step under analysis, its root node, input and output fields, ...) is kept by the analyzer instance, so analyzing
+ * several steps at the same time requires one instance per step.
+ */
+public interface IClonableStepAnalyzer<T extends BaseStepMeta> extends IStepAnalyzer<T> {
+
+  /**
+   * Returns a new instance of this analyzer with the same configuration (builder, object factory, connection analyzer,
+   * external resource consumer, ...) and none of the state of an analysis.
+   *
+   * @return the new analyzer instance, or null if the analyzer is shared (its analyses are then serialized)
+   */
+  IClonableStepAnalyzer<T> cloneAnalyzer();
+}
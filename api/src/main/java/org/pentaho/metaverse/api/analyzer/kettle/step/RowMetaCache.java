@@ -0,0 +1,429 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.api.analyzer.kettle.step;
+
+import org.pentaho.di.core.ProgressNullMonitorListener;
+import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.trans.TransHopMeta;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.StepErrorMeta;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepIOMetaInterface;
+import org.pentaho.di.trans.step.StepMetaInterface;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches the row metadata of the steps of a transformation for the duration of an analysis (or serialization), so
+ * that the analyzers and serializers that ask for the fields of a step share a single derivation of them instead of
+ * each one asking the {@link TransMeta} to derive them again from all of the upstream steps.
+ * <p>
+ * A cache is opened for a transformation with {@link #open(TransMeta)} and must be closed when the analysis is done.
+ * While it is open, {@link #getStepFields(TransMeta, StepMeta)}, {@link #getPrevStepFields(TransMeta, StepMeta)}
+ * and {@link #getPrevStepNames(TransMeta, StepMeta)} are served from it; otherwise they go to the transformation.
+ * </p>
+ * <p>
+ * The cache derives the fields itself, the way {@link TransMeta#getStepFields(StepMeta)} does, but each step only
+ * once: the steps are derived in topological order, and the fields of a step are its own changes
+ * ({@link StepMetaInterface#getFields}) applied to a copy of the cached fields of the steps before it. Asking the
+ * transformation instead would derive all of the upstream steps again for every step. Like the transformation, the
+ * cache sends the error fields along error hops.
+ * </p>
+ * <p>
+ * The fields a step with target streams (Switch / Case, Filter Rows...) sends to a step may depend on that step, so
+ * they are not derived by the cache: the fields such a step sends to each of its next steps are asked of the
+ * transformation, once per pair of steps.
+ * </p>
+ * The callers get a copy of the cached row metadata, which they are free to modify.
+ */
+public class RowMetaCache {
+
+  private static final Map<TransMeta, RowMetaCache> OPEN_CACHES =
+    Collections.synchronizedMap( new IdentityHashMap<TransMeta, RowMetaCache>() );
+
+  private final TransMeta transMeta;
+  private final Map<StepMeta, RowMetaInterface> stepFields = new IdentityHashMap<StepMeta, RowMetaInterface>();
+  private final Map<StepMeta, RowMetaInterface> prevStepFields = new IdentityHashMap<StepMeta, RowMetaInterface>();
+  private final Map<StepMeta, String[]> prevStepNames = new IdentityHashMap<StepMeta, String[]>();
+  private final Map<StepMeta, StepMeta[]> infoSteps = new IdentityHashMap<StepMeta, StepMeta[]>();
+  private final Map<StepMeta, Boolean> targetDependent = new IdentityHashMap<StepMeta, Boolean>();
+  private final Map<StepMeta, Map<StepMeta, RowMetaInterface>> targetStepFields =
+    new IdentityHashMap<StepMeta, Map<StepMeta, RowMetaInterface>>();
+  private Map<StepMeta, List<StepMeta>> previousSteps;
+  private int openCount;
+  private int derivations;
+
+  protected RowMetaCache( TransMeta transMeta ) {
+    this.transMeta = transMeta;
+  }
+
+  /**
+   * Opens the cache of the given transformation, creating it if it is not open yet. Every call must be matched by a
+   * call to {@link #close()}.
+   *
+   * @param transMeta the transformation
+   * @return the open cache
+   */
+  public static RowMetaCache open( TransMeta transMeta ) {
+    synchronized ( OPEN_CACHES ) {
+      RowMetaCache cache = OPEN_CACHES.get( transMeta );
+      if ( cache == null ) {
+        cache = new RowMetaCache( transMeta );
+        OPEN_CACHES.put( transMeta, cache );
+      }
+      cache.openCount++;
+      return cache;
+    }
+  }
+
+  /**
+   * Returns the open cache of the given transformation
+   *
+   * @param transMeta the transformation
+   * @return the open cache, or null if there is none
+   */
+  public static RowMetaCache get( TransMeta transMeta ) {
+    return transMeta == null ? null : OPEN_CACHES.get( transMeta );
+  }
+
+  /**
+   * Closes the cache, it is discarded once it has been closed as many times as it was opened
+   */
+  public void close() {
+    synchronized ( OPEN_CACHES ) {
+      if ( --openCount <= 0 && OPEN_CACHES.get( transMeta ) == this ) {
+        OPEN_CACHES.remove( transMeta );
+      }
+    }
+  }
+
+  /**
+   * Gets the fields the step outputs, from the open cache of the transformation if there is one
+   *
+   * @param transMeta the transformation
+   * @param stepMeta  the step
+   * @return the output fields of the step
+   * @throws KettleStepException if the fields cannot be determined
+   */
+  public static RowMetaInterface getStepFields( TransMeta transMeta, StepMeta stepMeta ) throws KettleStepException {
+    RowMetaCache cache = get( transMeta );
+    if ( cache != null ) {
+      return cache.getStepFields( stepMeta );
+    }
+    ProgressNullMonitorListener progressMonitor = new ProgressNullMonitorListener();
+    RowMetaInterface fields = transMeta.getStepFields( stepMeta, progressMonitor );
+    progressMonitor.done();
+    return fields;
+  }
+
+  /**
+   * Gets the fields the named step outputs, from the open cache of the transformation if there is one
+   *
+   * @param transMeta the transformation
+   * @param stepName  the name of the step
+   * @return the output fields of the step
+   * @throws KettleStepException if the fields cannot be determined
+   */
+  public static RowMetaInterface getStepFields( TransMeta transMeta, String stepName ) throws KettleStepException {
+    RowMetaCache cache = get( transMeta );
+    if ( cache != null ) {
+      StepMeta stepMeta = transMeta.findStep( stepName );
+      if ( stepMeta != null ) {
+        return cache.getStepFields( stepMeta );
+      }
+    }
+    return transMeta.getStepFields( stepName );
+  }
+
+  /**
+   * Gets the fields coming into the step, from the open cache of the transformation if there is one
+   *
+   * @param transMeta the transformation
+   * @param stepMeta  the step
+   * @return the input fields of the step
+   * @throws KettleStepException if the fields cannot be determined
+   */
+  public static RowMetaInterface getPrevStepFields( TransMeta transMeta, StepMeta stepMeta )
+    throws KettleStepException {
+    RowMetaCache cache = get( transMeta );
+    if ( cache != null ) {
+      return cache.getPrevStepFields( stepMeta );
+    }
+    ProgressNullMonitorListener progressMonitor = new ProgressNullMonitorListener();
+    RowMetaInterface fields = transMeta.getPrevStepFields( stepMeta, progressMonitor );
+    progressMonitor.done();
+    return fields;
+  }
+
+  /**
+   * Gets the names of the steps before the step, from the open cache of the transformation if there is one
+   *
+   * @param transMeta the transformation
+   * @param stepMeta  the step
+   * @return the names of the previous steps
+   */
+  public static String[] getPrevStepNames( TransMeta transMeta, StepMeta stepMeta ) {
+    RowMetaCache cache = get( transMeta );
+    return cache != null ? cache.getPrevStepNames( stepMeta ) : transMeta.getPrevStepNames( stepMeta );
+  }
+
+  /**
+   * Gets the fields the step outputs
+   *
+   * @param stepMeta the step
+   * @return a copy of the output fields of the step
+   * @throws KettleStepException if the fields cannot be determined
+   */
+  public synchronized RowMetaInterface getStepFields( StepMeta stepMeta ) throws KettleStepException {
+    RowMetaInterface fields = stepFields.get( stepMeta );
+    if ( fields == null ) {
+      for ( StepMeta step : getUpstreamOrder( stepMeta ) ) {
+        if ( !stepFields.containsKey( step ) ) {
+          stepFields.put( step, deriveStepFields( step ) );
+          derivations++;
+        }
+      }
+      fields = stepFields.get( stepMeta );
+    }
+    return copyOf( fields );
+  }
+
+  /**
+   * Gets the fields coming into the step
+   *
+   * @param stepMeta the step
+   * @return a copy of the input fields of the step
+   * @throws KettleStepException if the fields cannot be determined
+   */
+  public synchronized RowMetaInterface getPrevStepFields( StepMeta stepMeta ) throws KettleStepException {
+    RowMetaInterface fields = prevStepFields.get( stepMeta );
+    if ( fields == null ) {
+      // derive the upstream steps first
+      for ( StepMeta previous : getPreviousSteps( stepMeta ) ) {
+        getStepFields( previous );
+      }
+      fields = mergePreviousFields( stepMeta, true );
+      prevStepFields.put( stepMeta, fields );
+    }
+    return copyOf( fields );
+  }
+
+  /**
+   * Gets the names of the steps before the step
+   *
+   * @param stepMeta the step
+   * @return the names of the previous steps
+   */
+  public synchronized String[] getPrevStepNames( StepMeta stepMeta ) {
+    String[] names = prevStepNames.get( stepMeta );
+    if ( names == null ) {
+      names = transMeta.getPrevStepNames( stepMeta );
+      prevStepNames.put( stepMeta, names );
+    }
+    return names == null ? null : names.clone();
+  }
+
+  /**
+   * @return the number of times the fields of a step were derived
+   */
+  public synchronized int getDerivations() {
+    return derivations;
+  }
+
+  /**
+   * Derives the fields of a step whose previous steps have all been derived: the step applies its changes to the
+   * fields coming into it, given the fields of its info steps.
+   */
+  protected RowMetaInterface deriveStepFields( StepMeta stepMeta ) throws KettleStepException {
+    RowMetaInterface row = mergePreviousFields( stepMeta, false );
+    StepMetaInterface stepint = stepMeta.getStepMetaInterface();
+    if ( stepint == null ) {
+      return row;
+    }
+    StepMeta[] info = getInfoSteps( stepMeta );
+    RowMetaInterface[] infoFields;
+    if ( info.length == 0 ) {
+      infoFields = new RowMetaInterface[] { stepint.getTableFields() };
+    } else {
+      infoFields = new RowMetaInterface[ info.length ];
+      for ( int i = 0; i < info.length; i++ ) {
+        infoFields[ i ] = copyOf( stepFields.get( info[ i ] ) );
+      }
+    }
+    stepint.getFields( row, stepMeta.getName(), infoFields, null, transMeta, transMeta.getRepository(),
+      transMeta.getMetaStore() );
+    return row;
+  }
+
+  /**
+   * Merges copies of the cached fields the previous steps send to the step, the fields of the first one followed by
+   * the fields of the others that are not in the row yet. A step sending its error rows to the step sends its input
+   * fields plus the error fields, a step with target streams sends the fields the transformation derives for the step.
+   *
+   * @param stepMeta    the step
+   * @param includeInfo true to include the info steps, false for the main input of the step only
+   */
+  private RowMetaInterface mergePreviousFields( StepMeta stepMeta, boolean includeInfo ) throws KettleStepException {
+    RowMetaInterface row = new RowMeta();
+    List<StepMeta> info = includeInfo ? Collections.<StepMeta>emptyList() : Arrays.asList( getInfoSteps( stepMeta ) );
+    boolean first = true;
+    for ( StepMeta previous : getPreviousSteps( stepMeta ) ) {
+      if ( info.contains( previous ) ) {
+        continue;
+      }
+      RowMetaInterface add;
+      StepErrorMeta errorMeta = previous.getStepErrorMeta();
+      if ( errorMeta != null && previous.isSendingErrorRowsToStep( stepMeta ) ) {
+        add = getPrevStepFields( previous );
+        add.addRowMeta( errorMeta.getErrorFields() );
+      } else if ( isTargetDependent( previous ) ) {
+        add = getTargetStepFields( previous, stepMeta );
+      } else {
+        add = copyOf( stepFields.get( previous ) );
+      }
+      if ( add == null ) {
+        add = new RowMeta();
+      }
+      if ( first ) {
+        row.addRowMeta( add );
+        first = false;
+      } else {
+        for ( ValueMetaInterface valueMeta : add.getValueMetaList() ) {
+          if ( row.searchValueMeta( valueMeta.getName() ) == null ) {
+            row.addValueMeta( valueMeta );
+          }
+        }
+      }
+    }
+    return row;
+  }
+
+  /**
+   * Gets a copy of the fields the step sends to the target step, as derived by the transformation
+   */
+  private RowMetaInterface getTargetStepFields( StepMeta stepMeta, StepMeta targetStep ) throws KettleStepException {
+    Map<StepMeta, RowMetaInterface> fieldsPerTarget = targetStepFields.get( stepMeta );
+    if ( fieldsPerTarget == null ) {
+      fieldsPerTarget = new IdentityHashMap<StepMeta, RowMetaInterface>();
+      targetStepFields.put( stepMeta, fieldsPerTarget );
+    }
+    RowMetaInterface fields = fieldsPerTarget.get( targetStep );
+    if ( fields == null ) {
+      ProgressNullMonitorListener progressMonitor = new ProgressNullMonitorListener();
+      fields = transMeta.getStepFields( stepMeta, targetStep, progressMonitor );
+      progressMonitor.done();
+      fieldsPerTarget.put( targetStep, fields );
+    }
+    return copyOf( fields );
+  }
+
+  /**
+   * Tells whether the fields the step sends to a step may depend on that step, i.e. whether it has target streams
+   */
+  private boolean isTargetDependent( StepMeta stepMeta ) {
+    Boolean dependent = targetDependent.get( stepMeta );
+    if ( dependent == null ) {
+      StepMetaInterface stepint = stepMeta.getStepMetaInterface();
+      StepIOMetaInterface stepIOMeta = stepint == null ? null : stepint.getStepIOMeta();
+      dependent = stepIOMeta != null && stepIOMeta.getTargetStreams() != null
+        && !stepIOMeta.getTargetStreams().isEmpty();
+      targetDependent.put( stepMeta, dependent );
+    }
+    return dependent;
+  }
+
+  private StepMeta[] getInfoSteps( StepMeta stepMeta ) {
+    StepMeta[] info = infoSteps.get( stepMeta );
+    if ( info == null ) {
+      info = stepMeta.getStepMetaInterface() == null ? null : transMeta.getInfoStep( stepMeta );
+      if ( info == null ) {
+        info = new StepMeta[ 0 ];
+      }
+      infoSteps.put( stepMeta, info );
+    }
+    return info;
+  }
+
+  /**
+   * Returns the step and the steps upstream of it that have not been derived yet, each one after all of its
+   * predecessors. A cycle (which Kettle does not allow) is broken where it is found.
+   */
+  private List<StepMeta> getUpstreamOrder( StepMeta stepMeta ) {
+    List<StepMeta> order = new ArrayList<StepMeta>();
+    Map<StepMeta, Boolean> visited = new IdentityHashMap<StepMeta, Boolean>();
+    Deque<StepMeta> stack = new ArrayDeque<StepMeta>();
+    stack.push( stepMeta );
+    while ( !stack.isEmpty() ) {
+      StepMeta step = stack.peek();
+      Boolean expanded = visited.get( step );
+      if ( expanded == null ) {
+        visited.put( step, Boolean.FALSE );
+        for ( StepMeta previous : getPreviousSteps( step ) ) {
+          if ( !visited.containsKey( previous ) && !stepFields.containsKey( previous ) ) {
+            stack.push( previous );
+          }
+        }
+      } else {
+        stack.pop();
+        if ( !expanded ) {
+          visited.put( step, Boolean.TRUE );
+          order.add( step );
+        }
+      }
+    }
+    return order;
+  }
+
+  private List<StepMeta> getPreviousSteps( StepMeta stepMeta ) {
+    if ( previousSteps == null ) {
+      previousSteps = new IdentityHashMap<StepMeta, List<StepMeta>>();
+      for ( int i = 0; i < transMeta.nrTransHops(); i++ ) {
+        TransHopMeta hop = transMeta.getTransHop( i );
+        if ( hop != null && hop.isEnabled() && hop.getFromStep() != null && hop.getToStep() != null ) {
+          List<StepMeta> previous = previousSteps.get( hop.getToStep() );
+          if ( previous == null ) {
+            previous = new ArrayList<StepMeta>();
+            previousSteps.put( hop.getToStep(), previous );
+          }
+          previous.add( hop.getFromStep() );
+        }
+      }
+    }
+    List<StepMeta> previous = previousSteps.get( stepMeta );
+    return previous == null ? Collections.<StepMeta>emptyList() : previous;
+  }
+
+  private static RowMetaInterface copyOf( RowMetaInterface fields ) {
+    return fields == null ? null : fields.clone();
+  }
+}
@@ -26,9 +26,7 @@ import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.collections.MapUtils;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
-import org.pentaho.di.core.ProgressNullMonitorListener;
 import org.pentaho.di.core.exception.KettleStepException;
-import org.pentaho.di.core.plugins.PluginRegistry;
 import org.pentaho.di.core.plugins.StepPluginType;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMeta;
@@ -49,7 +47,10 @@ import org.pentaho.metaverse.api.Namespace;
 import org.pentaho.metaverse.api.StepField;
 import org.pentaho.metaverse.api.analyzer.kettle.BaseKettleMetaverseComponent;
 import org.pentaho.metaverse.api.analyzer.kettle.ComponentDerivationRecord;
+import org.pentaho.metaverse.api.analyzer.kettle.PluginNameCache;
 import org.pentaho.metaverse.api.messages.Messages;
+import org.pentaho.metaverse.api.model.Operations;
+import org.pentaho.metaverse.api.model.OperationsProperty;
 import org.pentaho.metaverse.api.model.kettle.IFieldMapping;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -63,7 +64,7 @@ import java.util.Set;
 import java.util.UUID;
 
 public abstract class StepAnalyzer<T extends BaseStepMeta> extends BaseKettleMetaverseComponent implements
-  IStepAnalyzer<T>, IFieldLineageMetadataProvider<T> {
+  IClonableStepAnalyzer<T>, IFieldLineageMetadataProvider<T> {
 
   private static final Logger LOGGER = LoggerFactory.getLogger( StepAnalyzer.class );
   public static final String NONE = "_none_";
@@ -118,17 +119,16 @@ public abstract class StepAnalyzer<T extends BaseStepMeta> extends BaseKettleMet
 
     // Add yourself
     rootNode = createNodeFromDescriptor( descriptor );
-    String stepType = null;
-    try {
-      stepType =
-        PluginRegistry.getInstance().findPluginWithId( StepPluginType.class, parentStepMeta.getStepID() ).getName();
-    } catch ( Throwable t ) {
+    // the fields use the logical id of the node as their namespace
+    rootNode.setLogicalIdGenerator( getNamespaceLogicalIdGenerator() );
+    String stepType = PluginNameCache.getPluginName( StepPluginType.class, parentStepMeta.getStepID() );
+    if ( stepType == null ) {
       stepType = parentStepMeta.getStepID();
     }
-    rootNode.setProperty( "pluginId", parentStepMeta.getStepID() );
-    rootNode.setProperty( "stepType", stepType );
+    rootNode.setProperty( DictionaryConst.PROPERTY_PLUGIN_ID, parentStepMeta.getStepID() );
+    rootNode.setProperty( DictionaryConst.PROPERTY_STEP_TYPE, stepType );
     rootNode.setProperty( "copies", meta.getParentStepMeta().getCopies() );
-    rootNode.setProperty( "_analyzer", this.getClass().getSimpleName() );
+    rootNode.setProperty( DictionaryConst.PROPERTY_ANALYZER, this.getClass().getSimpleName() );
     metaverseBuilder.addNode( rootNode );
 
     inputs = processInputs( meta );
@@ -188,7 +188,9 @@ public abstract class StepAnalyzer<T extends BaseStepMeta> extends BaseKettleMet
   }
 
   /**
-   * Get ComponentDerivationRecords for each of the fields considered to be a passthrough
+   * Get ComponentDerivationRecords for each of the fields considered to be a passthrough. By default, that is the
+   * intersection of the incoming fields with the output field names, each incoming field being looked up in the field
+   * name index of the outputs.
    *
    * @return
    */
@@ -216,15 +218,8 @@ public abstract class StepAnalyzer<T extends BaseStepMeta> extends BaseKettleMet
    * @return
    */
   protected boolean isPassthrough( StepField originalFieldName ) {
-    if ( getOutputs() != null ) {
-      Set<StepField> fieldNames = getOutputs().getFieldNames();
-      for ( StepField fieldName : fieldNames ) {
-        if ( fieldName.getFieldName().equals( originalFieldName.getFieldName() ) ) {
-          return true;
-        }
-      }
-    }
-    return false;
+    StepNodes outputs = getOutputs();
+    return outputs != null && outputs.containsFieldName( originalFieldName.getFieldName() );
   }
 
   /**
@@ -277,11 +272,15 @@ public abstract class StepAnalyzer<T extends BaseStepMeta> extends BaseKettleMet
         outputNodes.add( fieldNode );
       }
 
+      // the output nodes share the operations, they are only rendered as JSON when the graph is written out
+      Operations operations = change.getOperations();
+      OperationsProperty operationsProperty = operations.size() > 0 ? new OperationsProperty( operations ) : null;
+
       // no input step was defined, link all field name matches together, regardless of origin step
       for ( IMetaverseNode inputNode : inputNodes ) {
         for ( IMetaverseNode outputNode : outputNodes ) {
-          if ( change.getOperations().size() > 0 ) {
-            outputNode.setProperty( DictionaryConst.PROPERTY_OPERATIONS, change.toString() );
+          if ( operationsProperty != null ) {
+            outputNode.setProperty( DictionaryConst.PROPERTY_OPERATIONS, operationsProperty );
           }
           linkChangeNodes( inputNode, outputNode );
         }
@@ -520,6 +519,47 @@ public abstract class StepAnalyzer<T extends BaseStepMeta> extends BaseKettleMet
     }
   }
 
+  @Override
+  public IClonableStepAnalyzer<T> cloneAnalyzer() {
+    StepAnalyzer<T> clone = newInstance();
+    if ( clone == null ) {
+      return null;
+    }
+    if ( clone.getClass() != getClass() ) {
+      // a subclass of an analyzer that can be cloned, it did not opt in
+      LOGGER.debug( Messages.getString( "WARNING.StepAnalyzer.NotCloned", getClass().getName() ) );
+      return null;
+    }
+    copyConfiguration( clone );
+    return clone;
+  }
+
+  /**
+   * Creates a new, unconfigured instance of this analyzer. Cloning is opt-in: an analyzer is only cloned when its own
+   * class overrides this method to return a new instance of itself, and only analyzers whose state is limited to their
+   * configuration and the analysis under way should do so. The others (including every analyzer that does not
+   * override this method, such as those of other plugins) are shared: each one analyzes one component at a time,
+   * across all of the documents being analyzed.
+   *
+   * @return the new instance, or null if the analyzer cannot be cloned
+   */
+  protected StepAnalyzer<T> newInstance() {
+    return null;
+  }
+
+  /**
+   * Copies the configuration of this analyzer (but none of the state of an analysis) to a new instance of it.
+   * Analyzers that are configured with more than their builder, object factory and connection analyzer need to
+   * override this method to copy the rest of their configuration.
+   *
+   * @param clone the new instance
+   */
+  protected void copyConfiguration( StepAnalyzer<T> clone ) {
+    clone.setMetaverseBuilder( metaverseBuilder );
+    clone.setMetaverseObjectFactory( metaverseObjectFactory );
+    clone.setConnectionAnalyzer( connectionAnalyzer );
+  }
+
   public IConnectionAnalyzer getConnectionAnalyzer() {
     return connectionAnalyzer;
   }
@@ -539,10 +579,8 @@ public abstract class StepAnalyzer<T extends BaseStepMeta> extends BaseKettleMet
     if ( parentTransMeta != null ) {
       try {
         rowMeta = new HashMap<String, RowMetaInterface>();
-        ProgressNullMonitorListener progressMonitor = new ProgressNullMonitorListener();
-        prevStepNames = parentTransMeta.getPrevStepNames( parentStepMeta );
-        RowMetaInterface rmi = parentTransMeta.getPrevStepFields( parentStepMeta, progressMonitor );
-        progressMonitor.done();
+        prevStepNames = RowMetaCache.getPrevStepNames( parentTransMeta, parentStepMeta );
+        RowMetaInterface rmi = RowMetaCache.getPrevStepFields( parentTransMeta, parentStepMeta );
         if ( !ArrayUtils.isEmpty( prevStepNames ) ) {
           rowMeta.put( prevStepNames[0], rmi );
         }
@@ -563,9 +601,7 @@ public abstract class StepAnalyzer<T extends BaseStepMeta> extends BaseKettleMet
     }
     if ( parentTransMeta != null ) {
       try {
-        ProgressNullMonitorListener progressMonitor = new ProgressNullMonitorListener();
-        rmi = parentTransMeta.getStepFields( parentStepMeta, progressMonitor );
-        progressMonitor.done();
+        rmi = RowMetaCache.getStepFields( parentTransMeta, parentStepMeta );
       } catch ( KettleStepException e ) {
         rmi = null;
       }
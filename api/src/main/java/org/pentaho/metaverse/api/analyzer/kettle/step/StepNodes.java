@@ -26,6 +26,8 @@ import org.pentaho.metaverse.api.IMetaverseNode;
 import org.pentaho.metaverse.api.StepField;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -34,14 +36,24 @@ import java.util.Set;
 
 /**
  * Created by rfellows on 5/6/15.
+ * <p>
+ * The field nodes are also indexed by field name, so that a field can be looked up in every step at once, and the
+ * {@link StepField}s of all of the steps are built once and shared until a node is added.
+ * </p>
  */
 public class StepNodes {
 
   // use LinkedHashMap to preserve order in which elements are added
   private LinkedHashMap<String, LinkedHashMap<String, IMetaverseNode>> store;
 
+  // field name -> step name -> node
+  private Map<String, LinkedHashMap<String, IMetaverseNode>> fieldNameIndex;
+
+  private Set<StepField> stepFields;
+
   public StepNodes() {
     store = new LinkedHashMap<>();
+    fieldNameIndex = new HashMap<>();
   }
 
   public void addNode( String stepName, String fieldName, IMetaverseNode node ) {
@@ -54,19 +66,29 @@ public class StepNodes {
 
     stepFields.put( fieldName, node );
 
+    LinkedHashMap<String, IMetaverseNode> fieldNodes = fieldNameIndex.get( fieldName );
+    if ( fieldNodes == null ) {
+      fieldNodes = new LinkedHashMap<>();
+      fieldNameIndex.put( fieldName, fieldNodes );
+    }
+    fieldNodes.put( stepName, node );
+
+    this.stepFields = null;
   }
 
   public List<IMetaverseNode> findNodes( String fieldName ) {
-    List<IMetaverseNode> nodes = new ArrayList<>();
-
-    for ( Map<String, IMetaverseNode> stepNodes : store.values() ) {
-      IMetaverseNode match = stepNodes.get( fieldName );
-      if ( match != null ) {
-        nodes.add( match );
-      }
-    }
+    Map<String, IMetaverseNode> fieldNodes = fieldNameIndex.get( fieldName );
+    return fieldNodes == null ? new ArrayList<IMetaverseNode>() : new ArrayList<>( fieldNodes.values() );
+  }
 
-    return nodes;
+  /**
+   * Determines if any of the steps has a field with the given name
+   *
+   * @param fieldName the name of the field
+   * @return true if there is a node for the field name
+   */
+  public boolean containsFieldName( String fieldName ) {
+    return fieldNameIndex.containsKey( fieldName );
   }
 
   public IMetaverseNode findNode( StepField stepField ) {
@@ -96,15 +118,24 @@ public class StepNodes {
     return fieldNames;
   }
 
+  /**
+   * Returns the fields of all of the steps, in the order they were added. The set is shared by all of the callers until
+   * a node is added, so it cannot be modified.
+   *
+   * @return the fields of the steps
+   */
   public Set<StepField> getFieldNames() {
-    Set<StepField> fieldNames = new LinkedHashSet<>();
-    for ( String stepName : getStepNames() ) {
-      Set<String> names = getFieldNames( stepName );
-      for ( String name : names ) {
-        fieldNames.add( new StepField( stepName, name ) );
+    if ( stepFields == null ) {
+      Set<StepField> fieldNames = new LinkedHashSet<>();
+      for ( Map.Entry<String, LinkedHashMap<String, IMetaverseNode>> stepNodes : store.entrySet() ) {
+        String stepName = stepNodes.getKey();
+        for ( String name : stepNodes.getValue().keySet() ) {
+          fieldNames.add( new StepField( stepName, name ) );
+        }
       }
+      stepFields = Collections.unmodifiableSet( fieldNames );
     }
-    return fieldNames;
+    return stepFields;
   }
 
 }
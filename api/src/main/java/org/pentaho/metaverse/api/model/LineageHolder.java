@@ -42,6 +42,7 @@ public class LineageHolder implements IRequiresMetaverseBuilder {
 
   private Future lineageTask;
 
+  private boolean graphDeferred;
 
   public LineageHolder() {
   }
@@ -89,6 +90,17 @@ public class LineageHolder implements IRequiresMetaverseBuilder {
     this.lineageTask = lineageTask;
   }
 
+  /**
+   * @return true if the lineage graph could not be analyzed while the execution ran, so it is built later
+   */
+  public boolean isGraphDeferred() {
+    return graphDeferred;
+  }
+
+  public void setGraphDeferred( boolean graphDeferred ) {
+    this.graphDeferred = graphDeferred;
+  }
+
   public String getId() {
     if ( id == null && executionProfile != null ) {
       id = executionProfile.getPath();
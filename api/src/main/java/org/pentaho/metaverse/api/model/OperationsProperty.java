@@ -0,0 +1,170 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.metaverse.api.model;
+
+import flexjson.JSONDeserializer;
+import flexjson.JSONSerializer;
+import org.pentaho.metaverse.api.ChangeType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The value of the operations property of a node. The operations are kept as they are, so reading them back (for an
+ * operation path query, for instance) does not parse anything; they are only rendered as JSON when the value is
+ * written out as a string, by {@link #toString()}, and the JSON is then kept for the next time.
+ * <p>
+ * Graphs that only store strings (and graphs read back from a file) hold the JSON instead, {@link #getOperations(
+ * Object)} reads the operations from either form.
+ * </p>
+ * The operations of a property must not be modified.
+ */
+public class OperationsProperty {
+
+  // flexjson serializers and deserializers are not safe to share between threads, each thread reuses its own
+  private static final ThreadLocal<JSONSerializer> SERIALIZER = new ThreadLocal<JSONSerializer>() {
+    @Override
+    protected JSONSerializer initialValue() {
+      return new JSONSerializer().include( "*" );
+    }
+  };
+
+  private static final ThreadLocal<JSONDeserializer<Map<String, List<IOperation>>>> DESERIALIZER =
+    new ThreadLocal<JSONDeserializer<Map<String, List<IOperation>>>>() {
+      @Override
+      protected JSONDeserializer<Map<String, List<IOperation>>> initialValue() {
+        return new JSONDeserializer<Map<String, List<IOperation>>>().use( "values.values", Operation.class );
+      }
+    };
+
+  private final Operations operations;
+  private volatile String json;
+
+  /**
+   * @param operations the operations, they are copied so changing them afterwards does not change the property
+   */
+  public OperationsProperty( Operations operations ) {
+    this.operations = copyOf( operations );
+  }
+
+  /**
+   * @return the operations of the property, which must not be modified
+   */
+  public Operations getOperations() {
+    return operations;
+  }
+
+  /**
+   * Reads the operations of an operations property value
+   *
+   * @param value the value of the property, an OperationsProperty or its JSON
+   * @return the operations, or null if there are none or the value cannot be read
+   */
+  public static Operations getOperations( Object value ) {
+    if ( value instanceof OperationsProperty ) {
+      return ( (OperationsProperty) value ).getOperations();
+    }
+    return value instanceof String ? fromJson( (String) value ) : null;
+  }
+
+  /**
+   * Renders operations as JSON
+   *
+   * @param operations the operations
+   * @return the JSON of the operations
+   */
+  public static String toJson( Operations operations ) {
+    return SERIALIZER.get().serialize( operations );
+  }
+
+  /**
+   * Parses the JSON of operations
+   *
+   * @param json the JSON of the operations
+   * @return the operations, or null if the JSON is empty or cannot be parsed
+   */
+  public static Operations fromJson( String json ) {
+    if ( json == null || json.isEmpty() ) {
+      return null;
+    }
+    try {
+      Map<String, List<IOperation>> rawOpsMap = DESERIALIZER.get().deserialize( json );
+      Operations operations = new Operations();
+      for ( Map.Entry<String, List<IOperation>> entry : rawOpsMap.entrySet() ) {
+        operations.put( ChangeType.forValue( entry.getKey() ), entry.getValue() );
+      }
+      return operations;
+    } catch ( Exception e ) {
+      return null;
+    }
+  }
+
+  /**
+   * Copies operations, the lists of operations are copied as well
+   *
+   * @param operations the operations
+   * @return the copy, or null if the operations are null
+   */
+  public static Operations copyOf( Operations operations ) {
+    if ( operations == null ) {
+      return null;
+    }
+    Operations copy = new Operations();
+    for ( Map.Entry<ChangeType, List<IOperation>> entry : operations.entrySet() ) {
+      copy.put( entry.getKey(), entry.getValue() == null ? null : new ArrayList<IOperation>( entry.getValue() ) );
+    }
+    return copy;
+  }
+
+  @Override
+  public boolean equals( Object o ) {
+    if ( this == o ) {
+      return true;
+    }
+    if ( o == null || getClass() != o.getClass() ) {
+      return false;
+    }
+    OperationsProperty that = (OperationsProperty) o;
+    return operations != null ? operations.equals( that.operations ) : that.operations == null;
+  }
+
+  @Override
+  public int hashCode() {
+    return operations != null ? operations.hashCode() : 0;
+  }
+
+  /**
+   * @return the JSON of the operations, as a change record renders it
+   */
+  @Override
+  public String toString() {
+    String result = json;
+    if ( result == null ) {
+      result = toJson( operations );
+      json = result;
+    }
+    return result;
+  }
+}
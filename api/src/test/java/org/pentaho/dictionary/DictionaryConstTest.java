@@ -22,8 +22,17 @@
 
 package org.pentaho.dictionary;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.pentaho.metaverse.api.HashedLogicalIdGenerator;
+import org.pentaho.metaverse.api.ILogicalIdGenerator;
+import org.pentaho.metaverse.api.LogicalIdStrategy;
+import org.pentaho.metaverse.api.MetaverseLogicalIdGenerator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 public class DictionaryConstTest {
 
@@ -32,8 +41,64 @@ public class DictionaryConstTest {
 
   }
 
+  @After
+  public void tearDown() throws Exception {
+    LogicalIdStrategy.getInstance().setStrategy( DictionaryConst.LOGICAL_ID_STRATEGY_JSON );
+  }
+
   @Test( expected = UnsupportedOperationException.class )
   public void testEnsureNonPublicConstructor() {
     DictionaryConst dc = new DictionaryConst();
   }
+
+  @Test
+  public void testCreateLogicalIdGenerator_default() {
+    ILogicalIdGenerator generator = DictionaryConst.createLogicalIdGenerator( "name", "type" );
+    assertEquals( 2, generator.getLogicalIdPropertyKeys().size() );
+    MetaverseTransientNode node = createNode();
+    assertEquals( new MetaverseLogicalIdGenerator( "name", "type" ).generateId( createNode() ),
+      generator.generateId( node ) );
+    assertNull( node.getProperty( DictionaryConst.PROPERTY_LOGICAL_ID_JSON ) );
+  }
+
+  @Test
+  public void testCreateLogicalIdGenerator_hashed() {
+    ILogicalIdGenerator generator = DictionaryConst.createLogicalIdGenerator( "name", "type" );
+    LogicalIdStrategy.getInstance().setStrategy( DictionaryConst.LOGICAL_ID_STRATEGY_HASHED );
+    assertEquals( DictionaryConst.LOGICAL_ID_STRATEGY_HASHED, LogicalIdStrategy.getInstance().getStrategy() );
+    // the generators that already exist follow the configured strategy
+    assertEquals( new HashedLogicalIdGenerator( "name", "type" ).generateId( createNode() ),
+      generator.generateId( createNode() ) );
+    assertEquals( 2, generator.getLogicalIdPropertyKeys().size() );
+
+    // only the nodes other nodes nest under keep the JSON of their id
+    MetaverseTransientNode node = createNode();
+    generator.generateId( node );
+    assertNull( node.getProperty( DictionaryConst.PROPERTY_LOGICAL_ID_JSON ) );
+    DictionaryConst.createNamespaceLogicalIdGenerator( "name", "type" ).generateId( node );
+    assertNotNull( node.getProperty( DictionaryConst.PROPERTY_LOGICAL_ID_JSON ) );
+  }
+
+  @Test
+  public void testComponentLogicalIdGenerator_hashed() {
+    LogicalIdStrategy.getInstance().setStrategy( DictionaryConst.LOGICAL_ID_STRATEGY_HASHED );
+    MetaverseTransientNode step = createNode();
+    step.setProperty( DictionaryConst.PROPERTY_NAMESPACE, "trans" );
+    MetaverseTransientNode field = createNode();
+    field.setProperty( DictionaryConst.PROPERTY_NAMESPACE, "trans" );
+
+    // a step gets the same id as with the default generator, and keeps the JSON its fields' namespace resolves to
+    assertEquals( DictionaryConst.LOGICAL_ID_GENERATOR_DEFAULT.generateId( field ),
+      DictionaryConst.LOGICAL_ID_GENERATOR_COMPONENT.generateId( step ) );
+    assertNull( field.getProperty( DictionaryConst.PROPERTY_LOGICAL_ID_JSON ) );
+    assertEquals( HashedLogicalIdGenerator.resolve( (String) step.getProperty( DictionaryConst.PROPERTY_LOGICAL_ID ) ),
+      step.getProperty( DictionaryConst.PROPERTY_LOGICAL_ID_JSON ) );
+  }
+
+  private static MetaverseTransientNode createNode() {
+    MetaverseTransientNode node = new MetaverseTransientNode();
+    node.setName( "name" );
+    node.setType( "type" );
+    return node;
+  }
 }
@@ -0,0 +1,178 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.api;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.dictionary.DictionaryConst;
+import org.pentaho.dictionary.MetaverseTransientNode;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HashedLogicalIdGeneratorTest {
+
+  HashedLogicalIdGenerator idGenerator;
+  MetaverseLogicalIdGenerator jsonIdGenerator;
+
+  @Before
+  public void setUp() throws Exception {
+    idGenerator = new HashedLogicalIdGenerator( "namespace", "type", "name" );
+    jsonIdGenerator = new MetaverseLogicalIdGenerator( "namespace", "type", "name" );
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    HashedLogicalIdGenerator.clearResolvedIds();
+    HashedLogicalIdGenerator.setResolver( null );
+  }
+
+  @Test
+  public void testGenerateId() throws Exception {
+    MetaverseTransientNode node = createNode( "locator", "Locator", null );
+
+    String logicalId = idGenerator.generateId( node );
+
+    assertEquals( HashedLogicalIdGenerator.ID_LENGTH, logicalId.length() );
+    assertEquals( logicalId, node.getProperty( DictionaryConst.PROPERTY_LOGICAL_ID ) );
+    assertEquals( jsonIdGenerator.buildLogicalId( node ), HashedLogicalIdGenerator.resolve( logicalId ) );
+    // the JSON is only kept on the nodes of the generators that store it
+    assertNull( node.getProperty( DictionaryConst.PROPERTY_LOGICAL_ID_JSON ) );
+    MetaverseTransientNode storedNode = createNode( "locator", "Locator", null );
+    HashedLogicalIdGenerator storingGenerator = new HashedLogicalIdGenerator( true, "namespace", "type", "name" );
+    assertEquals( logicalId, storingGenerator.generateId( storedNode ) );
+    assertEquals( HashedLogicalIdGenerator.resolve( logicalId ),
+      storedNode.getProperty( DictionaryConst.PROPERTY_LOGICAL_ID_JSON ) );
+
+    // logically equal nodes get the same id, different ones don't
+    assertEquals( logicalId, idGenerator.generateId( createNode( "locator", "Locator", null ) ) );
+    assertNotEquals( logicalId, idGenerator.generateId( createNode( "other", "Locator", null ) ) );
+  }
+
+  @Test
+  public void testGenerateId_noProperties() throws Exception {
+    assertNull( idGenerator.generateId( new MetaverseTransientNode() ) );
+  }
+
+  @Test
+  public void testGenerateId_lengthDoesNotGrowWithNesting() throws Exception {
+    String hashedParent = idGenerator.generateId( createNode( "locator", "Locator", null ) );
+    String jsonParent = jsonIdGenerator.generateId( createNode( "locator", "Locator", null ) );
+    int jsonLength = jsonParent.length();
+    for ( int depth = 0; depth < 10; depth++ ) {
+      hashedParent = idGenerator.generateId( createNode( "child" + depth, "Field", hashedParent ) );
+      jsonParent = jsonIdGenerator.generateId( createNode( "child" + depth, "Field", jsonParent ) );
+      assertEquals( HashedLogicalIdGenerator.ID_LENGTH, hashedParent.length() );
+    }
+    // the JSON ids on the other hand contain all of their ancestors
+    assertTrue( jsonParent.length() > 5 * jsonLength );
+  }
+
+  @Test
+  public void testResolve() throws Exception {
+    assertNull( HashedLogicalIdGenerator.resolve( null ) );
+    assertNull( HashedLogicalIdGenerator.resolve( "{\"name\":\"not hashed\"}" ) );
+    assertNull( HashedLogicalIdGenerator.resolve( "0123456789abcdef0123456789abcdef" ) );
+
+    String logicalId = HashedLogicalIdGenerator.digest( "{\"name\":\"test\"}" );
+    assertEquals( "{\"name\":\"test\"}", HashedLogicalIdGenerator.resolve( logicalId ) );
+  }
+
+  @Test
+  public void testResolve_throughResolver() throws Exception {
+    String parentId = idGenerator.generateId( createNode( "locator", "Locator", null ) );
+    MetaverseTransientNode child = createNode( "trans", "Transformation", parentId );
+    String childId = new HashedLogicalIdGenerator( true, "namespace", "type", "name" ).generateId( child );
+    final String childJson = (String) child.getProperty( DictionaryConst.PROPERTY_LOGICAL_ID_JSON );
+    final String parentJson = HashedLogicalIdGenerator.resolve( parentId );
+
+    // a restart forgets the digests, the ids are resolved from the stored vertices
+    HashedLogicalIdGenerator.clearResolvedIds();
+    assertNull( HashedLogicalIdGenerator.resolve( childId ) );
+    final Map<String, String> stored = new HashMap<String, String>();
+    stored.put( childId, childJson );
+    stored.put( parentId, parentJson );
+    HashedLogicalIdGenerator.setResolver( new ILogicalIdResolver() {
+      @Override
+      public String resolve( String logicalId ) {
+        return stored.get( logicalId );
+      }
+    } );
+    assertEquals( childJson, HashedLogicalIdGenerator.resolve( childId ) );
+    assertEquals( parentId, new Namespace( childId ).getParentNamespace().getNamespaceId() );
+  }
+
+  @Test
+  public void testResolvedIdsAreBounded() throws Exception {
+    String eldest = HashedLogicalIdGenerator.digest( "{\"name\":\"0\"}" );
+    for ( int i = 1; i <= HashedLogicalIdGenerator.MAX_RESOLVED_IDS; i++ ) {
+      HashedLogicalIdGenerator.digest( "{\"name\":\"" + i + "\"}" );
+    }
+    assertTrue( HashedLogicalIdGenerator.getResolvedIdCount() <= HashedLogicalIdGenerator.MAX_RESOLVED_IDS );
+    assertNull( HashedLogicalIdGenerator.resolve( eldest ) );
+  }
+
+  @Test
+  public void testResolvedIdsInUseAreKept() throws Exception {
+    String namespace = HashedLogicalIdGenerator.digest( "{\"name\":\"namespace\"}" );
+    for ( int i = 1; i <= 2 * HashedLogicalIdGenerator.MAX_RESOLVED_IDS; i++ ) {
+      HashedLogicalIdGenerator.digest( "{\"name\":\"" + i + "\"}" );
+      if ( i % 1000 == 0 ) {
+        // the namespace of the nodes being generated is resolved now and then
+        assertNotNull( HashedLogicalIdGenerator.resolve( namespace ) );
+      }
+    }
+    assertEquals( "{\"name\":\"namespace\"}", HashedLogicalIdGenerator.resolve( namespace ) );
+  }
+
+  @Test
+  public void testHashedNamespaces() throws Exception {
+    String parentId = idGenerator.generateId( createNode( "locator", "Locator", null ) );
+    MetaverseTransientNode child = createNode( "trans", "Transformation", parentId );
+    String childId = idGenerator.generateId( child );
+
+    Namespace childNamespace = new Namespace( childId );
+    assertEquals( parentId, childNamespace.getParentNamespace().getNamespaceId() );
+
+    // the sibling namespace is the id a sibling node would get
+    String siblingId = idGenerator.generateId( createNode( "job", "Job", parentId ) );
+    assertEquals( siblingId, childNamespace.getSiblingNamespace( "job", "Job" ).getNamespaceId() );
+  }
+
+  private MetaverseTransientNode createNode( String name, String type, String namespace ) {
+    MetaverseTransientNode node = new MetaverseTransientNode();
+    node.setName( name );
+    node.setType( type );
+    if ( namespace != null ) {
+      node.setProperty( DictionaryConst.PROPERTY_NAMESPACE, namespace );
+    }
+    return node;
+  }
+}
@@ -25,10 +25,13 @@ package org.pentaho.metaverse.api;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -160,6 +163,50 @@ public class PropertiesHolderTest {
     assertTrue( getProps.isEmpty() );
   }
 
+  @Test
+  public void testChangedKeys() throws Exception {
+    long version = props.getVersion();
+    assertTrue( props.getChangedKeys( version ).isEmpty() );
+    props.setProperty( "a", 1 );
+    props.setProperty( "b", 2 );
+    assertTrue( props.isDirty() );
+    assertEquals( new HashSet<String>( Arrays.asList( "a", "b" ) ), keys( props.getChangedKeys( version ) ) );
+
+    version = props.getVersion();
+    assertTrue( props.getChangedKeys( version ).isEmpty() );
+    props.removeProperty( "a" );
+    props.setProperties( Collections.<String, Object>singletonMap( "c", 3 ) );
+    assertEquals( new HashSet<String>( Arrays.asList( "a", "c" ) ), keys( props.getChangedKeys( version ) ) );
+
+    version = props.getVersion();
+    props.removeProperties( Collections.singleton( "c" ) );
+    assertEquals( Collections.singleton( "c" ), keys( props.getChangedKeys( version ) ) );
+
+    version = props.getVersion();
+    props.clearProperties();
+    assertEquals( Collections.singleton( "b" ), keys( props.getChangedKeys( version ) ) );
+
+    props.setProperty( "d", 4 );
+    version = props.getVersion();
+    props.setDirty( true );
+    assertEquals( Collections.singleton( "d" ), keys( props.getChangedKeys( version ) ) );
+  }
+
+  @Test
+  public void testChangedKeys_independentOfDirtyFlag() throws Exception {
+    // two copiers of the same holder each see the changes made since their own copy
+    long first = props.getVersion();
+    props.setProperty( "a", 1 );
+    long second = props.getVersion();
+    props.setDirty( false );
+    props.setProperty( "b", 2 );
+    props.setDirty( false );
+
+    assertFalse( props.isDirty() );
+    assertEquals( new HashSet<String>( Arrays.asList( "a", "b" ) ), keys( props.getChangedKeys( first ) ) );
+    assertEquals( Collections.singleton( "b" ), keys( props.getChangedKeys( second ) ) );
+  }
+
   @Test
   public void testContainsKey_nullProperties() throws Exception {
     props.properties = null;
@@ -187,4 +234,8 @@ public class PropertiesHolderTest {
     props.properties = null;
     assertNotNull( props.toString() );
   }
+
+  private static Set<String> keys( List<String> keys ) {
+    return new HashSet<String>( keys );
+  }
 }
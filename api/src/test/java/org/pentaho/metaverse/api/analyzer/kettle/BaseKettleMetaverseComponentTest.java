@@ -101,4 +101,18 @@ public class BaseKettleMetaverseComponentTest {
     assertNotNull( node );
     assertTrue( node.getLogicalId().contains( namespaceId ) );
   }
+
+  @Test
+  public void testGetNamespaceLogicalIdGenerator() throws Exception {
+    assertEquals( DictionaryConst.LOGICAL_ID_GENERATOR_COMPONENT, component.getNamespaceLogicalIdGenerator() );
+
+    // a component with its own generator keeps it
+    BaseKettleMetaverseComponent connectionComponent = new BaseKettleMetaverseComponent() {
+      @Override
+      protected ILogicalIdGenerator getLogicalIdGenerator() {
+        return DictionaryConst.LOGICAL_ID_GENERATOR_DB_JDBC;
+      }
+    };
+    assertEquals( DictionaryConst.LOGICAL_ID_GENERATOR_DB_JDBC, connectionComponent.getNamespaceLogicalIdGenerator() );
+  }
 }
@@ -36,6 +36,7 @@ import org.pentaho.di.job.JobMeta;
 import org.pentaho.di.job.entry.JobEntryCopy;
 import org.pentaho.di.job.entry.JobEntryInterface;
 import org.pentaho.metaverse.api.IComponentDescriptor;
+import org.pentaho.metaverse.api.IConnectionAnalyzer;
 import org.pentaho.metaverse.api.IMetaverseBuilder;
 import org.pentaho.metaverse.api.IMetaverseNode;
 import org.pentaho.metaverse.api.IMetaverseObjectFactory;
@@ -46,6 +47,10 @@ import org.pentaho.metaverse.api.testutils.MetaverseTestUtils;
 import java.util.Set;
 
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -204,4 +209,72 @@ public class JobEntryAnalyzerTest {
     analyzer.setMetaverseBuilder( mockBuilder );
     analyzer.validateState( mockDescriptor, mockJobEntryInterface );
   }
+
+  @Test
+  public void testCloneAnalyzer() throws Exception {
+    IConnectionAnalyzer connectionAnalyzer = mock( IConnectionAnalyzer.class );
+    TestJobEntryAnalyzer original = new TestJobEntryAnalyzer();
+    original.setMetaverseBuilder( mockBuilder );
+    original.setConnectionAnalyzer( connectionAnalyzer );
+    original.jobEntryInterface = mockJobEntryInterface;
+    original.parentJob = mockJob;
+    original.parentJobMeta = mockJobMeta;
+    original.setDescriptor( mockDescriptor );
+
+    IClonableJobEntryAnalyzer<IMetaverseNode, JobEntryInterface> clone = original.cloneAnalyzer();
+    assertTrue( clone instanceof TestJobEntryAnalyzer );
+    assertNotSame( original, clone );
+    TestJobEntryAnalyzer testClone = (TestJobEntryAnalyzer) clone;
+    // the configuration is copied
+    assertSame( mockBuilder, testClone.getMetaverseBuilder() );
+    assertSame( original.getMetaverseObjectFactory(), testClone.getMetaverseObjectFactory() );
+    assertSame( connectionAnalyzer, testClone.getConnectionAnalyzer() );
+    // the state of an analysis is not
+    assertNull( testClone.jobEntryInterface );
+    assertNull( testClone.parentJob );
+    assertNull( testClone.parentJobMeta );
+    assertNull( testClone.getDescriptor() );
+  }
+
+  @Test
+  public void testCloneAnalyzer_notOptedIn() throws Exception {
+    // cloning is opt-in, the analyzers that do not override newInstance are shared
+    assertNull( new SharedJobEntryAnalyzer().cloneAnalyzer() );
+    // and so are the subclasses of a clonable analyzer that do not override it
+    assertNull( new NamedJobEntryAnalyzer( "name" ).cloneAnalyzer() );
+  }
+
+  public static class TestJobEntryAnalyzer extends JobEntryAnalyzer<JobEntryInterface> {
+    @Override
+    public Set<Class<? extends JobEntryInterface>> getSupportedEntries() {
+      return null;
+    }
+
+    @Override
+    protected void customAnalyze( JobEntryInterface entry, IMetaverseNode rootNode )
+      throws MetaverseAnalyzerException {
+    }
+
+    @Override
+    protected JobEntryAnalyzer<JobEntryInterface> newInstance() {
+      return new TestJobEntryAnalyzer();
+    }
+  }
+
+  public static class SharedJobEntryAnalyzer extends JobEntryAnalyzer<JobEntryInterface> {
+    @Override
+    public Set<Class<? extends JobEntryInterface>> getSupportedEntries() {
+      return null;
+    }
+
+    @Override
+    protected void customAnalyze( JobEntryInterface entry, IMetaverseNode rootNode )
+      throws MetaverseAnalyzerException {
+    }
+  }
+
+  public static class NamedJobEntryAnalyzer extends TestJobEntryAnalyzer {
+    public NamedJobEntryAnalyzer( String name ) {
+    }
+  }
 }
@@ -383,4 +383,41 @@ public class ExternalResourceStepAnalyzerTest {
     verify( builder, never() ).addLink( inputNode, DictionaryConst.LINK_POPULATES, outputNode );
     verify( builder ).addLink( inputNode, analyzer.getInputToOutputLinkLabel(), outputNode );
   }
+
+  @Test
+  public void testCloneAnalyzer() throws Exception {
+    TestExternalResourceStepAnalyzer original = new TestExternalResourceStepAnalyzer();
+    original.setExternalResourceConsumer( erc );
+
+    ExternalResourceStepAnalyzer clone = (ExternalResourceStepAnalyzer) original.cloneAnalyzer();
+    assertNotSame( original, clone );
+    assertSame( erc, clone.getExternalResourceConsumer() );
+  }
+
+  public static class TestExternalResourceStepAnalyzer extends ExternalResourceStepAnalyzer<BaseStepMeta> {
+    @Override public Set<Class<? extends BaseStepMeta>> getSupportedSteps() {
+      return null;
+    }
+    @Override protected Set<StepField> getUsedFields( BaseStepMeta meta ) {
+      return null;
+    }
+    @Override public IMetaverseNode createResourceNode( IExternalResourceInfo resource ) throws MetaverseException {
+      return null;
+    }
+    @Override public String getResourceInputNodeType() {
+      return null;
+    }
+    @Override public String getResourceOutputNodeType() {
+      return null;
+    }
+    @Override public boolean isOutput() {
+      return false;
+    }
+    @Override public boolean isInput() {
+      return true;
+    }
+    @Override protected StepAnalyzer<BaseStepMeta> newInstance() {
+      return new TestExternalResourceStepAnalyzer();
+    }
+  }
 }
@@ -0,0 +1,376 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.api.analyzer.kettle.step;
+
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.pentaho.di.core.ProgressMonitorListener;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.variables.VariableSpace;
+import org.pentaho.di.repository.Repository;
+import org.pentaho.di.trans.TransHopMeta;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.StepErrorMeta;
+import org.pentaho.di.trans.step.StepIOMetaInterface;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.di.trans.step.errorhandling.StreamInterface;
+import org.pentaho.metastore.api.IMetaStore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RowMetaCacheTest {
+
+  @Test
+  public void testOpenClose() throws Exception {
+    TransMeta transMeta = mock( TransMeta.class );
+    assertNull( RowMetaCache.get( transMeta ) );
+
+    RowMetaCache cache = RowMetaCache.open( transMeta );
+    assertSame( cache, RowMetaCache.get( transMeta ) );
+    // nested analyses of the same transformation share the cache
+    assertSame( cache, RowMetaCache.open( transMeta ) );
+    cache.close();
+    assertSame( cache, RowMetaCache.get( transMeta ) );
+    cache.close();
+    assertNull( RowMetaCache.get( transMeta ) );
+    assertNull( RowMetaCache.get( null ) );
+  }
+
+  @Test
+  public void testGetStepFields_notOpen() throws Exception {
+    MockTrans trans = new MockTrans( 3 );
+    trans.hop( 0, 1 );
+    trans.hop( 1, 2 );
+
+    RowMetaCache.getStepFields( trans.transMeta, trans.steps.get( 2 ) );
+    RowMetaCache.getStepFields( trans.transMeta, trans.steps.get( 2 ) );
+    verify( trans.transMeta, times( 2 ) ).getStepFields( eq( trans.steps.get( 2 ) ),
+      any( ProgressMonitorListener.class ) );
+  }
+
+  @Test
+  public void testGetStepFields() throws Exception {
+    MockTrans trans = new MockTrans( 3 );
+    trans.hop( 0, 1 );
+    trans.hop( 1, 2 );
+
+    RowMetaCache cache = RowMetaCache.open( trans.transMeta );
+    try {
+      RowMetaInterface fields = RowMetaCache.getStepFields( trans.transMeta, trans.steps.get( 2 ) );
+      assertArrayEquals( new String[] { "field0", "field1", "field2" }, fields.getFieldNames() );
+      RowMetaInterface again = RowMetaCache.getStepFields( trans.transMeta, trans.steps.get( 2 ) );
+      assertNotSame( fields, again );
+      assertArrayEquals( fields.getFieldNames(), again.getFieldNames() );
+      // the callers get a copy they can modify
+      fields.removeValueMeta( 0 );
+      assertEquals( 3, cache.getStepFields( trans.steps.get( 2 ) ).size() );
+      assertArrayEquals( new String[] { "field0", "field1" },
+        cache.getStepFields( trans.steps.get( 1 ) ).getFieldNames() );
+
+      // every step was derived once, upstream first, without asking the transformation
+      InOrder order = inOrder( trans.stepMetaInterfaces.toArray() );
+      for ( StepMetaInterface stepMetaInterface : trans.stepMetaInterfaces ) {
+        order.verify( stepMetaInterface ).getFields( any( RowMetaInterface.class ), anyString(),
+          any( RowMetaInterface[].class ), any( StepMeta.class ), any( VariableSpace.class ), any( Repository.class ),
+          any( IMetaStore.class ) );
+      }
+      assertEquals( 3, trans.getFieldsCalls );
+      assertEquals( 3, cache.getDerivations() );
+      verify( trans.transMeta, never() ).getStepFields( any( StepMeta.class ), any( ProgressMonitorListener.class ) );
+    } finally {
+      cache.close();
+    }
+  }
+
+  @Test
+  public void testGetPrevStepFields() throws Exception {
+    MockTrans trans = new MockTrans( 3 );
+    trans.hop( 0, 2 );
+    trans.hop( 1, 2 );
+
+    RowMetaCache cache = RowMetaCache.open( trans.transMeta );
+    try {
+      StepMeta step = trans.steps.get( 2 );
+      assertArrayEquals( new String[] { "step0", "step1" }, RowMetaCache.getPrevStepNames( trans.transMeta, step ) );
+      assertArrayEquals( new String[] { "step0", "step1" }, RowMetaCache.getPrevStepNames( trans.transMeta, step ) );
+      RowMetaInterface fields = RowMetaCache.getPrevStepFields( trans.transMeta, step );
+      assertArrayEquals( new String[] { "field0", "field1" }, fields.getFieldNames() );
+      RowMetaCache.getPrevStepFields( trans.transMeta, step );
+
+      verify( trans.transMeta ).getPrevStepNames( step );
+      verify( trans.transMeta, never() ).getPrevStepFields( any( StepMeta.class ),
+        any( ProgressMonitorListener.class ) );
+      // only the steps before it were derived
+      assertEquals( 2, trans.getFieldsCalls );
+    } finally {
+      cache.close();
+    }
+  }
+
+  @Test
+  public void testGetStepFields_errorHop() throws Exception {
+    MockTrans trans = new MockTrans( 3 );
+    trans.hop( 0, 1 );
+    trans.hop( 1, 2 );
+    StepErrorMeta errorMeta = mock( StepErrorMeta.class );
+    RowMetaInterface errorFields = new RowMeta();
+    errorFields.addValueMeta( new ValueMeta( "errorCount", ValueMetaInterface.TYPE_INTEGER ) );
+    when( errorMeta.getErrorFields() ).thenReturn( errorFields );
+    when( trans.steps.get( 1 ).getStepErrorMeta() ).thenReturn( errorMeta );
+    when( trans.steps.get( 1 ).isSendingErrorRowsToStep( trans.steps.get( 2 ) ) ).thenReturn( true );
+
+    RowMetaCache cache = RowMetaCache.open( trans.transMeta );
+    try {
+      // the error rows are the rows coming into step1 plus the error fields
+      assertArrayEquals( new String[] { "field0", "errorCount", "field2" },
+        cache.getStepFields( trans.steps.get( 2 ) ).getFieldNames() );
+    } finally {
+      cache.close();
+    }
+  }
+
+  @Test
+  public void testGetStepFields_targetStreams() throws Exception {
+    MockTrans trans = new MockTrans( 4 );
+    trans.hop( 0, 1 );
+    trans.hop( 1, 2 );
+    trans.hop( 1, 3 );
+    StepIOMetaInterface stepIOMeta = mock( StepIOMetaInterface.class );
+    when( stepIOMeta.getTargetStreams() ).thenReturn(
+      Collections.singletonList( mock( StreamInterface.class ) ) );
+    when( trans.stepMetaInterfaces.get( 1 ).getStepIOMeta() ).thenReturn( stepIOMeta );
+    for ( int i = 2; i < 4; i++ ) {
+      RowMetaInterface targetFields = new RowMeta();
+      targetFields.addValueMeta( new ValueMeta( "target" + i, ValueMetaInterface.TYPE_STRING ) );
+      when( trans.transMeta.getStepFields( eq( trans.steps.get( 1 ) ), eq( trans.steps.get( i ) ),
+        any( ProgressMonitorListener.class ) ) ).thenReturn( targetFields );
+    }
+
+    RowMetaCache cache = RowMetaCache.open( trans.transMeta );
+    try {
+      // the fields step1 sends to each of its targets are the ones the transformation derives for that target
+      assertArrayEquals( new String[] { "target2", "field2" },
+        cache.getStepFields( trans.steps.get( 2 ) ).getFieldNames() );
+      assertArrayEquals( new String[] { "target3", "field3" },
+        cache.getStepFields( trans.steps.get( 3 ) ).getFieldNames() );
+      assertArrayEquals( new String[] { "target2" }, cache.getPrevStepFields( trans.steps.get( 2 ) ).getFieldNames() );
+      assertArrayEquals( new String[] { "field0", "field1" },
+        cache.getStepFields( trans.steps.get( 1 ) ).getFieldNames() );
+
+      for ( int i = 2; i < 4; i++ ) {
+        verify( trans.transMeta ).getStepFields( eq( trans.steps.get( 1 ) ), eq( trans.steps.get( i ) ),
+          any( ProgressMonitorListener.class ) );
+      }
+    } finally {
+      cache.close();
+    }
+  }
+
+  @Test
+  public void testGetStepFields_infoSteps() throws Exception {
+    MockTrans trans = new MockTrans( 3 );
+    trans.hop( 0, 2 );
+    trans.hop( 1, 2 );
+    when( trans.transMeta.getInfoStep( trans.steps.get( 2 ) ) ).thenReturn( new StepMeta[] { trans.steps.get( 0 ) } );
+
+    RowMetaCache cache = RowMetaCache.open( trans.transMeta );
+    try {
+      // the info step is not part of the main input of the step, it is handed to it as info
+      assertArrayEquals( new String[] { "field1", "field2" },
+        cache.getStepFields( trans.steps.get( 2 ) ).getFieldNames() );
+      assertArrayEquals( new String[] { "field0" }, trans.lastInfo[ 0 ].getFieldNames() );
+      assertArrayEquals( new String[] { "field0", "field1" },
+        cache.getPrevStepFields( trans.steps.get( 2 ) ).getFieldNames() );
+    } finally {
+      cache.close();
+    }
+  }
+
+  @Test
+  public void testGetFieldsCallsPerAnalysis() throws Exception {
+    int steps = 300;
+    MockTrans linear = new MockTrans( steps );
+    for ( int i = 1; i < steps; i++ ) {
+      linear.hop( i - 1, i );
+    }
+    MockTrans fanIn = new MockTrans( steps );
+    for ( int i = 0; i < steps - 1; i++ ) {
+      fanIn.hop( i, steps - 1 );
+    }
+
+    for ( MockTrans trans : new MockTrans[] { linear, fanIn } ) {
+      RowMetaCache cache = RowMetaCache.open( trans.transMeta );
+      try {
+        analyze( trans );
+      } finally {
+        cache.close();
+      }
+      // each step changes the fields once per analysis, however many steps are upstream of it
+      assertEquals( steps, trans.getFieldsCalls );
+      for ( StepMetaInterface stepMetaInterface : trans.stepMetaInterfaces ) {
+        verify( stepMetaInterface, times( 1 ) ).getFields( any( RowMetaInterface.class ), anyString(),
+          any( RowMetaInterface[].class ), any( StepMeta.class ), any( VariableSpace.class ), any( Repository.class ),
+          any( IMetaStore.class ) );
+      }
+    }
+  }
+
+  /**
+   * Asks for the fields of every step the way analyzing and serializing a transformation does
+   */
+  private static void analyze( MockTrans trans ) throws Exception {
+    for ( StepMeta step : trans.steps ) {
+      // the step analyzer
+      RowMetaCache.getPrevStepNames( trans.transMeta, step );
+      RowMetaCache.getPrevStepFields( trans.transMeta, step );
+      RowMetaCache.getStepFields( trans.transMeta, step );
+      // the step serializer
+      RowMetaCache.getStepFields( trans.transMeta, step );
+    }
+  }
+
+  /**
+   * A mocked transformation whose steps each add one field to the fields of the steps before them. Like Kettle, the
+   * transformation derives the fields of a step by deriving the fields of all of the steps upstream of it.
+   */
+  private static class MockTrans {
+    TransMeta transMeta = mock( TransMeta.class );
+    List<StepMeta> steps = new ArrayList<StepMeta>();
+    List<StepMetaInterface> stepMetaInterfaces = new ArrayList<StepMetaInterface>();
+    List<TransHopMeta> hops = new ArrayList<TransHopMeta>();
+    int getFieldsCalls;
+    RowMetaInterface[] lastInfo;
+
+    MockTrans( int nrSteps ) throws Exception {
+      for ( int i = 0; i < nrSteps; i++ ) {
+        StepMeta step = mock( StepMeta.class );
+        when( step.getName() ).thenReturn( "step" + i );
+        StepMetaInterface stepMetaInterface = mock( StepMetaInterface.class );
+        final String field = "field" + i;
+        doAnswer( new Answer<Void>() {
+          @Override
+          public Void answer( InvocationOnMock invocation ) throws Throwable {
+            getFieldsCalls++;
+            lastInfo = (RowMetaInterface[]) invocation.getArguments()[ 2 ];
+            ( (RowMetaInterface) invocation.getArguments()[ 0 ] ).addValueMeta(
+              new ValueMeta( field, ValueMetaInterface.TYPE_STRING ) );
+            return null;
+          }
+        } ).when( stepMetaInterface ).getFields( any( RowMetaInterface.class ), anyString(),
+          any( RowMetaInterface[].class ), any( StepMeta.class ), any( VariableSpace.class ), any( Repository.class ),
+          any( IMetaStore.class ) );
+        when( step.getStepMetaInterface() ).thenReturn( stepMetaInterface );
+        steps.add( step );
+        stepMetaInterfaces.add( stepMetaInterface );
+      }
+      when( transMeta.nrTransHops() ).thenAnswer( new Answer<Integer>() {
+        @Override
+        public Integer answer( InvocationOnMock invocation ) throws Throwable {
+          return hops.size();
+        }
+      } );
+      when( transMeta.getTransHop( anyInt() ) ).thenAnswer( new Answer<TransHopMeta>() {
+        @Override
+        public TransHopMeta answer( InvocationOnMock invocation ) throws Throwable {
+          return hops.get( (Integer) invocation.getArguments()[ 0 ] );
+        }
+      } );
+      when( transMeta.getPrevStepNames( any( StepMeta.class ) ) ).thenAnswer( new Answer<String[]>() {
+        @Override
+        public String[] answer( InvocationOnMock invocation ) throws Throwable {
+          List<String> names = new ArrayList<String>();
+          for ( StepMeta previous : previous( (StepMeta) invocation.getArguments()[ 0 ] ) ) {
+            names.add( previous.getName() );
+          }
+          return names.toArray( new String[ names.size() ] );
+        }
+      } );
+      when( transMeta.getStepFields( any( StepMeta.class ), any( ProgressMonitorListener.class ) ) ).thenAnswer(
+        new Answer<RowMetaInterface>() {
+          @Override
+          public RowMetaInterface answer( InvocationOnMock invocation ) throws Throwable {
+            return derive( (StepMeta) invocation.getArguments()[ 0 ] );
+          }
+        } );
+      when( transMeta.getPrevStepFields( any( StepMeta.class ), any( ProgressMonitorListener.class ) ) ).thenAnswer(
+        new Answer<RowMetaInterface>() {
+          @Override
+          public RowMetaInterface answer( InvocationOnMock invocation ) throws Throwable {
+            RowMetaInterface fields = new RowMeta();
+            for ( StepMeta previous : previous( (StepMeta) invocation.getArguments()[ 0 ] ) ) {
+              fields.mergeRowMeta( derive( previous ) );
+            }
+            return fields;
+          }
+        } );
+    }
+
+    void hop( int from, int to ) {
+      hops.add( new TransHopMeta( steps.get( from ), steps.get( to ) ) );
+    }
+
+    List<StepMeta> previous( StepMeta step ) {
+      List<StepMeta> previous = new ArrayList<StepMeta>();
+      for ( TransHopMeta hop : hops ) {
+        if ( hop.getToStep() == step ) {
+          previous.add( hop.getFromStep() );
+        }
+      }
+      return previous;
+    }
+
+    RowMetaInterface derive( StepMeta step ) throws Exception {
+      RowMetaInterface fields = new RowMeta();
+      for ( StepMeta previous : previous( step ) ) {
+        fields.mergeRowMeta( derive( previous ) );
+      }
+      fields.addValueMeta( new ValueMeta( "field" + step.getName().substring( 4 ), ValueMetaInterface.TYPE_STRING ) );
+      return fields;
+    }
+  }
+}
@@ -836,4 +836,83 @@ public class StepAnalyzerTest {
     verify( analyzer, times( changeRecords.size() ) ).mapChange( any( ComponentDerivationRecord.class ) );
     verify( analyzer ).customAnalyze( baseStepMeta, analyzedNode );
   }
+
+  @Test
+  public void testCloneAnalyzer() throws Exception {
+    MetaverseObjectFactory objectFactory = new MetaverseObjectFactory();
+    when( builder.getMetaverseObjectFactory() ).thenReturn( objectFactory );
+    IConnectionAnalyzer connectionAnalyzer = mock( IConnectionAnalyzer.class );
+
+    TestStepAnalyzer original = new TestStepAnalyzer();
+    original.setMetaverseBuilder( builder );
+    original.setConnectionAnalyzer( connectionAnalyzer );
+    original.rootNode = rootNode;
+    original.baseStepMeta = baseStepMeta;
+    original.parentStepMeta = parentStepMeta;
+    original.parentTransMeta = parentTransMeta;
+
+    IClonableStepAnalyzer<BaseStepMeta> clone = original.cloneAnalyzer();
+    assertTrue( clone instanceof TestStepAnalyzer );
+    assertNotSame( original, clone );
+    TestStepAnalyzer testClone = (TestStepAnalyzer) clone;
+    // the configuration is copied
+    assertSame( builder, testClone.getMetaverseBuilder() );
+    assertSame( objectFactory, testClone.getMetaverseObjectFactory() );
+    assertSame( connectionAnalyzer, testClone.getConnectionAnalyzer() );
+    // the state of an analysis is not
+    assertNull( testClone.rootNode );
+    assertNull( testClone.baseStepMeta );
+    assertNull( testClone.parentStepMeta );
+    assertNull( testClone.parentTransMeta );
+  }
+
+  @Test
+  public void testCloneAnalyzer_notOptedIn() throws Exception {
+    // cloning is opt-in, the analyzers that do not override newInstance are shared
+    assertNull( new SharedStepAnalyzer().cloneAnalyzer() );
+    // and so are the subclasses of a clonable analyzer that do not override it
+    assertNull( new NamedStepAnalyzer( "name" ).cloneAnalyzer() );
+  }
+
+  public static class TestStepAnalyzer extends StepAnalyzer<BaseStepMeta> {
+    @Override
+    protected Set<StepField> getUsedFields( BaseStepMeta meta ) {
+      return null;
+    }
+
+    @Override
+    protected void customAnalyze( BaseStepMeta meta, IMetaverseNode rootNode ) throws MetaverseAnalyzerException {
+    }
+
+    @Override
+    public Set<Class<? extends BaseStepMeta>> getSupportedSteps() {
+      return null;
+    }
+
+    @Override
+    protected StepAnalyzer<BaseStepMeta> newInstance() {
+      return new TestStepAnalyzer();
+    }
+  }
+
+  public static class SharedStepAnalyzer extends StepAnalyzer<BaseStepMeta> {
+    @Override
+    protected Set<StepField> getUsedFields( BaseStepMeta meta ) {
+      return null;
+    }
+
+    @Override
+    protected void customAnalyze( BaseStepMeta meta, IMetaverseNode rootNode ) throws MetaverseAnalyzerException {
+    }
+
+    @Override
+    public Set<Class<? extends BaseStepMeta>> getSupportedSteps() {
+      return null;
+    }
+  }
+
+  public static class NamedStepAnalyzer extends TestStepAnalyzer {
+    public NamedStepAnalyzer( String name ) {
+    }
+  }
 }
@@ -0,0 +1,144 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.api.analyzer.kettle.step;
+
+import org.junit.Test;
+import org.pentaho.metaverse.api.IMetaverseNode;
+import org.pentaho.metaverse.api.StepField;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+public class StepNodesTest {
+
+  @Test
+  public void testFindNodes() throws Exception {
+    IMetaverseNode node1 = mock( IMetaverseNode.class );
+    IMetaverseNode node2 = mock( IMetaverseNode.class );
+    IMetaverseNode node3 = mock( IMetaverseNode.class );
+    StepNodes stepNodes = new StepNodes();
+    stepNodes.addNode( "step1", "name", node1 );
+    stepNodes.addNode( "step1", "age", node2 );
+    stepNodes.addNode( "step2", "name", node3 );
+
+    assertEquals( Arrays.asList( node1, node3 ), stepNodes.findNodes( "name" ) );
+    assertEquals( Arrays.asList( node2 ), stepNodes.findNodes( "age" ) );
+    assertTrue( stepNodes.findNodes( "address" ).isEmpty() );
+    assertTrue( stepNodes.containsFieldName( "name" ) );
+    assertFalse( stepNodes.containsFieldName( "address" ) );
+    assertSame( node3, stepNodes.findNode( new StepField( "step2", "name" ) ) );
+    assertNull( stepNodes.findNode( "step2", "age" ) );
+
+    // a node added again for the same step and field replaces the previous one
+    IMetaverseNode replacement = mock( IMetaverseNode.class );
+    stepNodes.addNode( "step1", "name", replacement );
+    assertEquals( Arrays.asList( replacement, node3 ), stepNodes.findNodes( "name" ) );
+  }
+
+  @Test
+  public void testGetFieldNames() throws Exception {
+    StepNodes stepNodes = new StepNodes();
+    assertTrue( stepNodes.getFieldNames().isEmpty() );
+    stepNodes.addNode( "step1", "name", mock( IMetaverseNode.class ) );
+    stepNodes.addNode( "step2", "age", mock( IMetaverseNode.class ) );
+    stepNodes.addNode( "step1", "address", mock( IMetaverseNode.class ) );
+
+    Set<StepField> fieldNames = stepNodes.getFieldNames();
+    Iterator<StepField> fields = fieldNames.iterator();
+    assertEquals( new StepField( "step1", "name" ), fields.next() );
+    assertEquals( new StepField( "step1", "address" ), fields.next() );
+    assertEquals( new StepField( "step2", "age" ), fields.next() );
+    assertFalse( fields.hasNext() );
+    // the set is shared until a node is added
+    assertSame( fieldNames, stepNodes.getFieldNames() );
+    try {
+      fieldNames.add( new StepField( "step3", "city" ) );
+      fail( "the shared set cannot be modified" );
+    } catch ( UnsupportedOperationException e ) {
+      // expected
+    }
+
+    stepNodes.addNode( "step3", "city", mock( IMetaverseNode.class ) );
+    assertEquals( 4, stepNodes.getFieldNames().size() );
+    assertEquals( 3, fieldNames.size() );
+  }
+
+  @Test
+  public void testPassthroughs() throws Exception {
+    for ( int fields : new int[] { 10, 500, 5000 } ) {
+      StepNodes inputs = createStepNodes( "input", fields, 0 );
+      // half of the fields are passed through, the other half are replaced by new ones
+      StepNodes outputs = createStepNodes( "output", fields, fields / 2 );
+
+      int linear = 0;
+      int indexed = 0;
+      for ( StepField incoming : inputs.getFieldNames() ) {
+        if ( isPassthroughLinear( outputs, incoming ) ) {
+          linear++;
+        }
+        if ( outputs.containsFieldName( incoming.getFieldName() ) ) {
+          indexed++;
+        }
+      }
+
+      // the index finds the same passthroughs as the linear lookup
+      assertEquals( linear, indexed );
+      assertEquals( fields - fields / 2, indexed );
+    }
+  }
+
+  /**
+   * Creates the fields of a step, the last ones of which are named after the step
+   */
+  private static StepNodes createStepNodes( String stepName, int fields, int ownFields ) {
+    StepNodes stepNodes = new StepNodes();
+    IMetaverseNode node = mock( IMetaverseNode.class );
+    for ( int i = 0; i < fields; i++ ) {
+      stepNodes.addNode( stepName, ( i < fields - ownFields ? "field" : stepName ) + i, node );
+    }
+    return stepNodes;
+  }
+
+  /**
+   * How a passthrough was determined before the field names were indexed
+   */
+  private static boolean isPassthroughLinear( StepNodes outputs, StepField originalFieldName ) {
+    for ( String stepName : outputs.getStepNames() ) {
+      for ( String fieldName : outputs.getFieldNames( stepName ) ) {
+        if ( fieldName.equals( originalFieldName.getFieldName() ) ) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,129 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.metaverse.api.model;
+
+import org.junit.Test;
+import org.pentaho.metaverse.api.ChangeType;
+import org.pentaho.metaverse.api.analyzer.kettle.ComponentDerivationRecord;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class OperationsPropertyTest {
+
+  @Test
+  public void testToString() throws Exception {
+    ComponentDerivationRecord record = createRecord( 0 );
+    OperationsProperty property = new OperationsProperty( record.getOperations() );
+    // the same JSON the change record renders, and rendered only once
+    assertEquals( record.toString(), property.toString() );
+    assertSame( property.toString(), property.toString() );
+  }
+
+  @Test
+  public void testGetOperations() throws Exception {
+    ComponentDerivationRecord record = createRecord( 0 );
+    OperationsProperty property = new OperationsProperty( record.getOperations() );
+    assertSame( property.getOperations(), OperationsProperty.getOperations( property ) );
+    assertEquals( property.getOperations(), OperationsProperty.getOperations( property.toString() ) );
+    assertEquals( record.getOperations(), OperationsProperty.getOperations( record.toString() ) );
+    assertNull( OperationsProperty.getOperations( null ) );
+    assertNull( OperationsProperty.getOperations( 42 ) );
+    assertNull( OperationsProperty.fromJson( "" ) );
+    assertNull( OperationsProperty.fromJson( "{" ) );
+  }
+
+  @Test
+  public void testCopy() throws Exception {
+    ComponentDerivationRecord record = createRecord( 0 );
+    OperationsProperty property = new OperationsProperty( record.getOperations() );
+    assertNotSame( record.getOperations(), property.getOperations() );
+    assertEquals( new OperationsProperty( record.getOperations() ), property );
+    assertEquals( new OperationsProperty( record.getOperations() ).hashCode(), property.hashCode() );
+
+    // changing the record afterwards does not change the property
+    record.addOperation( new Operation( Operation.CALC_CATEGORY, ChangeType.DATA, "added", "added" ) );
+    assertEquals( 1, property.getOperations().size() );
+    assertEquals( 1, property.getOperations().get( ChangeType.METADATA ).size() );
+    assertNull( OperationsProperty.copyOf( null ) );
+  }
+
+  @Test
+  public void testToString_concurrent() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool( 4 );
+    try {
+      List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+      for ( int i = 0; i < 200; i++ ) {
+        final ComponentDerivationRecord record = createRecord( i );
+        results.add( executor.submit( new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws Exception {
+            String json = new OperationsProperty( record.getOperations() ).toString();
+            return json.contains( record.getChangedEntityName() )
+              && record.getOperations().equals( OperationsProperty.fromJson( json ) );
+          }
+        } ) );
+      }
+      for ( Future<Boolean> result : results ) {
+        assertTrue( result.get() );
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testOperationPathReads() throws Exception {
+    // the field vertices of a wide transformation, each one read once for every path it is on
+    int fields = 500;
+    for ( int i = 0; i < fields; i++ ) {
+      ComponentDerivationRecord record = createRecord( i );
+      String json = record.toString();
+      OperationsProperty structured = new OperationsProperty( record.getOperations() );
+
+      // the JSON is parsed on every read, the structured value is read as it is
+      Operations operations = OperationsProperty.getOperations( structured );
+      assertEquals( OperationsProperty.getOperations( json ), operations );
+      assertSame( operations, OperationsProperty.getOperations( structured ) );
+      assertNotSame( OperationsProperty.getOperations( json ), OperationsProperty.getOperations( json ) );
+    }
+  }
+
+  private static ComponentDerivationRecord createRecord( int i ) {
+    ComponentDerivationRecord record = new ComponentDerivationRecord( "field" + i, "renamed" + i );
+    record.addOperation( new Operation( Operation.METADATA_CATEGORY, ChangeType.METADATA,
+      "modified", "name: renamed" + i ) );
+    return record;
+  }
+}
@@ -32,7 +32,6 @@ import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
-import org.pentaho.di.core.Const;
 import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMetaInterface;
@@ -346,7 +345,7 @@ public class MetaverseValidationIT {
     for ( StreamFieldNode node : selectValues.getOutputStreamFields() ) {
       // check for operations
       if ( node.getOperations() != null ) {
-        Operations ops = MetaverseUtil.convertOperationsStringToMap( node.getOperations() );
+        Operations ops = MetaverseUtil.convertOperationsToMap( node.getOperations() );
         assertNotNull( ops );
         List<IOperation> metadataOps = ops.get( ChangeType.METADATA );
         assertNotNull( metadataOps );
@@ -669,7 +668,7 @@ public class MetaverseValidationIT {
     for ( StreamFieldNode outField : outFields ) {
       assertNotNull( outField.getKettleType() );
       if ( outField.getName().equals( meta.getTargetField() ) ) {
-        Operations ops = MetaverseUtil.convertOperationsStringToMap( usesNode.getOperations() );
+        Operations ops = MetaverseUtil.convertOperationsToMap( usesNode.getOperations() );
         List<IOperation> dataOps = ops.get( ChangeType.DATA );
         assertNotNull( dataOps );
         assertEquals( meta.getSourceValue().length, dataOps.size() );
@@ -715,7 +714,7 @@ public class MetaverseValidationIT {
           assertEquals( usesNode.getType(), derives.getType() );
         }
 
-        Operations ops = MetaverseUtil.convertOperationsStringToMap( outField.getOperations() );
+        Operations ops = MetaverseUtil.convertOperationsToMap( outField.getOperations() );
         List<IOperation> dataOps = ops.get( ChangeType.DATA );
         assertNotNull( dataOps );
         assertEquals( 1, dataOps.size() );
@@ -906,7 +905,7 @@ public class MetaverseValidationIT {
     List<String> nodeOutputs = new ArrayList<String>();
     for ( StreamFieldNode sfn : node.getOutputStreamFields() ) {
       nodeOutputs.add( sfn.getName() );
-      Operations ops = MetaverseUtil.convertOperationsStringToMap( sfn.getOperations() );
+      Operations ops = MetaverseUtil.convertOperationsToMap( sfn.getOperations() );
       if ( sfn.getName().equals( "area" ) ) {
         area = sfn;
         assertNotNull( ops.get( ChangeType.DATA ) );
@@ -1102,9 +1101,9 @@ public class MetaverseValidationIT {
     for ( StreamFieldNode sfn : node.getOutputStreamFields() ) {
       // "Last Name" is a special case for this test, it is passthrough
       if ( sfn.getName().equals( "Last Name" ) ) {
-        assertTrue( Const.isEmpty( sfn.getOperations() ) );
+        assertNull( sfn.getOperations() );
       } else {
-        assertFalse( Const.isEmpty( sfn.getOperations() ) );
+        assertNotNull( sfn.getOperations() );
       }
     }
   }
@@ -1122,9 +1121,9 @@ public class MetaverseValidationIT {
     for ( StreamFieldNode sfn : node.getOutputStreamFields() ) {
       // "Last Name" is a special case for this test, it is passthrough
       if ( sfn.getName().equals( "Middle Name" ) ) {
-        assertTrue( Const.isEmpty( sfn.getOperations() ) );
+        assertNull( sfn.getOperations() );
       } else {
-        assertFalse( Const.isEmpty( sfn.getOperations() ) );
+        assertNotNull( sfn.getOperations() );
       }
     }
   }
@@ -1146,9 +1145,9 @@ public class MetaverseValidationIT {
         || sfn.getName().equals( "FirstName" )
         || sfn.getName().equals( "NickName" )
         || sfn.getName().equals( "Template" ) ) {
-        assertTrue( Const.isEmpty( sfn.getOperations() ) );
+        assertNull( sfn.getOperations() );
       } else {
-        assertFalse( Const.isEmpty( sfn.getOperations() ) );
+        assertNotNull( sfn.getOperations() );
       }
     }
   }
@@ -1273,7 +1272,7 @@ public class MetaverseValidationIT {
     assertEquals( "Filter rows", node.getStepType() );
 
     FilterRowsMeta meta = (FilterRowsMeta) getStepMeta( node );
-    Operations ops = MetaverseUtil.convertOperationsStringToMap( node.getOperations() );
+    Operations ops = MetaverseUtil.convertOperationsToMap( node.getOperations() );
     assertEquals( 1, ops.get( ChangeType.DATA_FLOW ).size() );
     assertEquals( meta.getCondition().toString(), ops.get( ChangeType.DATA_FLOW ).get( 0 ).getDescription() );
 
@@ -1522,7 +1521,7 @@ public class MetaverseValidationIT {
           assertEquals( usesNode.getType(), derives.getType() );
         }
 
-        Operations ops = MetaverseUtil.convertOperationsStringToMap( outField.getOperations() );
+        Operations ops = MetaverseUtil.convertOperationsToMap( outField.getOperations() );
         List<IOperation> dataOps = ops.get( ChangeType.DATA );
         assertNotNull( dataOps );
         assertEquals( 3, dataOps.size() );
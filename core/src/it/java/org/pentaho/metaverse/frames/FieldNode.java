@@ -35,7 +35,7 @@ public interface FieldNode extends Concept {
   public String getKettleType();
 
   @Property( DictionaryConst.PROPERTY_OPERATIONS )
-  public String getOperations();
+  public Object getOperations();
 
   @Adjacency( label = "uses", direction = Direction.IN )
   public Iterable<TransformationStepNode> getStepsThatUseMe();
@@ -28,6 +28,6 @@ import org.pentaho.dictionary.DictionaryConst;
 public interface FilterRowsStepNode extends TransformationStepNode {
 
   @Property( DictionaryConst.PROPERTY_OPERATIONS )
-  public String getOperations();
+  public Object getOperations();
 
 }
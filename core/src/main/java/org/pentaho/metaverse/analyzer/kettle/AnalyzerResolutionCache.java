@@ -0,0 +1,153 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.analyzer.kettle;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Caches the analyzers resolved for the classes of the components (step metas, job entries) they analyze. A class
+ * that has no analyzers registered for it gets the analyzers of its nearest superclass that has some or, failing that,
+ * of the nearest interface it implements that has some.
+ * <p>
+ * Lookups of classes that have already been resolved do not lock or allocate: the resolved analyzers are kept in a
+ * map that is copied when a class is added to it (copy-on-write). Classes are resolved while holding the lock the
+ * cache was created with, which the provider also holds while it changes the registered analyzers and invalidates the
+ * cache. The registered analyzers are only read from the provider while that lock is held, so that a class is never
+ * resolved against a half-updated (or replaced) registration.
+ * </p>
+ *
+ * @param <A> the type of the analyzers
+ */
+public class AnalyzerResolutionCache<A> {
+
+  /**
+   * Gives the analyzers registered for each class
+   *
+   * @param <A> the type of the analyzers
+   */
+  public interface AnalyzerTypeMapSource<A> {
+
+    /**
+     * Called while the lock of the cache is held
+     *
+     * @return the analyzers registered for each class
+     */
+    Map<? extends Class<?>, ? extends Collection<A>> getAnalyzerTypeMap();
+  }
+
+  private final Object lock;
+
+  private final AnalyzerTypeMapSource<A> analyzerTypeMapSource;
+
+  private volatile Map<Class<?>, List<A>> resolvedAnalyzers = Collections.emptyMap();
+
+  /**
+   * @param lock                  the lock held while the registered analyzers change
+   * @param analyzerTypeMapSource gives the analyzers registered for each class
+   */
+  public AnalyzerResolutionCache( Object lock, AnalyzerTypeMapSource<A> analyzerTypeMapSource ) {
+    this.lock = lock;
+    this.analyzerTypeMapSource = analyzerTypeMapSource;
+  }
+
+  /**
+   * Returns the analyzers of a class, resolving them if needed
+   *
+   * @param type the class of the component to analyze
+   * @return the unmodifiable list of analyzers, empty if there are none
+   */
+  public List<A> getAnalyzers( Class<?> type ) {
+    List<A> analyzers = resolvedAnalyzers.get( type );
+    if ( analyzers == null ) {
+      synchronized ( lock ) {
+        analyzers = resolvedAnalyzers.get( type );
+        if ( analyzers == null ) {
+          analyzers = Collections.unmodifiableList( new ArrayList<A>(
+            resolve( type, analyzerTypeMapSource.getAnalyzerTypeMap() ) ) );
+          Map<Class<?>, List<A>> copy = new HashMap<Class<?>, List<A>>( resolvedAnalyzers );
+          copy.put( type, analyzers );
+          resolvedAnalyzers = copy;
+        }
+      }
+    }
+    return analyzers;
+  }
+
+  /**
+   * Drops every resolved class
+   */
+  public void invalidate() {
+    synchronized ( lock ) {
+      resolvedAnalyzers = Collections.emptyMap();
+    }
+  }
+
+  /**
+   * @return the number of classes resolved since the cache was last invalidated
+   */
+  public int size() {
+    return resolvedAnalyzers.size();
+  }
+
+  /**
+   * Finds the analyzers registered for the class, its nearest superclass or its nearest interface
+   */
+  protected static <A> Collection<A> resolve( Class<?> type,
+    Map<? extends Class<?>, ? extends Collection<A>> analyzerTypeMap ) {
+    if ( type == null || analyzerTypeMap == null ) {
+      return Collections.emptyList();
+    }
+    for ( Class<?> clazz = type; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass() ) {
+      Collection<A> analyzers = analyzerTypeMap.get( clazz );
+      if ( analyzers != null && !analyzers.isEmpty() ) {
+        return analyzers;
+      }
+    }
+    // breadth first, so the interfaces closest to the class win
+    Deque<Class<?>> interfaces = new ArrayDeque<Class<?>>();
+    Set<Class<?>> visited = new HashSet<Class<?>>();
+    for ( Class<?> clazz = type; clazz != null; clazz = clazz.getSuperclass() ) {
+      Collections.addAll( interfaces, clazz.getInterfaces() );
+    }
+    while ( !interfaces.isEmpty() ) {
+      Class<?> anInterface = interfaces.poll();
+      if ( visited.add( anInterface ) ) {
+        Collection<A> analyzers = analyzerTypeMap.get( anInterface );
+        if ( analyzers != null && !analyzers.isEmpty() ) {
+          return analyzers;
+        }
+        Collections.addAll( interfaces, anInterface.getInterfaces() );
+      }
+    }
+    return Collections.emptyList();
+  }
+}
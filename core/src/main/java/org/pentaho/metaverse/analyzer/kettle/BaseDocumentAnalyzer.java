@@ -22,21 +22,77 @@
 
 package org.pentaho.metaverse.analyzer.kettle;
 
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.plugins.DatabasePluginType;
+import org.pentaho.di.core.plugins.JobEntryPluginType;
+import org.pentaho.di.core.plugins.StepPluginType;
 import org.pentaho.dictionary.DictionaryConst;
 import org.pentaho.metaverse.api.IComponentDescriptor;
 import org.pentaho.metaverse.api.IDocument;
 import org.pentaho.metaverse.api.IDocumentAnalyzer;
+import org.pentaho.metaverse.api.IMetaverseLink;
 import org.pentaho.metaverse.api.IMetaverseNode;
+import org.pentaho.metaverse.api.INamespace;
 import org.pentaho.metaverse.api.MetaverseAnalyzerException;
+import org.pentaho.metaverse.api.MetaverseComponentDescriptor;
+import org.pentaho.metaverse.api.Namespace;
+import org.pentaho.metaverse.api.PropertiesHolder;
 import org.pentaho.metaverse.api.analyzer.kettle.BaseKettleMetaverseComponent;
+import org.pentaho.metaverse.api.analyzer.kettle.PluginNameCache;
+import org.pentaho.metaverse.impl.MetaverseBatchBuilder;
 import org.pentaho.metaverse.messages.Messages;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Created by gmoran on 8/11/14.
  */
 public abstract class BaseDocumentAnalyzer extends BaseKettleMetaverseComponent
   implements IDocumentAnalyzer<IMetaverseNode> {
 
+  /**
+   * Documents given as XML are always hydrated into a TransMeta or JobMeta and analyzed in full (the default)
+   */
+  public static final String SCAN_MODE_FULL = "full";
+
+  /**
+   * Documents given as XML are analyzed in full, unless they cannot be hydrated because they use plugins this server
+   * does not have. Those are scanned instead.
+   */
+  public static final String SCAN_MODE_FALLBACK = "fallback";
+
+  /**
+   * Documents given as XML are always scanned, see {@link KettleDocumentScanner}
+   */
+  public static final String SCAN_MODE_LIGHTWEIGHT = "lightweight";
+
+  private String scanMode = SCAN_MODE_FULL;
+
+  /**
+   * @return how documents given as XML are analyzed, one of {@link #SCAN_MODE_FULL}, {@link #SCAN_MODE_FALLBACK} or
+   * {@link #SCAN_MODE_LIGHTWEIGHT}
+   */
+  public String getScanMode() {
+    return scanMode;
+  }
+
+  /**
+   * Sets how documents given as XML are analyzed. Unknown modes are treated as {@link #SCAN_MODE_FULL}.
+   *
+   * @param scanMode one of {@link #SCAN_MODE_FULL}, {@link #SCAN_MODE_FALLBACK} or {@link #SCAN_MODE_LIGHTWEIGHT}
+   */
+  public void setScanMode( String scanMode ) {
+    if ( SCAN_MODE_FALLBACK.equalsIgnoreCase( Const.trim( scanMode ) ) ) {
+      this.scanMode = SCAN_MODE_FALLBACK;
+    } else if ( SCAN_MODE_LIGHTWEIGHT.equalsIgnoreCase( Const.trim( scanMode ) ) ) {
+      this.scanMode = SCAN_MODE_LIGHTWEIGHT;
+    } else {
+      this.scanMode = SCAN_MODE_FULL;
+    }
+  }
+
   /**
    * This method handles null checks for state validation
    *
@@ -87,4 +143,148 @@ public abstract class BaseDocumentAnalyzer extends BaseKettleMetaverseComponent
 
   }
 
+  /**
+   * Scans the XML of a document and adds what was found to the metaverse: the document, its steps (or job entries),
+   * the database connections they use and the hops between them. Unlike a full analysis, no step or job entry analyzer
+   * is involved, so the fields the steps read and write and the resources they use are not added.
+   *
+   * @param descriptor the descriptor of the locator of the document
+   * @param document   the document, its content is the XML of a transformation or job
+   * @param content    the XML of the document
+   * @return the node of the document
+   * @throws MetaverseAnalyzerException if the XML cannot be scanned
+   */
+  protected IMetaverseNode analyzeScannedDocument( IComponentDescriptor descriptor, IDocument document,
+    String content ) throws MetaverseAnalyzerException {
+
+    ScannedDocument scanned = new KettleDocumentScanner().scan( content );
+    boolean trans = DictionaryConst.NODE_TYPE_TRANS.equals( scanned.getType() );
+    String childType = trans ? DictionaryConst.NODE_TYPE_TRANS_STEP : DictionaryConst.NODE_TYPE_JOB_ENTRY;
+
+    IComponentDescriptor documentDescriptor = new MetaverseComponentDescriptor( document.getStringID(),
+      scanned.getType(), new Namespace( descriptor.getLogicalId() ), descriptor.getContext() );
+
+    IMetaverseNode node = metaverseObjectFactory.createNodeObject(
+      document.getNamespace(),
+      scanned.getName(),
+      scanned.getType() );
+    node.setLogicalIdGenerator( DictionaryConst.LOGICAL_ID_GENERATOR_DOCUMENT );
+    setScannedProperty( node, DictionaryConst.PROPERTY_DESCRIPTION, scanned.getDescription() );
+    setScannedProperty( node, "extendedDescription", scanned.getExtendedDescription() );
+    if ( scanned.getCreatedDate() != null ) {
+      node.setProperty( DictionaryConst.PROPERTY_CREATED, Long.toString( scanned.getCreatedDate().getTime() ) );
+    }
+    setScannedProperty( node, DictionaryConst.PROPERTY_CREATED_BY, scanned.getCreatedUser() );
+    if ( scanned.getModifiedDate() != null ) {
+      node.setProperty( DictionaryConst.PROPERTY_LAST_MODIFIED, Long.toString( scanned.getModifiedDate().getTime() ) );
+    }
+    setScannedProperty( node, DictionaryConst.PROPERTY_LAST_MODIFIED_BY, scanned.getModifiedUser() );
+    setScannedProperty( node, DictionaryConst.PROPERTY_ARTIFACT_VERSION, scanned.getVersion() );
+    String status = Messages.getString( "INFO.JobOrTrans.Status_" + Integer.toString( scanned.getStatus() ) );
+    if ( status != null && !status.startsWith( "!" ) ) {
+      node.setProperty( DictionaryConst.PROPERTY_STATUS, status );
+    }
+    node.setProperty( DictionaryConst.PROPERTY_PATH, document.getProperty( DictionaryConst.PROPERTY_PATH ) );
+    for ( ScannedDocument.Parameter parameter : scanned.getParameters().values() ) {
+      PropertiesHolder paramProperties = new PropertiesHolder();
+      paramProperties.setProperty( "defaultValue", Const.NVL( parameter.getDefaultValue(), "" ) );
+      paramProperties.setProperty( "value", "" );
+      paramProperties.setProperty( "description", Const.NVL( parameter.getDescription(), "" ) );
+      node.setProperty( "parameter_" + parameter.getName(), paramProperties.toString() );
+    }
+
+    // everything found in the document is buffered and applied to the graph as one batch
+    MetaverseBatchBuilder batchBuilder = new MetaverseBatchBuilder( metaverseBuilder );
+
+    // the copies of a job entry share its node
+    Map<String, IMetaverseNode> childNodes = new HashMap<String, IMetaverseNode>();
+    for ( ScannedDocument.Step step : scanned.getSteps() ) {
+      if ( childNodes.containsKey( step.getName() ) ) {
+        continue;
+      }
+      IComponentDescriptor childDescriptor = new MetaverseComponentDescriptor( step.getName(), childType, node,
+        documentDescriptor.getContext() );
+      IMetaverseNode childNode = createNodeFromDescriptor( childDescriptor );
+      childNode.setProperty( DictionaryConst.PROPERTY_PLUGIN_ID, step.getPluginId() );
+      if ( trans ) {
+        String stepType = PluginNameCache.getPluginName( StepPluginType.class, step.getPluginId() );
+        childNode.setProperty( DictionaryConst.PROPERTY_STEP_TYPE, Const.NVL( stepType, step.getPluginId() ) );
+        childNode.setProperty( "copies", step.getCopies() );
+        childNode.setProperty( DictionaryConst.PROPERTY_ANALYZER, KettleDocumentScanner.class.getSimpleName() );
+      } else {
+        String entryType = PluginNameCache.getPluginName( JobEntryPluginType.class, step.getPluginId() );
+        childNode.setProperty( DictionaryConst.PROPERTY_JOB_ENTRY_TYPE, Const.NVL( entryType, step.getPluginId() ) );
+        childNode.setProperty( "copies", scanned.getSteps().size() );
+      }
+      batchBuilder.addNode( childNode );
+      batchBuilder.addLink( node, DictionaryConst.LINK_CONTAINS, childNode );
+      childNodes.put( step.getName(), childNode );
+
+      for ( String connectionName : step.getConnectionNames() ) {
+        ScannedDocument.Connection connection = scanned.getConnection( connectionName );
+        if ( connection != null ) {
+          IMetaverseNode connectionNode = createConnectionNode( childDescriptor, connection );
+          batchBuilder.addNode( connectionNode );
+          batchBuilder.addLink( connectionNode, DictionaryConst.LINK_DEPENDENCYOF, childNode );
+        }
+      }
+    }
+
+    // Model the hops between steps
+    INamespace childNs = new Namespace( node.getLogicalId() );
+    for ( ScannedDocument.Hop hop : scanned.getHops() ) {
+      IMetaverseNode fromNode = metaverseObjectFactory.createNodeObject( childNs, hop.getFrom(), childType );
+      IMetaverseNode toNode = metaverseObjectFactory.createNodeObject( childNs, hop.getTo(), childType );
+      if ( trans ) {
+        IMetaverseLink link = metaverseObjectFactory.createLinkObject();
+        link.setFromNode( fromNode );
+        link.setLabel( DictionaryConst.LINK_HOPSTO );
+        link.setToNode( toNode );
+        link.setProperty( DictionaryConst.PROPERTY_ENABLED, hop.isEnabled() );
+        // info streams are declared by the step plugins, the scanned hops are either target or error hops
+        link.setProperty( DictionaryConst.PROPERTY_TYPE, hop.isError() ? "error" : "target" );
+        batchBuilder.addLink( link );
+      } else {
+        batchBuilder.addLink( fromNode, DictionaryConst.LINK_HOPSTO, toNode );
+      }
+    }
+
+    batchBuilder.addNode( node );
+    batchBuilder.commit();
+    addParentLink( documentDescriptor, node );
+    return node;
+  }
+
+  /**
+   * Creates the node of a database connection the way the database connection analyzers do
+   */
+  private IMetaverseNode createConnectionNode( IComponentDescriptor parentDescriptor,
+    ScannedDocument.Connection connection ) {
+
+    IComponentDescriptor connectionDescriptor = new MetaverseComponentDescriptor( connection.getName(),
+      DictionaryConst.NODE_TYPE_DATASOURCE, parentDescriptor.getNamespace(), parentDescriptor.getContext() );
+    int accessType = DatabaseMeta.getAccessType( connection.getAccess() );
+    String accessTypeDesc = DatabaseMeta.getAccessTypeDesc( accessType );
+    IMetaverseNode node = createNodeFromDescriptor( connectionDescriptor, "JNDI".equals( accessTypeDesc )
+      ? DictionaryConst.LOGICAL_ID_GENERATOR_DB_JNDI : DictionaryConst.LOGICAL_ID_GENERATOR_DB_JDBC );
+    node.setType( DictionaryConst.NODE_TYPE_DATASOURCE );
+    node.setProperty( "accessType", accessType );
+    node.setProperty( "accessTypeDesc", accessTypeDesc );
+    node.setProperty( "databaseName", connection.getDatabaseName() );
+    node.setProperty( "name", connection.getName() );
+    node.setProperty( "databaseType", Const.NVL(
+      PluginNameCache.getPluginName( DatabasePluginType.class, connection.getDatabaseType() ), "Unknown" ) );
+    node.setProperty( DictionaryConst.PROPERTY_PORT, connection.getPort() );
+    node.setProperty( DictionaryConst.PROPERTY_HOST_NAME, connection.getHostName() );
+    node.setProperty( DictionaryConst.PROPERTY_USER_NAME, connection.getUserName() );
+    node.setProperty( "shared", false );
+    return node;
+  }
+
+  private static void setScannedProperty( IMetaverseNode node, String key, String value ) {
+    if ( value != null ) {
+      node.setProperty( key, value );
+    }
+  }
+
 }
@@ -0,0 +1,199 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.analyzer.kettle;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.metaverse.api.IAnalyzer;
+import org.pentaho.metaverse.api.IComponentDescriptor;
+import org.pentaho.metaverse.api.IMetaverseNode;
+import org.pentaho.metaverse.impl.MetaverseBatchBuilder;
+import org.pentaho.metaverse.messages.Messages;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * The analysis of one component of a document (a step of a transformation, an entry of a job). The analyzers of the
+ * component are resolved up front: if all of them can provide an instance of their own, the analysis can run on the
+ * {@link ComponentAnalysisPool} concurrently with the analysis of the other components. Otherwise it runs in the
+ * calling thread, holding the lock of each shared analyzer while it uses it.
+ * <p/>
+ * The state of an analysis lives in the fields of the analyzer, there is no per-analysis context, so only the
+ * analyzers that opt in to cloning (those of this bundle) run in parallel. A shared analyzer is locked across all of
+ * the documents being analyzed: the components it analyzes are analyzed one at a time, whichever document they belong
+ * to.
+ *
+ * @param <A> the type of the analyzers of the component
+ */
+abstract class ComponentAnalysis<A extends IAnalyzer> implements Runnable {
+
+  protected final String name;
+  protected final IComponentDescriptor descriptor;
+  protected final MetaverseBatchBuilder batch;
+  private final Logger log;
+  private Set<A> analyzers;
+  private boolean concurrent;
+  private boolean submitted;
+  protected boolean failed;
+  protected IMetaverseNode node;
+
+  ComponentAnalysis( String name, IComponentDescriptor descriptor, MetaverseBatchBuilder batch, Logger log ) {
+    this.name = name;
+    this.descriptor = descriptor;
+    this.batch = batch;
+    this.log = log;
+  }
+
+  /**
+   * Analyzes the components: those that can be analyzed concurrently are submitted to the pool, the others are
+   * analyzed one after the other in the calling thread. Returns once all of them have been analyzed.
+   *
+   * @param analyses the analyses of the components of a document
+   */
+  static void runAll( List<? extends ComponentAnalysis<?>> analyses ) {
+    List<ComponentAnalysis<?>> concurrentAnalyses = new ArrayList<ComponentAnalysis<?>>();
+    for ( ComponentAnalysis<?> analysis : analyses ) {
+      if ( analysis.prepare() ) {
+        concurrentAnalyses.add( analysis );
+      }
+    }
+
+    List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>( concurrentAnalyses.size() );
+    if ( concurrentAnalyses.size() > 1 ) {
+      for ( ComponentAnalysis<?> analysis : concurrentAnalyses ) {
+        ForkJoinTask<?> task = ComponentAnalysisPool.getInstance().submit( analysis );
+        if ( task != null ) {
+          tasks.add( task );
+          analysis.submitted = true;
+        }
+      }
+    }
+    for ( ComponentAnalysis<?> analysis : analyses ) {
+      if ( !analysis.submitted ) {
+        analysis.run();
+      }
+    }
+    for ( ForkJoinTask<?> task : tasks ) {
+      task.join();
+    }
+  }
+
+  /**
+   * @return the analyzers of the component
+   * @throws Exception if they could not be resolved
+   */
+  protected abstract Set<A> getAnalyzers() throws Exception;
+
+  /**
+   * @param analyzer an analyzer of the component
+   * @return an instance of the analyzer of its own, or null if the analyzer is shared
+   */
+  protected abstract A cloneAnalyzer( A analyzer );
+
+  /**
+   * @return the analyzer used when the component has no analyzer
+   */
+  protected abstract A getDefaultAnalyzer();
+
+  /**
+   * @return the object the analyzers analyze
+   */
+  protected abstract Object getComponent();
+
+  /**
+   * Resolves the analyzers of the component
+   *
+   * @return true if the component has analyzer instances of its own and can be analyzed concurrently
+   */
+  boolean prepare() {
+    try {
+      analyzers = getAnalyzers();
+    } catch ( Throwable t ) {
+      logError( t );
+      failed = true;
+      return false;
+    }
+    concurrent = true;
+    if ( analyzers == null || analyzers.isEmpty() ) {
+      // a new default analyzer is created for the component
+      return true;
+    }
+    Set<A> clones = new LinkedHashSet<A>();
+    for ( A analyzer : analyzers ) {
+      A clone = cloneAnalyzer( analyzer );
+      if ( clone == null ) {
+        // the analyzer is shared, it can only analyze one component at a time
+        concurrent = false;
+        return false;
+      }
+      clones.add( clone );
+    }
+    analyzers = clones;
+    return true;
+  }
+
+  @Override
+  public void run() {
+    if ( failed ) {
+      return;
+    }
+    try {
+      Object component = getComponent();
+      if ( analyzers != null && !analyzers.isEmpty() ) {
+        for ( A analyzer : analyzers ) {
+          if ( concurrent ) {
+            node = analyze( analyzer, component );
+          } else {
+            // the analyzer is shared with the analyses of other documents, it analyzes one component at a time
+            synchronized ( analyzer ) {
+              node = analyze( analyzer, component );
+            }
+          }
+        }
+      } else {
+        node = analyze( getDefaultAnalyzer(), component );
+      }
+    } catch ( Throwable t ) {
+      // what the component added before it failed is not recorded
+      failed = true;
+      logError( t );
+    }
+  }
+
+  @SuppressWarnings( "unchecked" )
+  private IMetaverseNode analyze( A analyzer, Object component ) throws Exception {
+    analyzer.setMetaverseBuilder( batch );
+    return (IMetaverseNode) analyzer.analyze( descriptor, component );
+  }
+
+  private void logError( Throwable t ) {
+    //Don't throw an exception, just log and carry on
+    log.warn( Messages.getString( "ERROR.ErrorDuringAnalysis", name,
+      Const.NVL( t.getLocalizedMessage(), "Unspecified" ) ) );
+    log.debug( Messages.getString( "ERROR.ErrorDuringAnalysisStackTrace" ), t );
+  }
+}
@@ -0,0 +1,95 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.analyzer.kettle;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The pool the components of documents (the steps of transformations, the entries of jobs) are analyzed on. Its
+ * threads are started when it is first needed and stopped when the bundle is stopped (the destroy method of its
+ * blueprint bean); the components submitted after that are analyzed by the thread that analyzes the document.
+ */
+public final class ComponentAnalysisPool {
+
+  private static final ComponentAnalysisPool INSTANCE = new ComponentAnalysisPool();
+
+  private final AtomicInteger threadNumber = new AtomicInteger();
+  private ForkJoinPool pool;
+  private boolean shutdown;
+
+  private ComponentAnalysisPool() {
+  }
+
+  public static ComponentAnalysisPool getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Submits the analysis of a component
+   *
+   * @param analysis the analysis
+   * @return the task of the analysis, or null if the pool is shut down and the caller has to run it
+   */
+  ForkJoinTask<?> submit( Runnable analysis ) {
+    ForkJoinPool current = getPool();
+    if ( current == null ) {
+      return null;
+    }
+    try {
+      return current.submit( analysis );
+    } catch ( RejectedExecutionException e ) {
+      return null;
+    }
+  }
+
+  /**
+   * Stops the threads of the pool; the analyses under way are finished, later ones run in the calling thread
+   */
+  public synchronized void shutdown() {
+    shutdown = true;
+    if ( pool != null ) {
+      pool.shutdown();
+      pool = null;
+    }
+  }
+
+  private synchronized ForkJoinPool getPool() {
+    if ( pool == null && !shutdown ) {
+      pool = new ForkJoinPool( Runtime.getRuntime().availableProcessors(),
+        new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+          @Override
+          public ForkJoinWorkerThread newThread( ForkJoinPool forkJoinPool ) {
+            ForkJoinWorkerThread thread =
+              ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread( forkJoinPool );
+            thread.setName( "metaverse-component-analysis-" + threadNumber.incrementAndGet() );
+            return thread;
+          }
+        }, null, false );
+    }
+    return pool;
+  }
+}
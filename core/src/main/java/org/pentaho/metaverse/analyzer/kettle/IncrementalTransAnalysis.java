@@ -0,0 +1,471 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.metaverse.analyzer.kettle;
+
+import com.tinkerpop.blueprints.Graph;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.trans.TransHopMeta;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.metaverse.api.IMetaverseBuilder;
+import org.pentaho.metaverse.api.IMetaverseLink;
+import org.pentaho.metaverse.api.IMetaverseNode;
+import org.pentaho.metaverse.api.IMetaverseObjectFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps what the analysis of each step of a transformation added to the graph, so that the next analysis of the
+ * transformation only analyzes the steps whose metadata changed (and the steps downstream of them) and replays what
+ * was recorded for the others. It is meant for transformations that are analyzed over and over while they are being
+ * edited; the transformations of other analyses have no incremental analysis and are analyzed in full.
+ * <p>
+ * A step is analyzed again when its XML (ignoring where it is drawn), the connections it uses, the values of the
+ * variables it or its connections refer to or the hops into or out of it have changed, or when a step upstream of it is
+ * analyzed again. A step that refers to other documents (a sub-transformation, say) is always analyzed again, the
+ * documents can change without the transformation changing. All of the steps are analyzed again when the
+ * transformation node changes (a new name, say).
+ * </p>
+ */
+public class IncrementalTransAnalysis {
+
+  private static final Map<TransMeta, IncrementalTransAnalysis> ANALYSES =
+    Collections.synchronizedMap( new WeakHashMap<TransMeta, IncrementalTransAnalysis>() );
+
+  private static final Pattern GUI = Pattern.compile( "<GUI>.*?</GUI>", Pattern.DOTALL );
+
+  private static final Pattern VARIABLE = Pattern.compile( "\\$\\{([^}]+)\\}|%%([^%]+)%%" );
+
+  private String transNodeId;
+  private Map<String, StepRecord> records = new HashMap<String, StepRecord>();
+  private int analyzedSteps;
+  private int replayedSteps;
+
+  /**
+   * Enables incremental analysis for the transformation
+   *
+   * @param transMeta the transformation
+   * @return the incremental analysis of the transformation
+   */
+  public static IncrementalTransAnalysis enable( TransMeta transMeta ) {
+    synchronized ( ANALYSES ) {
+      IncrementalTransAnalysis analysis = ANALYSES.get( transMeta );
+      if ( analysis == null ) {
+        analysis = new IncrementalTransAnalysis();
+        ANALYSES.put( transMeta, analysis );
+      }
+      return analysis;
+    }
+  }
+
+  /**
+   * Returns the incremental analysis of the transformation
+   *
+   * @param transMeta the transformation
+   * @return the incremental analysis, or null if it is not enabled for the transformation
+   */
+  public static IncrementalTransAnalysis get( TransMeta transMeta ) {
+    return transMeta == null ? null : ANALYSES.get( transMeta );
+  }
+
+  /**
+   * Disables incremental analysis for the transformation, dropping what was recorded for it
+   *
+   * @param transMeta the transformation
+   */
+  public static void disable( TransMeta transMeta ) {
+    ANALYSES.remove( transMeta );
+  }
+
+  /**
+   * Works out which steps of the transformation have to be analyzed and which ones can be replayed
+   *
+   * @param transMeta   the transformation
+   * @param transNodeId the logical id of the node of the transformation
+   * @return the plan of the analysis
+   */
+  public synchronized Plan plan( TransMeta transMeta, String transNodeId ) {
+    Plan plan = new Plan( transNodeId );
+    List<StepMeta> steps = new ArrayList<StepMeta>();
+    for ( int i = 0; i < transMeta.nrSteps(); i++ ) {
+      StepMeta stepMeta = transMeta.getStep( i );
+      if ( stepMeta != null ) {
+        steps.add( stepMeta );
+      }
+    }
+    Map<StepMeta, List<StepMeta>> nextSteps = new IdentityHashMap<StepMeta, List<StepMeta>>();
+    Map<StepMeta, StringBuilder> hops = new IdentityHashMap<StepMeta, StringBuilder>();
+    for ( int i = 0; i < transMeta.nrTransHops(); i++ ) {
+      TransHopMeta hop = transMeta.getTransHop( i );
+      if ( hop != null && hop.getFromStep() != null && hop.getToStep() != null ) {
+        String description = hop.getFromStep().getName() + "->" + hop.getToStep().getName() + ":" + hop.isEnabled();
+        append( hops, hop.getFromStep(), description );
+        append( hops, hop.getToStep(), description );
+        if ( hop.isEnabled() ) {
+          List<StepMeta> next = nextSteps.get( hop.getFromStep() );
+          if ( next == null ) {
+            next = new ArrayList<StepMeta>();
+            nextSteps.put( hop.getFromStep(), next );
+          }
+          next.add( hop.getToStep() );
+        }
+      }
+    }
+
+    boolean sameTrans = transNodeId != null && transNodeId.equals( this.transNodeId );
+    Deque<StepMeta> changed = new ArrayDeque<StepMeta>();
+    for ( StepMeta stepMeta : steps ) {
+      StringBuilder stepHops = hops.get( stepMeta );
+      String fingerprint = fingerprint( transMeta, stepMeta, stepHops == null ? "" : stepHops.toString() );
+      plan.fingerprints.put( stepMeta, fingerprint );
+      StepRecord record = sameTrans ? records.get( stepMeta.getName() ) : null;
+      if ( record != null && fingerprint != null && fingerprint.equals( record.fingerprint ) ) {
+        plan.replays.put( stepMeta, record );
+      } else {
+        changed.add( stepMeta );
+      }
+    }
+    // the steps downstream of a changed step are analyzed again too
+    while ( !changed.isEmpty() ) {
+      List<StepMeta> next = nextSteps.get( changed.poll() );
+      if ( next != null ) {
+        for ( StepMeta stepMeta : next ) {
+          if ( plan.replays.remove( stepMeta ) != null ) {
+            changed.add( stepMeta );
+          }
+        }
+      }
+    }
+    replayedSteps = plan.replays.size();
+    analyzedSteps = steps.size() - replayedSteps;
+    return plan;
+  }
+
+  /**
+   * Keeps the records of an analysis for the next one
+   *
+   * @param plan     the plan of the analysis
+   * @param analyzed the records of the steps that were analyzed, by step; a step that could not be recorded has none
+   */
+  public synchronized void update( Plan plan, Map<StepMeta, StepRecord> analyzed ) {
+    Map<String, StepRecord> updated = new HashMap<String, StepRecord>();
+    for ( Map.Entry<StepMeta, String> fingerprint : plan.fingerprints.entrySet() ) {
+      StepMeta stepMeta = fingerprint.getKey();
+      StepRecord record = plan.replays.get( stepMeta );
+      if ( record == null ) {
+        record = analyzed.get( stepMeta );
+      }
+      if ( record != null && fingerprint.getValue() != null ) {
+        updated.put( stepMeta.getName(), record );
+      }
+    }
+    records = updated;
+    transNodeId = plan.transNodeId;
+  }
+
+  /**
+   * @return the number of steps the last plan analyzed
+   */
+  public synchronized int getAnalyzedSteps() {
+    return analyzedSteps;
+  }
+
+  /**
+   * @return the number of steps the last plan replayed
+   */
+  public synchronized int getReplayedSteps() {
+    return replayedSteps;
+  }
+
+  /**
+   * Returns what the analysis of a step depends on: the XML of the step, without where it is drawn, the XML of the
+   * connections it uses, the values of the variables they refer to and its hops
+   *
+   * @param transMeta the transformation the variables are resolved with
+   * @param stepMeta  the step
+   * @param hops      the hops into and out of the step
+   * @return the fingerprint, or null if it cannot be determined or the step refers to other documents
+   */
+  protected String fingerprint( TransMeta transMeta, StepMeta stepMeta, String hops ) {
+    try {
+      String xml = stepMeta.getXML();
+      if ( xml == null ) {
+        return null;
+      }
+      StepMetaInterface meta = stepMeta.getStepMetaInterface();
+      if ( meta != null && refersToDocuments( meta ) ) {
+        return null;
+      }
+      StringBuilder fingerprint = new StringBuilder( GUI.matcher( xml ).replaceAll( "" ) );
+      StringBuilder used = new StringBuilder( xml );
+      DatabaseMeta[] connections = meta == null ? null : meta.getUsedDatabaseConnections();
+      if ( connections != null ) {
+        for ( DatabaseMeta connection : connections ) {
+          if ( connection != null ) {
+            String connectionXml = connection.getXML();
+            fingerprint.append( '\n' ).append( connectionXml );
+            used.append( connectionXml );
+          }
+        }
+      }
+      Set<String> variables = new TreeSet<String>();
+      Matcher matcher = VARIABLE.matcher( used );
+      while ( matcher.find() ) {
+        variables.add( matcher.group( 1 ) != null ? matcher.group( 1 ) : matcher.group( 2 ) );
+      }
+      for ( String variable : variables ) {
+        fingerprint.append( '\n' ).append( variable ).append( '=' ).append( transMeta.getVariable( variable ) );
+      }
+      return fingerprint.append( '\n' ).append( hops ).toString();
+    } catch ( Exception e ) {
+      return null;
+    }
+  }
+
+  private static boolean refersToDocuments( StepMetaInterface meta ) {
+    String[] descriptions = meta.getReferencedObjectDescriptions();
+    if ( descriptions == null ) {
+      return false;
+    }
+    boolean[] enabled = meta.isReferencedObjectEnabled();
+    for ( int i = 0; i < descriptions.length; i++ ) {
+      if ( enabled == null || i >= enabled.length || enabled[ i ] ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static void append( Map<StepMeta, StringBuilder> hops, StepMeta stepMeta, String description ) {
+    StringBuilder stepHops = hops.get( stepMeta );
+    if ( stepHops == null ) {
+      stepHops = new StringBuilder();
+      hops.put( stepMeta, stepHops );
+    }
+    stepHops.append( description ).append( '\n' );
+  }
+
+  /**
+   * The steps an analysis replays and the fingerprints of all of its steps
+   */
+  public static class Plan {
+    private final String transNodeId;
+    private final Map<StepMeta, String> fingerprints = new IdentityHashMap<StepMeta, String>();
+    private final Map<StepMeta, StepRecord> replays = new IdentityHashMap<StepMeta, StepRecord>();
+
+    Plan( String transNodeId ) {
+      this.transNodeId = transNodeId;
+    }
+
+    /**
+     * @param stepMeta the step
+     * @return the record to replay for the step, or null if the step has to be analyzed
+     */
+    public StepRecord getReplay( StepMeta stepMeta ) {
+      return replays.get( stepMeta );
+    }
+
+    /**
+     * @param stepMeta the step
+     * @return the fingerprint of the step when the plan was made
+     */
+    public String getFingerprint( StepMeta stepMeta ) {
+      return fingerprints.get( stepMeta );
+    }
+  }
+
+  /**
+   * What the analysis of a step added to the graph
+   */
+  public static class StepRecord {
+    private final String fingerprint;
+    private final List<IMetaverseNode> nodes;
+    private final List<IMetaverseLink> links;
+    private final IMetaverseNode stepNode;
+
+    StepRecord( String fingerprint, List<IMetaverseNode> nodes, List<IMetaverseLink> links,
+                IMetaverseNode stepNode ) {
+      this.fingerprint = fingerprint;
+      this.nodes = nodes;
+      this.links = links;
+      this.stepNode = stepNode;
+    }
+
+    /**
+     * Adds what was recorded to a builder
+     *
+     * @param builder the builder
+     * @return the node of the step
+     */
+    public IMetaverseNode replay( IMetaverseBuilder builder ) {
+      builder.addAll( nodes, links );
+      return stepNode;
+    }
+  }
+
+  /**
+   * A builder that records the nodes and links added to it on their way to its delegate. A step analysis that deletes
+   * or updates elements cannot be replayed, so those operations stop the recording.
+   */
+  public static class StepRecorder implements IMetaverseBuilder {
+    private final IMetaverseBuilder delegate;
+    private final List<IMetaverseNode> nodes = new ArrayList<IMetaverseNode>();
+    private final List<IMetaverseLink> links = new ArrayList<IMetaverseLink>();
+    private boolean replayable = true;
+
+    public StepRecorder( IMetaverseBuilder delegate ) {
+      this.delegate = delegate;
+    }
+
+    /**
+     * @param fingerprint the fingerprint of the step when it was analyzed
+     * @param stepNode    the node of the step
+     * @return the record of what was added, or null if it cannot be replayed
+     */
+    public synchronized StepRecord toRecord( String fingerprint, IMetaverseNode stepNode ) {
+      return replayable && fingerprint != null && stepNode != null
+        ? new StepRecord( fingerprint, new ArrayList<IMetaverseNode>( nodes ), new ArrayList<IMetaverseLink>( links ),
+          stepNode ) : null;
+    }
+
+    /**
+     * @return true if everything that was added can be replayed, false if elements were deleted or updated
+     */
+    public synchronized boolean isReplayable() {
+      return replayable;
+    }
+
+    /**
+     * @return a copy of the nodes that were added, in the order they were added
+     */
+    public synchronized List<IMetaverseNode> getNodes() {
+      return new ArrayList<IMetaverseNode>( nodes );
+    }
+
+    /**
+     * @return a copy of the links that were added, in the order they were added
+     */
+    public synchronized List<IMetaverseLink> getLinks() {
+      return new ArrayList<IMetaverseLink>( links );
+    }
+
+    @Override
+    public synchronized IMetaverseBuilder addNode( IMetaverseNode node ) {
+      nodes.add( node );
+      delegate.addNode( node );
+      return this;
+    }
+
+    @Override
+    public synchronized IMetaverseBuilder addLink( IMetaverseLink link ) {
+      links.add( link );
+      delegate.addLink( link );
+      return this;
+    }
+
+    @Override
+    public IMetaverseBuilder addLink( IMetaverseNode fromNode, String label, IMetaverseNode toNode ) {
+      IMetaverseLink link = getMetaverseObjectFactory().createLinkObject();
+      link.setFromNode( fromNode );
+      link.setLabel( label );
+      link.setToNode( toNode );
+      return addLink( link );
+    }
+
+    @Override
+    public synchronized IMetaverseBuilder addAll( Collection<IMetaverseNode> nodes,
+                                                  Collection<IMetaverseLink> links ) {
+      if ( nodes != null ) {
+        this.nodes.addAll( nodes );
+      }
+      if ( links != null ) {
+        this.links.addAll( links );
+      }
+      delegate.addAll( nodes, links );
+      return this;
+    }
+
+    @Override
+    public synchronized IMetaverseBuilder deleteNode( IMetaverseNode node ) {
+      replayable = false;
+      delegate.deleteNode( node );
+      return this;
+    }
+
+    @Override
+    public synchronized IMetaverseBuilder deleteLink( IMetaverseLink link ) {
+      replayable = false;
+      delegate.deleteLink( link );
+      return this;
+    }
+
+    @Override
+    public synchronized IMetaverseBuilder updateNode( IMetaverseNode updatedNode ) {
+      replayable = false;
+      delegate.updateNode( updatedNode );
+      return this;
+    }
+
+    @Override
+    public synchronized IMetaverseBuilder updateLinkLabel( IMetaverseLink link, String newLabel ) {
+      replayable = false;
+      delegate.updateLinkLabel( link, newLabel );
+      return this;
+    }
+
+    @Override
+    public IMetaverseObjectFactory getMetaverseObjectFactory() {
+      return delegate.getMetaverseObjectFactory();
+    }
+
+    @Override
+    public void setMetaverseObjectFactory( IMetaverseObjectFactory metaverseObjectFactory ) {
+      delegate.setMetaverseObjectFactory( metaverseObjectFactory );
+    }
+
+    @Override
+    public Graph getGraph() {
+      return delegate.getGraph();
+    }
+
+    @Override
+    public void setGraph( Graph graph ) {
+      delegate.setGraph( graph );
+    }
+  }
+}
@@ -22,7 +22,6 @@
 
 package org.pentaho.metaverse.analyzer.kettle;
 
-import org.pentaho.di.core.Const;
 import org.pentaho.di.core.exception.KettleXMLException;
 import org.pentaho.di.core.parameters.UnknownParamException;
 import org.pentaho.di.job.Job;
@@ -40,16 +39,21 @@ import org.pentaho.metaverse.api.MetaverseAnalyzerException;
 import org.pentaho.metaverse.api.MetaverseComponentDescriptor;
 import org.pentaho.metaverse.api.Namespace;
 import org.pentaho.metaverse.api.PropertiesHolder;
+import org.pentaho.metaverse.api.analyzer.kettle.jobentry.IClonableJobEntryAnalyzer;
 import org.pentaho.metaverse.api.analyzer.kettle.jobentry.IJobEntryAnalyzer;
 import org.pentaho.metaverse.api.analyzer.kettle.jobentry.IJobEntryAnalyzerProvider;
+import org.pentaho.metaverse.impl.MetaverseBatchBuilder;
 import org.pentaho.metaverse.messages.Messages;
 import org.pentaho.platform.engine.core.system.PentahoSystem;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -86,12 +90,19 @@ public class JobAnalyzer extends BaseDocumentAnalyzer {
     JobMeta jobMeta = null;
     if ( repoObject instanceof String ) {
 
+      String content = (String) repoObject;
+      if ( SCAN_MODE_LIGHTWEIGHT.equals( getScanMode() ) ) {
+        return analyzeScannedDocument( descriptor, document, content );
+      }
       // hydrate the job
       try {
-        String content = (String) repoObject;
         ByteArrayInputStream xmlStream = new ByteArrayInputStream( content.getBytes() );
         jobMeta = new JobMeta( xmlStream, null, null );
       } catch ( KettleXMLException e ) {
+        if ( SCAN_MODE_FALLBACK.equals( getScanMode() ) ) {
+          log.debug( Messages.getString( "DEBUG.ScanningDocument", document.getStringID() ), e );
+          return analyzeScannedDocument( descriptor, document, content );
+        }
         throw new MetaverseAnalyzerException( e );
       }
 
@@ -177,40 +188,11 @@ public class JobAnalyzer extends BaseDocumentAnalyzer {
         }
       }
     }
+    // everything found in the document is buffered and applied to the graph as one batch
+    MetaverseBatchBuilder batchBuilder = new MetaverseBatchBuilder( metaverseBuilder );
+
     // handle the entries
-    for ( int i = 0; i < jobMeta.nrJobEntries(); i++ ) {
-      JobEntryCopy entry = jobMeta.getJobEntry( i );
-      try {
-        if ( entry != null ) {
-          entry.getEntry().setParentJob( j );
-          IMetaverseNode jobEntryNode = null;
-          JobEntryInterface jobEntryInterface = entry.getEntry();
-
-          IComponentDescriptor entryDescriptor = new MetaverseComponentDescriptor( entry.getName(),
-            DictionaryConst.NODE_TYPE_JOB_ENTRY, node, descriptor.getContext() );
-
-          Set<IJobEntryAnalyzer> jobEntryAnalyzers = getJobEntryAnalyzers( jobEntryInterface );
-          if ( jobEntryAnalyzers != null && !jobEntryAnalyzers.isEmpty() ) {
-            for ( IJobEntryAnalyzer jobEntryAnalyzer : jobEntryAnalyzers ) {
-              jobEntryAnalyzer.setMetaverseBuilder( metaverseBuilder );
-              jobEntryNode = (IMetaverseNode) jobEntryAnalyzer.analyze( entryDescriptor, entry.getEntry() );
-            }
-          } else {
-            GenericJobEntryMetaAnalyzer defaultJobEntryAnalyzer = new GenericJobEntryMetaAnalyzer();
-            defaultJobEntryAnalyzer.setMetaverseBuilder( metaverseBuilder );
-            jobEntryNode = defaultJobEntryAnalyzer.analyze( entryDescriptor, jobEntryInterface );
-          }
-          if ( jobEntryNode != null ) {
-            metaverseBuilder.addLink( node, DictionaryConst.LINK_CONTAINS, jobEntryNode );
-          }
-        }
-      } catch ( Throwable mae ) {
-        //Don't throw an exception, just log and carry on
-        log.warn( Messages.getString( "ERROR.ErrorDuringAnalysis", entry.getName(),
-          Const.NVL( mae.getLocalizedMessage(), "Unspecified" ) ) );
-        log.debug( Messages.getString( "ERROR.ErrorDuringAnalysisStackTrace" ), mae );
-      }
-    }
+    analyzeJobEntries( jobMeta, j, node, descriptor, document, batchBuilder );
 
     // Model the hops between steps
     int numHops = jobMeta.nrJobHops();
@@ -232,11 +214,12 @@ public class JobAnalyzer extends BaseDocumentAnalyzer {
           toEntry.getName(),
           DictionaryConst.NODE_TYPE_JOB_ENTRY );
 
-        metaverseBuilder.addLink( fromEntryNode, DictionaryConst.LINK_HOPSTO, toEntryNode );
+        batchBuilder.addLink( fromEntryNode, DictionaryConst.LINK_HOPSTO, toEntryNode );
       }
     }
 
-    metaverseBuilder.addNode( node );
+    batchBuilder.addNode( node );
+    batchBuilder.commit();
     addParentLink( documentDescriptor, node );
     return node;
   }
@@ -252,6 +235,40 @@ public class JobAnalyzer extends BaseDocumentAnalyzer {
     return defaultSupportedTypes;
   }
 
+  /**
+   * Analyzes the entries of the job. The entries whose analyzers can provide an instance of their own for each entry
+   * are analyzed concurrently, the others one after the other in the calling thread (see {@link ComponentAnalysis}).
+   * Whatever the entries were analyzed in, what was found for them is added to the batch in the order of the entries.
+   *
+   * @param jobMeta      the job
+   * @param job          the job the entries belong to while they are analyzed
+   * @param jobNode      the node of the job
+   * @param descriptor   the descriptor of the job
+   * @param document     the document of the job
+   * @param batchBuilder the batch of the document
+   */
+  protected void analyzeJobEntries( JobMeta jobMeta, Job job, IMetaverseNode jobNode, IComponentDescriptor descriptor,
+    IDocument document, MetaverseBatchBuilder batchBuilder ) {
+
+    List<JobEntryAnalysis> analyses = new ArrayList<JobEntryAnalysis>();
+    for ( int i = 0; i < jobMeta.nrJobEntries(); i++ ) {
+      JobEntryCopy entry = jobMeta.getJobEntry( i );
+      if ( entry != null ) {
+        IComponentDescriptor entryDescriptor = new MetaverseComponentDescriptor( entry.getName(),
+          DictionaryConst.NODE_TYPE_JOB_ENTRY, jobNode, descriptor.getContext() );
+        analyses.add( new JobEntryAnalysis( entry, job, entryDescriptor, new MetaverseBatchBuilder( batchBuilder ) ) );
+      }
+    }
+    ComponentAnalysis.runAll( analyses );
+
+    for ( JobEntryAnalysis analysis : analyses ) {
+      analysis.batch.commit();
+      if ( analysis.node != null ) {
+        batchBuilder.addLink( jobNode, DictionaryConst.LINK_CONTAINS, analysis.node );
+      }
+    }
+  }
+
   public Set<IJobEntryAnalyzer> getJobEntryAnalyzers( final JobEntryInterface jobEntryInterface ) {
 
     Set<IJobEntryAnalyzer> jobEntryAnalyzers = new HashSet<>();
@@ -262,9 +279,8 @@ public class JobAnalyzer extends BaseDocumentAnalyzer {
       if ( jobEntryInterface == null ) {
         jobEntryAnalyzers.addAll( jobEntryAnalyzerProvider.getAnalyzers() );
       } else {
-        Set<Class<?>> analyzerClassSet = new HashSet<>( 1 );
-        analyzerClassSet.add( jobEntryInterface.getClass() );
-        jobEntryAnalyzers.addAll( jobEntryAnalyzerProvider.getAnalyzers( analyzerClassSet ) );
+        jobEntryAnalyzers.addAll( jobEntryAnalyzerProvider.getAnalyzers(
+          Collections.<Class<?>>singleton( jobEntryInterface.getClass() ) ) );
       }
     } else {
       jobEntryAnalyzers.add( new GenericJobEntryMetaAnalyzer() );
@@ -289,4 +305,42 @@ public class JobAnalyzer extends BaseDocumentAnalyzer {
     jobEntryAnalyzerProvider = PentahoSystem.get( IJobEntryAnalyzerProvider.class );
     return jobEntryAnalyzerProvider;
   }
+
+  /**
+   * The analysis of one job entry, see {@link ComponentAnalysis}
+   */
+  private class JobEntryAnalysis extends ComponentAnalysis<IJobEntryAnalyzer> {
+
+    private final JobEntryCopy entry;
+    private final Job job;
+
+    JobEntryAnalysis( JobEntryCopy entry, Job job, IComponentDescriptor entryDescriptor,
+      MetaverseBatchBuilder entryBatch ) {
+      super( entry.getName(), entryDescriptor, entryBatch, log );
+      this.entry = entry;
+      this.job = job;
+    }
+
+    @Override
+    protected Set<IJobEntryAnalyzer> getAnalyzers() {
+      entry.getEntry().setParentJob( job );
+      return getJobEntryAnalyzers( entry.getEntry() );
+    }
+
+    @Override
+    protected IJobEntryAnalyzer cloneAnalyzer( IJobEntryAnalyzer jobEntryAnalyzer ) {
+      return jobEntryAnalyzer instanceof IClonableJobEntryAnalyzer
+        ? ( (IClonableJobEntryAnalyzer) jobEntryAnalyzer ).cloneAnalyzer() : null;
+    }
+
+    @Override
+    protected IJobEntryAnalyzer getDefaultAnalyzer() {
+      return new GenericJobEntryMetaAnalyzer();
+    }
+
+    @Override
+    protected Object getComponent() {
+      return entry.getEntry();
+    }
+  }
 }
@@ -0,0 +1,457 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.metaverse.analyzer.kettle;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.xml.XMLHandler;
+import org.pentaho.dictionary.DictionaryConst;
+import org.pentaho.metaverse.api.MetaverseAnalyzerException;
+import org.pentaho.metaverse.messages.Messages;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the lineage relevant parts of a transformation (.ktr) or job (.kjb) into a {@link ScannedDocument}. The
+ * document is streamed with StAX: no DOM is built, no step or job entry plugin is loaded and everything outside of the
+ * document metadata, the connections, the steps (or entries) and the hops is skipped over. This makes it much cheaper
+ * than hydrating a TransMeta or JobMeta, and it works for documents that use plugins the scanning server does not
+ * have.
+ */
+public class KettleDocumentScanner {
+
+  private static final String TRANSFORMATION = "transformation";
+  private static final String JOB = "job";
+
+  /**
+   * The deepest element the scanner reads, transformation/step/fields/field/name
+   */
+  private static final int MAX_DEPTH = 5;
+
+  private static final XMLInputFactory XML_INPUT_FACTORY = createXMLInputFactory();
+
+  /**
+   * Scans the XML of a transformation or job
+   *
+   * @param content the XML of the document
+   * @return the scanned document
+   * @throws MetaverseAnalyzerException if the content is not the XML of a transformation or job
+   */
+  public ScannedDocument scan( String content ) throws MetaverseAnalyzerException {
+    if ( content == null ) {
+      throw new MetaverseAnalyzerException( Messages.getString( "ERROR.Document.HasNoContent" ) );
+    }
+    return scan( new StringReader( content ) );
+  }
+
+  /**
+   * Scans the XML of a transformation or job
+   *
+   * @param inputStream the XML of the document, it is not closed
+   * @return the scanned document
+   * @throws MetaverseAnalyzerException if the content is not the XML of a transformation or job
+   */
+  public ScannedDocument scan( InputStream inputStream ) throws MetaverseAnalyzerException {
+    try {
+      return scan( XML_INPUT_FACTORY.createXMLStreamReader( inputStream ) );
+    } catch ( XMLStreamException e ) {
+      throw new MetaverseAnalyzerException( Messages.getString( "ERROR.Scanner.InvalidDocument" ), e );
+    }
+  }
+
+  private ScannedDocument scan( Reader reader ) throws MetaverseAnalyzerException {
+    try {
+      return scan( XML_INPUT_FACTORY.createXMLStreamReader( reader ) );
+    } catch ( XMLStreamException e ) {
+      throw new MetaverseAnalyzerException( Messages.getString( "ERROR.Scanner.InvalidDocument" ), e );
+    }
+  }
+
+  private ScannedDocument scan( XMLStreamReader reader ) throws MetaverseAnalyzerException {
+    try {
+      Scan scan = new Scan();
+      while ( reader.hasNext() ) {
+        switch ( reader.next() ) {
+          case XMLStreamConstants.START_ELEMENT:
+            scan.startElement( reader.getLocalName() );
+            break;
+          case XMLStreamConstants.CHARACTERS:
+          case XMLStreamConstants.CDATA:
+            scan.characters( reader );
+            break;
+          case XMLStreamConstants.END_ELEMENT:
+            scan.endElement();
+            break;
+          default:
+            break;
+        }
+      }
+      if ( scan.document == null ) {
+        throw new MetaverseAnalyzerException( Messages.getString( "ERROR.Scanner.InvalidDocument" ) );
+      }
+      scan.markErrorHops();
+      return scan.document;
+    } catch ( XMLStreamException e ) {
+      throw new MetaverseAnalyzerException( Messages.getString( "ERROR.Scanner.InvalidDocument" ), e );
+    } finally {
+      try {
+        reader.close();
+      } catch ( XMLStreamException e ) {
+        // nothing to do, the document has been read
+      }
+    }
+  }
+
+  private static XMLInputFactory createXMLInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    // Kettle documents do not use DTDs, and external entities must not be resolved
+    factory.setProperty( XMLInputFactory.SUPPORT_DTD, false );
+    factory.setProperty( XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false );
+    factory.setProperty( XMLInputFactory.IS_COALESCING, true );
+    return factory;
+  }
+
+  /**
+   * The state of one scan: the path of the current element and the parts of the document it is in
+   */
+  private static class Scan {
+    private final String[] path = new String[ MAX_DEPTH ];
+    private int depth;
+    private final StringBuilder text = new StringBuilder();
+    private boolean collectText;
+
+    private ScannedDocument document;
+    private ScannedDocument.Parameter parameter;
+    private ScannedDocument.Connection connection;
+    private ScannedDocument.Step step;
+    private ScannedDocument.Hop hop;
+    private ErrorHandling errorHandling;
+    private final List<ErrorHandling> errorHandlings = new ArrayList<ErrorHandling>();
+
+    void startElement( String name ) throws MetaverseAnalyzerException {
+      depth++;
+      if ( depth > MAX_DEPTH ) {
+        collectText = false;
+        return;
+      }
+      path[ depth - 1 ] = name;
+      text.setLength( 0 );
+      collectText = true;
+
+      if ( depth == 1 ) {
+        if ( TRANSFORMATION.equals( name ) ) {
+          document = new ScannedDocument( DictionaryConst.NODE_TYPE_TRANS );
+        } else if ( JOB.equals( name ) ) {
+          document = new ScannedDocument( DictionaryConst.NODE_TYPE_JOB );
+        } else {
+          throw new MetaverseAnalyzerException( Messages.getString( "ERROR.Scanner.InvalidDocument" ) );
+        }
+      } else if ( isTrans() ) {
+        if ( at( "transformation", "info", "parameters", "parameter" ) ) {
+          parameter = new ScannedDocument.Parameter();
+        } else if ( at( "transformation", "connection" ) ) {
+          connection = new ScannedDocument.Connection();
+        } else if ( at( "transformation", "order", "hop" ) ) {
+          hop = new ScannedDocument.Hop();
+        } else if ( at( "transformation", "step" ) ) {
+          step = new ScannedDocument.Step();
+        } else if ( at( "transformation", "step_error_handling", "error" ) ) {
+          errorHandling = new ErrorHandling();
+        }
+      } else {
+        if ( at( "job", "parameters", "parameter" ) ) {
+          parameter = new ScannedDocument.Parameter();
+        } else if ( at( "job", "connection" ) ) {
+          connection = new ScannedDocument.Connection();
+        } else if ( at( "job", "hops", "hop" ) ) {
+          hop = new ScannedDocument.Hop();
+        } else if ( at( "job", "entries", "entry" ) ) {
+          step = new ScannedDocument.Step();
+        }
+      }
+    }
+
+    void characters( XMLStreamReader reader ) {
+      if ( collectText ) {
+        text.append( reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength() );
+      }
+    }
+
+    void endElement() {
+      if ( depth > MAX_DEPTH ) {
+        depth--;
+        return;
+      }
+      if ( isTrans() ) {
+        endTransElement();
+      } else if ( document != null ) {
+        endJobElement();
+      }
+      // the text of an element is only of interest if it has no child elements
+      collectText = false;
+      depth--;
+    }
+
+    private void endTransElement() {
+      String name = path[ depth - 1 ];
+      if ( depth == 3 && "info".equals( path[ 1 ] ) ) {
+        setDocumentProperty( name, "trans_version", "trans_status" );
+      } else if ( at( "transformation", "info", "parameters", "parameter" ) ) {
+        addParameter();
+      } else if ( depth == 5 && parameter != null && "parameters".equals( path[ 2 ] ) ) {
+        setParameterProperty( name );
+      } else if ( at( "transformation", "connection" ) ) {
+        addConnection();
+      } else if ( depth == 3 && connection != null ) {
+        setConnectionProperty( name );
+      } else if ( at( "transformation", "order", "hop" ) ) {
+        addHop();
+      } else if ( depth == 4 && hop != null ) {
+        setHopProperty( name );
+      } else if ( at( "transformation", "step" ) ) {
+        addStep();
+      } else if ( depth == 3 && step != null ) {
+        setStepProperty( name );
+      } else if ( depth == 5 && step != null && at( "transformation", "step", "fields", "field", "name" ) ) {
+        addFieldName();
+      } else if ( at( "transformation", "step_error_handling", "error" ) ) {
+        if ( errorHandling != null ) {
+          errorHandlings.add( errorHandling );
+          errorHandling = null;
+        }
+      } else if ( depth == 4 && errorHandling != null ) {
+        if ( "source_step".equals( name ) ) {
+          errorHandling.sourceStep = getText();
+        } else if ( "target_step".equals( name ) ) {
+          errorHandling.targetStep = getText();
+        } else if ( "is_enabled".equals( name ) ) {
+          errorHandling.enabled = isYes( getText() );
+        }
+      }
+    }
+
+    private void endJobElement() {
+      String name = path[ depth - 1 ];
+      if ( at( "job", "parameters", "parameter" ) ) {
+        addParameter();
+      } else if ( depth == 4 && parameter != null && "parameters".equals( path[ 1 ] ) ) {
+        setParameterProperty( name );
+      } else if ( at( "job", "connection" ) ) {
+        addConnection();
+      } else if ( depth == 3 && connection != null ) {
+        setConnectionProperty( name );
+      } else if ( at( "job", "hops", "hop" ) ) {
+        addHop();
+      } else if ( depth == 4 && hop != null ) {
+        setHopProperty( name );
+      } else if ( at( "job", "entries", "entry" ) ) {
+        addStep();
+      } else if ( depth == 4 && step != null ) {
+        setStepProperty( name );
+      } else if ( depth == 2 ) {
+        setDocumentProperty( name, "job_version", "job_status" );
+      }
+    }
+
+    private void setDocumentProperty( String name, String versionElement, String statusElement ) {
+      if ( !collectText ) {
+        return;
+      }
+      if ( "name".equals( name ) ) {
+        document.setName( getText() );
+      } else if ( "description".equals( name ) ) {
+        document.setDescription( getText() );
+      } else if ( "extended_description".equals( name ) ) {
+        document.setExtendedDescription( getText() );
+      } else if ( versionElement.equals( name ) ) {
+        document.setVersion( getText() );
+      } else if ( statusElement.equals( name ) ) {
+        document.setStatus( Const.toInt( getText(), -1 ) );
+      } else if ( "created_user".equals( name ) ) {
+        document.setCreatedUser( getText() );
+      } else if ( "created_date".equals( name ) ) {
+        document.setCreatedDate( XMLHandler.stringToDate( getText() ) );
+      } else if ( "modified_user".equals( name ) ) {
+        document.setModifiedUser( getText() );
+      } else if ( "modified_date".equals( name ) ) {
+        document.setModifiedDate( XMLHandler.stringToDate( getText() ) );
+      }
+    }
+
+    private void addParameter() {
+      if ( parameter != null && parameter.getName() != null ) {
+        document.getParameters().put( parameter.getName(), parameter );
+      }
+      parameter = null;
+    }
+
+    private void setParameterProperty( String name ) {
+      if ( "name".equals( name ) ) {
+        parameter.setName( getText() );
+      } else if ( "default_value".equals( name ) ) {
+        parameter.setDefaultValue( getText() );
+      } else if ( "description".equals( name ) ) {
+        parameter.setDescription( getText() );
+      }
+    }
+
+    private void addConnection() {
+      if ( connection != null && connection.getName() != null ) {
+        document.getConnections().add( connection );
+      }
+      connection = null;
+    }
+
+    private void setConnectionProperty( String name ) {
+      if ( "name".equals( name ) ) {
+        connection.setName( getText() );
+      } else if ( "type".equals( name ) ) {
+        connection.setDatabaseType( getText() );
+      } else if ( "access".equals( name ) ) {
+        connection.setAccess( getText() );
+      } else if ( "server".equals( name ) ) {
+        connection.setHostName( getText() );
+      } else if ( "database".equals( name ) ) {
+        connection.setDatabaseName( getText() );
+      } else if ( "port".equals( name ) ) {
+        connection.setPort( getText() );
+      } else if ( "username".equals( name ) ) {
+        connection.setUserName( getText() );
+      }
+    }
+
+    private void addHop() {
+      if ( hop != null && hop.getFrom() != null && hop.getTo() != null ) {
+        document.getHops().add( hop );
+      }
+      hop = null;
+    }
+
+    private void setHopProperty( String name ) {
+      if ( "from".equals( name ) ) {
+        hop.setFrom( getText() );
+      } else if ( "to".equals( name ) ) {
+        hop.setTo( getText() );
+      } else if ( "enabled".equals( name ) ) {
+        hop.setEnabled( isYes( getText() ) );
+      }
+    }
+
+    private void addStep() {
+      if ( step != null && step.getName() != null ) {
+        document.getSteps().add( step );
+      }
+      step = null;
+    }
+
+    private void setStepProperty( String name ) {
+      if ( "name".equals( name ) ) {
+        step.setName( getText() );
+      } else if ( "type".equals( name ) ) {
+        step.setPluginId( getText() );
+      } else if ( "description".equals( name ) ) {
+        step.setDescription( getText() );
+      } else if ( "copies".equals( name ) ) {
+        step.setCopies( Const.toInt( getText(), 1 ) );
+      } else if ( "connection".equals( name ) ) {
+        String connectionName = getText();
+        if ( connectionName != null && !step.getConnectionNames().contains( connectionName ) ) {
+          step.getConnectionNames().add( connectionName );
+        }
+      }
+    }
+
+    private void addFieldName() {
+      String fieldName = getText();
+      if ( fieldName != null ) {
+        step.getFieldNames().add( fieldName );
+      }
+    }
+
+    /**
+     * The hops that carry error rows are only marked as such in the error handling of their source step
+     */
+    void markErrorHops() {
+      for ( ErrorHandling handling : errorHandlings ) {
+        if ( handling.enabled ) {
+          for ( ScannedDocument.Hop errorHop : document.getHops() ) {
+            if ( errorHop.getFrom().equals( handling.sourceStep ) && errorHop.getTo().equals( handling.targetStep ) ) {
+              errorHop.setError( true );
+            }
+          }
+        }
+      }
+    }
+
+    private boolean isTrans() {
+      return document != null && DictionaryConst.NODE_TYPE_TRANS.equals( document.getType() );
+    }
+
+    /**
+     * @return true if the current element is at the given path
+     */
+    private boolean at( String... elements ) {
+      if ( depth != elements.length ) {
+        return false;
+      }
+      for ( int i = elements.length - 1; i >= 0; i-- ) {
+        if ( !elements[ i ].equals( path[ i ] ) ) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * @return the text of the current element, null if it is empty
+     */
+    private String getText() {
+      if ( !collectText || text.length() == 0 ) {
+        return null;
+      }
+      String value = text.toString().trim();
+      return value.isEmpty() ? null : value;
+    }
+
+    private static boolean isYes( String value ) {
+      return "Y".equalsIgnoreCase( value );
+    }
+  }
+
+  /**
+   * The error handling of a step, it names the step the error rows are sent to
+   */
+  private static class ErrorHandling {
+    private String sourceStep;
+    private String targetStep;
+    private boolean enabled;
+  }
+}
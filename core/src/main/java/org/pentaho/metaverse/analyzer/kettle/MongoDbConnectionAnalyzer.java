@@ -30,7 +30,6 @@ import org.pentaho.metaverse.api.ILogicalIdGenerator;
 import org.pentaho.metaverse.api.IMetaverseNode;
 import org.pentaho.metaverse.api.MetaverseAnalyzerException;
 import org.pentaho.metaverse.api.MetaverseComponentDescriptor;
-import org.pentaho.metaverse.api.MetaverseLogicalIdGenerator;
 import org.pentaho.metaverse.api.analyzer.kettle.BaseKettleMetaverseComponent;
 
 import java.util.ArrayList;
@@ -49,7 +48,7 @@ public class MongoDbConnectionAnalyzer extends BaseKettleMetaverseComponent impl
   public static final String CONNECTION_TIMEOUT = "connectionTimeout";
   public static final String SOCKET_TIMEOUT = "socketTimeout";
 
-  public static final ILogicalIdGenerator ID_GENERATOR = new MetaverseLogicalIdGenerator(
+  public static final ILogicalIdGenerator ID_GENERATOR = DictionaryConst.createLogicalIdGenerator(
       HOST_NAMES,
       DATABASE_NAME,
       DictionaryConst.PROPERTY_PORT,
@@ -0,0 +1,408 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.metaverse.analyzer.kettle;
+
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.job.JobMeta;
+import org.pentaho.di.repository.ObjectId;
+import org.pentaho.di.repository.Repository;
+import org.pentaho.di.repository.RepositoryDirectoryInterface;
+import org.pentaho.di.repository.RepositoryObject;
+import org.pentaho.di.repository.RepositoryObjectType;
+import org.pentaho.di.trans.TransMeta;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the transformations and jobs parsed for the analyzers of the steps and job entries that execute them, so that
+ * a sub-transformation (or sub-job) shared by many parents is parsed once instead of once per parent.
+ * <p>
+ * Files are cached by their normalized path and repository objects by their ObjectId, each one along with its
+ * modification stamp (the last modified time of the file, the modified date of the repository object). A cached meta
+ * whose stamp has changed is parsed again. Metas whose stamp cannot be determined are not cached. The cache holds at
+ * most {@link #getMaxSize()} metas, evicting the least recently used ones. A meta requested while it is being parsed
+ * for another analyzer (the entries of a job are analyzed concurrently) is waited for rather than parsed again.
+ * </p>
+ * <p>
+ * While a locator scans its documents (see {@link #beginScan()}), every meta loaded is also kept for the scan, even if
+ * its stamp cannot be determined or it is evicted, so that a child shared by the documents of the scan is loaded once
+ * per scan. The metas kept for the scans are dropped once the last running scan ends.
+ * </p>
+ * The metas are shared by the analyzers, which must treat them as read-only.
+ */
+public class ParsedMetaCache {
+
+  public static final int DEFAULT_MAX_SIZE = 100;
+
+  private static final ParsedMetaCache INSTANCE = new ParsedMetaCache();
+
+  private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>( 16, 0.75f, true ) {
+    @Override
+    protected boolean removeEldestEntry( Map.Entry<String, Entry> eldest ) {
+      if ( size() > maxSize ) {
+        evictions.incrementAndGet();
+        return true;
+      }
+      return false;
+    }
+  };
+
+  // the metas loaded while scans are running, guarded by the lock of the entries
+  private final Map<String, Entry> scanEntries = new HashMap<String, Entry>();
+  private int scans;
+
+  private final ConcurrentMap<String, Future<?>> loading = new ConcurrentHashMap<String, Future<?>>();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private volatile int maxSize = DEFAULT_MAX_SIZE;
+
+  /**
+   * @return the cache shared by the analyzers
+   */
+  public static ParsedMetaCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns the meta parsed from a file, parsing it if it is not cached or has been modified since it was cached
+   *
+   * @param filePath the normalized path of the file
+   * @param type     the type of the meta
+   * @param parser   parses the file
+   * @return the meta
+   * @throws Exception if the file cannot be parsed
+   */
+  public <M> M getFileMeta( String filePath, Class<M> type, Callable<M> parser ) throws Exception {
+    if ( filePath == null ) {
+      return get( null, 0L, type, parser );
+    }
+    return get( "file:" + type.getSimpleName() + ":" + filePath, new File( filePath ).lastModified(), type, parser );
+  }
+
+  /**
+   * Loads a transformation from a repository by name
+   *
+   * @param repo      the repository
+   * @param name      the name of the transformation
+   * @param directory the directory of the transformation
+   * @return the transformation
+   * @throws KettleException if the transformation cannot be loaded
+   */
+  public TransMeta loadTransformation( final Repository repo, final String name,
+                                       final RepositoryDirectoryInterface directory ) throws KettleException {
+    ObjectId objectId = null;
+    try {
+      objectId = repo.getTransformationID( name, directory );
+    } catch ( Exception e ) {
+      // the transformation is loaded without being cached
+    }
+    return getRepositoryMeta( repo, objectId, RepositoryObjectType.TRANSFORMATION, TransMeta.class,
+      new Callable<TransMeta>() {
+        @Override
+        public TransMeta call() throws Exception {
+          return repo.loadTransformation( name, directory, null, true, null );
+        }
+      } );
+  }
+
+  /**
+   * Loads a transformation from a repository by reference
+   *
+   * @param repo     the repository
+   * @param objectId the id of the transformation
+   * @return the transformation
+   * @throws KettleException if the transformation cannot be loaded
+   */
+  public TransMeta loadTransformation( final Repository repo, final ObjectId objectId ) throws KettleException {
+    return getRepositoryMeta( repo, objectId, RepositoryObjectType.TRANSFORMATION, TransMeta.class,
+      new Callable<TransMeta>() {
+        @Override
+        public TransMeta call() throws Exception {
+          return repo.loadTransformation( objectId, null );
+        }
+      } );
+  }
+
+  /**
+   * Loads a job from a repository by name
+   *
+   * @param repo      the repository
+   * @param name      the name of the job
+   * @param directory the directory of the job
+   * @return the job
+   * @throws KettleException if the job cannot be loaded
+   */
+  public JobMeta loadJob( final Repository repo, final String name, final RepositoryDirectoryInterface directory )
+    throws KettleException {
+    ObjectId objectId = null;
+    try {
+      objectId = repo.getJobId( name, directory );
+    } catch ( Exception e ) {
+      // the job is loaded without being cached
+    }
+    return getRepositoryMeta( repo, objectId, RepositoryObjectType.JOB, JobMeta.class, new Callable<JobMeta>() {
+      @Override
+      public JobMeta call() throws Exception {
+        return repo.loadJob( name, directory, null, null );
+      }
+    } );
+  }
+
+  /**
+   * Loads a job from a repository by reference
+   *
+   * @param repo     the repository
+   * @param objectId the id of the job
+   * @return the job
+   * @throws KettleException if the job cannot be loaded
+   */
+  public JobMeta loadJob( final Repository repo, final ObjectId objectId ) throws KettleException {
+    return getRepositoryMeta( repo, objectId, RepositoryObjectType.JOB, JobMeta.class, new Callable<JobMeta>() {
+      @Override
+      public JobMeta call() throws Exception {
+        return repo.loadJob( objectId, null );
+      }
+    } );
+  }
+
+  /**
+   * Tells the cache that a scan of the documents of a locator has started. Until it ends, the metas loaded are kept
+   * for the scan.
+   */
+  public void beginScan() {
+    synchronized ( entries ) {
+      scans++;
+    }
+  }
+
+  /**
+   * Tells the cache that a scan has ended. The metas kept for the scans are dropped once every running scan has ended.
+   */
+  public void endScan() {
+    synchronized ( entries ) {
+      if ( scans > 0 && --scans == 0 ) {
+        scanEntries.clear();
+      }
+    }
+  }
+
+  /**
+   * @return the number of scans that are running
+   */
+  public int getScans() {
+    synchronized ( entries ) {
+      return scans;
+    }
+  }
+
+  /**
+   * @return the number of metas served from the cache
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @return the number of metas parsed, because they were not cached, had been modified or could not be cached
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * @return the number of metas evicted to keep the cache within its maximum size
+   */
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  /**
+   * @return the number of cached metas
+   */
+  public int size() {
+    synchronized ( entries ) {
+      return entries.size();
+    }
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Sets the maximum number of cached metas, evicting the least recently used ones if there are more
+   *
+   * @param maxSize the maximum number of cached metas, 0 disables the cache
+   */
+  public void setMaxSize( int maxSize ) {
+    this.maxSize = Math.max( 0, maxSize );
+    synchronized ( entries ) {
+      while ( entries.size() > this.maxSize ) {
+        entries.remove( entries.keySet().iterator().next() );
+        evictions.incrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Drops every cached meta, and the metas kept for the running scans, and resets the metrics
+   */
+  public void clear() {
+    synchronized ( entries ) {
+      entries.clear();
+      scanEntries.clear();
+    }
+    hits.set( 0 );
+    misses.set( 0 );
+    evictions.set( 0 );
+  }
+
+  @Override
+  public String toString() {
+    return "ParsedMetaCache[size=" + size() + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions
+      + "]";
+  }
+
+  private <M> M getRepositoryMeta( Repository repo, ObjectId objectId, RepositoryObjectType objectType,
+                                   Class<M> type, Callable<M> loader ) throws KettleException {
+    String key = null;
+    long stamp = 0L;
+    if ( objectId != null && objectId.getId() != null ) {
+      key = "repo:" + repo.getName() + ":" + objectType + ":" + objectId.getId();
+      try {
+        RepositoryObject information = repo.getObjectInformation( objectId, objectType );
+        if ( information != null && information.getModifiedDate() != null ) {
+          stamp = information.getModifiedDate().getTime();
+        }
+      } catch ( Exception e ) {
+        // the meta is loaded without being cached, only kept for the running scans
+      }
+    }
+    try {
+      return get( key, stamp, type, loader );
+    } catch ( KettleException e ) {
+      throw e;
+    } catch ( RuntimeException e ) {
+      throw e;
+    } catch ( Exception e ) {
+      throw new KettleException( e );
+    }
+  }
+
+  private <M> M get( String key, long stamp, Class<M> type, Callable<M> loader ) throws Exception {
+    if ( key == null || maxSize == 0 ) {
+      misses.incrementAndGet();
+      return loader.call();
+    }
+    M cached = getCached( key, stamp, type );
+    if ( cached != null ) {
+      hits.incrementAndGet();
+      return cached;
+    }
+    FutureTask<M> task = new FutureTask<M>( loader );
+    Future<?> loading = this.loading.putIfAbsent( key, task );
+    if ( loading == null ) {
+      try {
+        // the meta may have been cached by a load that finished since it was looked up
+        cached = getCached( key, stamp, type );
+        if ( cached != null ) {
+          hits.incrementAndGet();
+          return cached;
+        }
+        misses.incrementAndGet();
+        task.run();
+        M meta = result( task );
+        if ( meta != null ) {
+          Entry entry = new Entry( stamp, meta );
+          synchronized ( entries ) {
+            if ( stamp > 0L ) {
+              entries.put( key, entry );
+            }
+            if ( scans > 0 ) {
+              scanEntries.put( key, entry );
+            }
+          }
+        }
+        return meta;
+      } finally {
+        this.loading.remove( key, task );
+      }
+    }
+    // the meta is being parsed for another analyzer, it is waited for rather than parsed again
+    hits.incrementAndGet();
+    return type.cast( result( loading ) );
+  }
+
+  private <M> M getCached( String key, long stamp, Class<M> type ) {
+    Entry entry;
+    synchronized ( entries ) {
+      entry = entries.get( key );
+      if ( ( entry == null || entry.stamp != stamp ) && scans > 0 ) {
+        // the meta may have been loaded by the scan even though it cannot be cached, or was evicted since
+        entry = scanEntries.get( key );
+      }
+    }
+    if ( entry != null && entry.stamp == stamp && type.isInstance( entry.meta ) ) {
+      return type.cast( entry.meta );
+    }
+    return null;
+  }
+
+  private static <T> T result( Future<T> future ) throws Exception {
+    try {
+      return future.get();
+    } catch ( ExecutionException e ) {
+      Throwable cause = e.getCause();
+      if ( cause instanceof Exception ) {
+        throw (Exception) cause;
+      }
+      if ( cause instanceof Error ) {
+        throw (Error) cause;
+      }
+      throw e;
+    }
+  }
+
+  private static class Entry {
+    private final long stamp;
+    private final Object meta;
+
+    Entry( long stamp, Object meta ) {
+      this.stamp = stamp;
+      this.meta = meta;
+    }
+  }
+}
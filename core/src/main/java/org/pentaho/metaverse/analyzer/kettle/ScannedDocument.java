@@ -0,0 +1,390 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.metaverse.analyzer.kettle;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The lineage relevant parts of a transformation or job, as read by the {@link KettleDocumentScanner}: its own
+ * metadata, its steps (or job entries) with the connections and fields they name, the hops between them and the
+ * database connections it defines. Unlike a TransMeta or JobMeta, it does not need the plugins of the steps.
+ */
+public class ScannedDocument {
+
+  /**
+   * The type of the document, {@link org.pentaho.dictionary.DictionaryConst#NODE_TYPE_TRANS} or
+   * {@link org.pentaho.dictionary.DictionaryConst#NODE_TYPE_JOB}
+   */
+  private final String type;
+  private String name;
+  private String description;
+  private String extendedDescription;
+  private String version;
+  private int status = -1;
+  private String createdUser;
+  private Date createdDate;
+  private String modifiedUser;
+  private Date modifiedDate;
+  private final Map<String, Parameter> parameters = new LinkedHashMap<String, Parameter>();
+  private final List<Connection> connections = new ArrayList<Connection>();
+  private final List<Step> steps = new ArrayList<Step>();
+  private final List<Hop> hops = new ArrayList<Hop>();
+
+  public ScannedDocument( String type ) {
+    this.type = type;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName( String name ) {
+    this.name = name;
+  }
+
+  public String getDescription() {
+    return description;
+  }
+
+  public void setDescription( String description ) {
+    this.description = description;
+  }
+
+  public String getExtendedDescription() {
+    return extendedDescription;
+  }
+
+  public void setExtendedDescription( String extendedDescription ) {
+    this.extendedDescription = extendedDescription;
+  }
+
+  public String getVersion() {
+    return version;
+  }
+
+  public void setVersion( String version ) {
+    this.version = version;
+  }
+
+  /**
+   * @return the status of the document (1 for draft, 2 for production), -1 if it has none
+   */
+  public int getStatus() {
+    return status;
+  }
+
+  public void setStatus( int status ) {
+    this.status = status;
+  }
+
+  public String getCreatedUser() {
+    return createdUser;
+  }
+
+  public void setCreatedUser( String createdUser ) {
+    this.createdUser = createdUser;
+  }
+
+  public Date getCreatedDate() {
+    return createdDate;
+  }
+
+  public void setCreatedDate( Date createdDate ) {
+    this.createdDate = createdDate;
+  }
+
+  public String getModifiedUser() {
+    return modifiedUser;
+  }
+
+  public void setModifiedUser( String modifiedUser ) {
+    this.modifiedUser = modifiedUser;
+  }
+
+  public Date getModifiedDate() {
+    return modifiedDate;
+  }
+
+  public void setModifiedDate( Date modifiedDate ) {
+    this.modifiedDate = modifiedDate;
+  }
+
+  /**
+   * @return the parameters of the document, by name
+   */
+  public Map<String, Parameter> getParameters() {
+    return parameters;
+  }
+
+  public List<Connection> getConnections() {
+    return connections;
+  }
+
+  /**
+   * @param name the name of the connection
+   * @return the connection, or null if the document does not define it
+   */
+  public Connection getConnection( String name ) {
+    for ( Connection connection : connections ) {
+      if ( connection.getName() != null && connection.getName().equalsIgnoreCase( name ) ) {
+        return connection;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the steps of a transformation, or the entries of a job
+   */
+  public List<Step> getSteps() {
+    return steps;
+  }
+
+  public List<Hop> getHops() {
+    return hops;
+  }
+
+  /**
+   * A parameter of the document
+   */
+  public static class Parameter {
+    private String name;
+    private String defaultValue;
+    private String description;
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName( String name ) {
+      this.name = name;
+    }
+
+    public String getDefaultValue() {
+      return defaultValue;
+    }
+
+    public void setDefaultValue( String defaultValue ) {
+      this.defaultValue = defaultValue;
+    }
+
+    public String getDescription() {
+      return description;
+    }
+
+    public void setDescription( String description ) {
+      this.description = description;
+    }
+  }
+
+  /**
+   * A database connection defined by the document
+   */
+  public static class Connection {
+    private String name;
+    private String databaseType;
+    private String access;
+    private String hostName;
+    private String databaseName;
+    private String port;
+    private String userName;
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName( String name ) {
+      this.name = name;
+    }
+
+    /**
+     * @return the id of the database plugin, MYSQL for instance
+     */
+    public String getDatabaseType() {
+      return databaseType;
+    }
+
+    public void setDatabaseType( String databaseType ) {
+      this.databaseType = databaseType;
+    }
+
+    /**
+     * @return the access type code, Native or JNDI for instance
+     */
+    public String getAccess() {
+      return access;
+    }
+
+    public void setAccess( String access ) {
+      this.access = access;
+    }
+
+    public String getHostName() {
+      return hostName;
+    }
+
+    public void setHostName( String hostName ) {
+      this.hostName = hostName;
+    }
+
+    public String getDatabaseName() {
+      return databaseName;
+    }
+
+    public void setDatabaseName( String databaseName ) {
+      this.databaseName = databaseName;
+    }
+
+    public String getPort() {
+      return port;
+    }
+
+    public void setPort( String port ) {
+      this.port = port;
+    }
+
+    public String getUserName() {
+      return userName;
+    }
+
+    public void setUserName( String userName ) {
+      this.userName = userName;
+    }
+  }
+
+  /**
+   * A step of a transformation or an entry of a job
+   */
+  public static class Step {
+    private String name;
+    private String pluginId;
+    private String description;
+    private int copies = 1;
+    private final List<String> connectionNames = new ArrayList<String>();
+    private final List<String> fieldNames = new ArrayList<String>();
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName( String name ) {
+      this.name = name;
+    }
+
+    /**
+     * @return the id of the step (or job entry) plugin, TableInput for instance
+     */
+    public String getPluginId() {
+      return pluginId;
+    }
+
+    public void setPluginId( String pluginId ) {
+      this.pluginId = pluginId;
+    }
+
+    public String getDescription() {
+      return description;
+    }
+
+    public void setDescription( String description ) {
+      this.description = description;
+    }
+
+    public int getCopies() {
+      return copies;
+    }
+
+    public void setCopies( int copies ) {
+      this.copies = copies;
+    }
+
+    /**
+     * @return the names of the database connections the step uses
+     */
+    public List<String> getConnectionNames() {
+      return connectionNames;
+    }
+
+    /**
+     * @return the names of the fields the step lists in its metadata (what they are to the step, input or output, is
+     * up to the step)
+     */
+    public List<String> getFieldNames() {
+      return fieldNames;
+    }
+  }
+
+  /**
+   * A hop between two steps or job entries
+   */
+  public static class Hop {
+    private String from;
+    private String to;
+    private boolean enabled = true;
+    private boolean error;
+
+    public String getFrom() {
+      return from;
+    }
+
+    public void setFrom( String from ) {
+      this.from = from;
+    }
+
+    public String getTo() {
+      return to;
+    }
+
+    public void setTo( String to ) {
+      this.to = to;
+    }
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled( boolean enabled ) {
+      this.enabled = enabled;
+    }
+
+    /**
+     * @return true if the hop carries the error rows of the step it comes from
+     */
+    public boolean isError() {
+      return error;
+    }
+
+    public void setError( boolean error ) {
+      this.error = error;
+    }
+  }
+}
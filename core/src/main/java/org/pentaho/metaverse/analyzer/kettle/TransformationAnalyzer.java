@@ -42,16 +42,24 @@ import org.pentaho.metaverse.api.MetaverseAnalyzerException;
 import org.pentaho.metaverse.api.MetaverseComponentDescriptor;
 import org.pentaho.metaverse.api.Namespace;
 import org.pentaho.metaverse.api.PropertiesHolder;
+import org.pentaho.metaverse.api.analyzer.kettle.step.IClonableStepAnalyzer;
 import org.pentaho.metaverse.api.analyzer.kettle.step.IStepAnalyzer;
 import org.pentaho.metaverse.api.analyzer.kettle.step.IStepAnalyzerProvider;
+import org.pentaho.metaverse.api.analyzer.kettle.step.RowMetaCache;
+import org.pentaho.metaverse.impl.MetaverseBatchBuilder;
 import org.pentaho.metaverse.messages.Messages;
 import org.pentaho.platform.engine.core.system.PentahoSystem;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -89,13 +97,20 @@ public class TransformationAnalyzer extends BaseDocumentAnalyzer {
 
     TransMeta transMeta = null;
     if ( repoObject instanceof String ) {
+      String content = (String) repoObject;
+      if ( SCAN_MODE_LIGHTWEIGHT.equals( getScanMode() ) ) {
+        return analyzeScannedDocument( descriptor, document, content );
+      }
       // hydrate the transformation
       try {
-        String content = (String) repoObject;
         ByteArrayInputStream xmlStream = new ByteArrayInputStream( content.getBytes() );
         transMeta = new TransMeta( xmlStream, null, false, null, null );
         transMeta.setFilename( document.getStringID() );
         if ( transMeta.hasMissingPlugins() ) {
+          if ( SCAN_MODE_FALLBACK.equals( getScanMode() ) ) {
+            log.debug( Messages.getString( "DEBUG.ScanningDocument", document.getStringID() ) );
+            return analyzeScannedDocument( descriptor, document, content );
+          }
           throw new MetaverseAnalyzerException( Messages.getErrorString( "ERROR.MissingPlugin" ) );
         }
       } catch ( KettleException e ) {
@@ -180,39 +195,15 @@ public class TransformationAnalyzer extends BaseDocumentAnalyzer {
         }
       }
     }
-    // handle the step
-    for ( int stepNr = 0; stepNr < transMeta.nrSteps(); stepNr++ ) {
-      StepMeta stepMeta = transMeta.getStep( stepNr );
-      try {
-        if ( stepMeta != null ) {
-          if ( stepMeta.getParentTransMeta() == null ) {
-            stepMeta.setParentTransMeta( transMeta );
-          }
-
-          IMetaverseNode stepNode = null;
-          IComponentDescriptor stepDescriptor = new MetaverseComponentDescriptor( stepMeta.getName(),
-            DictionaryConst.NODE_TYPE_TRANS_STEP, node, documentDescriptor.getContext() );
-          Set<IStepAnalyzer> stepAnalyzers = getStepAnalyzers( stepMeta );
-          if ( stepAnalyzers != null && !stepAnalyzers.isEmpty() ) {
-            for ( IStepAnalyzer stepAnalyzer : stepAnalyzers ) {
-              stepAnalyzer.setMetaverseBuilder( metaverseBuilder );
-              stepNode = (IMetaverseNode) stepAnalyzer.analyze( stepDescriptor, getBaseStepMetaFromStepMeta( stepMeta ) );
-            }
-          } else {
-            GenericStepMetaAnalyzer defaultStepAnalyzer = new GenericStepMetaAnalyzer();
-            defaultStepAnalyzer.setMetaverseBuilder( metaverseBuilder );
-            stepNode = defaultStepAnalyzer.analyze( stepDescriptor, getBaseStepMetaFromStepMeta( stepMeta ) );
-          }
-          if ( stepNode != null ) {
-            metaverseBuilder.addLink( node, DictionaryConst.LINK_CONTAINS, stepNode );
-          }
-        }
-      } catch ( Throwable mae ) {
-        //Don't throw an exception, just log and carry on
-        log.warn( Messages.getString( "ERROR.ErrorDuringAnalysis", stepMeta.getName(),
-          Const.NVL( mae.getLocalizedMessage(), "Unspecified" ) ) );
-        log.debug( Messages.getString( "ERROR.ErrorDuringAnalysisStackTrace" ), mae );
-      }
+    // everything found in the document is buffered and applied to the graph as one batch
+    MetaverseBatchBuilder batchBuilder = new MetaverseBatchBuilder( metaverseBuilder );
+
+    // the row metadata of the steps is derived once and shared by all of the step analyzers
+    RowMetaCache rowMetaCache = RowMetaCache.open( transMeta );
+    try {
+      analyzeSteps( transMeta, node, documentDescriptor, batchBuilder );
+    } finally {
+      rowMetaCache.close();
     }
 
     // Model the hops between steps
@@ -256,11 +247,12 @@ public class TransformationAnalyzer extends BaseDocumentAnalyzer {
           }
         }
         link.setProperty( DictionaryConst.PROPERTY_TYPE, linkType );
-        metaverseBuilder.addLink( link );
+        batchBuilder.addLink( link );
       }
     }
 
-    metaverseBuilder.addNode( node );
+    batchBuilder.addNode( node );
+    batchBuilder.commit();
     addParentLink( documentDescriptor, node );
     return node;
   }
@@ -275,6 +267,67 @@ public class TransformationAnalyzer extends BaseDocumentAnalyzer {
     return defaultSupportedTypes;
   }
 
+  /**
+   * Analyzes the steps of the transformation. Steps whose analyzers can provide an instance of themselves per step are
+   * analyzed concurrently, the others one after the other in the calling thread. What is found for each step is
+   * buffered and added to the batch in step order once all of the steps have been analyzed. When the transformation
+   * is analyzed incrementally (see {@link IncrementalTransAnalysis}), the steps that have not changed since the last
+   * analysis are replayed instead of analyzed.
+   *
+   * @param transMeta          the transformation
+   * @param transNode          the node of the transformation
+   * @param documentDescriptor the descriptor of the transformation document
+   * @param batchBuilder       the batch the steps are added to
+   */
+  protected void analyzeSteps( TransMeta transMeta, IMetaverseNode transNode, IComponentDescriptor documentDescriptor,
+    MetaverseBatchBuilder batchBuilder ) {
+
+    IncrementalTransAnalysis incremental = IncrementalTransAnalysis.get( transMeta );
+    IncrementalTransAnalysis.Plan plan = incremental == null ? null
+      : incremental.plan( transMeta, transNode.getLogicalId() );
+
+    List<StepAnalysis> analyses = new ArrayList<StepAnalysis>();
+    for ( int stepNr = 0; stepNr < transMeta.nrSteps(); stepNr++ ) {
+      StepMeta stepMeta = transMeta.getStep( stepNr );
+      if ( stepMeta != null ) {
+        if ( stepMeta.getParentTransMeta() == null ) {
+          stepMeta.setParentTransMeta( transMeta );
+        }
+        IComponentDescriptor stepDescriptor = new MetaverseComponentDescriptor( stepMeta.getName(),
+          DictionaryConst.NODE_TYPE_TRANS_STEP, transNode, documentDescriptor.getContext() );
+        IncrementalTransAnalysis.StepRecorder recorder = null;
+        if ( plan != null && plan.getReplay( stepMeta ) == null ) {
+          recorder = new IncrementalTransAnalysis.StepRecorder( batchBuilder );
+        }
+        StepAnalysis analysis = new StepAnalysis( stepMeta, stepDescriptor,
+          new MetaverseBatchBuilder( recorder == null ? batchBuilder : recorder ) );
+        analysis.replay = plan == null ? null : plan.getReplay( stepMeta );
+        analysis.recorder = recorder;
+        analyses.add( analysis );
+      }
+    }
+    ComponentAnalysis.runAll( analyses );
+
+    Map<StepMeta, IncrementalTransAnalysis.StepRecord> records =
+      new IdentityHashMap<StepMeta, IncrementalTransAnalysis.StepRecord>();
+    for ( StepAnalysis analysis : analyses ) {
+      analysis.batch.commit();
+      if ( analysis.node != null ) {
+        batchBuilder.addLink( transNode, DictionaryConst.LINK_CONTAINS, analysis.node );
+      }
+      if ( analysis.recorder != null && !analysis.failed ) {
+        IncrementalTransAnalysis.StepRecord record =
+          analysis.recorder.toRecord( plan.getFingerprint( analysis.stepMeta ), analysis.node );
+        if ( record != null ) {
+          records.put( analysis.stepMeta, record );
+        }
+      }
+    }
+    if ( plan != null ) {
+      incremental.update( plan, records );
+    }
+  }
+
   protected Set<IStepAnalyzer> getStepAnalyzers( final StepMeta stepMeta ) {
 
     Set<IStepAnalyzer> stepAnalyzers = new HashSet<IStepAnalyzer>();
@@ -286,9 +339,8 @@ public class TransformationAnalyzer extends BaseDocumentAnalyzer {
       if ( baseStepMeta == null ) {
         stepAnalyzers.addAll( stepAnalyzerProvider.getAnalyzers() );
       } else {
-        Set<Class<?>> analyzerClassSet = new HashSet<Class<?>>( 1 );
-        analyzerClassSet.add( baseStepMeta.getClass() );
-        stepAnalyzers.addAll( stepAnalyzerProvider.getAnalyzers( analyzerClassSet ) );
+        stepAnalyzers.addAll( stepAnalyzerProvider.getAnalyzers(
+          Collections.<Class<?>>singleton( baseStepMeta.getClass() ) ) );
       }
     } else {
       stepAnalyzers.add( new GenericStepMetaAnalyzer() );
@@ -328,4 +380,59 @@ public class TransformationAnalyzer extends BaseDocumentAnalyzer {
     return baseStepMeta;
   }
 
+
+  /**
+   * The analysis of one step. Unless what was recorded for the step is replayed, the step is analyzed by its
+   * analyzers, see {@link ComponentAnalysis}.
+   */
+  private class StepAnalysis extends ComponentAnalysis<IStepAnalyzer> {
+
+    private final StepMeta stepMeta;
+    private IncrementalTransAnalysis.StepRecord replay;
+    private IncrementalTransAnalysis.StepRecorder recorder;
+
+    StepAnalysis( StepMeta stepMeta, IComponentDescriptor stepDescriptor, MetaverseBatchBuilder stepBatch ) {
+      super( stepMeta.getName(), stepDescriptor, stepBatch, log );
+      this.stepMeta = stepMeta;
+    }
+
+    @Override
+    boolean prepare() {
+      if ( replay != null ) {
+        // replaying what was recorded for the step is quick, it is done in the calling thread
+        return false;
+      }
+      return super.prepare();
+    }
+
+    @Override
+    public void run() {
+      if ( replay != null ) {
+        node = replay.replay( batch );
+        return;
+      }
+      super.run();
+    }
+
+    @Override
+    protected Set<IStepAnalyzer> getAnalyzers() {
+      return getStepAnalyzers( stepMeta );
+    }
+
+    @Override
+    protected IStepAnalyzer cloneAnalyzer( IStepAnalyzer stepAnalyzer ) {
+      return stepAnalyzer instanceof IClonableStepAnalyzer
+        ? ( (IClonableStepAnalyzer) stepAnalyzer ).cloneAnalyzer() : null;
+    }
+
+    @Override
+    protected IStepAnalyzer getDefaultAnalyzer() {
+      return new GenericStepMetaAnalyzer();
+    }
+
+    @Override
+    protected Object getComponent() {
+      return getBaseStepMetaFromStepMeta( stepMeta );
+    }
+  }
 }
@@ -25,12 +25,15 @@ package org.pentaho.metaverse.analyzer.kettle.extensionpoints;
 import org.apache.commons.lang.ObjectUtils;
 import org.pentaho.di.core.KettleClientEnvironment;
 import org.pentaho.di.core.extension.ExtensionPointInterface;
+import org.pentaho.di.core.variables.VariableSpace;
+import org.pentaho.di.core.xml.XMLInterface;
 import org.pentaho.di.version.BuildVersion;
 import org.pentaho.metaverse.api.ILineageWriter;
 import org.pentaho.metaverse.api.IMetaverseBuilder;
 import org.pentaho.metaverse.api.model.IExecutionEngine;
 import org.pentaho.metaverse.api.model.IExecutionProfile;
 import org.pentaho.metaverse.api.model.LineageHolder;
+import org.pentaho.metaverse.impl.DeferredLineageAnalyzer;
 import org.pentaho.metaverse.impl.model.ExecutionEngine;
 
 import java.io.IOException;
@@ -45,10 +48,23 @@ public abstract class BaseRuntimeExtensionPoint implements ExtensionPointInterfa
     "Pentaho Data Integration (PDI) prepares and blends data to create a complete picture of your business "
       + "that drives actionable insights.";
 
+  /**
+   * The lineage of every execution is captured, with its graph
+   */
+  public static final String RUNTIME_ON = "on";
+
+  /**
+   * Only the execution profiles are captured at runtime, the graphs are built later by the
+   * {@link DeferredLineageAnalyzer}
+   */
+  public static final String RUNTIME_PROFILE = "profile";
+
   protected ILineageWriter lineageWriter;
 
   protected boolean runtimeEnabled;
 
+  protected boolean profileOnly;
+
   public void writeLineageInfo( LineageHolder holder ) throws IOException {
     if ( lineageWriter != null ) {
       String strategy = lineageWriter.getOutputStrategy();
@@ -101,8 +117,28 @@ public abstract class BaseRuntimeExtensionPoint implements ExtensionPointInterfa
     this.lineageWriter = lineageWriter;
   }
 
+  /**
+   * Queues the lineage graph of an execution for the {@link DeferredLineageAnalyzer}, when it is not built at runtime
+   *
+   * @param holder    the lineage of the execution
+   * @param meta      the transformation or job that was run
+   * @param variables the variables the execution ran with (the Trans or Job)
+   * @throws IOException if the execution cannot be queued
+   */
+  protected void deferLineageGraph( LineageHolder holder, XMLInterface meta, VariableSpace variables )
+    throws IOException {
+    DeferredLineageAnalyzer.getInstance().enqueue( holder.getExecutionProfile(), meta, variables );
+  }
+
+  /**
+   * Sets the runtime lineage mode: "on" captures the lineage graphs at runtime, "profile" only captures the execution
+   * profiles and defers the graphs, anything else turns the runtime lineage off
+   *
+   * @param runtimeEnabled the mode
+   */
   public void setRuntimeEnabled( String runtimeEnabled ) {
-    this.runtimeEnabled = ( runtimeEnabled != null && runtimeEnabled.equalsIgnoreCase( "on" ) );
+    this.profileOnly = RUNTIME_PROFILE.equalsIgnoreCase( runtimeEnabled );
+    this.runtimeEnabled = profileOnly || RUNTIME_ON.equalsIgnoreCase( runtimeEnabled );
   }
 
   public void setRuntimeEnabled( boolean runtimeEnabled ) {
@@ -113,6 +149,14 @@ public abstract class BaseRuntimeExtensionPoint implements ExtensionPointInterfa
     return runtimeEnabled;
   }
 
+  public void setProfileOnly( boolean profileOnly ) {
+    this.profileOnly = profileOnly;
+  }
+
+  public boolean isProfileOnly() {
+    return profileOnly;
+  }
+
   /**
    * When executing from Kitchen or Pan there might not enough time to finish all async tasks
    * from job and trans listeners. To prevent jvm to exit use this flag to decide whether to run
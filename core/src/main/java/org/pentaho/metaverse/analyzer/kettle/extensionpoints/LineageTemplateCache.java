@@ -0,0 +1,270 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.metaverse.analyzer.kettle.extensionpoints;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.variables.VariableSpace;
+import org.pentaho.di.core.xml.XMLInterface;
+import org.pentaho.metaverse.analyzer.kettle.IncrementalTransAnalysis;
+import org.pentaho.metaverse.api.IDocument;
+import org.pentaho.metaverse.api.IDocumentAnalyzer;
+import org.pentaho.metaverse.api.IMetaverseBuilder;
+import org.pentaho.metaverse.api.IMetaverseLink;
+import org.pentaho.metaverse.api.IMetaverseNode;
+import org.pentaho.metaverse.locator.DocumentFingerprintStore;
+import org.pentaho.metaverse.util.MetaverseUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps what the runtime analysis of a transformation or job added to the lineage graph of its execution, so that the
+ * next executions of the same, unchanged document get the design-time part of their lineage graph replayed instead of
+ * analyzing the document again. What is specific to an execution (its execution profile, the resources it used) is
+ * not part of the analysis and is still collected for every execution.
+ * <p>
+ * A template is keyed by the path of the document, the hash of its XML and the values of the variables it uses, so a
+ * changed document, or a run with other parameter values, is analyzed again. The documents a transformation or job
+ * refers to (sub-transformations, mappings, ...) are not part of the key, so a template is also dropped once it is
+ * older than {@link #getTemplateTtl()}. An analysis that deletes or updates elements of the graph cannot be replayed
+ * and is not kept.
+ * </p>
+ * At most {@link #getMaxTemplates()} templates are kept, the least recently used one is dropped first.
+ */
+public class LineageTemplateCache {
+
+  /**
+   * The system property setting the number of templates that are kept
+   */
+  public static final String MAX_TEMPLATES_PROPERTY = "pentaho.metaverse.lineage.maxTemplates";
+  public static final int DEFAULT_MAX_TEMPLATES = 100;
+
+  /**
+   * The system property setting how long a template is used, in milliseconds. A template is used until it is dropped
+   * when the time is 0 or less.
+   */
+  public static final String TEMPLATE_TTL_PROPERTY = "pentaho.metaverse.lineage.templateTtl";
+  public static final long DEFAULT_TEMPLATE_TTL = 3600000L;
+
+  private static final LineageTemplateCache INSTANCE = new LineageTemplateCache(
+    Const.toInt( System.getProperty( MAX_TEMPLATES_PROPERTY ), DEFAULT_MAX_TEMPLATES ),
+    Const.toLong( System.getProperty( TEMPLATE_TTL_PROPERTY ), DEFAULT_TEMPLATE_TTL ) );
+
+  private final int maxTemplates;
+  private final long templateTtl;
+  private final Map<String, Template> templates;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * Creates a cache
+   *
+   * @param maxTemplates the number of templates that are kept, at least 1
+   * @param templateTtl  how long a template is used, in milliseconds, or 0 to use it until it is dropped
+   */
+  protected LineageTemplateCache( int maxTemplates, long templateTtl ) {
+    this.maxTemplates = Math.max( 1, maxTemplates );
+    this.templateTtl = templateTtl;
+    this.templates = new LinkedHashMap<String, Template>( 16, 0.75f, true ) {
+      @Override
+      protected boolean removeEldestEntry( Map.Entry<String, Template> eldest ) {
+        return size() > LineageTemplateCache.this.maxTemplates;
+      }
+    };
+  }
+
+  public static LineageTemplateCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns the key of the template of a document
+   *
+   * @param path      the path of the document
+   * @param meta      the transformation or job
+   * @param space     the variables the document is run with
+   * @param variables the names of the variables the document uses
+   * @return the key, or null if the document cannot be hashed and has no template
+   */
+  public static String getKey( String path, XMLInterface meta, VariableSpace space, List<String> variables ) {
+    String hash = DocumentFingerprintStore.hash( meta );
+    if ( hash == null ) {
+      return null;
+    }
+    StringBuilder values = new StringBuilder();
+    if ( variables != null && space != null ) {
+      List<String> names = new ArrayList<String>( variables );
+      Collections.sort( names );
+      for ( String name : names ) {
+        values.append( name ).append( '=' ).append( space.getVariable( name ) ).append( '\n' );
+      }
+    }
+    return path + "\n" + hash + "\n" + DocumentFingerprintStore.hash( values.toString() );
+  }
+
+  /**
+   * Returns what adds the design-time lineage of a document to the graph of an execution: the replay of its template
+   * if there is one, the analysis of the document otherwise. The analysis keeps a template for the next executions.
+   *
+   * @param analyzer the analyzer of the document
+   * @param document the document
+   * @param builder  the builder of the graph of the execution
+   * @param key      the key of the template of the document, or null if it has none
+   * @return the runnable to run
+   */
+  public Runnable getAnalyzerRunner( IDocumentAnalyzer analyzer, IDocument document, final IMetaverseBuilder builder,
+                                     final String key ) {
+    final Template template = get( key );
+    if ( template != null ) {
+      hits.incrementAndGet();
+      return new Runnable() {
+        @Override
+        public void run() {
+          template.replay( builder );
+        }
+      };
+    }
+    misses.incrementAndGet();
+    if ( key == null ) {
+      analyzer.setMetaverseBuilder( builder );
+      return MetaverseUtil.getAnalyzerRunner( analyzer, document );
+    }
+    final IncrementalTransAnalysis.StepRecorder recorder = new IncrementalTransAnalysis.StepRecorder( builder );
+    analyzer.setMetaverseBuilder( recorder );
+    final Runnable analyzerRunner = MetaverseUtil.getAnalyzerRunner( analyzer, document );
+    return new Runnable() {
+      @Override
+      public void run() {
+        analyzerRunner.run();
+        if ( recorder.isReplayable() ) {
+          put( key, new Template( recorder.getNodes(), recorder.getLinks() ) );
+        }
+      }
+    };
+  }
+
+  /**
+   * @param key the key of the template
+   * @return the template, or null if there is none or it is too old
+   */
+  public Template get( String key ) {
+    if ( key == null ) {
+      return null;
+    }
+    synchronized ( templates ) {
+      Template template = templates.get( key );
+      if ( template != null && templateTtl > 0 && System.currentTimeMillis() - template.created >= templateTtl ) {
+        templates.remove( key );
+        template = null;
+      }
+      return template;
+    }
+  }
+
+  /**
+   * Keeps a template
+   *
+   * @param key      the key of the template
+   * @param template the template
+   */
+  public void put( String key, Template template ) {
+    if ( key != null && template != null ) {
+      synchronized ( templates ) {
+        templates.put( key, template );
+      }
+    }
+  }
+
+  /**
+   * Drops all of the templates
+   */
+  public void clear() {
+    synchronized ( templates ) {
+      templates.clear();
+    }
+  }
+
+  public int size() {
+    synchronized ( templates ) {
+      return templates.size();
+    }
+  }
+
+  public int getMaxTemplates() {
+    return maxTemplates;
+  }
+
+  public long getTemplateTtl() {
+    return templateTtl;
+  }
+
+  /**
+   * @return the number of executions whose design-time lineage was replayed
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @return the number of executions whose document was analyzed
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * What the analysis of a document added to the graph
+   */
+  public static class Template {
+    private final List<IMetaverseNode> nodes;
+    private final List<IMetaverseLink> links;
+    private final long created = System.currentTimeMillis();
+
+    public Template( List<IMetaverseNode> nodes, List<IMetaverseLink> links ) {
+      this.nodes = nodes;
+      this.links = links;
+    }
+
+    /**
+     * Adds what was recorded to the builder of an execution
+     *
+     * @param builder the builder
+     */
+    public void replay( IMetaverseBuilder builder ) {
+      builder.addAll( nodes, links );
+    }
+
+    public List<IMetaverseNode> getNodes() {
+      return Collections.unmodifiableList( nodes );
+    }
+
+    public List<IMetaverseLink> getLinks() {
+      return Collections.unmodifiableList( links );
+    }
+  }
+}
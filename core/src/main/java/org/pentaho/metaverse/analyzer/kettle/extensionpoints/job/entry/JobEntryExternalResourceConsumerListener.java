@@ -35,13 +35,12 @@ import org.pentaho.metaverse.api.analyzer.kettle.jobentry.IJobEntryExternalResou
 import org.pentaho.metaverse.api.analyzer.kettle.jobentry.IJobEntryExternalResourceConsumerProvider;
 import org.pentaho.metaverse.api.model.IExecutionProfile;
 import org.pentaho.metaverse.api.model.IExternalResourceInfo;
+import org.pentaho.metaverse.impl.model.ExternalResourceAccumulator;
 import org.pentaho.metaverse.util.MetaverseBeanUtil;
 
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 @ExtensionPoint(
@@ -113,15 +112,8 @@ public class JobEntryExternalResourceConsumerListener implements ExtensionPointI
       IExecutionProfile executionProfile =
         JobLineageHolderMap.getInstance().getLineageHolder( jobEntry.getParentJob() ).getExecutionProfile();
       if ( executionProfile != null ) {
-        String jobEntryName = jobEntry.getName();
-        Map<String, List<IExternalResourceInfo>> resourceMap =
-          executionProfile.getExecutionData().getExternalResources();
-        List<IExternalResourceInfo> externalResources = resourceMap.get( jobEntryName );
-        if ( externalResources == null ) {
-          externalResources = new LinkedList<IExternalResourceInfo>();
-        }
-        externalResources.addAll( resources );
-        resourceMap.put( jobEntryName, externalResources );
+        ExternalResourceAccumulator.forStep(
+          executionProfile.getExecutionData().getExternalResources(), jobEntry.getName() ).addAll( resources );
       }
     }
   }
@@ -29,9 +29,12 @@ import org.pentaho.di.core.listeners.ContentChangedListener;
 import org.pentaho.di.core.logging.LogChannelInterface;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.metaverse.api.MetaverseException;
+import org.pentaho.metaverse.graph.LineageGraphUpdateScheduler;
 
 /**
- * An extension point to maintain a lineage graph for an active transformation
+ * An extension point to maintain a lineage graph for an active transformation. A burst of changes (dragging a step
+ * around, say) results in one update of the graph, which only analyzes the steps that changed and the steps downstream
+ * of them.
  */
 @ExtensionPoint(
   description = "Transformation Lineage Graph creator",
@@ -64,7 +67,7 @@ public class TransChangedExtensionPoint implements ExtensionPointInterface, Cont
    */
   @Override
   public void contentChanged( Object object ) {
-    updateLineage( object );
+    scheduleLineageUpdate( object );
   }
 
   /**
@@ -74,14 +77,34 @@ public class TransChangedExtensionPoint implements ExtensionPointInterface, Cont
    */
   @Override
   public void contentSafe( Object object ) {
-    updateLineage( object );
+    scheduleLineageUpdate( object );
+  }
+
+  /**
+   * Schedules an update of the lineage graph of the transformation, replacing the update that is still waiting for it
+   *
+   * @param object the changed transformation
+   */
+  protected void scheduleLineageUpdate( final Object object ) {
+    if ( object != null && object instanceof TransMeta ) {
+      getUpdateScheduler().schedule( object, new Runnable() {
+        @Override
+        public void run() {
+          updateLineage( object );
+        }
+      } );
+    }
+  }
+
+  protected LineageGraphUpdateScheduler getUpdateScheduler() {
+    return LineageGraphUpdateScheduler.getInstance();
   }
 
   protected void updateLineage( Object object ) {
     if ( object != null && object instanceof TransMeta ) {
       try {
         TransMeta transMeta = (TransMeta) object;
-        TransExtensionPointUtil.addLineageGraph( transMeta );
+        TransExtensionPointUtil.addLineageGraph( transMeta, true );
       } catch ( MetaverseException me ) {
         // Nothing we can do here
       }
@@ -27,6 +27,7 @@ import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
 import org.pentaho.di.core.KettleClientEnvironment;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.dictionary.DictionaryConst;
+import org.pentaho.metaverse.analyzer.kettle.IncrementalTransAnalysis;
 import org.pentaho.metaverse.api.IDocument;
 import org.pentaho.metaverse.api.IMetaverseBuilder;
 import org.pentaho.metaverse.api.IMetaverseNode;
@@ -46,10 +47,25 @@ import java.net.URLConnection;
 public class TransExtensionPointUtil {
 
   public static void addLineageGraph( final TransMeta transMeta ) throws MetaverseException {
+    addLineageGraph( transMeta, false );
+  }
+
+  /**
+   * Analyzes the transformation and puts the lineage graph in the {@link org.pentaho.metaverse.graph.LineageGraphMap}
+   *
+   * @param transMeta   the transformation
+   * @param incremental true to only analyze the steps that changed since the transformation was last analyzed
+   *                    incrementally (and the steps downstream of them)
+   * @throws MetaverseException if the transformation is null
+   */
+  public static void addLineageGraph( final TransMeta transMeta, boolean incremental ) throws MetaverseException {
 
     if ( transMeta == null ) {
       throw new MetaverseException( Messages.getString( "ERROR.Document.IsNull" ) );
     }
+    if ( incremental ) {
+      IncrementalTransAnalysis.enable( transMeta );
+    }
 
     // Get the "natural" filename (repo-based if in repository, filesystem-based otherwise)
     String filename = getFilename( transMeta );
@@ -35,6 +35,7 @@ import org.pentaho.di.trans.TransListener;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.dictionary.DictionaryConst;
 import org.pentaho.metaverse.analyzer.kettle.extensionpoints.BaseRuntimeExtensionPoint;
+import org.pentaho.metaverse.analyzer.kettle.extensionpoints.LineageTemplateCache;
 import org.pentaho.metaverse.api.AnalysisContext;
 import org.pentaho.metaverse.api.IDocument;
 import org.pentaho.metaverse.api.IDocumentAnalyzer;
@@ -48,12 +49,13 @@ import org.pentaho.metaverse.api.model.IExecutionData;
 import org.pentaho.metaverse.api.model.IExecutionProfile;
 import org.pentaho.metaverse.api.model.IParamInfo;
 import org.pentaho.metaverse.api.model.LineageHolder;
+import org.pentaho.metaverse.impl.AnalysisExecutor;
+import org.pentaho.metaverse.impl.LineageOutputPipeline;
 import org.pentaho.metaverse.impl.MetaverseCompletionService;
 import org.pentaho.metaverse.impl.model.ExecutionData;
 import org.pentaho.metaverse.impl.model.ExecutionProfile;
 import org.pentaho.metaverse.impl.model.ParamInfo;
 import org.pentaho.metaverse.messages.Messages;
-import org.pentaho.metaverse.util.MetaverseUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -66,6 +68,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * An extension point to gather runtime data for an execution of a transformation into an ExecutionProfile object
@@ -123,10 +126,10 @@ public class TransformationRuntimeExtensionPoint extends BaseRuntimeExtensionPoi
 
     IMetaverseBuilder builder = TransLineageHolderMap.getInstance().getMetaverseBuilder( trans );
 
-    // Analyze the current transformation
-    if ( documentAnalyzer != null ) {
-      documentAnalyzer.setMetaverseBuilder( builder );
-
+    // Analyze the current transformation, unless its graph is deferred
+    Future lineageTask = null;
+    boolean graphDeferred = false;
+    if ( documentAnalyzer != null && !isProfileOnly() ) {
       // Create a document for the Trans
       final String clientName = executionProfile.getExecutionEngine().getName();
       final INamespace namespace = new Namespace( clientName );
@@ -158,15 +161,27 @@ public class TransformationRuntimeExtensionPoint extends BaseRuntimeExtensionPoi
       metaverseDocument.setProperty( DictionaryConst.PROPERTY_PATH, normalizedPath );
       metaverseDocument.setProperty( DictionaryConst.PROPERTY_NAMESPACE, namespace.getNamespaceId() );
 
-      Runnable analyzerRunner = MetaverseUtil.getAnalyzerRunner( documentAnalyzer, metaverseDocument );
+      // An unchanged transformation run with the same variables gets the lineage of its previous analysis replayed
+      String templateKey = LineageTemplateCache.getKey( id, transMeta, trans, transMeta.getUsedVariables() );
+      Runnable analyzerRunner = LineageTemplateCache.getInstance().getAnalyzerRunner( documentAnalyzer,
+        metaverseDocument, builder, templateKey );
 
-      MetaverseCompletionService.getInstance().submit( analyzerRunner, id );
+      try {
+        lineageTask =
+          MetaverseCompletionService.getInstance().submit( analyzerRunner, id, AnalysisExecutor.PRIORITY_RUNTIME );
+      } catch ( RejectedExecutionException e ) {
+        // the transformation does not wait for room in the analysis queue, its graph is built later
+        log.warn( Messages.getString( "WARNING.Runtime.GraphDeferred", id ) );
+        graphDeferred = true;
+      }
     }
 
     // Save the lineage objects for later
     LineageHolder holder = TransLineageHolderMap.getInstance().getLineageHolder( trans );
     holder.setExecutionProfile( executionProfile );
     holder.setMetaverseBuilder( builder );
+    holder.setLineageTask( lineageTask );
+    holder.setGraphDeferred( graphDeferred );
 
 
   }
@@ -279,25 +294,41 @@ public class TransformationRuntimeExtensionPoint extends BaseRuntimeExtensionPoi
     }
   }
 
-  protected void createLineGraphAsync( Trans trans ) {
-    // Need to spin this processing off into its own thread, so we don't hold up normal PDI processing
-    Thread lineageWorker = new Thread( new Runnable() {
+  protected void createLineGraphAsync( final Trans trans ) {
+    // Hand this processing off to the lineage output pipeline, so we don't hold up normal PDI processing
+    LineageOutputPipeline.getInstance().submit( trans.getName(), new Runnable() {
 
       @Override
       public void run() {
         createLineGraph( trans );
       }
-    } );
+    }, new Runnable() {
 
-    lineageWorker.start();
+      @Override
+      public void run() {
+        createLineGraph( trans, false );
+      }
+    } );
   }
 
   protected void createLineGraph( final Trans trans ) {
+    createLineGraph( trans, !isProfileOnly() );
+  }
+
+  /**
+   * Writes the execution profile of the transformation and, if asked to, its lineage graph
+   *
+   * @param trans        the transformation that finished
+   * @param includeGraph whether to write the lineage graph, or to queue it for the deferred lineage analyzer
+   */
+  protected void createLineGraph( final Trans trans, boolean includeGraph ) {
     try {
       // Get the current execution profile for this transformation
       LineageHolder holder = TransLineageHolderMap.getInstance().getLineageHolder( trans );
       Future lineageTask = holder.getLineageTask();
-      if ( lineageTask != null ) {
+      // the graph of an execution that could not be analyzed while it ran is built later
+      includeGraph = includeGraph && !holder.isGraphDeferred();
+      if ( includeGraph && lineageTask != null ) {
         try {
           lineageTask.get();
         } catch ( InterruptedException e ) {
@@ -347,11 +378,17 @@ public class TransformationRuntimeExtensionPoint extends BaseRuntimeExtensionPoi
         Trans parentTrans = trans.getParentTrans();
 
         if ( parentJob == null && parentTrans == null ) {
-          // Add the execution profile information to the lineage graph
-          addRuntimeLineageInfo( holder );
-
-          if ( lineageWriter != null && !"none".equals( lineageWriter.getOutputStrategy() ) ) {
-            lineageWriter.outputLineageGraph( holder );
+          if ( includeGraph ) {
+            // Add the execution profile information to the lineage graph
+            addRuntimeLineageInfo( holder );
+
+            if ( lineageWriter != null && !"none".equals( lineageWriter.getOutputStrategy() ) ) {
+              lineageWriter.outputLineageGraph( holder );
+            }
+          } else if ( lineageWriter != null && !"none".equals( lineageWriter.getOutputStrategy() ) ) {
+            // The graph is built later by the deferred lineage analyzer: in the profile-only mode, when it could not
+            // be analyzed while the execution ran, or when the lineage output queue was full
+            deferLineageGraph( holder, trans.getTransMeta(), trans );
           }
         }
       } catch ( IOException e ) {
@@ -31,16 +31,19 @@ import org.pentaho.metaverse.analyzer.kettle.extensionpoints.trans.TransLineageH
 import org.pentaho.metaverse.api.analyzer.kettle.step.IStepExternalResourceConsumer;
 import org.pentaho.metaverse.api.model.IExecutionProfile;
 import org.pentaho.metaverse.api.model.IExternalResourceInfo;
+import org.pentaho.metaverse.impl.model.ExternalResourceAccumulator;
 
 import java.util.Collection;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
 
+/**
+ * Records the external resources a data-driven step uses for each row it reads. The resources are added to the
+ * accumulator of the step in its execution profile, which keeps each distinct one once.
+ */
 public class StepExternalConsumerRowListener extends RowAdapter {
 
   private final IStepExternalResourceConsumer stepExternalResourceConsumer;
   private final StepInterface step;
+  private ExternalResourceAccumulator accumulator;
 
   public StepExternalConsumerRowListener(
     IStepExternalResourceConsumer stepExternalResourceConsumer, StepInterface step ) {
@@ -64,19 +67,27 @@ public class StepExternalConsumerRowListener extends RowAdapter {
       stepExternalResourceConsumer.getResourcesFromRow( (BaseStep) step, rowMeta, row );
     if ( resources != null ) {
       // Add the resources to the execution profile
+      ExternalResourceAccumulator stepResources = getAccumulator();
+      if ( stepResources != null ) {
+        stepResources.addAll( resources );
+      }
+    }
+  }
+
+  /**
+   * Gets the accumulator of the resources of the step from the execution profile, the first time it is needed
+   *
+   * @return the accumulator, or null if there is no execution profile
+   */
+  protected ExternalResourceAccumulator getAccumulator() {
+    if ( accumulator == null ) {
       IExecutionProfile executionProfile =
         TransLineageHolderMap.getInstance().getLineageHolder( step.getTrans() ).getExecutionProfile();
       if ( executionProfile != null ) {
-        String stepName = step.getStepname();
-        Map<String, List<IExternalResourceInfo>> resourceMap =
-          executionProfile.getExecutionData().getExternalResources();
-        List<IExternalResourceInfo> externalResources = resourceMap.get( stepName );
-        if ( externalResources == null ) {
-          externalResources = new LinkedList<IExternalResourceInfo>();
-        }
-        externalResources.addAll( resources );
-        resourceMap.put( stepName, externalResources );
+        accumulator = ExternalResourceAccumulator.forStep(
+          executionProfile.getExecutionData().getExternalResources(), step.getStepname() );
       }
     }
+    return accumulator;
   }
 }
@@ -35,13 +35,12 @@ import org.pentaho.metaverse.api.analyzer.kettle.step.IStepExternalResourceConsu
 import org.pentaho.metaverse.api.analyzer.kettle.step.IStepExternalResourceConsumerProvider;
 import org.pentaho.metaverse.api.model.IExecutionProfile;
 import org.pentaho.metaverse.api.model.IExternalResourceInfo;
+import org.pentaho.metaverse.impl.model.ExternalResourceAccumulator;
 import org.pentaho.metaverse.util.MetaverseBeanUtil;
 
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 @ExtensionPoint(
@@ -106,15 +105,9 @@ public class StepExternalResourceConsumerListener implements ExtensionPointInter
       IExecutionProfile executionProfile =
         TransLineageHolderMap.getInstance().getLineageHolder( step.getTrans() ).getExecutionProfile();
       if ( executionProfile != null ) {
-        String stepName = step.getStepname();
-        Map<String, List<IExternalResourceInfo>> resourceMap =
-          executionProfile.getExecutionData().getExternalResources();
-        List<IExternalResourceInfo> externalResources = resourceMap.get( stepName );
-        if ( externalResources == null ) {
-          externalResources = new LinkedList<IExternalResourceInfo>();
-        }
-        externalResources.addAll( resources );
-        resourceMap.put( stepName, externalResources );
+        // every copy of the step reports the same resources, they are kept once
+        ExternalResourceAccumulator.forStep(
+          executionProfile.getExecutionData().getExternalResources(), step.getStepname() ).addAll( resources );
       }
     }
   }
@@ -59,4 +59,8 @@ public class GenericJobEntryMetaAnalyzer extends JobEntryAnalyzer<JobEntryInterf
 
   }
 
+  @Override
+  protected JobEntryAnalyzer<JobEntryInterface> newInstance() {
+    return new GenericJobEntryMetaAnalyzer();
+  }
 }
@@ -23,7 +23,10 @@
 package org.pentaho.metaverse.analyzer.kettle.jobentry;
 
 import org.pentaho.di.job.entry.JobEntryInterface;
+import org.pentaho.metaverse.analyzer.kettle.AnalyzerResolutionCache;
+import org.pentaho.metaverse.analyzer.kettle.AnalyzerResolutionCache.AnalyzerTypeMapSource;
 import org.pentaho.metaverse.api.analyzer.kettle.BaseKettleMetaverseComponent;
+import org.pentaho.metaverse.api.analyzer.kettle.PluginNameCache;
 import org.pentaho.metaverse.api.analyzer.kettle.jobentry.IJobEntryAnalyzer;
 import org.pentaho.metaverse.api.analyzer.kettle.jobentry.IJobEntryAnalyzerProvider;
 
@@ -51,6 +54,17 @@ public class JobEntryAnalyzerProvider extends BaseKettleMetaverseComponent imple
   protected Map<Class<? extends JobEntryInterface>, Set<IJobEntryAnalyzer>> analyzerTypeMap =
       new HashMap<Class<? extends JobEntryInterface>, Set<IJobEntryAnalyzer>>();
 
+  /**
+   * The analyzers resolved for each job entry class, invalidated whenever the analyzer type map changes
+   */
+  protected final AnalyzerResolutionCache<IJobEntryAnalyzer> resolvedAnalyzers =
+      new AnalyzerResolutionCache<IJobEntryAnalyzer>( this, new AnalyzerTypeMapSource<IJobEntryAnalyzer>() {
+        @Override
+        public Map<? extends Class<?>, ? extends Collection<IJobEntryAnalyzer>> getAnalyzerTypeMap() {
+          return analyzerTypeMap;
+        }
+      } );
+
   /**
    * Returns all registered step analyzers
    *
@@ -70,11 +84,12 @@ public class JobEntryAnalyzerProvider extends BaseKettleMetaverseComponent imple
   @Override public List<IJobEntryAnalyzer> getAnalyzers( Collection<Class<?>> types ) {
     List<IJobEntryAnalyzer> stepAnalyzers = getAnalyzers();
     if ( types != null ) {
+      if ( types.size() == 1 ) {
+        return resolvedAnalyzers.getAnalyzers( types.iterator().next() );
+      }
       final Set<IJobEntryAnalyzer> specificStepAnalyzers = new HashSet<IJobEntryAnalyzer>();
       for ( Class<?> clazz : types ) {
-        if ( analyzerTypeMap.containsKey( clazz ) ) {
-          specificStepAnalyzers.addAll( analyzerTypeMap.get( clazz ) );
-        }
+        specificStepAnalyzers.addAll( resolvedAnalyzers.getAnalyzers( clazz ) );
       }
       stepAnalyzers = new ArrayList<IJobEntryAnalyzer>( specificStepAnalyzers );
     }
@@ -86,7 +101,7 @@ public class JobEntryAnalyzerProvider extends BaseKettleMetaverseComponent imple
    *
    * @param analyzers
    */
-  public void setJobEntryAnalyzers( List<IJobEntryAnalyzer> analyzers ) {
+  public synchronized void setJobEntryAnalyzers( List<IJobEntryAnalyzer> analyzers ) {
     jobEntryAnalyzers = analyzers;
     loadAnalyzerTypeMap();
   }
@@ -94,17 +109,27 @@ public class JobEntryAnalyzerProvider extends BaseKettleMetaverseComponent imple
   /**
    * Loads up a Map of document types to supporting IJobEntryAnalyzer(s)
    */
-  protected void loadAnalyzerTypeMap() {
+  protected synchronized void loadAnalyzerTypeMap() {
     analyzerTypeMap = new HashMap<Class<? extends JobEntryInterface>, Set<IJobEntryAnalyzer>>();
     if ( jobEntryAnalyzers != null ) {
       for ( IJobEntryAnalyzer analyzer : jobEntryAnalyzers ) {
         addAnalyzer( analyzer );
       }
     }
+    invalidateResolvedAnalyzers();
+  }
+
+  /**
+   * Drops the analyzers resolved for each job entry class, so that they are resolved again from the analyzer type map.
+   * It also drops the cached plugin names, a new analyzer often comes with a newly deployed plugin.
+   */
+  public void invalidateResolvedAnalyzers() {
+    resolvedAnalyzers.invalidate();
+    PluginNameCache.clear();
   }
 
   @Override
-  public void addAnalyzer( IJobEntryAnalyzer analyzer ) {
+  public synchronized void addAnalyzer( IJobEntryAnalyzer analyzer ) {
     if ( !jobEntryAnalyzers.contains( analyzer ) ) {
       jobEntryAnalyzers.add( analyzer );
     }
@@ -124,10 +149,11 @@ public class JobEntryAnalyzerProvider extends BaseKettleMetaverseComponent imple
         analyzerTypeMap.put( type, analyzerSet );
       }
     }
+    invalidateResolvedAnalyzers();
   }
 
   @Override
-  public void removeAnalyzer( IJobEntryAnalyzer analyzer ) {
+  public synchronized void removeAnalyzer( IJobEntryAnalyzer analyzer ) {
     if ( analyzer != null ) {
       if ( jobEntryAnalyzers.contains( analyzer ) ) {
         try {
@@ -151,6 +177,7 @@ public class JobEntryAnalyzerProvider extends BaseKettleMetaverseComponent imple
         }
       }
     }
+    invalidateResolvedAnalyzers();
   }
 
 }
@@ -25,12 +25,14 @@ package org.pentaho.metaverse.analyzer.kettle.jobentry.job;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleMissingPluginsException;
 import org.pentaho.di.core.exception.KettleXMLException;
+import org.pentaho.di.core.variables.VariableSpace;
 import org.pentaho.di.job.JobMeta;
 import org.pentaho.di.job.entries.job.JobEntryJob;
 import org.pentaho.di.job.entry.JobEntryInterface;
 import org.pentaho.di.repository.Repository;
 import org.pentaho.di.repository.RepositoryDirectoryInterface;
 import org.pentaho.dictionary.DictionaryConst;
+import org.pentaho.metaverse.analyzer.kettle.ParsedMetaCache;
 import org.pentaho.metaverse.api.IComponentDescriptor;
 import org.pentaho.metaverse.api.IMetaverseNode;
 import org.pentaho.metaverse.api.MetaverseAnalyzerException;
@@ -44,6 +46,7 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
  * This class provides an analyzer for the "Execute Job" job entry
@@ -61,20 +64,25 @@ public class JobJobEntryAnalyzer extends JobEntryAnalyzer<JobEntryJob> {
 
   @Override
   protected void customAnalyze( JobEntryJob entry, IMetaverseNode rootNode ) throws MetaverseAnalyzerException {
-    JobMeta subJobMeta = null;
     JobMeta parentJobMeta = entry.getParentJob().getJobMeta();
     // For some reason the JobMeta's variables have been reset by now, so re-activate them
-    parentJobMeta.activateParameters();
+    VariableSpace variables = getEntryVariables( parentJobMeta );
 
+    JobMeta subJobMeta = null;
     Repository repo = parentJobMeta.getRepository();
     String jobPath = null;
     switch ( entry.getSpecificationMethod() ) {
       case FILENAME:
         try {
-          jobPath = parentJobMeta.environmentSubstitute( entry.getFilename() );
-          String normalized = KettleAnalyzerUtil.normalizeFilePath( jobPath );
+          jobPath = variables.environmentSubstitute( entry.getFilename() );
+          final String normalized = KettleAnalyzerUtil.normalizeFilePath( jobPath );
 
-          subJobMeta = getSubJobMeta( normalized );
+          subJobMeta = ParsedMetaCache.getInstance().getFileMeta( normalized, JobMeta.class, new Callable<JobMeta>() {
+            @Override
+            public JobMeta call() throws Exception {
+              return getSubJobMeta( normalized );
+            }
+          } );
           jobPath = normalized;
 
         } catch ( Exception e ) {
@@ -83,11 +91,11 @@ public class JobJobEntryAnalyzer extends JobEntryAnalyzer<JobEntryJob> {
         break;
       case REPOSITORY_BY_NAME:
         if ( repo != null ) {
-          String dir = parentJobMeta.environmentSubstitute( entry.getDirectory() );
-          String file = parentJobMeta.environmentSubstitute( entry.getJobName() );
+          String dir = variables.environmentSubstitute( entry.getDirectory() );
+          String file = variables.environmentSubstitute( entry.getJobName() );
           try {
             RepositoryDirectoryInterface rdi = repo.findDirectory( dir );
-            subJobMeta = repo.loadJob( file, rdi, null, null );
+            subJobMeta = ParsedMetaCache.getInstance().loadJob( repo, file, rdi );
             String filename = subJobMeta.getFilename() == null ? subJobMeta.toString() : subJobMeta.getFilename();
             jobPath = filename + "." + subJobMeta.getDefaultExtension();
           } catch ( KettleException e ) {
@@ -100,7 +108,7 @@ public class JobJobEntryAnalyzer extends JobEntryAnalyzer<JobEntryJob> {
       case REPOSITORY_BY_REFERENCE:
         if ( repo != null ) {
           try {
-            subJobMeta = repo.loadJob( entry.getJobObjectId(), null );
+            subJobMeta = ParsedMetaCache.getInstance().loadJob( repo, entry.getJobObjectId() );
             String filename = subJobMeta.getFilename() == null ? subJobMeta.toString() : subJobMeta.getFilename();
             jobPath = filename + "." + subJobMeta.getDefaultExtension();
           } catch ( KettleException e ) {
@@ -131,4 +139,9 @@ public class JobJobEntryAnalyzer extends JobEntryAnalyzer<JobEntryJob> {
     FileInputStream fis = new FileInputStream( filePath );
     return new JobMeta( fis, null, null );
   }
+
+  @Override
+  protected JobEntryAnalyzer<JobEntryJob> newInstance() {
+    return new JobJobEntryAnalyzer();
+  }
 }
@@ -25,6 +25,7 @@ package org.pentaho.metaverse.analyzer.kettle.jobentry.transjob;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleMissingPluginsException;
 import org.pentaho.di.core.exception.KettleXMLException;
+import org.pentaho.di.core.variables.VariableSpace;
 import org.pentaho.di.job.JobMeta;
 import org.pentaho.di.job.entries.trans.JobEntryTrans;
 import org.pentaho.di.job.entry.JobEntryInterface;
@@ -32,6 +33,7 @@ import org.pentaho.di.repository.Repository;
 import org.pentaho.di.repository.RepositoryDirectoryInterface;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.dictionary.DictionaryConst;
+import org.pentaho.metaverse.analyzer.kettle.ParsedMetaCache;
 import org.pentaho.metaverse.api.IComponentDescriptor;
 import org.pentaho.metaverse.api.IMetaverseNode;
 import org.pentaho.metaverse.api.MetaverseAnalyzerException;
@@ -45,6 +47,7 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
  * This class provides an analyzer for the "Execute Transformation" job entry
@@ -62,20 +65,26 @@ public class TransJobEntryAnalyzer extends JobEntryAnalyzer<JobEntryTrans> {
 
   @Override
   protected void customAnalyze( JobEntryTrans entry, IMetaverseNode rootNode ) throws MetaverseAnalyzerException {
-    TransMeta subTransMeta = null;
     JobMeta parentJobMeta = entry.getParentJob().getJobMeta();
     // For some reason the JobMeta's variables have been reset by now, so re-activate them
-    parentJobMeta.activateParameters();
+    VariableSpace variables = getEntryVariables( parentJobMeta );
 
+    TransMeta subTransMeta = null;
     Repository repo = parentJobMeta.getRepository();
     String transPath = null;
     switch ( entry.getSpecificationMethod() ) {
       case FILENAME:
         try {
-          transPath = parentJobMeta.environmentSubstitute( entry.getFilename() );
-          String normalized = KettleAnalyzerUtil.normalizeFilePath( transPath );
+          transPath = variables.environmentSubstitute( entry.getFilename() );
+          final String normalized = KettleAnalyzerUtil.normalizeFilePath( transPath );
 
-          subTransMeta = getSubTransMeta( normalized );
+          subTransMeta = ParsedMetaCache.getInstance().getFileMeta( normalized, TransMeta.class,
+            new Callable<TransMeta>() {
+              @Override
+              public TransMeta call() throws Exception {
+                return getSubTransMeta( normalized );
+              }
+            } );
           transPath = normalized;
 
         } catch ( Exception e ) {
@@ -84,11 +93,11 @@ public class TransJobEntryAnalyzer extends JobEntryAnalyzer<JobEntryTrans> {
         break;
       case REPOSITORY_BY_NAME:
         if ( repo != null ) {
-          String dir = parentJobMeta.environmentSubstitute( entry.getDirectory() );
-          String file = parentJobMeta.environmentSubstitute( entry.getTransname() );
+          String dir = variables.environmentSubstitute( entry.getDirectory() );
+          String file = variables.environmentSubstitute( entry.getTransname() );
           try {
             RepositoryDirectoryInterface rdi = repo.findDirectory( dir );
-            subTransMeta = repo.loadTransformation( file, rdi, null, true, null );
+            subTransMeta = ParsedMetaCache.getInstance().loadTransformation( repo, file, rdi );
             transPath = subTransMeta.getPathAndName() + "." + subTransMeta.getDefaultExtension();
           } catch ( KettleException e ) {
             throw new MetaverseAnalyzerException( "Sub transformation can not be found in repository - " + file, e );
@@ -100,7 +109,7 @@ public class TransJobEntryAnalyzer extends JobEntryAnalyzer<JobEntryTrans> {
       case REPOSITORY_BY_REFERENCE:
         if ( repo != null ) {
           try {
-            subTransMeta = repo.loadTransformation( entry.getTransObjectId(), null );
+            subTransMeta = ParsedMetaCache.getInstance().loadTransformation( repo, entry.getTransObjectId() );
             transPath = subTransMeta.getPathAndName() + "." + subTransMeta.getDefaultExtension();
           } catch ( KettleException e ) {
             throw new MetaverseAnalyzerException( "Sub transformation can not be found by reference - "
@@ -130,4 +139,9 @@ public class TransJobEntryAnalyzer extends JobEntryAnalyzer<JobEntryTrans> {
     FileInputStream fis = new FileInputStream( filePath );
     return new TransMeta( fis, null, true, null, null );
   }
+
+  @Override
+  protected JobEntryAnalyzer<JobEntryTrans> newInstance() {
+    return new TransJobEntryAnalyzer();
+  }
 }
@@ -49,4 +49,9 @@ public class GenericStepMetaAnalyzer extends StepAnalyzer<BaseStepMeta> {
   protected void customAnalyze( BaseStepMeta meta, IMetaverseNode rootNode ) {
     // nothing custom to do here since it's the catch-all step analyzer
   }
+
+  @Override
+  protected StepAnalyzer<BaseStepMeta> newInstance() {
+    return new GenericStepMetaAnalyzer();
+  }
 }
@@ -23,7 +23,10 @@
 package org.pentaho.metaverse.analyzer.kettle.step;
 
 import org.pentaho.di.trans.step.BaseStepMeta;
+import org.pentaho.metaverse.analyzer.kettle.AnalyzerResolutionCache;
+import org.pentaho.metaverse.analyzer.kettle.AnalyzerResolutionCache.AnalyzerTypeMapSource;
 import org.pentaho.metaverse.api.analyzer.kettle.BaseKettleMetaverseComponent;
+import org.pentaho.metaverse.api.analyzer.kettle.PluginNameCache;
 import org.pentaho.metaverse.api.analyzer.kettle.step.IStepAnalyzer;
 import org.pentaho.metaverse.api.analyzer.kettle.step.IStepAnalyzerProvider;
 
@@ -50,6 +53,17 @@ public class StepAnalyzerProvider extends BaseKettleMetaverseComponent implement
    */
   protected Map<Class<? extends BaseStepMeta>, Set<IStepAnalyzer>> analyzerTypeMap = new HashMap<>();
 
+  /**
+   * The analyzers resolved for each step meta class, invalidated whenever the analyzer type map changes
+   */
+  protected final AnalyzerResolutionCache<IStepAnalyzer> resolvedAnalyzers =
+    new AnalyzerResolutionCache<>( this, new AnalyzerTypeMapSource<IStepAnalyzer>() {
+      @Override
+      public Map<? extends Class<?>, ? extends Collection<IStepAnalyzer>> getAnalyzerTypeMap() {
+        return analyzerTypeMap;
+      }
+    } );
+
   /**
    * Returns all registered step analyzers
    *
@@ -61,7 +75,9 @@ public class StepAnalyzerProvider extends BaseKettleMetaverseComponent implement
   }
 
   /**
-   * Returns the set of analyzers for step with the specified classes
+   * Returns the set of analyzers for step with the specified classes. A class that has no analyzers of its own gets
+   * the analyzers of its nearest superclass (or interface) that has some. The analyzers of a class are resolved once
+   * and shared until the registered analyzers change.
    *
    * @param types a set of classes corresponding to step for which to retrieve the analyzers
    * @return a set of analyzers that can process the specified step
@@ -70,11 +86,12 @@ public class StepAnalyzerProvider extends BaseKettleMetaverseComponent implement
   public List<IStepAnalyzer> getAnalyzers( Collection<Class<?>> types ) {
     List<IStepAnalyzer> stepAnalyzers = getAnalyzers();
     if ( types != null ) {
+      if ( types.size() == 1 ) {
+        return resolvedAnalyzers.getAnalyzers( types.iterator().next() );
+      }
       final Set<IStepAnalyzer> specificStepAnalyzers = new HashSet<>();
       for ( Class<?> clazz : types ) {
-        if ( analyzerTypeMap.containsKey( clazz ) ) {
-          specificStepAnalyzers.addAll( analyzerTypeMap.get( clazz ) );
-        }
+        specificStepAnalyzers.addAll( resolvedAnalyzers.getAnalyzers( clazz ) );
       }
       stepAnalyzers = new ArrayList<>( specificStepAnalyzers );
     }
@@ -86,7 +103,7 @@ public class StepAnalyzerProvider extends BaseKettleMetaverseComponent implement
    *
    * @param analyzers the list of step analyzers for this object to provide
    */
-  public void setStepAnalyzers( List<IStepAnalyzer> analyzers ) {
+  public synchronized void setStepAnalyzers( List<IStepAnalyzer> analyzers ) {
     stepAnalyzers = analyzers;
     loadAnalyzerTypeMap();
   }
@@ -94,17 +111,27 @@ public class StepAnalyzerProvider extends BaseKettleMetaverseComponent implement
   /**
    * Loads up a Map of document types to supporting IStepAnalyzer(s)
    */
-  protected void loadAnalyzerTypeMap() {
+  protected synchronized void loadAnalyzerTypeMap() {
     analyzerTypeMap = new HashMap<>();
     if ( stepAnalyzers != null ) {
       for ( IStepAnalyzer analyzer : stepAnalyzers ) {
         addAnalyzer( analyzer );
       }
     }
+    invalidateResolvedAnalyzers();
+  }
+
+  /**
+   * Drops the analyzers resolved for each step class, so that they are resolved again from the analyzer type map. It
+   * also drops the cached plugin names, a new analyzer often comes with a newly deployed plugin.
+   */
+  public void invalidateResolvedAnalyzers() {
+    resolvedAnalyzers.invalidate();
+    PluginNameCache.clear();
   }
 
   @Override
-  public void addAnalyzer( IStepAnalyzer analyzer ) {
+  public synchronized void addAnalyzer( IStepAnalyzer analyzer ) {
     if ( analyzer != null ) {
       if ( !stepAnalyzers.contains( analyzer ) ) {
         stepAnalyzers.add( analyzer );
@@ -126,10 +153,11 @@ public class StepAnalyzerProvider extends BaseKettleMetaverseComponent implement
         }
       }
     }
+    invalidateResolvedAnalyzers();
   }
 
   @Override
-  public void removeAnalyzer( IStepAnalyzer analyzer ) {
+  public synchronized void removeAnalyzer( IStepAnalyzer analyzer ) {
     if ( analyzer != null ) {
       if ( stepAnalyzers != null && stepAnalyzers.contains( analyzer ) ) {
         try {
@@ -154,5 +182,6 @@ public class StepAnalyzerProvider extends BaseKettleMetaverseComponent implement
         }
       }
     }
+    invalidateResolvedAnalyzers();
   }
 }
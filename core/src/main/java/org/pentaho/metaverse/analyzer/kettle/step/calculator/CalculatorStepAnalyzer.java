@@ -124,4 +124,8 @@ public class CalculatorStepAnalyzer extends StepAnalyzer<CalculatorMeta> {
     return changes;
   }
 
+  @Override
+  protected StepAnalyzer<CalculatorMeta> newInstance() {
+    return new CalculatorStepAnalyzer();
+  }
 }
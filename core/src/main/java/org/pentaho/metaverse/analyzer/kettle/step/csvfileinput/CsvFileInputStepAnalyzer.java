@@ -30,6 +30,7 @@ import org.pentaho.metaverse.api.IMetaverseObjectFactory;
 import org.pentaho.metaverse.api.MetaverseException;
 import org.pentaho.metaverse.api.StepField;
 import org.pentaho.metaverse.api.analyzer.kettle.step.ExternalResourceStepAnalyzer;
+import org.pentaho.metaverse.api.analyzer.kettle.step.StepAnalyzer;
 import org.pentaho.metaverse.api.model.IExternalResourceInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -81,4 +82,9 @@ public class CsvFileInputStepAnalyzer extends ExternalResourceStepAnalyzer<CsvIn
   protected void setObjectFactory( IMetaverseObjectFactory factory ) {
     this.metaverseObjectFactory = factory;
   }
+
+  @Override
+  protected StepAnalyzer<CsvInputMeta> newInstance() {
+    return new CsvFileInputStepAnalyzer();
+  }
 }
@@ -31,6 +31,7 @@ import org.pentaho.metaverse.api.IMetaverseObjectFactory;
 import org.pentaho.metaverse.api.MetaverseException;
 import org.pentaho.metaverse.api.StepField;
 import org.pentaho.metaverse.api.analyzer.kettle.step.ExternalResourceStepAnalyzer;
+import org.pentaho.metaverse.api.analyzer.kettle.step.StepAnalyzer;
 import org.pentaho.metaverse.api.model.IExternalResourceInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -101,4 +102,8 @@ public class ExcelOutputStepAnalyzer extends ExternalResourceStepAnalyzer<ExcelO
     this.metaverseObjectFactory = factory;
   }
 
+  @Override
+  protected StepAnalyzer<ExcelOutputMeta> newInstance() {
+    return new ExcelOutputStepAnalyzer();
+  }
 }
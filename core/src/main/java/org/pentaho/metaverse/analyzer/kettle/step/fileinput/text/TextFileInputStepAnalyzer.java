@@ -30,6 +30,7 @@ import org.pentaho.metaverse.api.IMetaverseNode;
 import org.pentaho.metaverse.api.MetaverseException;
 import org.pentaho.metaverse.api.StepField;
 import org.pentaho.metaverse.api.analyzer.kettle.step.ExternalResourceStepAnalyzer;
+import org.pentaho.metaverse.api.analyzer.kettle.step.StepAnalyzer;
 import org.pentaho.metaverse.api.model.IExternalResourceInfo;
 
 import java.util.HashSet;
@@ -84,4 +85,9 @@ public class TextFileInputStepAnalyzer extends ExternalResourceStepAnalyzer<Text
   public boolean isInput() {
     return true;
   }
+
+  @Override
+  protected StepAnalyzer<TextFileInputMeta> newInstance() {
+    return new TextFileInputStepAnalyzer();
+  }
 }
@@ -32,6 +32,7 @@ import org.pentaho.metaverse.api.StepField;
 import org.pentaho.metaverse.api.analyzer.kettle.ComponentDerivationRecord;
 import org.pentaho.metaverse.api.analyzer.kettle.step.StepAnalyzer;
 import org.pentaho.metaverse.api.model.Operation;
+import org.pentaho.metaverse.api.model.OperationsProperty;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,7 +56,8 @@ public class FilterRowsStepAnalyzer extends StepAnalyzer<FilterRowsMeta> {
 
       ComponentDerivationRecord changeRecord = new ComponentDerivationRecord( stepNode.getName(), ChangeType.DATA_FLOW );
       changeRecord.addOperation( operation );
-      stepNode.setProperty( DictionaryConst.PROPERTY_OPERATIONS, changeRecord.toString() );
+      stepNode.setProperty(
+        DictionaryConst.PROPERTY_OPERATIONS, new OperationsProperty( changeRecord.getOperations() ) );
     }
   }
 
@@ -81,4 +83,8 @@ public class FilterRowsStepAnalyzer extends StepAnalyzer<FilterRowsMeta> {
     return supportedSteps;
   }
 
+  @Override
+  protected StepAnalyzer<FilterRowsMeta> newInstance() {
+    return new FilterRowsStepAnalyzer();
+  }
 }
@@ -30,6 +30,7 @@ import org.pentaho.metaverse.api.IMetaverseObjectFactory;
 import org.pentaho.metaverse.api.MetaverseException;
 import org.pentaho.metaverse.api.StepField;
 import org.pentaho.metaverse.api.analyzer.kettle.step.ExternalResourceStepAnalyzer;
+import org.pentaho.metaverse.api.analyzer.kettle.step.StepAnalyzer;
 import org.pentaho.metaverse.api.model.IExternalResourceInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -80,4 +81,9 @@ public class FixedFileInputStepAnalyzer extends ExternalResourceStepAnalyzer<Fix
   protected void setObjectFactory( IMetaverseObjectFactory factory ) {
     this.metaverseObjectFactory = factory;
   }
+
+  @Override
+  protected StepAnalyzer<FixedInputMeta> newInstance() {
+    return new FixedFileInputStepAnalyzer();
+  }
 }
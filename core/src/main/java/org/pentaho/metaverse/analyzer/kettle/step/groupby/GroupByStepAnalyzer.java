@@ -91,4 +91,9 @@ public class GroupByStepAnalyzer extends StepAnalyzer<GroupByMeta> {
     throws MetaverseAnalyzerException {
     // nothing custom to do
   }
+
+  @Override
+  protected StepAnalyzer<GroupByMeta> newInstance() {
+    return new GroupByStepAnalyzer();
+  }
 }
@@ -34,6 +34,7 @@ import org.pentaho.metaverse.api.MetaverseComponentDescriptor;
 import org.pentaho.metaverse.api.MetaverseException;
 import org.pentaho.metaverse.api.StepField;
 import org.pentaho.metaverse.api.analyzer.kettle.step.ExternalResourceStepAnalyzer;
+import org.pentaho.metaverse.api.analyzer.kettle.step.StepAnalyzer;
 import org.pentaho.metaverse.api.model.IExternalResourceInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -119,4 +120,9 @@ public class HTTPClientStepAnalyzer extends ExternalResourceStepAnalyzer<HTTPMet
   protected void setObjectFactory( IMetaverseObjectFactory objectFactory ) {
     this.metaverseObjectFactory = objectFactory;
   }
+
+  @Override
+  protected StepAnalyzer<HTTPMeta> newInstance() {
+    return new HTTPClientStepAnalyzer();
+  }
 }
@@ -34,6 +34,7 @@ import org.pentaho.metaverse.api.MetaverseComponentDescriptor;
 import org.pentaho.metaverse.api.MetaverseException;
 import org.pentaho.metaverse.api.StepField;
 import org.pentaho.metaverse.api.analyzer.kettle.step.ExternalResourceStepAnalyzer;
+import org.pentaho.metaverse.api.analyzer.kettle.step.StepAnalyzer;
 import org.pentaho.metaverse.api.model.IExternalResourceInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -118,4 +119,9 @@ public class HTTPPostStepAnalyzer extends ExternalResourceStepAnalyzer<HTTPPOSTM
       }
     };
   }
+
+  @Override
+  protected StepAnalyzer<HTTPPOSTMeta> newInstance() {
+    return new HTTPPostStepAnalyzer();
+  }
 }
@@ -23,7 +23,6 @@
 package org.pentaho.metaverse.analyzer.kettle.step.jobexecutor;
 
 import org.apache.commons.lang.StringUtils;
-import org.pentaho.di.core.ProgressNullMonitorListener;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleMissingPluginsException;
 import org.pentaho.di.core.exception.KettleStepException;
@@ -39,12 +38,14 @@ import org.pentaho.di.trans.step.BaseStepMeta;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.steps.jobexecutor.JobExecutorMeta;
 import org.pentaho.dictionary.DictionaryConst;
+import org.pentaho.metaverse.analyzer.kettle.ParsedMetaCache;
 import org.pentaho.metaverse.api.IComponentDescriptor;
 import org.pentaho.metaverse.api.IMetaverseNode;
 import org.pentaho.metaverse.api.MetaverseAnalyzerException;
 import org.pentaho.metaverse.api.MetaverseComponentDescriptor;
 import org.pentaho.metaverse.api.StepField;
 import org.pentaho.metaverse.api.analyzer.kettle.KettleAnalyzerUtil;
+import org.pentaho.metaverse.api.analyzer.kettle.step.RowMetaCache;
 import org.pentaho.metaverse.api.analyzer.kettle.step.StepAnalyzer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,6 +55,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 public class JobExecutorStepAnalyzer extends StepAnalyzer<JobExecutorMeta> {
 
@@ -88,9 +90,14 @@ public class JobExecutorStepAnalyzer extends StepAnalyzer<JobExecutorMeta> {
       case FILENAME:
         jobPath = parentTransMeta.environmentSubstitute( meta.getFileName() );
         try {
-          String normalized = KettleAnalyzerUtil.normalizeFilePath( jobPath );
-
-          subJobMeta = getSubJobMeta( parentTransMeta, normalized );
+          final String normalized = KettleAnalyzerUtil.normalizeFilePath( jobPath );
+
+          subJobMeta = ParsedMetaCache.getInstance().getFileMeta( normalized, JobMeta.class, new Callable<JobMeta>() {
+            @Override
+            public JobMeta call() throws Exception {
+              return getSubJobMeta( parentTransMeta, normalized );
+            }
+          } );
           jobPath = normalized;
 
         } catch ( Exception e ) {
@@ -103,7 +110,7 @@ public class JobExecutorStepAnalyzer extends StepAnalyzer<JobExecutorMeta> {
           String file = parentTransMeta.environmentSubstitute( meta.getJobName() );
           try {
             RepositoryDirectoryInterface rdi = repo.findDirectory( dir );
-            subJobMeta = repo.loadJob( file, rdi, null, null );
+            subJobMeta = ParsedMetaCache.getInstance().loadJob( repo, file, rdi );
             String filename = subJobMeta.getFilename() == null ? subJobMeta.toString() : subJobMeta.getFilename();
             jobPath = filename + "." + subJobMeta.getDefaultExtension();
           } catch ( KettleException e ) {
@@ -116,7 +123,7 @@ public class JobExecutorStepAnalyzer extends StepAnalyzer<JobExecutorMeta> {
       case REPOSITORY_BY_REFERENCE:
         if ( repo != null ) {
           try {
-            subJobMeta = repo.loadJob( meta.getJobObjectId(), null );
+            subJobMeta = ParsedMetaCache.getInstance().loadJob( repo, meta.getJobObjectId() );
             String filename = subJobMeta.getFilename() == null ? subJobMeta.toString() : subJobMeta.getFilename();
             jobPath = filename + "." + subJobMeta.getDefaultExtension();
           } catch ( KettleException e ) {
@@ -193,11 +200,9 @@ public class JobExecutorStepAnalyzer extends StepAnalyzer<JobExecutorMeta> {
     for ( int i = 0; i < nextStepNames.length; i++ ) {
       String nextStepName = nextStepNames[i];
       StepMeta step = parentTransMeta.findStep( nextStepName );
-      ProgressNullMonitorListener progressMonitor = new ProgressNullMonitorListener();
       try {
-        RowMetaInterface prevStepFields = parentTransMeta.getPrevStepFields( step, progressMonitor );
+        RowMetaInterface prevStepFields = RowMetaCache.getPrevStepFields( parentTransMeta, step );
         outputFields.put( nextStepName, prevStepFields );
-        progressMonitor.done();
       } catch ( KettleStepException e ) {
         log.warn( "Could not get step fields for " + nextStepName, e );
       }
@@ -228,4 +233,9 @@ public class JobExecutorStepAnalyzer extends StepAnalyzer<JobExecutorMeta> {
     return super.createFieldNode( fieldDescriptor, fieldMeta, targetStepName, addTheNode );
   }
   ////////
+
+  @Override
+  protected StepAnalyzer<JobExecutorMeta> newInstance() {
+    return new JobExecutorStepAnalyzer();
+  }
 }
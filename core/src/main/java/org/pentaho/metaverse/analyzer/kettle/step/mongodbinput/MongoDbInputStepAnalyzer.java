@@ -34,6 +34,7 @@ import org.pentaho.metaverse.api.MetaverseAnalyzerException;
 import org.pentaho.metaverse.api.MetaverseComponentDescriptor;
 import org.pentaho.metaverse.api.StepField;
 import org.pentaho.metaverse.api.analyzer.kettle.step.ConnectionExternalResourceStepAnalyzer;
+import org.pentaho.metaverse.api.analyzer.kettle.step.StepAnalyzer;
 import org.pentaho.metaverse.api.model.IExternalResourceInfo;
 import org.pentaho.metaverse.impl.model.MongoDbResourceInfo;
 import org.pentaho.mongo.wrapper.field.MongoField;
@@ -169,4 +170,9 @@ public class MongoDbInputStepAnalyzer extends ConnectionExternalResourceStepAnal
   protected void setParentStepMeta( StepMeta sm ) {
     parentStepMeta = sm;
   }
+
+  @Override
+  protected StepAnalyzer<MongoDbInputMeta> newInstance() {
+    return new MongoDbInputStepAnalyzer();
+  }
 }
@@ -83,4 +83,9 @@ public class NumberRangeStepAnalyzer extends StepAnalyzer<NumberRangeMeta> {
       }
     };
   }
+
+  @Override
+  protected StepAnalyzer<NumberRangeMeta> newInstance() {
+    return new NumberRangeStepAnalyzer();
+  }
 }
@@ -31,6 +31,7 @@ import org.pentaho.dictionary.DictionaryConst;
 import org.pentaho.metaverse.api.IMetaverseNode;
 import org.pentaho.metaverse.api.MetaverseAnalyzerException;
 import org.pentaho.metaverse.api.StepField;
+import org.pentaho.metaverse.api.analyzer.kettle.step.RowMetaCache;
 import org.pentaho.metaverse.api.analyzer.kettle.step.StepAnalyzer;
 import org.pentaho.metaverse.api.analyzer.kettle.step.StepNodes;
 
@@ -53,7 +54,10 @@ public class RowsFromResultStepAnalyzer extends StepAnalyzer<RowsFromResultMeta>
       String fieldName = fieldNames[ j ];
       RowMetaInterface rmi = null;
       try {
-        rmi = parentTransMeta.getStepFields( parentStepMeta );
+        RowMetaCache rowMetaCache = RowMetaCache.get( parentTransMeta );
+        rmi = rowMetaCache == null
+          ? parentTransMeta.getStepFields( parentStepMeta )
+          : rowMetaCache.getStepFields( parentStepMeta );
         int type = rmi.getValueMeta( j ).getType();
         ValueMetaInterface vmi = rmi.getValueMeta( j );
         //        IMetaverseNode prevFieldNode = createInputFieldNode( StepAnalyzer.NONE, fieldName, type );
@@ -85,4 +89,9 @@ public class RowsFromResultStepAnalyzer extends StepAnalyzer<RowsFromResultMeta>
     supportedSteps.add( RowsFromResultMeta.class );
     return supportedSteps;
   }
+
+  @Override
+  protected StepAnalyzer<RowsFromResultMeta> newInstance() {
+    return new RowsFromResultStepAnalyzer();
+  }
 }
@@ -54,4 +54,9 @@ public class RowsToResultStepAnalyzer extends StepAnalyzer<RowsToResultMeta> {
     supportedSteps.add( RowsToResultMeta.class );
     return supportedSteps;
   }
+
+  @Override
+  protected StepAnalyzer<RowsToResultMeta> newInstance() {
+    return new RowsToResultStepAnalyzer();
+  }
 }
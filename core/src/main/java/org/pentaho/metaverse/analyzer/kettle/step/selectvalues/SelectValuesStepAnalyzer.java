@@ -289,4 +289,9 @@ public class SelectValuesStepAnalyzer extends StepAnalyzer<SelectValuesMeta> {
   protected void setBaseStepMeta( SelectValuesMeta meta ) {
     this.baseStepMeta = meta;
   }
+
+  @Override
+  protected StepAnalyzer<SelectValuesMeta> newInstance() {
+    return new SelectValuesStepAnalyzer();
+  }
 }
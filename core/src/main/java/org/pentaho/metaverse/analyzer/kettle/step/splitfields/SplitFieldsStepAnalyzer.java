@@ -84,4 +84,8 @@ public class SplitFieldsStepAnalyzer extends StepAnalyzer<FieldSplitterMeta> {
     return supportedSteps;
   }
 
+  @Override
+  protected StepAnalyzer<FieldSplitterMeta> newInstance() {
+    return new SplitFieldsStepAnalyzer();
+  }
 }
@@ -35,6 +35,7 @@ import org.pentaho.metaverse.api.IMetaverseNode;
 import org.pentaho.metaverse.api.MetaverseAnalyzerException;
 import org.pentaho.metaverse.api.StepField;
 import org.pentaho.metaverse.api.analyzer.kettle.ComponentDerivationRecord;
+import org.pentaho.metaverse.api.analyzer.kettle.step.RowMetaCache;
 import org.pentaho.metaverse.api.analyzer.kettle.step.StepAnalyzer;
 import org.pentaho.metaverse.api.model.Operation;
 import org.pentaho.metaverse.messages.Messages;
@@ -71,7 +72,7 @@ public class StreamLookupStepAnalyzer extends StepAnalyzer<StreamLookupMeta> {
       for ( String prevStepName : parentTransMeta.getPrevStepNames( parentStepMeta ) ) {
         if ( !rowMeta.containsKey( prevStepName ) ) {
           try {
-            rowMeta.put( prevStepName, parentTransMeta.getStepFields( prevStepName ) );
+            rowMeta.put( prevStepName, RowMetaCache.getStepFields( parentTransMeta, prevStepName ) );
           } catch ( KettleStepException e ) {
             LOGGER.warn( Messages.getString( "WARNING.CannotDetermineRowMeta", prevStepName, e.toString() ) );
           }
@@ -172,7 +173,7 @@ public class StreamLookupStepAnalyzer extends StepAnalyzer<StreamLookupMeta> {
         String prevStepName = prevStepNames[ i ];
         if ( !prevStepName.equals( lookupStepName ) ) {
           try {
-            RowMetaInterface stepFields = parentTransMeta.getStepFields( prevStepName );
+            RowMetaInterface stepFields = RowMetaCache.getStepFields( parentTransMeta, prevStepName );
             if ( stepFields != null ) {
               ValueMetaInterface valueMetaInterface = stepFields.searchValueMeta( newFieldName );
               return valueMetaInterface != null;
@@ -198,4 +199,8 @@ public class StreamLookupStepAnalyzer extends StepAnalyzer<StreamLookupMeta> {
   }
   // ******** End - Used to aid in unit testing **********
 
+  @Override
+  protected StepAnalyzer<StreamLookupMeta> newInstance() {
+    return new StreamLookupStepAnalyzer();
+  }
 }
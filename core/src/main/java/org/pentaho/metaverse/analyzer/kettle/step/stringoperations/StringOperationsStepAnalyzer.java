@@ -128,4 +128,8 @@ public class StringOperationsStepAnalyzer extends StepAnalyzer<StringOperationsM
   }
   // ******** End - Used to aid in unit testing **********
 
+  @Override
+  protected StepAnalyzer<StringOperationsMeta> newInstance() {
+    return new StringOperationsStepAnalyzer();
+  }
 }
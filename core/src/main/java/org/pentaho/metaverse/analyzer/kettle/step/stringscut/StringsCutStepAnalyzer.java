@@ -107,4 +107,9 @@ public class StringsCutStepAnalyzer extends StepAnalyzer<StringCutMeta> {
     this.baseStepMeta = meta;
   }
   // ******** End - Used to aid in unit testing **********
+
+  @Override
+  protected StepAnalyzer<StringCutMeta> newInstance() {
+    return new StringsCutStepAnalyzer();
+  }
 }
@@ -143,4 +143,8 @@ public class StringsReplaceStepAnalyzer extends StepAnalyzer<ReplaceStringMeta>
   }
   // ******** End - Used to aid in unit testing **********
 
+  @Override
+  protected StepAnalyzer<ReplaceStringMeta> newInstance() {
+    return new StringsReplaceStepAnalyzer();
+  }
 }
@@ -30,6 +30,7 @@ import org.pentaho.metaverse.api.MetaverseAnalyzerException;
 import org.pentaho.metaverse.api.MetaverseComponentDescriptor;
 import org.pentaho.metaverse.api.StepField;
 import org.pentaho.metaverse.api.analyzer.kettle.step.ConnectionExternalResourceStepAnalyzer;
+import org.pentaho.metaverse.api.analyzer.kettle.step.StepAnalyzer;
 import org.pentaho.metaverse.api.model.BaseDatabaseResourceInfo;
 import org.pentaho.metaverse.api.model.IExternalResourceInfo;
 import org.slf4j.Logger;
@@ -112,4 +113,9 @@ public class TableInputStepAnalyzer extends ConnectionExternalResourceStepAnalyz
   public void setBaseStepMeta( TableInputMeta meta ) {
     baseStepMeta = meta;
   }
+
+  @Override
+  protected StepAnalyzer<TableInputMeta> newInstance() {
+    return new TableInputStepAnalyzer();
+  }
 }
@@ -38,6 +38,7 @@ import org.pentaho.metaverse.api.MetaverseComponentDescriptor;
 import org.pentaho.metaverse.api.StepField;
 import org.pentaho.metaverse.api.analyzer.kettle.ComponentDerivationRecord;
 import org.pentaho.metaverse.api.analyzer.kettle.step.ConnectionExternalResourceStepAnalyzer;
+import org.pentaho.metaverse.api.analyzer.kettle.step.StepAnalyzer;
 import org.pentaho.metaverse.api.model.BaseDatabaseResourceInfo;
 import org.pentaho.metaverse.api.model.IExternalResourceInfo;
 
@@ -210,4 +211,9 @@ public class TableOutputStepAnalyzer extends ConnectionExternalResourceStepAnaly
   protected void setParentStepMeta( StepMeta sm ) {
     parentStepMeta = sm;
   }
+
+  @Override
+  protected StepAnalyzer<TableOutputMeta> newInstance() {
+    return new TableOutputStepAnalyzer();
+  }
 }
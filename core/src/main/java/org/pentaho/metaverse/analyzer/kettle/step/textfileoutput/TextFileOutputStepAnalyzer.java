@@ -31,6 +31,7 @@ import org.pentaho.metaverse.api.IMetaverseObjectFactory;
 import org.pentaho.metaverse.api.MetaverseException;
 import org.pentaho.metaverse.api.StepField;
 import org.pentaho.metaverse.api.analyzer.kettle.step.ExternalResourceStepAnalyzer;
+import org.pentaho.metaverse.api.analyzer.kettle.step.StepAnalyzer;
 import org.pentaho.metaverse.api.model.IExternalResourceInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -105,4 +106,8 @@ public class TextFileOutputStepAnalyzer extends ExternalResourceStepAnalyzer<Tex
     this.metaverseObjectFactory = factory;
   }
 
+  @Override
+  protected StepAnalyzer<TextFileOutputMeta> newInstance() {
+    return new TextFileOutputStepAnalyzer();
+  }
 }
@@ -24,7 +24,6 @@ package org.pentaho.metaverse.analyzer.kettle.step.transexecutor;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang.StringUtils;
-import org.pentaho.di.core.ProgressNullMonitorListener;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.exception.KettleMissingPluginsException;
 import org.pentaho.di.core.exception.KettleStepException;
@@ -40,12 +39,14 @@ import org.pentaho.di.trans.steps.rowsfromresult.RowsFromResultMeta;
 import org.pentaho.di.trans.steps.rowstoresult.RowsToResultMeta;
 import org.pentaho.di.trans.steps.transexecutor.TransExecutorMeta;
 import org.pentaho.dictionary.DictionaryConst;
+import org.pentaho.metaverse.analyzer.kettle.ParsedMetaCache;
 import org.pentaho.metaverse.api.IComponentDescriptor;
 import org.pentaho.metaverse.api.IMetaverseNode;
 import org.pentaho.metaverse.api.MetaverseAnalyzerException;
 import org.pentaho.metaverse.api.MetaverseComponentDescriptor;
 import org.pentaho.metaverse.api.StepField;
 import org.pentaho.metaverse.api.analyzer.kettle.KettleAnalyzerUtil;
+import org.pentaho.metaverse.api.analyzer.kettle.step.RowMetaCache;
 import org.pentaho.metaverse.api.analyzer.kettle.step.StepAnalyzer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,6 +58,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 public class TransExecutorStepAnalyzer extends StepAnalyzer<TransExecutorMeta> {
 
@@ -91,9 +93,15 @@ public class TransExecutorStepAnalyzer extends StepAnalyzer<TransExecutorMeta> {
       case FILENAME:
         transPath = parentTransMeta.environmentSubstitute( meta.getFileName() );
         try {
-          String normalized = KettleAnalyzerUtil.normalizeFilePath( transPath );
+          final String normalized = KettleAnalyzerUtil.normalizeFilePath( transPath );
 
-          subTransMeta = getSubTransMeta( normalized );
+          subTransMeta = ParsedMetaCache.getInstance().getFileMeta( normalized, TransMeta.class,
+            new Callable<TransMeta>() {
+              @Override
+              public TransMeta call() throws Exception {
+                return getSubTransMeta( normalized );
+              }
+            } );
           transPath = normalized;
 
         } catch ( Exception e ) {
@@ -106,7 +114,7 @@ public class TransExecutorStepAnalyzer extends StepAnalyzer<TransExecutorMeta> {
           String file = parentTransMeta.environmentSubstitute( meta.getTransName() );
           try {
             RepositoryDirectoryInterface rdi = repo.findDirectory( dir );
-            subTransMeta = repo.loadTransformation( file, rdi, null, true, null );
+            subTransMeta = ParsedMetaCache.getInstance().loadTransformation( repo, file, rdi );
             transPath = subTransMeta.getPathAndName() + "." + subTransMeta.getDefaultExtension();
           } catch ( KettleException e ) {
             throw new MetaverseAnalyzerException( "Sub transformation can not be found in repository - " + file, e );
@@ -118,7 +126,7 @@ public class TransExecutorStepAnalyzer extends StepAnalyzer<TransExecutorMeta> {
       case REPOSITORY_BY_REFERENCE:
         if ( repo != null ) {
           try {
-            subTransMeta = repo.loadTransformation( meta.getTransObjectId(), null );
+            subTransMeta = ParsedMetaCache.getInstance().loadTransformation( repo, meta.getTransObjectId() );
             transPath = subTransMeta.getPathAndName() + "." + subTransMeta.getDefaultExtension();
           } catch ( KettleException e ) {
             throw new MetaverseAnalyzerException( "Sub transformation can not be found by reference - "
@@ -226,7 +234,11 @@ public class TransExecutorStepAnalyzer extends StepAnalyzer<TransExecutorMeta> {
           IMetaverseNode subTransStepNode = createNodeFromDescriptor( stepDescriptor );
 
           try {
-            RowMetaInterface rowMetaInterface = rtrm.getParentStepMeta().getParentTransMeta().getStepFields( step );
+            RowMetaInterface rowMetaInterface;
+            // the sub transformation may be shared with the analyses of other steps
+            synchronized ( subTransMeta ) {
+              rowMetaInterface = rtrm.getParentStepMeta().getParentTransMeta().getStepFields( step );
+            }
             for ( int i = 0; i < rowMetaInterface.getFieldNames().length; i++ ) {
               String field = rowMetaInterface.getFieldNames()[ i ];
               if ( streamFieldNode.getName().equals( field ) ) {
@@ -301,7 +313,11 @@ public class TransExecutorStepAnalyzer extends StepAnalyzer<TransExecutorMeta> {
           IMetaverseNode subTransStepNode = createNodeFromDescriptor( stepDescriptor );
 
           try {
-            RowMetaInterface rowMetaInterface = rfrm.getParentStepMeta().getParentTransMeta().getStepFields( step );
+            RowMetaInterface rowMetaInterface;
+            // the sub transformation may be shared with the analyses of other steps
+            synchronized ( subTransMeta ) {
+              rowMetaInterface = rfrm.getParentStepMeta().getParentTransMeta().getStepFields( step );
+            }
             for ( int i = 0; i < rowMetaInterface.getFieldNames().length; i++ ) {
               String field = rowMetaInterface.getFieldNames()[ i ];
               if ( originalFieldNode.getName().equals( field ) ) {
@@ -336,11 +352,9 @@ public class TransExecutorStepAnalyzer extends StepAnalyzer<TransExecutorMeta> {
     for ( int i = 0; i < nextStepNames.length; i++ ) {
       String nextStepName = nextStepNames[ i ];
       StepMeta step = parentTransMeta.findStep( nextStepName );
-      ProgressNullMonitorListener progressMonitor = new ProgressNullMonitorListener();
       try {
-        RowMetaInterface prevStepFields = parentTransMeta.getPrevStepFields( step, progressMonitor );
+        RowMetaInterface prevStepFields = RowMetaCache.getPrevStepFields( parentTransMeta, step );
         outputFields.put( nextStepName, prevStepFields );
-        progressMonitor.done();
       } catch ( KettleStepException e ) {
         log.warn( "Could not get step fields for " + nextStepName, e );
       }
@@ -369,4 +383,9 @@ public class TransExecutorStepAnalyzer extends StepAnalyzer<TransExecutorMeta> {
     return super.createFieldNode( fieldDescriptor, fieldMeta, targetStepName, addTheNode );
   }
   ////////
+
+  @Override
+  protected StepAnalyzer<TransExecutorMeta> newInstance() {
+    return new TransExecutorStepAnalyzer();
+  }
 }
@@ -89,4 +89,8 @@ public class ValueMapperStepAnalyzer extends StepAnalyzer<ValueMapperMeta> {
     };
   }
 
+  @Override
+  protected StepAnalyzer<ValueMapperMeta> newInstance() {
+    return new ValueMapperStepAnalyzer();
+  }
 }
@@ -36,6 +36,7 @@ import org.pentaho.metaverse.api.MetaverseException;
 import org.pentaho.metaverse.api.StepField;
 import org.pentaho.metaverse.api.StepFieldOperations;
 import org.pentaho.metaverse.api.model.Operations;
+import org.pentaho.metaverse.api.model.OperationsProperty;
 import org.pentaho.metaverse.graph.LineageGraphMap;
 import org.pentaho.metaverse.util.MetaverseUtil;
 
@@ -47,6 +48,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.Future;
 
 /**
@@ -82,9 +84,8 @@ public class LineageClient implements ILineageClient {
     Map<String, Set<StepField>> originStepsMap = new HashMap<>();
 
     try {
-      Future<Graph> lineageGraphTask = LineageGraphMap.getInstance().get( transMeta );
-      if ( lineageGraphTask != null ) {
-        Graph lineageGraph = lineageGraphTask.get();
+      Graph lineageGraph = getLineageGraph( transMeta );
+      if ( lineageGraph != null ) {
         List<Vertex> targetFields = getTargetFields( lineageGraph, targetStepName, fieldNames );
 
         GremlinPipeline pipe = getOriginStepsPipe( targetFields );
@@ -141,44 +142,41 @@ public class LineageClient implements ILineageClient {
     Map<String, Set<List<StepFieldOperations>>> operationPathMap = new HashMap<>();
 
     try {
-      Future<Graph> lineageGraphTask = LineageGraphMap.getInstance().get( transMeta );
-      if ( lineageGraphTask != null ) {
-        Graph lineageGraph = lineageGraphTask.get();
-
-        if ( lineageGraph != null ) {
-
-          // Get the creator field nodes for all the field names passed in
-          List<Vertex> getTargetFields = getTargetFields( lineageGraph, targetStepName, fieldNames );
-
-
-          // The "origin steps pipe" with a second param of true returns a pipeline that will return paths between
-          // the origin field nodes and the target field node.
-          GremlinPipeline pipe = getOriginStepsPipe( getTargetFields );
-          List<List<Vertex>> pathList = pipe.toList();
-          if ( pathList != null ) {
-
-            for ( List<Vertex> path : pathList ) {
-              // Transform each path of vertices into a "path" of StepFieldOperations objects (basically save off
-              // properties of each vertex into a new list)
-              List<StepFieldOperations> stepFieldOps = new ArrayList<>();
-              String targetField = path.get( 0 ).getProperty( DictionaryConst.PROPERTY_NAME );
-              Set<List<StepFieldOperations>> pathSet = operationPathMap.get( targetField );
-
-              if ( pathSet == null ) {
-                pathSet = new HashSet<>();
-                operationPathMap.put( targetField, pathSet );
-              }
-              for ( Vertex v : path ) {
-                Map<String, String> stepField = STEPFIELDOPS_PIPE_FUNC.compute( v );
-                String stepName = stepField.get( "stepName" );
-                String fieldName = stepField.get( "fieldName" );
-                Operations operations = MetaverseUtil.convertOperationsStringToMap(
-                  (String) v.getProperty( DictionaryConst.PROPERTY_OPERATIONS ) );
-
-                stepFieldOps.add( 0, new StepFieldOperations( stepName, fieldName, operations ) );
-              }
-              pathSet.add( stepFieldOps );
+      Graph lineageGraph = getLineageGraph( transMeta );
+      if ( lineageGraph != null ) {
+
+        // Get the creator field nodes for all the field names passed in
+        List<Vertex> getTargetFields = getTargetFields( lineageGraph, targetStepName, fieldNames );
+
+
+        // The "origin steps pipe" with a second param of true returns a pipeline that will return paths between
+        // the origin field nodes and the target field node.
+        GremlinPipeline pipe = getOriginStepsPipe( getTargetFields );
+        List<List<Vertex>> pathList = pipe.toList();
+        if ( pathList != null ) {
+
+          // the same field vertex is on many of the paths, read its operations once
+          Map<Object, Operations> operationsByVertex = new HashMap<>();
+          for ( List<Vertex> path : pathList ) {
+            // Transform each path of vertices into a "path" of StepFieldOperations objects (basically save off
+            // properties of each vertex into a new list)
+            List<StepFieldOperations> stepFieldOps = new ArrayList<>();
+            String targetField = path.get( 0 ).getProperty( DictionaryConst.PROPERTY_NAME );
+            Set<List<StepFieldOperations>> pathSet = operationPathMap.get( targetField );
+
+            if ( pathSet == null ) {
+              pathSet = new HashSet<>();
+              operationPathMap.put( targetField, pathSet );
+            }
+            for ( Vertex v : path ) {
+              Map<String, String> stepField = STEPFIELDOPS_PIPE_FUNC.compute( v );
+              String stepName = stepField.get( "stepName" );
+              String fieldName = stepField.get( "fieldName" );
+              Operations operations = getOperations( v, operationsByVertex );
+
+              stepFieldOps.add( 0, new StepFieldOperations( stepName, fieldName, operations ) );
             }
+            pathSet.add( stepFieldOps );
           }
         }
       }
@@ -189,6 +187,50 @@ public class LineageClient implements ILineageClient {
     return operationPathMap;
   }
 
+  /**
+   * Reads the operations of a field vertex, the paths get a copy of them so the operations stored in the graph cannot
+   * be changed through them
+   *
+   * @param vertex             the field vertex
+   * @param operationsByVertex the operations of the vertices read so far
+   * @return the operations, or null if there are none
+   */
+  private Operations getOperations( Vertex vertex, Map<Object, Operations> operationsByVertex ) {
+    if ( operationsByVertex.containsKey( vertex.getId() ) ) {
+      return operationsByVertex.get( vertex.getId() );
+    }
+    Object property = vertex.getProperty( DictionaryConst.PROPERTY_OPERATIONS );
+    Operations operations = property instanceof OperationsProperty
+      ? OperationsProperty.copyOf( ( (OperationsProperty) property ).getOperations() )
+      : MetaverseUtil.convertOperationsToMap( property );
+    operationsByVertex.put( vertex.getId(), operations );
+    return operations;
+  }
+
+  /**
+   * Waits for the lineage graph of the transformation. An analysis that has been superseded by a newer one (because the
+   * transformation changed in the meantime) is cancelled, in which case the graph of the newer analysis is returned.
+   *
+   * @param transMeta the transformation
+   * @return the lineage graph, or null if the transformation has not been analyzed
+   * @throws Exception if the analysis failed or was interrupted
+   */
+  protected Graph getLineageGraph( TransMeta transMeta ) throws Exception {
+    Future<Graph> lineageGraphTask = LineageGraphMap.getInstance().get( transMeta );
+    while ( lineageGraphTask != null ) {
+      try {
+        return lineageGraphTask.get();
+      } catch ( CancellationException e ) {
+        Future<Graph> newerTask = LineageGraphMap.getInstance().get( transMeta );
+        if ( newerTask == lineageGraphTask ) {
+          throw e;
+        }
+        lineageGraphTask = newerTask;
+      }
+    }
+    return null;
+  }
+
   /**
    * This is an intermediate method that returns a pipeline which would determine the vertices with the given fieldname,
    * which were created by steps that have "hops to" links to anything on the front of the pipe. This method is not
@@ -339,9 +381,9 @@ public class LineageClient implements ILineageClient {
       );
 
       // Add operations if there are any, otherwise don't set the property
-      String operations = it.getProperty( DictionaryConst.PROPERTY_OPERATIONS );
-      if ( !Const.isEmpty( operations ) ) {
-        stepFieldOpsMap.put( DictionaryConst.PROPERTY_METADATA_OPERATIONS, operations );
+      Object operations = it.getProperty( DictionaryConst.PROPERTY_OPERATIONS );
+      if ( operations != null && !Const.isEmpty( operations.toString() ) ) {
+        stepFieldOpsMap.put( DictionaryConst.PROPERTY_METADATA_OPERATIONS, operations.toString() );
       }
 
       return stepFieldOpsMap;
@@ -0,0 +1,74 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.graph;
+
+import com.tinkerpop.blueprints.Graph;
+import com.tinkerpop.blueprints.Vertex;
+import org.pentaho.dictionary.DictionaryConst;
+import org.pentaho.metaverse.api.HashedLogicalIdGenerator;
+import org.pentaho.metaverse.api.ILogicalIdResolver;
+
+/**
+ * Resolves hashed logical ids from the JSON stored on the vertices of the metaverse (the locators, documents, steps
+ * and job entries, whose ids other nodes use as their namespace), so that the ids of a graph that was restored from
+ * disk can be resolved even though they were not generated in this JVM
+ */
+public class GraphLogicalIdResolver implements ILogicalIdResolver {
+
+  private final Graph graph;
+
+  public GraphLogicalIdResolver( Graph graph ) {
+    this.graph = graph;
+  }
+
+  @Override
+  public String resolve( String logicalId ) {
+    if ( graph == null || logicalId == null ) {
+      return null;
+    }
+    // the logical id is a key index of the metaverse graph
+    for ( Vertex vertex : graph.getVertices( DictionaryConst.PROPERTY_LOGICAL_ID, logicalId ) ) {
+      Object json = vertex.getProperty( DictionaryConst.PROPERTY_LOGICAL_ID_JSON );
+      if ( json != null ) {
+        return json.toString();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Makes this the resolver of the {@link HashedLogicalIdGenerator}
+   */
+  public void register() {
+    HashedLogicalIdGenerator.setResolver( this );
+  }
+
+  /**
+   * Stops resolving ids for the {@link HashedLogicalIdGenerator}, if this is still its resolver
+   */
+  public void unregister() {
+    if ( HashedLogicalIdGenerator.getResolver() == this ) {
+      HashedLogicalIdGenerator.setResolver( null );
+    }
+  }
+}
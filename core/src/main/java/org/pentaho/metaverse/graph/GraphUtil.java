@@ -22,9 +22,16 @@
 
 package org.pentaho.metaverse.graph;
 
+import com.tinkerpop.blueprints.Direction;
 import com.tinkerpop.blueprints.Graph;
 import com.tinkerpop.blueprints.Vertex;
+import org.pentaho.dictionary.DictionaryConst;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -62,4 +69,69 @@ public class GraphUtil {
     return clone;
   }
 
+  /**
+   * Removes what the analysis of a document (a transformation or a job) put in the graph: the vertices in the
+   * namespace of the document vertex (steps, job entries, ...) and, recursively, the vertices in their namespaces
+   * (fields, ...). Vertices shared with other documents (data sources, files, other documents) live in other
+   * namespaces and are kept. When the graph is a {@link SynchronizedGraph} the removal is made while holding its write
+   * lock, the one the metaverse builder adds the analyses of other documents with.
+   *
+   * @param graph          the graph
+   * @param path           the path of the document
+   * @param removeDocument true to remove the document vertex as well (the document was deleted), false to keep it and
+   *                       the links other documents have to it (the document is about to be analyzed again)
+   * @return the number of vertices removed
+   */
+  public static int removeDocument( final Graph graph, final String path, final boolean removeDocument ) {
+    if ( graph == null || path == null ) {
+      return 0;
+    }
+    if ( graph instanceof SynchronizedGraph ) {
+      final int[] removed = new int[1];
+      ( (SynchronizedGraph) graph ).executeInLock( new Runnable() {
+        @Override
+        public void run() {
+          removed[0] = removeDocumentVertices( graph, path, removeDocument );
+        }
+      } );
+      return removed[0];
+    }
+    return removeDocumentVertices( graph, path, removeDocument );
+  }
+
+  private static int removeDocumentVertices( Graph graph, String path, boolean removeDocument ) {
+    List<Vertex> documents = new ArrayList<Vertex>();
+    for ( Vertex vertex : graph.getVertices( DictionaryConst.PROPERTY_PATH, path ) ) {
+      Object type = vertex.getProperty( DictionaryConst.PROPERTY_TYPE );
+      if ( DictionaryConst.NODE_TYPE_TRANS.equals( type ) || DictionaryConst.NODE_TYPE_JOB.equals( type ) ) {
+        documents.add( vertex );
+      }
+    }
+
+    Set<Object> owned = new HashSet<Object>();
+    List<Vertex> removals = new ArrayList<Vertex>();
+    Deque<Vertex> owners = new ArrayDeque<Vertex>( documents );
+    while ( !owners.isEmpty() ) {
+      Vertex owner = owners.poll();
+      Object ownerId = owner.getProperty( DictionaryConst.PROPERTY_LOGICAL_ID );
+      if ( ownerId == null ) {
+        continue;
+      }
+      for ( Vertex vertex : owner.getVertices( Direction.BOTH ) ) {
+        Object namespace = vertex.getProperty( DictionaryConst.PROPERTY_NAMESPACE );
+        if ( ownerId.equals( namespace ) && owned.add( vertex.getId() ) ) {
+          removals.add( vertex );
+          owners.add( vertex );
+        }
+      }
+    }
+    if ( removeDocument ) {
+      removals.addAll( documents );
+    }
+    for ( Vertex vertex : removals ) {
+      graph.removeVertex( vertex );
+    }
+    return removals.size();
+  }
+
 }
@@ -0,0 +1,114 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.metaverse.graph;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces bursts of updates of the lineage graph of a document (a transformation being edited, say) into a single
+ * update. An update is run once no other update of the same document has been scheduled for a while; scheduling an
+ * update cancels the one that is still waiting for the document.
+ */
+public class LineageGraphUpdateScheduler {
+
+  public static final long DEFAULT_DELAY_MILLIS = 500;
+
+  private static final Logger log = LoggerFactory.getLogger( LineageGraphUpdateScheduler.class );
+
+  private static final LineageGraphUpdateScheduler INSTANCE = new LineageGraphUpdateScheduler( DEFAULT_DELAY_MILLIS );
+
+  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+    @Override
+    public Thread newThread( Runnable runnable ) {
+      Thread thread = new Thread( runnable, "metaverse-lineage-graph-updates" );
+      thread.setDaemon( true );
+      return thread;
+    }
+  } );
+
+  private final Map<Object, ScheduledFuture<?>> pending = new IdentityHashMap<Object, ScheduledFuture<?>>();
+
+  private final long delayMillis;
+
+  public static LineageGraphUpdateScheduler getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * @param delayMillis how long an update waits for other updates of the same document
+   */
+  public LineageGraphUpdateScheduler( long delayMillis ) {
+    this.delayMillis = delayMillis;
+  }
+
+  /**
+   * Schedules an update of the lineage graph of a document, replacing the update that is waiting for it if there is
+   * one
+   *
+   * @param document the document (compared by identity)
+   * @param update   the update
+   * @return the scheduled update
+   */
+  public synchronized ScheduledFuture<?> schedule( final Object document, final Runnable update ) {
+    ScheduledFuture<?> superseded = pending.remove( document );
+    if ( superseded != null ) {
+      superseded.cancel( false );
+    }
+    final ScheduledFuture<?>[] scheduled = new ScheduledFuture<?>[ 1 ];
+    scheduled[ 0 ] = executor.schedule( new Runnable() {
+      @Override
+      public void run() {
+        synchronized ( LineageGraphUpdateScheduler.this ) {
+          if ( pending.get( document ) == scheduled[ 0 ] ) {
+            pending.remove( document );
+          }
+        }
+        try {
+          update.run();
+        } catch ( RuntimeException e ) {
+          log.warn( e.getMessage(), e );
+        }
+      }
+    }, delayMillis, TimeUnit.MILLISECONDS );
+    pending.put( document, scheduled[ 0 ] );
+    return scheduled[ 0 ];
+  }
+
+  /**
+   * @param document the document
+   * @return true if an update of the document is waiting to run
+   */
+  public synchronized boolean isPending( Object document ) {
+    return pending.containsKey( document );
+  }
+}
@@ -0,0 +1,118 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.graph;
+
+import org.pentaho.dictionary.DictionaryConst;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A dictionary of the values of the vertex properties that are drawn from a small vocabulary (the node type, its
+ * category and color, the step type and so on). Values stored under those keys are replaced with one canonical
+ * instance, so the many vertices that have the same value share a single String instead of each holding a copy.
+ * <p>
+ * The dictionary is bounded, once it is full new values are stored as they are.
+ * </p>
+ */
+public final class PropertyValueDictionary {
+
+  /**
+   * The property keys whose values are kept in the dictionary
+   */
+  public static final Set<String> DICTIONARY_KEYS = Collections.unmodifiableSet( new HashSet<String>( Arrays.asList(
+    DictionaryConst.PROPERTY_TYPE,
+    DictionaryConst.PROPERTY_TYPE_LOCALIZED,
+    DictionaryConst.PROPERTY_CATEGORY,
+    DictionaryConst.PROPERTY_CATEGORY_LOCALIZED,
+    DictionaryConst.PROPERTY_COLOR,
+    DictionaryConst.PROPERTY_KETTLE_TYPE,
+    DictionaryConst.PROPERTY_PLUGIN_ID,
+    DictionaryConst.PROPERTY_STEP_TYPE,
+    DictionaryConst.PROPERTY_JOB_ENTRY_TYPE,
+    DictionaryConst.PROPERTY_ANALYZER ) ) );
+
+  /**
+   * The maximum number of values held by the dictionary
+   */
+  static final int MAX_SIZE = 16384;
+
+  private static final ConcurrentMap<String, String> VALUES = new ConcurrentHashMap<String, String>();
+
+  private PropertyValueDictionary() {
+  }
+
+  /**
+   * Returns the value to store under the given property key: the canonical instance of the value if the key is one
+   * of the {@link #DICTIONARY_KEYS}, the value itself otherwise
+   *
+   * @param key   the property key
+   * @param value the property value
+   * @return the value to store
+   */
+  public static Object encode( String key, Object value ) {
+    if ( value instanceof String && DICTIONARY_KEYS.contains( key ) ) {
+      return canonicalize( (String) value );
+    }
+    return value;
+  }
+
+  /**
+   * Returns the canonical instance of the given value, adding it to the dictionary if there is room
+   *
+   * @param value the value
+   * @return the canonical instance of the value, or the value itself if the dictionary is full
+   */
+  public static String canonicalize( String value ) {
+    if ( value == null ) {
+      return null;
+    }
+    String canonical = VALUES.get( value );
+    if ( canonical != null ) {
+      return canonical;
+    }
+    if ( VALUES.size() >= MAX_SIZE ) {
+      return value;
+    }
+    canonical = VALUES.putIfAbsent( value, value );
+    return canonical == null ? value : canonical;
+  }
+
+  /**
+   * @return the number of values in the dictionary
+   */
+  public static int size() {
+    return VALUES.size();
+  }
+
+  /**
+   * Removes all values from the dictionary
+   */
+  public static void clear() {
+    VALUES.clear();
+  }
+}
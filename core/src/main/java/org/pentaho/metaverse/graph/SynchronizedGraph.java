@@ -29,23 +29,53 @@ import com.tinkerpop.blueprints.GraphQuery;
 import com.tinkerpop.blueprints.KeyIndexableGraph;
 import com.tinkerpop.blueprints.Vertex;
 import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
+import org.pentaho.metaverse.graph.durable.DurableGraph;
+import org.pentaho.metaverse.messages.Messages;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
- * A Graph that provides thread-safe modification
+ * A Graph that provides thread-safe modification. Structural changes (adding and removing vertices and edges) are
+ * made while holding a write lock, lookups are made while holding a read lock so they can run concurrently with each
+ * other and always see the latest completed write. Iterables are copied while the read lock is held, so callers can
+ * iterate them while other threads keep modifying the graph.
  */
 public class SynchronizedGraph implements Graph {
 
+  private static final Logger LOG = LoggerFactory.getLogger( SynchronizedGraph.class );
+
   /**
    * The underlying graph
    */
   protected final IdGraph<KeyIndexableGraph> graph;
 
+  private final Lock readLock;
+  private final Lock writeLock;
+
   /**
    * Creates a new synchronized graph
    * @param graph The underlying graph
    */
   public SynchronizedGraph( IdGraph<KeyIndexableGraph> graph ) {
+    this( graph, new ReentrantReadWriteLock() );
+  }
+
+  /**
+   * Creates a new synchronized graph guarded by the given lock
+   * @param graph The underlying graph
+   * @param lock  The lock guarding the underlying graph
+   */
+  SynchronizedGraph( IdGraph<KeyIndexableGraph> graph, ReadWriteLock lock ) {
     this.graph = graph;
+    readLock = lock.readLock();
+    writeLock = lock.writeLock();
   }
 
   @Override
@@ -55,80 +85,136 @@ public class SynchronizedGraph implements Graph {
 
   @Override
   public Vertex addVertex( Object id ) {
-    Vertex vertex;
-    synchronized ( graph ) {
-      if ( id == null ) {
+    if ( id != null ) {
+      // most adds are for vertices that are already in the graph, those don't need to wait for the write lock
+      Vertex vertex = getVertex( id );
+      if ( vertex != null ) {
+        return vertex;
+      }
+    }
+    writeLock.lock();
+    try {
+      Vertex vertex = id == null ? null : graph.getVertex( id );
+      if ( vertex == null ) {
         vertex = graph.addVertex( id );
-      } else {
-        vertex = getVertex( id );
-        if ( vertex == null ) {
-          vertex = graph.addVertex( id );
-        }
       }
       return vertex;
+    } finally {
+      writeLock.unlock();
     }
   }
 
   @Override
   public Vertex getVertex( Object id ) {
-    return graph.getVertex( id );
+    readLock.lock();
+    try {
+      return graph.getVertex( id );
+    } finally {
+      readLock.unlock();
+    }
   }
 
   @Override
   public void removeVertex( Vertex vertex ) {
-    synchronized ( graph ) {
+    writeLock.lock();
+    try {
       graph.removeVertex( vertex );
+    } finally {
+      writeLock.unlock();
     }
   }
 
   @Override
   public Iterable<Vertex> getVertices() {
-    return graph.getVertices();
+    readLock.lock();
+    try {
+      return copyOf( graph.getVertices() );
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  /**
+   * Tells whether the graph has any vertices, without copying them the way {@link #getVertices()} does
+   * @return true if the graph has no vertices
+   */
+  public boolean isEmpty() {
+    readLock.lock();
+    try {
+      return !graph.getVertices().iterator().hasNext();
+    } finally {
+      readLock.unlock();
+    }
   }
 
   @Override
   public Iterable<Vertex> getVertices( String key, Object value ) {
-    synchronized ( graph ) {
-      return graph.getVertices( key, value );
+    readLock.lock();
+    try {
+      return copyOf( graph.getVertices( key, value ) );
+    } finally {
+      readLock.unlock();
     }
   }
 
   @Override
   public Edge addEdge( Object id, Vertex outVertex, Vertex inVertex, String label ) {
-    Edge edge;
-    synchronized ( graph ) {
-      if ( id == null ) {
+    if ( id != null ) {
+      Edge edge = getEdge( id );
+      if ( edge != null ) {
+        return edge;
+      }
+    }
+    writeLock.lock();
+    try {
+      Edge edge = id == null ? null : graph.getEdge( id );
+      if ( edge == null ) {
         edge = graph.addEdge( id, outVertex, inVertex, label );
-      } else {
-        edge = getEdge( id );
-        if ( edge == null ) {
-          edge = graph.addEdge( id, outVertex, inVertex, label );
-        }
       }
       return edge;
+    } finally {
+      writeLock.unlock();
     }
   }
 
   @Override
   public Edge getEdge( Object id ) {
-    return graph.getEdge( id );
+    readLock.lock();
+    try {
+      return graph.getEdge( id );
+    } finally {
+      readLock.unlock();
+    }
   }
 
   @Override
   public void removeEdge( Edge edge ) {
-    synchronized ( graph ) {
+    writeLock.lock();
+    try {
       graph.removeEdge( edge );
+    } finally {
+      writeLock.unlock();
     }
   }
 
   @Override
   public Iterable<Edge> getEdges() {
-    return graph.getEdges();
+    readLock.lock();
+    try {
+      return copyOf( graph.getEdges() );
+    } finally {
+      readLock.unlock();
+    }
   }
 
   @Override
   public Iterable<Edge> getEdges( String key, Object value ) {
-    return graph.getEdges( key, value );
+    readLock.lock();
+    try {
+      return copyOf( graph.getEdges( key, value ) );
+    } finally {
+      readLock.unlock();
+    }
   }
 
   @Override
@@ -136,10 +222,69 @@ public class SynchronizedGraph implements Graph {
     return graph.query();
   }
 
+  /**
+   * Runs a unit of work while holding the graph's write lock, so a batch of modifications is applied without
+   * interleaving with other writers or being partially visible to readers
+   * @param work The modifications to apply
+   */
+  public void executeInLock( Runnable work ) {
+    writeLock.lock();
+    try {
+      work.run();
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Makes the modifications applied so far survive a restart, when the underlying graph is a {@link DurableGraph}. The
+   * buffered changes are forced to disk, and if the mutation log has grown past its limit the graph is checkpointed
+   * while holding the read lock: lookups carry on, writers wait for the checkpoint instead of it being taken by
+   * whichever writer filled the log.
+   */
+  public void commit() {
+    if ( !( graph.getBaseGraph() instanceof DurableGraph ) ) {
+      return;
+    }
+    DurableGraph durableGraph = (DurableGraph) graph.getBaseGraph();
+    try {
+      durableGraph.commit();
+      if ( durableGraph.isCheckpointDue() ) {
+        readLock.lock();
+        try {
+          if ( durableGraph.isCheckpointDue() ) {
+            durableGraph.checkpoint();
+          }
+        } finally {
+          readLock.unlock();
+        }
+      }
+    } catch ( IOException e ) {
+      LOG.error( Messages.getString( "ERROR.DurableGraph.CouldNotCommit",
+        durableGraph.getDirectory().getAbsolutePath() ), e );
+    }
+  }
+
   @Override
   public void shutdown() {
-    synchronized ( graph ) {
+    writeLock.lock();
+    try {
       graph.shutdown();
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Copies the elements of a (possibly lazy) iterable of the underlying graph, must be called with a lock held
+   */
+  private static <T> Iterable<T> copyOf( Iterable<T> elements ) {
+    List<T> copy = new ArrayList<T>();
+    if ( elements != null ) {
+      for ( T element : elements ) {
+        copy.add( element );
+      }
     }
+    return copy;
   }
 }
@@ -24,10 +24,17 @@ package org.pentaho.metaverse.graph;
 
 import com.tinkerpop.blueprints.Graph;
 import com.tinkerpop.blueprints.KeyIndexableGraph;
+import com.tinkerpop.blueprints.Vertex;
 import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
 import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.MapConfiguration;
+import org.pentaho.dictionary.DictionaryConst;
+import org.pentaho.metaverse.graph.compact.CompactGraph;
+import org.pentaho.metaverse.graph.durable.DurableGraph;
 import org.pentaho.metaverse.messages.Messages;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Map;
 
 /**
@@ -42,6 +49,23 @@ import java.util.Map;
  */
 public class SynchronizedGraphFactory {
 
+  /**
+   * The configuration key naming the class of the backing graph
+   */
+  public static final String GRAPH_CLASS_KEY = "blueprints.graph";
+
+  /**
+   * The configuration key naming the directory the graph is stored in. When it is not set (or empty) the graph only
+   * lives in memory.
+   */
+  public static final String GRAPH_DIRECTORY_KEY = "metaverse.graph.directory";
+
+  /**
+   * The configuration key holding the size, in bytes, the mutation log of a stored graph may grow to before the graph
+   * is checkpointed
+   */
+  public static final String GRAPH_CHECKPOINT_LOG_SIZE_KEY = "metaverse.graph.checkpointLogSize";
+
   /**
    * Hides the constructor so that this class cannot be instanced
    */
@@ -57,7 +81,7 @@ public class SynchronizedGraphFactory {
    * {@link com.tinkerpop.blueprints.KeyIndexableGraph}
    */
   public static Graph open( final Configuration configuration ) {
-    Graph graph = com.tinkerpop.blueprints.GraphFactory.open( configuration );
+    Graph graph = openGraph( configuration );
     return wrapGraph( graph );
   }
 
@@ -69,7 +93,7 @@ public class SynchronizedGraphFactory {
    * {@link com.tinkerpop.blueprints.KeyIndexableGraph}
    */
   public static Graph open( final Map configuration ) {
-    Graph graph = com.tinkerpop.blueprints.GraphFactory.open( configuration );
+    Graph graph = openGraph( new MapConfiguration( configuration ) );
     return wrapGraph( graph );
   }
 
@@ -86,7 +110,40 @@ public class SynchronizedGraphFactory {
   }
 
   /**
-   * Wraps the underlying graph with a synchronized one
+   * Opens the backing graph. Graphs provided by the metaverse itself are created here, since the Blueprints
+   * GraphFactory can not load classes from this bundle; any other graph is opened by the GraphFactory. If a graph
+   * directory is configured the backing graph is loaded from (and kept in) that directory by a {@link DurableGraph}.
+   * @param configuration The graph configuration
+   * @return The backing graph
+   */
+  protected static Graph openGraph( final Configuration configuration ) {
+    Graph graph;
+    if ( CompactGraph.class.getName().equals( configuration.getString( GRAPH_CLASS_KEY ) ) ) {
+      graph = new CompactGraph( configuration );
+    } else {
+      graph = com.tinkerpop.blueprints.GraphFactory.open( configuration );
+    }
+    String directory = configuration.getString( GRAPH_DIRECTORY_KEY );
+    if ( directory == null || directory.trim().isEmpty() ) {
+      return graph;
+    }
+    if ( !( graph instanceof KeyIndexableGraph ) ) {
+      throw new IllegalArgumentException( Messages.getString( "ERROR.BackingGraph.MustImplement.KeyIndexableGraph" ) );
+    }
+    try {
+      DurableGraph durableGraph = DurableGraph.open( (KeyIndexableGraph) graph, new File( directory.trim() ) );
+      durableGraph.setCheckpointLogSize(
+        configuration.getLong( GRAPH_CHECKPOINT_LOG_SIZE_KEY, DurableGraph.DEFAULT_CHECKPOINT_LOG_SIZE ) );
+      return durableGraph;
+    } catch ( IOException e ) {
+      throw new IllegalStateException( Messages.getString( "ERROR.DurableGraph.CouldNotOpen", directory ), e );
+    }
+  }
+
+  /**
+   * Wraps the underlying graph with a synchronized one. The vertex property keys the metaverse looks vertices up by
+   * (the logical id, and the path documents are removed by when they are analyzed again) are registered as key indices
+   * so those lookups do not have to scan the whole graph.
    * @param graph The graph to wrap
    * @return The synchronized graph
    */
@@ -94,10 +151,23 @@ public class SynchronizedGraphFactory {
     if ( graph instanceof KeyIndexableGraph ) {
       KeyIndexableGraph keyIndexableGraph = (KeyIndexableGraph) graph;
       IdGraph<KeyIndexableGraph> idGraph = new IdGraph<KeyIndexableGraph>( keyIndexableGraph );
+      createVertexKeyIndex( idGraph, DictionaryConst.PROPERTY_LOGICAL_ID );
+      createVertexKeyIndex( idGraph, DictionaryConst.PROPERTY_PATH );
       return new SynchronizedGraph( idGraph );
     } else {
       throw new IllegalArgumentException( Messages.getString( "ERROR.BackingGraph.MustImplement.KeyIndexableGraph" ) );
     }
   }
 
+  /**
+   * Creates a vertex key index for the given property key, unless the graph already maintains one
+   * @param graph The graph to create the index on
+   * @param key The vertex property key to index
+   */
+  protected static void createVertexKeyIndex( KeyIndexableGraph graph, String key ) {
+    if ( !graph.getIndexedKeys( Vertex.class ).contains( key ) ) {
+      graph.createKeyIndex( key, Vertex.class );
+    }
+  }
+
 }
@@ -0,0 +1,62 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.graph.compact;
+
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.util.ExceptionFactory;
+import com.tinkerpop.blueprints.util.StringFactory;
+
+/**
+ * An edge of a {@link CompactGraph}
+ */
+class CompactEdge extends CompactElement implements Edge {
+
+  CompactEdge( CompactGraph graph, int handle ) {
+    super( graph, handle );
+  }
+
+  @Override
+  public Vertex getVertex( Direction direction ) throws IllegalArgumentException {
+    if ( direction == Direction.BOTH ) {
+      throw ExceptionFactory.bothIsNotSupported();
+    }
+    return graph.getEdgeVertex( this, direction );
+  }
+
+  @Override
+  public String getLabel() {
+    return graph.getEdgeLabel( this );
+  }
+
+  @Override
+  public void remove() {
+    graph.removeEdge( this );
+  }
+
+  @Override
+  public String toString() {
+    return StringFactory.edgeString( this );
+  }
+}
@@ -0,0 +1,88 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.graph.compact;
+
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.util.ElementHelper;
+
+import java.util.Set;
+
+/**
+ * A vertex or edge of a {@link CompactGraph}. Elements hold no state of their own besides their int handle, all of
+ * their properties live in the graph's property columns, so they are created on demand and are cheap to discard.
+ */
+abstract class CompactElement implements Element {
+
+  protected final CompactGraph graph;
+  protected final int handle;
+
+  CompactElement( CompactGraph graph, int handle ) {
+    this.graph = graph;
+    this.handle = handle;
+  }
+
+  /**
+   * @return the handle of this element, which is also its id
+   */
+  int getHandle() {
+    return handle;
+  }
+
+  @Override
+  public Object getId() {
+    return handle;
+  }
+
+  @Override
+  @SuppressWarnings( "unchecked" )
+  public <T> T getProperty( String key ) {
+    return (T) graph.getProperty( this, key );
+  }
+
+  @Override
+  public Set<String> getPropertyKeys() {
+    return graph.getPropertyKeys( this );
+  }
+
+  @Override
+  public void setProperty( String key, Object value ) {
+    ElementHelper.validateProperty( this, key, value );
+    graph.setProperty( this, key, value );
+  }
+
+  @Override
+  @SuppressWarnings( "unchecked" )
+  public <T> T removeProperty( String key ) {
+    return (T) graph.removeProperty( this, key );
+  }
+
+  @Override
+  public int hashCode() {
+    return handle;
+  }
+
+  @Override
+  public boolean equals( Object object ) {
+    return ElementHelper.areEqual( this, object );
+  }
+}
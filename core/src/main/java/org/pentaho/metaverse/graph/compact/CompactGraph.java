@@ -0,0 +1,601 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.graph.compact;
+
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.Features;
+import com.tinkerpop.blueprints.GraphQuery;
+import com.tinkerpop.blueprints.KeyIndexableGraph;
+import com.tinkerpop.blueprints.Parameter;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.util.DefaultGraphQuery;
+import com.tinkerpop.blueprints.util.ExceptionFactory;
+import com.tinkerpop.blueprints.util.StringFactory;
+import org.apache.commons.configuration.Configuration;
+import org.pentaho.metaverse.messages.Messages;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory graph built for the size of the metaverse, as an alternative to TinkerGraph. Instead of an object with
+ * its own property map per element, vertices and edges are int handles (which are also their ids):
+ * <ul>
+ * <li>properties are stored in one dictionary encoded {@link PropertyColumn} per key,</li>
+ * <li>edges are stored as parallel arrays of out vertex, in vertex and label,</li>
+ * <li>adjacency is stored per edge label as one array of edge handles per vertex and direction.</li>
+ * </ul>
+ * The graph ignores supplied ids and is meant to be wrapped in an IdGraph, as
+ * {@link org.pentaho.metaverse.graph.SynchronizedGraphFactory} does. Handles of removed elements are kept on a free
+ * list and handed out again, so the columns do not grow with retracted documents, which also means a removed element
+ * must not be used anymore.
+ * <p/>
+ * Since the elements share the graph's columns and adjacency arrays, and their property and edge accessors do not go
+ * through {@link org.pentaho.metaverse.graph.SynchronizedGraph}, the graph guards its state with a read/write lock of
+ * its own: lookups hold the read lock and run concurrently, changes hold the write lock, so reading an element never
+ * sees a column that is being grown or re-encoded by a change to another element.
+ */
+public class CompactGraph implements KeyIndexableGraph {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private static final Features FEATURES = new Features();
+
+  static {
+    FEATURES.supportsDuplicateEdges = true;
+    FEATURES.supportsSelfLoops = true;
+    FEATURES.supportsSerializableObjectProperty = true;
+    FEATURES.supportsBooleanProperty = true;
+    FEATURES.supportsDoubleProperty = true;
+    FEATURES.supportsFloatProperty = true;
+    FEATURES.supportsIntegerProperty = true;
+    FEATURES.supportsPrimitiveArrayProperty = true;
+    FEATURES.supportsUniformListProperty = true;
+    FEATURES.supportsMixedListProperty = true;
+    FEATURES.supportsLongProperty = true;
+    FEATURES.supportsMapProperty = true;
+    FEATURES.supportsStringProperty = true;
+
+    FEATURES.ignoresSuppliedIds = true;
+    FEATURES.isPersistent = false;
+    FEATURES.isWrapper = false;
+
+    FEATURES.supportsIndices = false;
+    FEATURES.supportsVertexIndex = false;
+    FEATURES.supportsEdgeIndex = false;
+    FEATURES.supportsKeyIndices = true;
+    FEATURES.supportsVertexKeyIndex = true;
+    FEATURES.supportsEdgeKeyIndex = true;
+    FEATURES.supportsVertexIteration = true;
+    FEATURES.supportsEdgeIteration = true;
+    FEATURES.supportsEdgeRetrieval = true;
+    FEATURES.supportsVertexProperties = true;
+    FEATURES.supportsEdgeProperties = true;
+    FEATURES.supportsTransactions = false;
+    FEATURES.supportsThreadedTransactions = false;
+  }
+
+  private int vertexCount;
+  private int[] freeVertices;
+  private final BitSet liveVertices = new BitSet();
+  private final Map<String, PropertyColumn> vertexProperties = new LinkedHashMap<String, PropertyColumn>();
+
+  private int edgeCount;
+  private int[] freeEdges;
+  private final BitSet liveEdges = new BitSet();
+  private int[] edgeOut = new int[ INITIAL_CAPACITY ];
+  private int[] edgeIn = new int[ INITIAL_CAPACITY ];
+  private int[] edgeLabel = new int[ INITIAL_CAPACITY ];
+  private final Map<String, PropertyColumn> edgeProperties = new LinkedHashMap<String, PropertyColumn>();
+
+  private final List<String> labels = new ArrayList<String>();
+  private final Map<String, Integer> labelCodes = new HashMap<String, Integer>();
+
+  /**
+   * For each label code, the out (or in) edge handles of each vertex handle
+   */
+  private final List<int[][]> outAdjacency = new ArrayList<int[][]>();
+  private final List<int[][]> inAdjacency = new ArrayList<int[][]>();
+
+  private final Lock readLock;
+  private final Lock writeLock;
+
+  public CompactGraph() {
+    ReadWriteLock lock = new ReentrantReadWriteLock();
+    readLock = lock.readLock();
+    writeLock = lock.writeLock();
+  }
+
+  /**
+   * Creates an empty graph. This is the constructor used when the graph is opened by class name, it has no settings.
+   *
+   * @param configuration the graph configuration
+   */
+  public CompactGraph( Configuration configuration ) {
+    this();
+  }
+
+  @Override
+  public Features getFeatures() {
+    return FEATURES;
+  }
+
+  @Override
+  public Vertex addVertex( Object id ) {
+    writeLock.lock();
+    try {
+      int handle = IntArrays.size( freeVertices ) > 0 ? IntArrays.removeLast( freeVertices ) : vertexCount++;
+      liveVertices.set( handle );
+      return new CompactVertex( this, handle );
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public Vertex getVertex( Object id ) {
+    readLock.lock();
+    try {
+      if ( id == null ) {
+        throw ExceptionFactory.vertexIdCanNotBeNull();
+      }
+      int handle = toHandle( id );
+      return handle >= 0 && liveVertices.get( handle ) ? new CompactVertex( this, handle ) : null;
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  @Override
+  public void removeVertex( Vertex vertex ) {
+    writeLock.lock();
+    try {
+      int handle = handleOf( vertex );
+      if ( !liveVertices.get( handle ) ) {
+        throw ExceptionFactory.vertexWithIdDoesNotExist( vertex.getId() );
+      }
+      for ( Edge edge : getEdges( (CompactVertex) vertex, Direction.BOTH ) ) {
+        removeEdge( edge );
+      }
+      for ( int code = 0; code < labels.size(); code++ ) {
+        clearAdjacency( outAdjacency.get( code ), handle );
+        clearAdjacency( inAdjacency.get( code ), handle );
+      }
+      for ( PropertyColumn column : vertexProperties.values() ) {
+        column.remove( handle );
+      }
+      liveVertices.clear( handle );
+      freeVertices = IntArrays.add( freeVertices, handle );
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public Iterable<Vertex> getVertices() {
+    readLock.lock();
+    try {
+      List<Vertex> vertices = new ArrayList<Vertex>( liveVertices.cardinality() );
+      for ( int handle = liveVertices.nextSetBit( 0 ); handle >= 0; handle = liveVertices.nextSetBit( handle + 1 ) ) {
+        vertices.add( new CompactVertex( this, handle ) );
+      }
+      return vertices;
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  @Override
+  public Iterable<Vertex> getVertices( String key, Object value ) {
+    readLock.lock();
+    try {
+      PropertyColumn column = vertexProperties.get( key );
+      if ( column == null ) {
+        return new ArrayList<Vertex>( 0 );
+      }
+      int[] handles = column.find( value, vertexCount );
+      List<Vertex> vertices = new ArrayList<Vertex>( handles.length );
+      for ( int handle : handles ) {
+        vertices.add( new CompactVertex( this, handle ) );
+      }
+      return vertices;
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  @Override
+  public Edge addEdge( Object id, Vertex outVertex, Vertex inVertex, String label ) {
+    writeLock.lock();
+    try {
+      if ( label == null ) {
+        throw ExceptionFactory.edgeLabelCanNotBeNull();
+      }
+      int out = handleOf( outVertex );
+      int in = handleOf( inVertex );
+      int handle = IntArrays.size( freeEdges ) > 0 ? IntArrays.removeLast( freeEdges ) : edgeCount++;
+      if ( handle == edgeOut.length ) {
+        int capacity = edgeOut.length * 2;
+        edgeOut = Arrays.copyOf( edgeOut, capacity );
+        edgeIn = Arrays.copyOf( edgeIn, capacity );
+        edgeLabel = Arrays.copyOf( edgeLabel, capacity );
+      }
+      int code = getLabelCode( label );
+      edgeOut[ handle ] = out;
+      edgeIn[ handle ] = in;
+      edgeLabel[ handle ] = code;
+      outAdjacency.set( code, addAdjacency( outAdjacency.get( code ), out, handle ) );
+      inAdjacency.set( code, addAdjacency( inAdjacency.get( code ), in, handle ) );
+      liveEdges.set( handle );
+      return new CompactEdge( this, handle );
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public Edge getEdge( Object id ) {
+    readLock.lock();
+    try {
+      if ( id == null ) {
+        throw ExceptionFactory.edgeIdCanNotBeNull();
+      }
+      int handle = toHandle( id );
+      return handle >= 0 && liveEdges.get( handle ) ? new CompactEdge( this, handle ) : null;
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  @Override
+  public void removeEdge( Edge edge ) {
+    writeLock.lock();
+    try {
+      int handle = ( (CompactEdge) edge ).getHandle();
+      if ( !liveEdges.get( handle ) ) {
+        return;
+      }
+      int code = edgeLabel[ handle ];
+      IntArrays.remove( outAdjacency.get( code )[ edgeOut[ handle ] ], handle );
+      IntArrays.remove( inAdjacency.get( code )[ edgeIn[ handle ] ], handle );
+      for ( PropertyColumn column : edgeProperties.values() ) {
+        column.remove( handle );
+      }
+      liveEdges.clear( handle );
+      freeEdges = IntArrays.add( freeEdges, handle );
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public Iterable<Edge> getEdges() {
+    readLock.lock();
+    try {
+      List<Edge> edges = new ArrayList<Edge>( liveEdges.cardinality() );
+      for ( int handle = liveEdges.nextSetBit( 0 ); handle >= 0; handle = liveEdges.nextSetBit( handle + 1 ) ) {
+        edges.add( new CompactEdge( this, handle ) );
+      }
+      return edges;
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  @Override
+  public Iterable<Edge> getEdges( String key, Object value ) {
+    readLock.lock();
+    try {
+      PropertyColumn column = edgeProperties.get( key );
+      if ( column == null ) {
+        return new ArrayList<Edge>( 0 );
+      }
+      int[] handles = column.find( value, edgeCount );
+      List<Edge> edges = new ArrayList<Edge>( handles.length );
+      for ( int handle : handles ) {
+        edges.add( new CompactEdge( this, handle ) );
+      }
+      return edges;
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  @Override
+  public GraphQuery query() {
+    return new DefaultGraphQuery( this );
+  }
+
+  @Override
+  public void shutdown() {
+    // nothing to release, the graph only lives in memory
+  }
+
+  @Override
+  public <T extends Element> void dropKeyIndex( String key, Class<T> elementClass ) {
+    writeLock.lock();
+    try {
+      PropertyColumn column = getColumns( elementClass ).get( key );
+      if ( column != null ) {
+        column.dropIndex();
+      }
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public <T extends Element> void createKeyIndex( String key, Class<T> elementClass, Parameter... indexParameters ) {
+    writeLock.lock();
+    try {
+      Map<String, PropertyColumn> columns = getColumns( elementClass );
+      PropertyColumn column = columns.get( key );
+      if ( column == null ) {
+        column = new PropertyColumn( Vertex.class.isAssignableFrom( elementClass ) ? vertexCount : edgeCount );
+        columns.put( key, column );
+      }
+      column.createIndex();
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public <T extends Element> Set<String> getIndexedKeys( Class<T> elementClass ) {
+    readLock.lock();
+    try {
+      Set<String> keys = new HashSet<String>();
+      for ( Map.Entry<String, PropertyColumn> entry : getColumns( elementClass ).entrySet() ) {
+        if ( entry.getValue().isIndexed() ) {
+          keys.add( entry.getKey() );
+        }
+      }
+      return keys;
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return StringFactory.graphString( this,
+      "vertices:" + liveVertices.cardinality() + " edges:" + liveEdges.cardinality() );
+  }
+
+  /**
+   * @return the number of vertex handles handed out so far, live or free, which is the length of the vertex columns
+   */
+  int getVertexHandleCount() {
+    return vertexCount;
+  }
+
+  /**
+   * @return the number of edge handles handed out so far, live or free, which is the length of the edge columns
+   */
+  int getEdgeHandleCount() {
+    return edgeCount;
+  }
+
+  /**
+   * @return the column holding the values of a vertex property key, or null if no vertex has that key
+   */
+  PropertyColumn getVertexColumn( String key ) {
+    readLock.lock();
+    try {
+      return vertexProperties.get( key );
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  Object getProperty( CompactElement element, String key ) {
+    readLock.lock();
+    try {
+      PropertyColumn column = getColumns( element ).get( key );
+      return column == null ? null : column.get( element.getHandle() );
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  Set<String> getPropertyKeys( CompactElement element ) {
+    readLock.lock();
+    try {
+      Set<String> keys = new HashSet<String>();
+      for ( Map.Entry<String, PropertyColumn> entry : getColumns( element ).entrySet() ) {
+        if ( entry.getValue().has( element.getHandle() ) ) {
+          keys.add( entry.getKey() );
+        }
+      }
+      return keys;
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  void setProperty( CompactElement element, String key, Object value ) {
+    writeLock.lock();
+    try {
+      Map<String, PropertyColumn> columns = getColumns( element );
+      PropertyColumn column = columns.get( key );
+      if ( column == null ) {
+        column = new PropertyColumn( element instanceof Vertex ? vertexCount : edgeCount );
+        columns.put( key, column );
+      }
+      column.set( element.getHandle(), value );
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  Object removeProperty( CompactElement element, String key ) {
+    writeLock.lock();
+    try {
+      Map<String, PropertyColumn> columns = getColumns( element );
+      PropertyColumn column = columns.get( key );
+      if ( column == null ) {
+        return null;
+      }
+      Object value = column.remove( element.getHandle() );
+      if ( column.isEmpty() && !column.isIndexed() ) {
+        // keep the number of columns getPropertyKeys has to check down to the keys that are in use
+        columns.remove( key );
+      }
+      return value;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  Iterable<Edge> getEdges( CompactVertex vertex, Direction direction, String... edgeLabels ) {
+    readLock.lock();
+    try {
+      List<Edge> edges = new ArrayList<Edge>();
+      if ( direction != Direction.IN ) {
+        collectEdges( outAdjacency, vertex.getHandle(), edgeLabels, edges );
+      }
+      if ( direction != Direction.OUT ) {
+        collectEdges( inAdjacency, vertex.getHandle(), edgeLabels, edges );
+      }
+      return edges;
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  Vertex getEdgeVertex( CompactEdge edge, Direction direction ) {
+    readLock.lock();
+    try {
+      int handle = direction == Direction.OUT ? edgeOut[ edge.getHandle() ] : edgeIn[ edge.getHandle() ];
+      return new CompactVertex( this, handle );
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  String getEdgeLabel( CompactEdge edge ) {
+    readLock.lock();
+    try {
+      return labels.get( edgeLabel[ edge.getHandle() ] );
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  private void collectEdges( List<int[][]> adjacency, int vertex, String[] edgeLabels, List<Edge> edges ) {
+    if ( edgeLabels == null || edgeLabels.length == 0 ) {
+      for ( int code = 0; code < labels.size(); code++ ) {
+        collectEdges( adjacency.get( code ), vertex, edges );
+      }
+    } else {
+      for ( String label : edgeLabels ) {
+        Integer code = labelCodes.get( label );
+        if ( code != null ) {
+          collectEdges( adjacency.get( code ), vertex, edges );
+        }
+      }
+    }
+  }
+
+  private void collectEdges( int[][] adjacency, int vertex, List<Edge> edges ) {
+    if ( vertex < adjacency.length ) {
+      int[] handles = adjacency[ vertex ];
+      for ( int i = 0; i < IntArrays.size( handles ); i++ ) {
+        edges.add( new CompactEdge( this, IntArrays.get( handles, i ) ) );
+      }
+    }
+  }
+
+  private int[][] addAdjacency( int[][] adjacency, int vertex, int edge ) {
+    if ( vertex >= adjacency.length ) {
+      adjacency = Arrays.copyOf( adjacency, Math.max( adjacency.length * 2, vertex + 1 ) );
+    }
+    adjacency[ vertex ] = IntArrays.add( adjacency[ vertex ], edge );
+    return adjacency;
+  }
+
+  private void clearAdjacency( int[][] adjacency, int vertex ) {
+    if ( vertex < adjacency.length ) {
+      adjacency[ vertex ] = null;
+    }
+  }
+
+  private int getLabelCode( String label ) {
+    Integer code = labelCodes.get( label );
+    if ( code == null ) {
+      code = labels.size();
+      labels.add( label );
+      labelCodes.put( label, code );
+      outAdjacency.add( new int[ INITIAL_CAPACITY ][] );
+      inAdjacency.add( new int[ INITIAL_CAPACITY ][] );
+    }
+    return code;
+  }
+
+  private Map<String, PropertyColumn> getColumns( CompactElement element ) {
+    return element instanceof Vertex ? vertexProperties : edgeProperties;
+  }
+
+  private Map<String, PropertyColumn> getColumns( Class<? extends Element> elementClass ) {
+    if ( elementClass == null ) {
+      throw ExceptionFactory.classForElementCannotBeNull();
+    } else if ( Vertex.class.isAssignableFrom( elementClass ) ) {
+      return vertexProperties;
+    } else if ( Edge.class.isAssignableFrom( elementClass ) ) {
+      return edgeProperties;
+    } else {
+      throw ExceptionFactory.classIsNotIndexable( elementClass );
+    }
+  }
+
+  private int handleOf( Vertex vertex ) {
+    if ( !( vertex instanceof CompactVertex ) || ( (CompactVertex) vertex ).graph != this ) {
+      throw new IllegalArgumentException(
+        Messages.getString( "ERROR.CompactGraph.ForeignVertex", String.valueOf( vertex ) ) );
+    }
+    return ( (CompactVertex) vertex ).getHandle();
+  }
+
+  private static int toHandle( Object id ) {
+    if ( id instanceof Number ) {
+      return ( (Number) id ).intValue();
+    }
+    try {
+      return Integer.parseInt( id.toString() );
+    } catch ( NumberFormatException e ) {
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,71 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.graph.compact;
+
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.VertexQuery;
+import com.tinkerpop.blueprints.util.DefaultVertexQuery;
+import com.tinkerpop.blueprints.util.StringFactory;
+import com.tinkerpop.blueprints.util.VerticesFromEdgesIterable;
+
+/**
+ * A vertex of a {@link CompactGraph}
+ */
+class CompactVertex extends CompactElement implements Vertex {
+
+  CompactVertex( CompactGraph graph, int handle ) {
+    super( graph, handle );
+  }
+
+  @Override
+  public Iterable<Edge> getEdges( Direction direction, String... labels ) {
+    return graph.getEdges( this, direction, labels );
+  }
+
+  @Override
+  public Iterable<Vertex> getVertices( Direction direction, String... labels ) {
+    return new VerticesFromEdgesIterable( this, direction, labels );
+  }
+
+  @Override
+  public VertexQuery query() {
+    return new DefaultVertexQuery( this );
+  }
+
+  @Override
+  public Edge addEdge( String label, Vertex inVertex ) {
+    return graph.addEdge( null, this, inVertex, label );
+  }
+
+  @Override
+  public void remove() {
+    graph.removeVertex( this );
+  }
+
+  @Override
+  public String toString() {
+    return StringFactory.vertexString( this );
+  }
+}
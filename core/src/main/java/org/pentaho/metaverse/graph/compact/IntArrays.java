@@ -0,0 +1,93 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.graph.compact;
+
+import java.util.Arrays;
+
+/**
+ * Helpers for growable lists of ints stored in a plain int array, the first slot holding the number of elements. A
+ * null array is an empty list. This keeps per-vertex adjacency and index postings down to a single array object.
+ */
+final class IntArrays {
+
+  private static final int INITIAL_CAPACITY = 4;
+
+  private IntArrays() {
+  }
+
+  static int size( int[] list ) {
+    return list == null ? 0 : list[ 0 ];
+  }
+
+  static int get( int[] list, int i ) {
+    return list[ i + 1 ];
+  }
+
+  /**
+   * Appends a value to the list
+   *
+   * @return the list, which is a new array if it had to grow
+   */
+  static int[] add( int[] list, int value ) {
+    if ( list == null ) {
+      list = new int[ INITIAL_CAPACITY ];
+    } else if ( list[ 0 ] + 1 == list.length ) {
+      list = Arrays.copyOf( list, list.length * 2 );
+    }
+    list[ ++list[ 0 ] ] = value;
+    return list;
+  }
+
+  /**
+   * Removes one occurrence of the value from the list, the last element takes its place
+   *
+   * @return true if the value was found
+   */
+  static boolean remove( int[] list, int value ) {
+    int size = size( list );
+    for ( int i = 1; i <= size; i++ ) {
+      if ( list[ i ] == value ) {
+        list[ i ] = list[ size ];
+        list[ 0 ]--;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Removes the last element of a non empty list
+   *
+   * @return the removed element
+   */
+  static int removeLast( int[] list ) {
+    return list[ list[ 0 ]-- ];
+  }
+
+  /**
+   * @return a copy of the elements of the list, without the size slot
+   */
+  static int[] toArray( int[] list ) {
+    return list == null ? new int[ 0 ] : Arrays.copyOfRange( list, 1, list[ 0 ] + 1 );
+  }
+}
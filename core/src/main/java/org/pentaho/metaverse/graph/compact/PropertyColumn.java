@@ -0,0 +1,272 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.graph.compact;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The values of one property key for all of the vertices (or edges) of a {@link CompactGraph}. Values start out
+ * dictionary encoded: every distinct value is stored once and each element only holds the int code of its value, so
+ * a value shared by many elements (a node type, a namespace) costs 4 bytes per element. Codes are reference counted
+ * and reused once no element holds them anymore.
+ * <p/>
+ * A dictionary only pays off when values repeat. Once most of the values of a column are distinct (ids, names,
+ * paths) the column drops its dictionary for good and stores a plain value reference per element instead.
+ * <p/>
+ * A column is not thread-safe, it is only accessed while holding the lock of its {@link CompactGraph}.
+ */
+final class PropertyColumn {
+
+  private static final int NO_VALUE = 0;
+
+  /**
+   * The number of distinct values a column keeps in its dictionary before it checks whether they are worth it
+   */
+  static final int MIN_DICTIONARY_SIZE = 64;
+
+  /**
+   * The value code of each element, indexed by element handle, null once the column stores values directly
+   */
+  private int[] codes;
+
+  /**
+   * The value of each code, slot 0 (NO_VALUE) is always null
+   */
+  private Object[] values = new Object[ 8 ];
+  private int[] refCounts = new int[ 8 ];
+  private int nextCode = 1;
+  private int[] freeCodes;
+
+  private Map<Object, Integer> codeOf = new HashMap<Object, Integer>();
+
+  /**
+   * The value of each element, indexed by element handle, only used once the column has dropped its dictionary
+   */
+  private Object[] direct;
+
+  /**
+   * The number of elements that have a value
+   */
+  private int size;
+
+  /**
+   * The handles of the elements holding each value, only maintained when the key is indexed
+   */
+  private Map<Object, int[]> index;
+
+  PropertyColumn( int capacity ) {
+    codes = new int[ Math.max( capacity, 16 ) ];
+  }
+
+  Object get( int handle ) {
+    if ( codes == null ) {
+      return handle < direct.length ? direct[ handle ] : null;
+    }
+    return handle < codes.length ? values[ codes[ handle ] ] : null;
+  }
+
+  boolean has( int handle ) {
+    return get( handle ) != null;
+  }
+
+  /**
+   * Sets the value of an element
+   *
+   * @return the previous value, or null if there was none
+   */
+  Object set( int handle, Object value ) {
+    Object old = get( handle );
+    if ( value.equals( old ) ) {
+      return old;
+    }
+    remove( handle );
+    if ( codes == null ) {
+      if ( handle >= direct.length ) {
+        direct = Arrays.copyOf( direct, Math.max( direct.length * 2, handle + 1 ) );
+      }
+      direct[ handle ] = value;
+    } else {
+      if ( handle >= codes.length ) {
+        codes = Arrays.copyOf( codes, Math.max( codes.length * 2, handle + 1 ) );
+      }
+      codes[ handle ] = encode( value );
+    }
+    size++;
+    if ( index != null ) {
+      index.put( value, IntArrays.add( index.get( value ), handle ) );
+    }
+    if ( codes != null && codeOf.size() >= MIN_DICTIONARY_SIZE && codeOf.size() * 2 > size ) {
+      dropDictionary();
+    }
+    return old;
+  }
+
+  /**
+   * Removes the value of an element
+   *
+   * @return the removed value, or null if there was none
+   */
+  Object remove( int handle ) {
+    Object old = get( handle );
+    if ( old == null ) {
+      return null;
+    }
+    if ( codes == null ) {
+      direct[ handle ] = null;
+    } else {
+      int code = codes[ handle ];
+      codes[ handle ] = NO_VALUE;
+      release( code );
+    }
+    size--;
+    if ( index != null ) {
+      int[] handles = index.get( old );
+      IntArrays.remove( handles, handle );
+      if ( IntArrays.size( handles ) == 0 ) {
+        index.remove( old );
+      }
+    }
+    return old;
+  }
+
+  /**
+   * Finds the elements that have the given value, using the index if there is one
+   *
+   * @param value     the value to look for
+   * @param maxHandle the number of element handles that have been handed out
+   * @return the handles of the matching elements
+   */
+  int[] find( Object value, int maxHandle ) {
+    if ( value == null ) {
+      return new int[ 0 ];
+    }
+    if ( index != null ) {
+      return IntArrays.toArray( index.get( value ) );
+    }
+    int[] matches = null;
+    if ( codes == null ) {
+      int end = Math.min( maxHandle, direct.length );
+      for ( int handle = 0; handle < end; handle++ ) {
+        if ( value.equals( direct[ handle ] ) ) {
+          matches = IntArrays.add( matches, handle );
+        }
+      }
+    } else {
+      Integer code = codeOf.get( value );
+      if ( code == null ) {
+        return new int[ 0 ];
+      }
+      int end = Math.min( maxHandle, codes.length );
+      for ( int handle = 0; handle < end; handle++ ) {
+        if ( codes[ handle ] == code ) {
+          matches = IntArrays.add( matches, handle );
+        }
+      }
+    }
+    return IntArrays.toArray( matches );
+  }
+
+  boolean isIndexed() {
+    return index != null;
+  }
+
+  void createIndex() {
+    if ( index == null ) {
+      index = new HashMap<Object, int[]>();
+      int end = codes == null ? direct.length : codes.length;
+      for ( int handle = 0; handle < end; handle++ ) {
+        Object value = get( handle );
+        if ( value != null ) {
+          index.put( value, IntArrays.add( index.get( value ), handle ) );
+        }
+      }
+    }
+  }
+
+  void dropIndex() {
+    index = null;
+  }
+
+  /**
+   * @return true if no element has a value for this key
+   */
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * @return true if the values are dictionary encoded, false once the column stores them directly
+   */
+  boolean isDictionaryEncoded() {
+    return codes != null;
+  }
+
+  /**
+   * @return the number of distinct values held in the dictionary, 0 once the column stores values directly
+   */
+  int getDictionarySize() {
+    return codes == null ? 0 : codeOf.size();
+  }
+
+  private void dropDictionary() {
+    direct = new Object[ codes.length ];
+    for ( int handle = 0; handle < codes.length; handle++ ) {
+      direct[ handle ] = values[ codes[ handle ] ];
+    }
+    codes = null;
+    values = null;
+    refCounts = null;
+    freeCodes = null;
+    codeOf = null;
+  }
+
+  private int encode( Object value ) {
+    Integer code = codeOf.get( value );
+    if ( code == null ) {
+      if ( IntArrays.size( freeCodes ) > 0 ) {
+        code = IntArrays.get( freeCodes, IntArrays.size( freeCodes ) - 1 );
+        freeCodes[ 0 ]--;
+      } else {
+        code = nextCode++;
+        if ( code == values.length ) {
+          values = Arrays.copyOf( values, values.length * 2 );
+          refCounts = Arrays.copyOf( refCounts, refCounts.length * 2 );
+        }
+      }
+      values[ code ] = value;
+      codeOf.put( value, code );
+    }
+    refCounts[ code ]++;
+    return code;
+  }
+
+  private void release( int code ) {
+    if ( --refCounts[ code ] == 0 ) {
+      codeOf.remove( values[ code ] );
+      values[ code ] = null;
+      freeCodes = IntArrays.add( freeCodes, code );
+    }
+  }
+}
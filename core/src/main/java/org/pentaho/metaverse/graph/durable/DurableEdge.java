@@ -0,0 +1,52 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.graph.durable;
+
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
+
+/**
+ * An edge of a {@link DurableGraph}
+ */
+class DurableEdge extends DurableElement<Edge> implements Edge {
+
+  DurableEdge( DurableGraph graph, Edge baseEdge ) {
+    super( graph, baseEdge );
+  }
+
+  @Override
+  public Vertex getVertex( Direction direction ) throws IllegalArgumentException {
+    return new DurableVertex( graph, baseElement.getVertex( direction ) );
+  }
+
+  @Override
+  public String getLabel() {
+    return baseElement.getLabel();
+  }
+
+  @Override
+  public void remove() {
+    graph.removeEdge( this );
+  }
+}
@@ -0,0 +1,93 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.graph.durable;
+
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.util.ElementHelper;
+
+import java.util.Set;
+
+/**
+ * An element of a {@link DurableGraph}, property changes are written to the graph's mutation log
+ *
+ * @param <T> the type of the wrapped element
+ */
+abstract class DurableElement<T extends Element> implements Element {
+
+  protected final DurableGraph graph;
+  protected final T baseElement;
+
+  DurableElement( DurableGraph graph, T baseElement ) {
+    this.graph = graph;
+    this.baseElement = baseElement;
+  }
+
+  T getBaseElement() {
+    return baseElement;
+  }
+
+  @Override
+  public Object getId() {
+    return baseElement.getId();
+  }
+
+  @Override
+  public <V> V getProperty( String key ) {
+    return baseElement.getProperty( key );
+  }
+
+  @Override
+  public Set<String> getPropertyKeys() {
+    return baseElement.getPropertyKeys();
+  }
+
+  @Override
+  public void setProperty( String key, Object value ) {
+    baseElement.setProperty( key, value );
+    graph.logSetProperty( this, key, value );
+  }
+
+  @Override
+  public <V> V removeProperty( String key ) {
+    V value = baseElement.removeProperty( key );
+    if ( value != null ) {
+      graph.logRemoveProperty( this, key );
+    }
+    return value;
+  }
+
+  @Override
+  public int hashCode() {
+    return baseElement.hashCode();
+  }
+
+  @Override
+  public boolean equals( Object object ) {
+    return ElementHelper.areEqual( this, object );
+  }
+
+  @Override
+  public String toString() {
+    return baseElement.toString();
+  }
+}
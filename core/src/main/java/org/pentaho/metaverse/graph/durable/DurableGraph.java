@@ -0,0 +1,802 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.graph.durable;
+
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.Features;
+import com.tinkerpop.blueprints.GraphQuery;
+import com.tinkerpop.blueprints.KeyIndexableGraph;
+import com.tinkerpop.blueprints.Parameter;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.util.DefaultGraphQuery;
+import com.tinkerpop.blueprints.util.StringFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A graph that keeps the contents of a backing (in-memory) graph on disk, so the metaverse survives a restart.
+ * <p>
+ * The contents are stored in a directory as a pair of segment files (all the vertices and all the edges, with their
+ * properties) plus a mutation log that every change made since the segments were written is appended to. When the
+ * graph is opened the segments are memory-mapped and loaded into the backing graph and the log is replayed on top of
+ * them. The result is then checkpointed: new segments are written for the next epoch and forced to disk, the (empty)
+ * log of that epoch is created and forced to disk, which makes the new epoch the current one, and only then are the
+ * files of the previous epoch deleted. The graph is checkpointed again when it is shut down, and once the mutation log
+ * has grown past {@link #getCheckpointLogSize()} bytes so that replaying it on the next start stays cheap. That
+ * checkpoint is not taken by the change that filled the log, it is left to {@link #isCheckpointDue()} and
+ * {@link #checkpoint()} so the caller can take it without holding up the writers of the graph.
+ * </p>
+ * <p>
+ * Ids are not left to the backing graph unless it ignores supplied ids: a graph that was just loaded does not know
+ * which ids it handed out before the restart, so the ids of new elements are generated here, past every id that was
+ * loaded.
+ * </p>
+ * <p>
+ * The log is buffered, {@link #commit()} writes the buffered changes and forces them to disk, a crash loses at most the
+ * changes made since the last commit. A record cut off at the end of the log, or anything after the last record that
+ * can be read, is ignored when it is replayed. When the files of the current epoch cannot be read at all (a header cut
+ * off by a crash while checkpointing) the previous epoch is loaded if its files are still there; a graph that cannot
+ * be loaded from any epoch is set aside and an empty graph is opened, rather than failing the start.
+ * </p>
+ * This class is not thread-safe, it relies on {@link org.pentaho.metaverse.graph.SynchronizedGraph} for that.
+ */
+public class DurableGraph implements KeyIndexableGraph {
+
+  private static final Logger LOG = LoggerFactory.getLogger( DurableGraph.class );
+
+  private static final int SEGMENT_MAGIC = 0x4D565347;
+  private static final int LOG_MAGIC = 0x4D564C47;
+  private static final int FORMAT_VERSION = 1;
+
+  private static final String VERTEX_SEGMENT_PREFIX = "vertices-";
+  private static final String EDGE_SEGMENT_PREFIX = "edges-";
+  private static final String SEGMENT_SUFFIX = ".seg";
+  private static final String LOG_PREFIX = "mutations-";
+  private static final String LOG_SUFFIX = ".log";
+  private static final String UNREADABLE_SUFFIX = ".unreadable";
+  private static final Pattern FILE_PATTERN = Pattern.compile(
+    "(" + VERTEX_SEGMENT_PREFIX + "|" + EDGE_SEGMENT_PREFIX + "|" + LOG_PREFIX + ")(\\d+)\\.(seg|log)" );
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * The default size, in bytes, the mutation log may grow to before the graph is checkpointed
+   */
+  public static final long DEFAULT_CHECKPOINT_LOG_SIZE = 64L * 1024 * 1024;
+
+  private static final byte OP_ADD_VERTEX = 1;
+  private static final byte OP_REMOVE_VERTEX = 2;
+  private static final byte OP_ADD_EDGE = 3;
+  private static final byte OP_REMOVE_EDGE = 4;
+  private static final byte OP_SET_VERTEX_PROPERTY = 5;
+  private static final byte OP_REMOVE_VERTEX_PROPERTY = 6;
+  private static final byte OP_SET_EDGE_PROPERTY = 7;
+  private static final byte OP_REMOVE_EDGE_PROPERTY = 8;
+
+  private final KeyIndexableGraph baseGraph;
+  private final File directory;
+  private final Features features;
+
+  private long epoch;
+  private DataOutputStream log;
+  private FileOutputStream logFile;
+  private boolean logFailed;
+  private volatile boolean checkpointDue;
+  private long checkpointLogSize = DEFAULT_CHECKPOINT_LOG_SIZE;
+
+  /**
+   * The next id to try for a new element, when the backing graph takes supplied ids
+   */
+  private long nextId;
+
+  /**
+   * Opens the graph stored in the given directory, loading it into the backing graph. The directory is created if it
+   * does not exist yet, an empty directory opens an empty graph.
+   *
+   * @param baseGraph the (empty) graph to hold the contents
+   * @param directory the directory the graph is stored in
+   * @return the durable graph
+   * @throws IOException if the stored graph cannot be read or the new checkpoint cannot be written
+   */
+  public static DurableGraph open( KeyIndexableGraph baseGraph, File directory ) throws IOException {
+    DurableGraph graph = new DurableGraph( baseGraph, directory );
+    graph.load();
+    return graph;
+  }
+
+  protected DurableGraph( KeyIndexableGraph baseGraph, File directory ) {
+    this.baseGraph = baseGraph;
+    this.directory = directory;
+    this.features = baseGraph.getFeatures().copyFeatures();
+    this.features.isPersistent = true;
+    this.features.isWrapper = true;
+  }
+
+  public KeyIndexableGraph getBaseGraph() {
+    return baseGraph;
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  /**
+   * @return the size, in bytes, the mutation log may grow to before the graph is checkpointed
+   */
+  public long getCheckpointLogSize() {
+    return checkpointLogSize;
+  }
+
+  /**
+   * Sets the size, in bytes, the mutation log may grow to before the graph is checkpointed. A size of 0 or less only
+   * checkpoints the graph when it is opened and shut down.
+   *
+   * @param checkpointLogSize the log size
+   */
+  public void setCheckpointLogSize( long checkpointLogSize ) {
+    this.checkpointLogSize = checkpointLogSize;
+  }
+
+  /**
+   * @return the epoch of the current segments and mutation log
+   */
+  public long getEpoch() {
+    return epoch;
+  }
+
+  @Override
+  public Features getFeatures() {
+    return features;
+  }
+
+  @Override
+  public Vertex addVertex( Object id ) {
+    Vertex vertex = baseGraph.addVertex( id == null ? nextVertexId() : id );
+    logOperation( OP_ADD_VERTEX, vertex.getId() );
+    return new DurableVertex( this, vertex );
+  }
+
+  @Override
+  public Vertex getVertex( Object id ) {
+    Vertex vertex = baseGraph.getVertex( id );
+    return vertex == null ? null : new DurableVertex( this, vertex );
+  }
+
+  @Override
+  public void removeVertex( Vertex vertex ) {
+    Vertex baseVertex = getBaseVertex( vertex );
+    Object id = baseVertex.getId();
+    baseGraph.removeVertex( baseVertex );
+    logOperation( OP_REMOVE_VERTEX, id );
+  }
+
+  @Override
+  public Iterable<Vertex> getVertices() {
+    return wrapVertices( baseGraph.getVertices() );
+  }
+
+  @Override
+  public Iterable<Vertex> getVertices( String key, Object value ) {
+    return wrapVertices( baseGraph.getVertices( key, value ) );
+  }
+
+  @Override
+  public Edge addEdge( Object id, Vertex outVertex, Vertex inVertex, String label ) {
+    Vertex baseOut = getBaseVertex( outVertex );
+    Vertex baseIn = getBaseVertex( inVertex );
+    Edge edge = baseGraph.addEdge( id == null ? nextEdgeId() : id, baseOut, baseIn, label );
+    logOperation( OP_ADD_EDGE, edge.getId(), baseOut.getId(), baseIn.getId(), label );
+    return new DurableEdge( this, edge );
+  }
+
+  @Override
+  public Edge getEdge( Object id ) {
+    Edge edge = baseGraph.getEdge( id );
+    return edge == null ? null : new DurableEdge( this, edge );
+  }
+
+  @Override
+  public void removeEdge( Edge edge ) {
+    Edge baseEdge = edge instanceof DurableEdge ? ( (DurableEdge) edge ).getBaseElement() : edge;
+    Object id = baseEdge.getId();
+    baseGraph.removeEdge( baseEdge );
+    logOperation( OP_REMOVE_EDGE, id );
+  }
+
+  @Override
+  public Iterable<Edge> getEdges() {
+    return wrapEdges( baseGraph.getEdges() );
+  }
+
+  @Override
+  public Iterable<Edge> getEdges( String key, Object value ) {
+    return wrapEdges( baseGraph.getEdges( key, value ) );
+  }
+
+  @Override
+  public GraphQuery query() {
+    return new DefaultGraphQuery( this );
+  }
+
+  /**
+   * Checkpoints the graph, closes the mutation log and shuts the backing graph down
+   */
+  @Override
+  public void shutdown() {
+    try {
+      checkpoint();
+    } catch ( IOException e ) {
+      LOG.error( "Could not checkpoint the graph stored in " + directory, e );
+    }
+    closeLog();
+    baseGraph.shutdown();
+  }
+
+  /**
+   * Key indices are not stored, they are recreated by whoever opens the graph
+   */
+  @Override
+  public <T extends Element> void dropKeyIndex( String key, Class<T> elementClass ) {
+    baseGraph.dropKeyIndex( key, elementClass );
+  }
+
+  @Override
+  public <T extends Element> void createKeyIndex( String key, Class<T> elementClass, Parameter... indexParameters ) {
+    baseGraph.createKeyIndex( key, elementClass, indexParameters );
+  }
+
+  @Override
+  public <T extends Element> Set<String> getIndexedKeys( Class<T> elementClass ) {
+    return baseGraph.getIndexedKeys( elementClass );
+  }
+
+  /**
+   * Writes the whole graph to the segments of the next epoch and starts an empty mutation log for it. The files of the
+   * previous epoch are deleted once the new segments and log are on disk. The graph must not be modified while it is
+   * checkpointed, a {@link org.pentaho.metaverse.graph.SynchronizedGraph} checkpoints it while holding its read lock.
+   *
+   * @throws IOException if the segments or the log cannot be written
+   */
+  public synchronized void checkpoint() throws IOException {
+    long next = epoch + 1;
+    writeVertexSegment( next );
+    writeEdgeSegment( next );
+    closeLog();
+    // creating the log commits the checkpoint, until then the previous epoch is the current one
+    createLog( next );
+    syncDirectory();
+    logFailed = false;
+    checkpointDue = false;
+    epoch = next;
+    deleteFilesBefore( next );
+  }
+
+  /**
+   * @return true if the mutation log has grown past the checkpoint log size, so the graph should be checkpointed
+   */
+  public boolean isCheckpointDue() {
+    return checkpointDue;
+  }
+
+  /**
+   * Writes the buffered changes to the mutation log
+   *
+   * @throws IOException if the log cannot be written
+   */
+  public synchronized void flush() throws IOException {
+    if ( log != null ) {
+      log.flush();
+    }
+  }
+
+  /**
+   * Writes the buffered changes to the mutation log and forces them to disk, so they survive a crash. The changes are
+   * forced to disk without holding the graph's monitor, changes made meanwhile are only buffered.
+   *
+   * @throws IOException if the log cannot be written
+   */
+  public void commit() throws IOException {
+    FileChannel channel;
+    synchronized ( this ) {
+      if ( log == null || logFailed ) {
+        return;
+      }
+      log.flush();
+      channel = logFile.getChannel();
+    }
+    try {
+      channel.force( false );
+    } catch ( ClosedChannelException e ) {
+      // a checkpoint closed the log meanwhile, it forced the log to disk before closing it
+    }
+  }
+
+  @Override
+  public String toString() {
+    return StringFactory.graphString( this, baseGraph.toString() );
+  }
+
+  synchronized void logSetProperty( DurableElement element, String key, Object value ) {
+    boolean isVertex = element instanceof Vertex;
+    logOperation( isVertex ? OP_SET_VERTEX_PROPERTY : OP_SET_EDGE_PROPERTY, element.getId(), key, value );
+  }
+
+  synchronized void logRemoveProperty( DurableElement element, String key ) {
+    boolean isVertex = element instanceof Vertex;
+    logOperation( isVertex ? OP_REMOVE_VERTEX_PROPERTY : OP_REMOVE_EDGE_PROPERTY, element.getId(), key );
+  }
+
+  private synchronized void logOperation( byte operation, Object... values ) {
+    if ( log == null || logFailed ) {
+      return;
+    }
+    try {
+      log.writeByte( operation );
+      for ( Object value : values ) {
+        RecordCodec.writeValue( log, value );
+      }
+    } catch ( IOException e ) {
+      // the change is still in memory and will be written by the next checkpoint
+      logFailed = true;
+      LOG.error( "Could not write to the mutation log of the graph stored in " + directory, e );
+      return;
+    }
+    if ( checkpointLogSize > 0 && log.size() >= checkpointLogSize ) {
+      // the log keeps growing until the caller takes the checkpoint, this is called while the graph is being modified
+      checkpointDue = true;
+    }
+  }
+
+  /**
+   * @return an id no vertex of the backing graph has, or null if the backing graph ignores supplied ids
+   */
+  private Object nextVertexId() {
+    if ( baseGraph.getFeatures().ignoresSuppliedIds ) {
+      return null;
+    }
+    String id;
+    do {
+      id = String.valueOf( nextId++ );
+    } while ( baseGraph.getVertex( id ) != null );
+    return id;
+  }
+
+  /**
+   * @return an id no edge of the backing graph has, or null if the backing graph ignores supplied ids
+   */
+  private Object nextEdgeId() {
+    if ( baseGraph.getFeatures().ignoresSuppliedIds ) {
+      return null;
+    }
+    String id;
+    do {
+      id = String.valueOf( nextId++ );
+    } while ( baseGraph.getEdge( id ) != null );
+    return id;
+  }
+
+  /**
+   * Makes sure the generated ids start past a numeric id that was loaded
+   */
+  private void loadedId( Object id ) {
+    try {
+      nextId = Math.max( nextId, Long.parseLong( String.valueOf( id ) ) + 1 );
+    } catch ( NumberFormatException e ) {
+      // not an id that could have been generated
+    }
+  }
+
+  private void load() throws IOException {
+    if ( !directory.isDirectory() && !directory.mkdirs() ) {
+      throw new IOException( "Could not create the graph directory " + directory );
+    }
+    List<Long> epochs = findLogEpochs();
+    long newest = epochs.isEmpty() ? -1 : epochs.get( 0 );
+    epoch = -1;
+    for ( long candidate : epochs ) {
+      try {
+        loadEpoch( candidate );
+        epoch = candidate;
+        break;
+      } catch ( IOException | RuntimeException e ) {
+        LOG.error( "Could not load epoch " + candidate + " of the graph stored in " + directory, e );
+        clearBaseGraph();
+      }
+    }
+    if ( epoch < 0 && newest >= 0 ) {
+      LOG.error( "Could not load the graph stored in " + directory + ", starting with an empty graph" );
+      setAsideFiles();
+    }
+    // the next checkpoint is past every epoch in the directory, so it replaces the files that could not be loaded
+    epoch = Math.max( epoch, newest );
+    checkpoint();
+  }
+
+  private void loadEpoch( long loadedEpoch ) throws IOException {
+    epoch = loadedEpoch;
+    Map<Object, Vertex> vertices = new HashMap<Object, Vertex>();
+    Map<Object, Edge> edges = new HashMap<Object, Edge>();
+    readVertexSegment( vertices );
+    readEdgeSegment( vertices, edges );
+    replayLog( vertices, edges );
+  }
+
+  /**
+   * @return the epochs of the mutation logs in the directory, newest first
+   */
+  private List<Long> findLogEpochs() {
+    List<Long> epochs = new ArrayList<Long>();
+    String[] names = directory.list();
+    if ( names != null ) {
+      for ( String name : names ) {
+        Matcher matcher = FILE_PATTERN.matcher( name );
+        if ( matcher.matches() && LOG_PREFIX.equals( matcher.group( 1 ) ) ) {
+          epochs.add( Long.parseLong( matcher.group( 2 ) ) );
+        }
+      }
+    }
+    Collections.sort( epochs, Collections.<Long>reverseOrder() );
+    return epochs;
+  }
+
+  /**
+   * Removes what a failed load put in the backing graph
+   */
+  private void clearBaseGraph() {
+    for ( Vertex vertex : toList( baseGraph.getVertices() ) ) {
+      baseGraph.removeVertex( vertex );
+    }
+    nextId = 0;
+  }
+
+  /**
+   * Renames the graph files that could not be loaded, so they are kept for inspection but not loaded again
+   */
+  private void setAsideFiles() {
+    String[] names = directory.list();
+    if ( names == null ) {
+      return;
+    }
+    for ( String name : names ) {
+      if ( FILE_PATTERN.matcher( name ).matches() ) {
+        File file = new File( directory, name );
+        if ( !file.renameTo( new File( directory, name + UNREADABLE_SUFFIX ) ) ) {
+          LOG.warn( "Could not rename " + file );
+        }
+      }
+    }
+  }
+
+  private static <T> List<T> toList( Iterable<T> elements ) {
+    List<T> list = new ArrayList<T>();
+    for ( T element : elements ) {
+      list.add( element );
+    }
+    return list;
+  }
+
+  private void readVertexSegment( Map<Object, Vertex> vertices ) throws IOException {
+    ByteBuffer in = map( getFile( VERTEX_SEGMENT_PREFIX, SEGMENT_SUFFIX, epoch ), SEGMENT_MAGIC );
+    int count = in.getInt();
+    for ( int i = 0; i < count; i++ ) {
+      Object id = RecordCodec.readValue( in );
+      Vertex vertex = baseGraph.addVertex( id );
+      readProperties( in, vertex );
+      vertices.put( id, vertex );
+      loadedId( vertex.getId() );
+    }
+  }
+
+  private void readEdgeSegment( Map<Object, Vertex> vertices, Map<Object, Edge> edges ) throws IOException {
+    ByteBuffer in = map( getFile( EDGE_SEGMENT_PREFIX, SEGMENT_SUFFIX, epoch ), SEGMENT_MAGIC );
+    int count = in.getInt();
+    for ( int i = 0; i < count; i++ ) {
+      Object id = RecordCodec.readValue( in );
+      Vertex out = vertices.get( RecordCodec.readValue( in ) );
+      Vertex inVertex = vertices.get( RecordCodec.readValue( in ) );
+      String label = RecordCodec.readString( in );
+      if ( out == null || inVertex == null ) {
+        throw new IOException( "The edge " + id + " references a vertex that is not in the segment" );
+      }
+      Edge edge = baseGraph.addEdge( id, out, inVertex, label );
+      readProperties( in, edge );
+      edges.put( id, edge );
+      loadedId( edge.getId() );
+    }
+  }
+
+  private void readProperties( ByteBuffer in, Element element ) throws IOException {
+    int count = in.getInt();
+    for ( int i = 0; i < count; i++ ) {
+      String key = RecordCodec.readString( in );
+      element.setProperty( key, RecordCodec.readValue( in ) );
+    }
+  }
+
+  private void replayLog( Map<Object, Vertex> vertices, Map<Object, Edge> edges ) throws IOException {
+    ByteBuffer in = map( getFile( LOG_PREFIX, LOG_SUFFIX, epoch ), LOG_MAGIC );
+    int replayed = 0;
+    try {
+      while ( in.hasRemaining() ) {
+        byte operation = in.get();
+        Object id = RecordCodec.readValue( in );
+        switch ( operation ) {
+          case OP_ADD_VERTEX:
+            Vertex added = baseGraph.addVertex( id );
+            vertices.put( id, added );
+            loadedId( added.getId() );
+            break;
+          case OP_REMOVE_VERTEX:
+            Vertex vertex = vertices.remove( id );
+            if ( vertex != null ) {
+              baseGraph.removeVertex( vertex );
+            }
+            break;
+          case OP_ADD_EDGE:
+            Vertex out = vertices.get( RecordCodec.readValue( in ) );
+            Vertex inVertex = vertices.get( RecordCodec.readValue( in ) );
+            String label = (String) RecordCodec.readValue( in );
+            if ( out != null && inVertex != null ) {
+              Edge addedEdge = baseGraph.addEdge( id, out, inVertex, label );
+              edges.put( id, addedEdge );
+              loadedId( addedEdge.getId() );
+            }
+            break;
+          case OP_REMOVE_EDGE:
+            Edge edge = edges.remove( id );
+            if ( edge != null && baseGraph.getEdge( edge.getId() ) != null ) {
+              baseGraph.removeEdge( edge );
+            }
+            break;
+          case OP_SET_VERTEX_PROPERTY:
+            setProperty( vertices.get( id ), (String) RecordCodec.readValue( in ), RecordCodec.readValue( in ) );
+            break;
+          case OP_REMOVE_VERTEX_PROPERTY:
+            removeProperty( vertices.get( id ), (String) RecordCodec.readValue( in ) );
+            break;
+          case OP_SET_EDGE_PROPERTY:
+            setProperty( edges.get( id ), (String) RecordCodec.readValue( in ), RecordCodec.readValue( in ) );
+            break;
+          case OP_REMOVE_EDGE_PROPERTY:
+            removeProperty( edges.get( id ), (String) RecordCodec.readValue( in ) );
+            break;
+          default:
+            throw new IOException( "Unknown operation " + operation + " in the mutation log" );
+        }
+        replayed++;
+      }
+    } catch ( BufferUnderflowException e ) {
+      // the last record was not written completely, everything before it has been replayed
+      LOG.warn( "Ignoring the incomplete last record of the mutation log of the graph stored in " + directory );
+    } catch ( IOException | RuntimeException e ) {
+      // the tail of the log was torn by a crash, everything before it has been replayed and the checkpoint taken after
+      // the replay leaves the tail behind
+      LOG.warn( "Ignoring the unreadable tail of the mutation log of the graph stored in " + directory
+        + " after " + replayed + " changes", e );
+    }
+    LOG.debug( "Replayed " + replayed + " changes from the mutation log of the graph stored in " + directory );
+  }
+
+  private static void setProperty( Element element, String key, Object value ) {
+    if ( element != null ) {
+      element.setProperty( key, value );
+    }
+  }
+
+  private static void removeProperty( Element element, String key ) {
+    if ( element != null ) {
+      element.removeProperty( key );
+    }
+  }
+
+  private void writeVertexSegment( long segmentEpoch ) throws IOException {
+    List<Vertex> vertices = new ArrayList<Vertex>();
+    for ( Vertex vertex : baseGraph.getVertices() ) {
+      vertices.add( vertex );
+    }
+    FileOutputStream file = new FileOutputStream( getFile( VERTEX_SEGMENT_PREFIX, SEGMENT_SUFFIX, segmentEpoch ) );
+    DataOutputStream out = openOutput( file );
+    try {
+      writeHeader( out, SEGMENT_MAGIC, segmentEpoch );
+      out.writeInt( vertices.size() );
+      for ( Vertex vertex : vertices ) {
+        RecordCodec.writeValue( out, vertex.getId() );
+        writeProperties( out, vertex );
+      }
+      out.flush();
+      file.getFD().sync();
+    } finally {
+      out.close();
+    }
+  }
+
+  private void writeEdgeSegment( long segmentEpoch ) throws IOException {
+    List<Edge> edges = new ArrayList<Edge>();
+    for ( Edge edge : baseGraph.getEdges() ) {
+      edges.add( edge );
+    }
+    FileOutputStream file = new FileOutputStream( getFile( EDGE_SEGMENT_PREFIX, SEGMENT_SUFFIX, segmentEpoch ) );
+    DataOutputStream out = openOutput( file );
+    try {
+      writeHeader( out, SEGMENT_MAGIC, segmentEpoch );
+      out.writeInt( edges.size() );
+      for ( Edge edge : edges ) {
+        RecordCodec.writeValue( out, edge.getId() );
+        RecordCodec.writeValue( out, edge.getVertex( Direction.OUT ).getId() );
+        RecordCodec.writeValue( out, edge.getVertex( Direction.IN ).getId() );
+        RecordCodec.writeString( out, edge.getLabel() );
+        writeProperties( out, edge );
+      }
+      out.flush();
+      file.getFD().sync();
+    } finally {
+      out.close();
+    }
+  }
+
+  private void writeProperties( DataOutputStream out, Element element ) throws IOException {
+    Set<String> keys = element.getPropertyKeys();
+    out.writeInt( keys.size() );
+    for ( String key : keys ) {
+      RecordCodec.writeString( out, key );
+      RecordCodec.writeValue( out, element.getProperty( key ) );
+    }
+  }
+
+  private void createLog( long logEpoch ) throws IOException {
+    FileOutputStream file = new FileOutputStream( getFile( LOG_PREFIX, LOG_SUFFIX, logEpoch ) );
+    DataOutputStream out = openOutput( file );
+    try {
+      writeHeader( out, LOG_MAGIC, logEpoch );
+      out.flush();
+      file.getFD().sync();
+    } catch ( IOException e ) {
+      out.close();
+      throw e;
+    }
+    log = out;
+    logFile = file;
+  }
+
+  private synchronized void closeLog() {
+    if ( log != null ) {
+      try {
+        log.flush();
+        if ( !logFailed ) {
+          logFile.getFD().sync();
+        }
+      } catch ( IOException e ) {
+        LOG.error( "Could not write the mutation log of the graph stored in " + directory, e );
+      }
+      try {
+        log.close();
+      } catch ( IOException e ) {
+        LOG.error( "Could not close the mutation log of the graph stored in " + directory, e );
+      }
+      log = null;
+      logFile = null;
+    }
+  }
+
+  /**
+   * Forces the new files' directory entries to disk before the files of the previous epoch are deleted. Not every
+   * platform can open a directory, there the files themselves having been forced to disk has to do.
+   */
+  private void syncDirectory() {
+    try ( FileChannel channel = FileChannel.open( directory.toPath(), StandardOpenOption.READ ) ) {
+      channel.force( true );
+    } catch ( IOException e ) {
+      LOG.debug( "Could not force the directory " + directory + " to disk", e );
+    }
+  }
+
+  private void deleteFilesBefore( long currentEpoch ) {
+    String[] names = directory.list();
+    if ( names == null ) {
+      return;
+    }
+    for ( String name : names ) {
+      Matcher matcher = FILE_PATTERN.matcher( name );
+      if ( matcher.matches() && Long.parseLong( matcher.group( 2 ) ) != currentEpoch ) {
+        File file = new File( directory, name );
+        if ( !file.delete() ) {
+          LOG.warn( "Could not delete " + file );
+        }
+      }
+    }
+  }
+
+  private File getFile( String prefix, String suffix, long fileEpoch ) {
+    return new File( directory, prefix + fileEpoch + suffix );
+  }
+
+  private static DataOutputStream openOutput( FileOutputStream file ) {
+    return new DataOutputStream( new BufferedOutputStream( file, BUFFER_SIZE ) );
+  }
+
+  private static void writeHeader( DataOutputStream out, int magic, long fileEpoch ) throws IOException {
+    out.writeInt( magic );
+    out.writeInt( FORMAT_VERSION );
+    out.writeLong( fileEpoch );
+  }
+
+  /**
+   * Maps the file into memory and checks its header
+   */
+  private ByteBuffer map( File file, int magic ) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile( file, "r" );
+    try {
+      FileChannel channel = raf.getChannel();
+      ByteBuffer in = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+      if ( in.remaining() < 16 || in.getInt() != magic || in.getInt() != FORMAT_VERSION || in.getLong() != epoch ) {
+        throw new IOException( file + " is not a graph file of epoch " + epoch );
+      }
+      return in;
+    } finally {
+      // the mapping stays valid after the channel is closed
+      raf.close();
+    }
+  }
+
+  private Vertex getBaseVertex( Vertex vertex ) {
+    return vertex instanceof DurableVertex ? ( (DurableVertex) vertex ).getBaseElement() : vertex;
+  }
+
+  private Iterable<Vertex> wrapVertices( Iterable<Vertex> vertices ) {
+    List<Vertex> wrapped = new ArrayList<Vertex>();
+    for ( Vertex vertex : vertices ) {
+      wrapped.add( new DurableVertex( this, vertex ) );
+    }
+    return wrapped;
+  }
+
+  private Iterable<Edge> wrapEdges( Iterable<Edge> edges ) {
+    List<Edge> wrapped = new ArrayList<Edge>();
+    for ( Edge edge : edges ) {
+      wrapped.add( new DurableEdge( this, edge ) );
+    }
+    return wrapped;
+  }
+}
@@ -0,0 +1,75 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.graph.durable;
+
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.VertexQuery;
+import com.tinkerpop.blueprints.util.DefaultVertexQuery;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A vertex of a {@link DurableGraph}
+ */
+class DurableVertex extends DurableElement<Vertex> implements Vertex {
+
+  DurableVertex( DurableGraph graph, Vertex baseVertex ) {
+    super( graph, baseVertex );
+  }
+
+  @Override
+  public Iterable<Edge> getEdges( Direction direction, String... labels ) {
+    List<Edge> edges = new ArrayList<Edge>();
+    for ( Edge edge : baseElement.getEdges( direction, labels ) ) {
+      edges.add( new DurableEdge( graph, edge ) );
+    }
+    return edges;
+  }
+
+  @Override
+  public Iterable<Vertex> getVertices( Direction direction, String... labels ) {
+    List<Vertex> vertices = new ArrayList<Vertex>();
+    for ( Vertex vertex : baseElement.getVertices( direction, labels ) ) {
+      vertices.add( new DurableVertex( graph, vertex ) );
+    }
+    return vertices;
+  }
+
+  @Override
+  public VertexQuery query() {
+    return new DefaultVertexQuery( this );
+  }
+
+  @Override
+  public Edge addEdge( String label, Vertex inVertex ) {
+    return graph.addEdge( null, this, inVertex, label );
+  }
+
+  @Override
+  public void remove() {
+    graph.removeVertex( this );
+  }
+}
@@ -0,0 +1,241 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.graph.durable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Reads and writes the strings and property values stored in the segment files and the mutation log of a
+ * {@link DurableGraph}. Values are written with a one byte type tag, values of types without a tag of their own are
+ * written using Java serialization (or as their string representation if they are not serializable).
+ * <p/>
+ * Serialization is restricted to the JDK value and collection types in {@link #SERIALIZABLE_CLASSES} (and arrays of
+ * them), on both sides: a value holding any other class is written as its string representation, and a stored value
+ * naming any other class is rejected instead of being instantiated, so a tampered graph file cannot be used to run
+ * deserialization gadgets.
+ */
+final class RecordCodec {
+
+  private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
+  private static final byte TYPE_STRING = 1;
+  private static final byte TYPE_INTEGER = 2;
+  private static final byte TYPE_LONG = 3;
+  private static final byte TYPE_DOUBLE = 4;
+  private static final byte TYPE_FLOAT = 5;
+  private static final byte TYPE_BOOLEAN = 6;
+  private static final byte TYPE_DATE = 7;
+  private static final byte TYPE_SERIALIZED = 8;
+
+  /**
+   * The names of the classes that may be written and read using Java serialization
+   */
+  static final Set<String> SERIALIZABLE_CLASSES = Collections.unmodifiableSet( new HashSet<String>( Arrays.asList(
+    String.class.getName(), Boolean.class.getName(), Byte.class.getName(), Character.class.getName(),
+    Short.class.getName(), Integer.class.getName(), Long.class.getName(), Float.class.getName(),
+    Double.class.getName(), Number.class.getName(), BigInteger.class.getName(), BigDecimal.class.getName(),
+    Date.class.getName(), ArrayList.class.getName(), LinkedList.class.getName(), HashMap.class.getName(),
+    LinkedHashMap.class.getName(), TreeMap.class.getName(), HashSet.class.getName(), LinkedHashSet.class.getName(),
+    TreeSet.class.getName(), Arrays.asList().getClass().getName() ) ) );
+
+  private RecordCodec() {
+  }
+
+  static void writeString( DataOutput out, String value ) throws IOException {
+    byte[] bytes = value.getBytes( UTF_8 );
+    out.writeInt( bytes.length );
+    out.write( bytes );
+  }
+
+  static String readString( ByteBuffer in ) {
+    byte[] bytes = new byte[ in.getInt() ];
+    in.get( bytes );
+    return new String( bytes, UTF_8 );
+  }
+
+  static void writeValue( DataOutput out, Object value ) throws IOException {
+    if ( value instanceof String ) {
+      out.writeByte( TYPE_STRING );
+      writeString( out, (String) value );
+    } else if ( value instanceof Integer ) {
+      out.writeByte( TYPE_INTEGER );
+      out.writeInt( (Integer) value );
+    } else if ( value instanceof Long ) {
+      out.writeByte( TYPE_LONG );
+      out.writeLong( (Long) value );
+    } else if ( value instanceof Double ) {
+      out.writeByte( TYPE_DOUBLE );
+      out.writeDouble( (Double) value );
+    } else if ( value instanceof Float ) {
+      out.writeByte( TYPE_FLOAT );
+      out.writeFloat( (Float) value );
+    } else if ( value instanceof Boolean ) {
+      out.writeByte( TYPE_BOOLEAN );
+      out.writeBoolean( (Boolean) value );
+    } else if ( value != null && value.getClass() == Date.class ) {
+      out.writeByte( TYPE_DATE );
+      out.writeLong( ( (Date) value ).getTime() );
+    } else {
+      byte[] bytes = value instanceof Serializable ? serialize( value ) : null;
+      if ( bytes != null ) {
+        out.writeByte( TYPE_SERIALIZED );
+        out.writeInt( bytes.length );
+        out.write( bytes );
+      } else {
+        out.writeByte( TYPE_STRING );
+        writeString( out, String.valueOf( value ) );
+      }
+    }
+  }
+
+  static Object readValue( ByteBuffer in ) throws IOException {
+    byte type = in.get();
+    switch ( type ) {
+      case TYPE_STRING:
+        return readString( in );
+      case TYPE_INTEGER:
+        return in.getInt();
+      case TYPE_LONG:
+        return in.getLong();
+      case TYPE_DOUBLE:
+        return in.getDouble();
+      case TYPE_FLOAT:
+        return in.getFloat();
+      case TYPE_BOOLEAN:
+        return in.get() != 0;
+      case TYPE_DATE:
+        return new Date( in.getLong() );
+      case TYPE_SERIALIZED:
+        byte[] bytes = new byte[ in.getInt() ];
+        in.get( bytes );
+        ObjectInputStream objects = new RestrictedObjectInputStream( new ByteArrayInputStream( bytes ) );
+        try {
+          return objects.readObject();
+        } catch ( ClassNotFoundException e ) {
+          throw new IOException( e );
+        } finally {
+          objects.close();
+        }
+      default:
+        throw new IOException( "Unknown value type: " + type );
+    }
+  }
+
+  /**
+   * @return the serialized value, or null if it holds a class that may not be serialized
+   */
+  private static byte[] serialize( Object value ) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream objects = new RestrictedObjectOutputStream( bytes );
+    try {
+      objects.writeObject( value );
+    } catch ( NotSerializableException e ) {
+      return null;
+    } finally {
+      objects.close();
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * @return true if the class (given by its serialized name) is one of the serializable classes, an array of one of
+   * them or an array of primitives
+   */
+  static boolean isSerializable( String className ) {
+    if ( !className.startsWith( "[" ) ) {
+      return SERIALIZABLE_CLASSES.contains( className );
+    }
+    String component = className.substring( className.lastIndexOf( '[' ) + 1 );
+    if ( component.length() == 1 ) {
+      return true;
+    }
+    String componentClass = component.substring( 1, component.length() - 1 );
+    return Object.class.getName().equals( componentClass ) || SERIALIZABLE_CLASSES.contains( componentClass );
+  }
+
+  private static final class RestrictedObjectOutputStream extends ObjectOutputStream {
+
+    RestrictedObjectOutputStream( OutputStream out ) throws IOException {
+      super( out );
+    }
+
+    @Override
+    protected void annotateClass( Class<?> cl ) throws IOException {
+      if ( !isSerializable( cl.getName() ) ) {
+        throw new NotSerializableException( cl.getName() );
+      }
+    }
+
+    @Override
+    protected void annotateProxyClass( Class<?> cl ) throws IOException {
+      throw new NotSerializableException( cl.getName() );
+    }
+  }
+
+  private static final class RestrictedObjectInputStream extends ObjectInputStream {
+
+    RestrictedObjectInputStream( InputStream in ) throws IOException {
+      super( in );
+    }
+
+    @Override
+    protected Class<?> resolveClass( ObjectStreamClass desc ) throws IOException, ClassNotFoundException {
+      if ( !isSerializable( desc.getName() ) ) {
+        throw new InvalidClassException( desc.getName(), "The class may not be read from a graph file" );
+      }
+      return super.resolveClass( desc );
+    }
+
+    @Override
+    protected Class<?> resolveProxyClass( String[] interfaces ) throws IOException, ClassNotFoundException {
+      throw new InvalidClassException( "Proxy classes may not be read from a graph file" );
+    }
+  }
+}
@@ -0,0 +1,386 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.metaverse.impl;
+
+import org.pentaho.metaverse.messages.Messages;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A completion service for the analyses run on the {@link AnalysisExecutor}. The tasks tell the service when they are
+ * done, so waiting for all of them ({@link #waitTillEmpty()}) does not poll, and the tasks that have not been taken
+ * from the service yet are kept in a set, so taking one is a constant time operation.
+ * <p>
+ * The tasks submitted with a result (the id of the document they analyze, for instance) can be cancelled by that
+ * result, the tasks that run longer than the task timeout are cancelled, and {@link #getProgress()} tells how many
+ * tasks were submitted, are waiting or running, and completed, failed or were cancelled.
+ * </p>
+ * <p>
+ * A task that is cancelled while it runs is only done, as far as the service is concerned, once the analysis it runs
+ * has actually returned: cancelling it interrupts the analysis, which may not stop right away, and until it does it
+ * still counts as running and keeps {@link #waitTillEmpty()} waiting.
+ * </p>
+ */
+public abstract class AnalysisCompletionService<T> implements CompletionService<T> {
+
+  private static final Logger log = LoggerFactory.getLogger( AnalysisCompletionService.class );
+
+  private final AnalysisExecutor executor;
+  private final int defaultPriority;
+  private final BlockingQueue<Future<T>> completionQueue = new LinkedBlockingQueue<Future<T>>();
+  private final Set<Future<T>> pending = Collections.newSetFromMap( new ConcurrentHashMap<Future<T>, Boolean>() );
+  private final ConcurrentMap<Long, AnalysisTask> tasksById = new ConcurrentHashMap<Long, AnalysisTask>();
+  private final AtomicLong nextTaskId = new AtomicLong();
+  private final Object outstandingLock = new Object();
+  private int outstanding;
+  private final AtomicLong submitted = new AtomicLong();
+  private final AtomicInteger running = new AtomicInteger();
+  private final AtomicLong completed = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong cancelled = new AtomicLong();
+  private volatile long taskTimeout;
+
+  /**
+   * @param executor        the executor the tasks are run on
+   * @param defaultPriority the priority of the tasks submitted without one
+   */
+  protected AnalysisCompletionService( AnalysisExecutor executor, int defaultPriority ) {
+    this.executor = executor;
+    this.defaultPriority = defaultPriority;
+  }
+
+  @Override
+  public Future<T> submit( Callable<T> task ) {
+    return submit( task, defaultPriority );
+  }
+
+  /**
+   * Submits a task with the given priority
+   *
+   * @param task     the task
+   * @param priority the priority of the task, see {@link AnalysisExecutor}
+   * @return the future of the task
+   */
+  public Future<T> submit( Callable<T> task, int priority ) {
+    log.debug( "Submitting Callable task --> " + task.toString() );
+    return execute( new AnalysisTask( task, null, priority ) );
+  }
+
+  @Override
+  public Future<T> submit( Runnable task, T result ) {
+    return submit( task, result, defaultPriority );
+  }
+
+  /**
+   * Submits a task with the given priority. The task can be cancelled by its result with {@link #cancel(Object,
+   * boolean)}.
+   *
+   * @param task     the task
+   * @param result   the result of the task
+   * @param priority the priority of the task, see {@link AnalysisExecutor}
+   * @return the future of the task
+   */
+  public Future<T> submit( Runnable task, T result, int priority ) {
+    log.debug( "Submitting Runnable task --> " + result );
+    return execute( new AnalysisTask( Executors.callable( task, result ), result, priority ) );
+  }
+
+  private Future<T> execute( AnalysisTask task ) {
+    // the task is tracked before it runs, it may be done before execute returns
+    synchronized ( outstandingLock ) {
+      outstanding++;
+    }
+    pending.add( task );
+    if ( task.result != null ) {
+      tasksById.put( task.id, task );
+    }
+    submitted.incrementAndGet();
+    try {
+      executor.execute( task );
+    } catch ( RejectedExecutionException e ) {
+      task.rejected = true;
+      task.cancel( false );
+      throw e;
+    }
+    return task;
+  }
+
+  @Override
+  public Future<T> take() throws InterruptedException {
+    Future<T> result = completionQueue.take();
+    pending.remove( result );
+    return result;
+  }
+
+  @Override
+  public Future<T> poll() {
+    Future<T> result = completionQueue.poll();
+    if ( result != null ) {
+      pending.remove( result );
+    }
+    return result;
+  }
+
+  @Override
+  public Future<T> poll( long timeout, TimeUnit unit ) throws InterruptedException {
+    Future<T> result = completionQueue.poll( timeout, unit );
+    if ( result != null ) {
+      pending.remove( result );
+    }
+    return result;
+  }
+
+  /**
+   * Waits until all of the submitted tasks are done, and takes them from the service
+   *
+   * @throws InterruptedException if the thread is interrupted while waiting
+   * @throws ExecutionException   never, the failures of the tasks are logged
+   */
+  public void waitTillEmpty() throws InterruptedException, ExecutionException {
+    waitTillEmpty( 0, TimeUnit.MILLISECONDS );
+  }
+
+  /**
+   * Waits until all of the submitted tasks are done, or the timeout expires, and takes the tasks that are done from
+   * the service
+   *
+   * @param timeout the longest time to wait, 0 to wait for as long as it takes
+   * @param unit    the unit of the timeout
+   * @return true if all of the tasks are done, false if the timeout expired first
+   * @throws InterruptedException if the thread is interrupted while waiting
+   */
+  public boolean waitTillEmpty( long timeout, TimeUnit unit ) throws InterruptedException {
+    long deadline = timeout > 0 ? System.nanoTime() + unit.toNanos( timeout ) : 0L;
+    boolean empty = true;
+    synchronized ( outstandingLock ) {
+      while ( outstanding > 0 ) {
+        if ( deadline == 0L ) {
+          outstandingLock.wait();
+        } else {
+          long remaining = TimeUnit.NANOSECONDS.toMillis( deadline - System.nanoTime() );
+          if ( remaining <= 0 ) {
+            empty = false;
+            break;
+          }
+          outstandingLock.wait( remaining );
+        }
+      }
+    }
+    Future<T> result;
+    while ( ( result = poll() ) != null ) {
+      if ( !result.isCancelled() ) {
+        try {
+          log.debug( "Process Finished --> " + result.get() );
+        } catch ( ExecutionException e ) {
+          log.warn( e.getMessage(), e );
+        }
+      }
+    }
+    return empty;
+  }
+
+  /**
+   * Cancels the tasks that were submitted with the given result. The same document can be submitted again while an
+   * earlier analysis of it is still waiting or running, each of those tasks is cancelled.
+   *
+   * @param result                the result the tasks were submitted with, the id of a document for instance
+   * @param mayInterruptIfRunning true if the threads running the tasks should be interrupted
+   * @return true if a task was cancelled, false if there is no such task or they are all done already
+   */
+  public boolean cancel( T result, boolean mayInterruptIfRunning ) {
+    if ( result == null ) {
+      return false;
+    }
+    boolean cancelledAny = false;
+    for ( AnalysisTask task : tasksById.values() ) {
+      if ( result.equals( task.result ) && task.cancel( mayInterruptIfRunning ) ) {
+        cancelledAny = true;
+      }
+    }
+    return cancelledAny;
+  }
+
+  /**
+   * @return how long a task can run before it is cancelled, in milliseconds, 0 if it can run for as long as it takes
+   */
+  public long getTaskTimeout() {
+    return taskTimeout;
+  }
+
+  /**
+   * Sets how long a task can run before it is cancelled, the tasks that are running already are not affected
+   *
+   * @param taskTimeout the timeout in milliseconds, 0 (or less) to let the tasks run for as long as they take
+   */
+  public void setTaskTimeout( long taskTimeout ) {
+    this.taskTimeout = Math.max( 0L, taskTimeout );
+  }
+
+  /**
+   * @return the progress of the tasks submitted to the service
+   */
+  public AnalysisProgress getProgress() {
+    int outstandingTasks;
+    synchronized ( outstandingLock ) {
+      outstandingTasks = outstanding;
+    }
+    int runningTasks = running.get();
+    return new AnalysisProgress( submitted.get(), Math.max( 0, outstandingTasks - runningTasks ), runningTasks,
+      completed.get(), failed.get(), cancelled.get() );
+  }
+
+  /**
+   * Records how the task ended, makes it available to {@link #take()} and {@link #poll()} and wakes up the threads
+   * waiting for the service to be empty. Called once per task: when it is cancelled before it started, or when its
+   * analysis has returned.
+   */
+  private void taskDone( AnalysisTask task ) {
+    if ( !task.finished.compareAndSet( false, true ) ) {
+      return;
+    }
+    if ( task.timeout != null ) {
+      task.timeout.cancel( false );
+    }
+    if ( task.result != null ) {
+      tasksById.remove( task.id, task );
+    }
+    if ( task.rejected ) {
+      pending.remove( task );
+      submitted.decrementAndGet();
+    } else {
+      if ( task.isCancelled() ) {
+        if ( task.timedOut ) {
+          log.warn( Messages.getString( "WARNING.Analysis.TimedOut", String.valueOf( task.result ),
+            Long.toString( taskTimeout ) ) );
+          failed.incrementAndGet();
+        } else {
+          cancelled.incrementAndGet();
+        }
+      } else {
+        try {
+          task.get();
+          completed.incrementAndGet();
+        } catch ( ExecutionException e ) {
+          failed.incrementAndGet();
+        } catch ( InterruptedException e ) {
+          // the task is done, get does not wait
+          Thread.currentThread().interrupt();
+        }
+      }
+      completionQueue.add( task );
+    }
+    synchronized ( outstandingLock ) {
+      outstanding--;
+      outstandingLock.notifyAll();
+    }
+  }
+
+  /**
+   * A task of the service, it tells the service when it starts and when it is done
+   */
+  private class AnalysisTask extends AnalysisExecutor.PrioritizedTask<T> {
+    private final long id = nextTaskId.incrementAndGet();
+    private final T result;
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private volatile ScheduledFuture<?> timeout;
+    private volatile boolean started;
+    private volatile boolean timedOut;
+    private volatile boolean rejected;
+
+    AnalysisTask( Callable<T> callable, T result, int priority ) {
+      super( callable, priority );
+      this.result = result;
+    }
+
+    @Override
+    public void run() {
+      if ( isDone() ) {
+        return;
+      }
+      started = true;
+      running.incrementAndGet();
+      try {
+        long timeoutMillis = taskTimeout;
+        if ( timeoutMillis > 0 ) {
+          timeout = TimeoutScheduler.SCHEDULER.schedule( new Runnable() {
+            @Override
+            public void run() {
+              // set first, the task is counted as timed out once its analysis returns
+              timedOut = true;
+              cancel( true );
+            }
+          }, timeoutMillis, TimeUnit.MILLISECONDS );
+        }
+        super.run();
+      } finally {
+        running.decrementAndGet();
+        // the analysis has returned, even if the task was cancelled (or timed out) while it ran
+        taskDone( this );
+      }
+    }
+
+    @Override
+    protected void done() {
+      // a task that started is done once run returns, cancelling it only interrupts the analysis
+      if ( !started ) {
+        taskDone( this );
+      }
+    }
+  }
+
+  /**
+   * The thread that cancels the tasks that time out, started when it is first needed
+   */
+  private static class TimeoutScheduler {
+    private static final ScheduledExecutorService SCHEDULER =
+      Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+        @Override
+        public Thread newThread( Runnable r ) {
+          Thread thread = new Thread( r, "metaverse-analysis-timeout" );
+          thread.setDaemon( true );
+          return thread;
+        }
+      } );
+  }
+}
@@ -0,0 +1,396 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.metaverse.impl;
+
+import org.pentaho.metaverse.messages.Messages;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The bounded pool the documents of the metaverse are analyzed on. It has a fixed number of threads, the tasks waiting
+ * for one are run in the order of their priority (interactive requests first, then the lineage of executions, then
+ * the documents found by locator scans) and, within a priority, in the order they were submitted.
+ * <p>
+ * At most {@link #getQueueSize()} tasks wait for a thread. What happens to the tasks submitted beyond that is up to
+ * the rejection policy: the submitter waits for room ({@link #POLICY_BLOCK}, which slows a locator scan down to the
+ * pace of the analysis), runs the task itself ({@link #POLICY_CALLER_RUNS}) or gets a
+ * {@link RejectedExecutionException} ({@link #POLICY_ABORT}). Interactive tasks are never held back.
+ * </p>
+ * <p>
+ * Neither are the tasks of executions: they are submitted by the thread that runs the transformation or job, which
+ * must neither wait for room nor run the analysis itself. Whatever the rejection policy, they may take
+ * {@link #getRuntimeReserve()} places beyond the queue size, and once those are taken too they are rejected right away
+ * so the submitter can defer the analysis.
+ * </p>
+ * The analysis threads are daemon threads, they stop when they have been idle for a minute.
+ */
+public class AnalysisExecutor implements Executor {
+
+  /**
+   * The priority of the lineage requested by a user, in Spoon for instance
+   */
+  public static final int PRIORITY_INTERACTIVE = 0;
+
+  /**
+   * The priority of the lineage of executed transformations and jobs
+   */
+  public static final int PRIORITY_RUNTIME = 5;
+
+  /**
+   * The priority of the documents found by locator scans
+   */
+  public static final int PRIORITY_BACKGROUND = 10;
+
+  /**
+   * The submitter of a task waits until there is room for it in the queue
+   */
+  public static final String POLICY_BLOCK = "block";
+
+  /**
+   * The submitter of a task runs it when the queue is full
+   */
+  public static final String POLICY_CALLER_RUNS = "callerRuns";
+
+  /**
+   * A task submitted when the queue is full is rejected
+   */
+  public static final String POLICY_ABORT = "abort";
+
+  public static final int DEFAULT_QUEUE_SIZE = 1000;
+
+  public static final int DEFAULT_RUNTIME_RESERVE = 100;
+
+  private static final long KEEP_ALIVE_SECONDS = 60L;
+
+  private static final Logger log = LoggerFactory.getLogger( AnalysisExecutor.class );
+
+  private static final AnalysisExecutor INSTANCE = new AnalysisExecutor( 0, DEFAULT_QUEUE_SIZE, POLICY_BLOCK );
+
+  private final ThreadPoolExecutor pool;
+  private final Object queueLock = new Object();
+  private int queued;
+  private int blockedSubmitters;
+  private int queueSize;
+  private int runtimeReserve = DEFAULT_RUNTIME_RESERVE;
+  private String rejectionPolicy;
+
+  /**
+   * Creates an executor
+   *
+   * @param poolSize        the number of analysis threads, the number of processors (at least 2) if it is not
+   *                        positive
+   * @param queueSize       the number of tasks that can wait for a thread
+   * @param rejectionPolicy what to do with the tasks submitted when the queue is full
+   */
+  protected AnalysisExecutor( int poolSize, int queueSize, String rejectionPolicy ) {
+    final AtomicInteger threadNumber = new AtomicInteger();
+    int threads = getThreads( poolSize );
+    pool = new ThreadPoolExecutor( threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+      new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+        @Override
+        public Thread newThread( Runnable r ) {
+          Thread thread = new AnalysisThread( r, "metaverse-analysis-" + threadNumber.incrementAndGet() );
+          thread.setDaemon( true );
+          return thread;
+        }
+      } ) {
+      @Override
+      protected void beforeExecute( Thread t, Runnable r ) {
+        super.beforeExecute( t, r );
+        if ( r instanceof PrioritizedTask && ( (PrioritizedTask<?>) r ).counted ) {
+          synchronized ( queueLock ) {
+            queued--;
+            queueLock.notifyAll();
+          }
+        }
+      }
+    };
+    pool.allowCoreThreadTimeOut( true );
+    setQueueSize( queueSize );
+    setRejectionPolicy( rejectionPolicy );
+  }
+
+  public static AnalysisExecutor getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * @return the number of analysis threads
+   */
+  public int getPoolSize() {
+    return pool.getMaximumPoolSize();
+  }
+
+  /**
+   * Sets the number of analysis threads
+   *
+   * @param poolSize the number of threads, the number of processors (at least 2) if it is not positive
+   */
+  public void setPoolSize( int poolSize ) {
+    int threads = getThreads( poolSize );
+    if ( threads > pool.getMaximumPoolSize() ) {
+      pool.setMaximumPoolSize( threads );
+      pool.setCorePoolSize( threads );
+    } else {
+      pool.setCorePoolSize( threads );
+      pool.setMaximumPoolSize( threads );
+    }
+  }
+
+  /**
+   * @return the number of tasks that can wait for a thread
+   */
+  public int getQueueSize() {
+    synchronized ( queueLock ) {
+      return queueSize;
+    }
+  }
+
+  /**
+   * Sets the number of tasks that can wait for a thread
+   *
+   * @param queueSize the size of the queue, at least 1
+   */
+  public void setQueueSize( int queueSize ) {
+    synchronized ( queueLock ) {
+      this.queueSize = Math.max( 1, queueSize );
+      queueLock.notifyAll();
+    }
+  }
+
+  /**
+   * @return the number of places in the queue, beyond the queue size, kept for the tasks of executions
+   */
+  public int getRuntimeReserve() {
+    synchronized ( queueLock ) {
+      return runtimeReserve;
+    }
+  }
+
+  /**
+   * Sets the number of places in the queue, beyond the queue size, kept for the tasks of executions
+   *
+   * @param runtimeReserve the number of places, 0 (or less) to reject the tasks of executions when the queue is full
+   */
+  public void setRuntimeReserve( int runtimeReserve ) {
+    synchronized ( queueLock ) {
+      this.runtimeReserve = Math.max( 0, runtimeReserve );
+    }
+  }
+
+  /**
+   * @return what is done with the tasks submitted when the queue is full
+   */
+  public String getRejectionPolicy() {
+    synchronized ( queueLock ) {
+      return rejectionPolicy;
+    }
+  }
+
+  /**
+   * Sets what is done with the tasks submitted when the queue is full. Unknown policies are treated as
+   * {@link #POLICY_BLOCK}.
+   *
+   * @param rejectionPolicy {@link #POLICY_BLOCK}, {@link #POLICY_CALLER_RUNS} or {@link #POLICY_ABORT}
+   */
+  public void setRejectionPolicy( String rejectionPolicy ) {
+    String policy = rejectionPolicy == null ? "" : rejectionPolicy.trim();
+    synchronized ( queueLock ) {
+      if ( POLICY_CALLER_RUNS.equalsIgnoreCase( policy ) ) {
+        this.rejectionPolicy = POLICY_CALLER_RUNS;
+      } else if ( POLICY_ABORT.equalsIgnoreCase( policy ) ) {
+        this.rejectionPolicy = POLICY_ABORT;
+      } else {
+        this.rejectionPolicy = POLICY_BLOCK;
+      }
+      queueLock.notifyAll();
+    }
+  }
+
+  /**
+   * @return the number of tasks waiting for a thread
+   */
+  public int getQueuedTasks() {
+    return pool.getQueue().size();
+  }
+
+  /**
+   * @return the number of tasks being run
+   */
+  public int getActiveTasks() {
+    return pool.getActiveCount();
+  }
+
+  /**
+   * Runs the command on an analysis thread. Commands that are not tasks of this executor run with the background
+   * priority.
+   *
+   * @param command the command
+   * @throws RejectedExecutionException if the queue is full and the rejection policy is {@link #POLICY_ABORT}, or if
+   *                                    the task of an execution finds the runtime reserve full as well
+   */
+  @Override
+  public void execute( Runnable command ) {
+    PrioritizedTask<?> task;
+    if ( command instanceof PrioritizedTask ) {
+      task = (PrioritizedTask<?>) command;
+    } else {
+      task = new PrioritizedTask<Object>( command, PRIORITY_BACKGROUND );
+    }
+    if ( task.priority > PRIORITY_INTERACTIVE && task.priority <= PRIORITY_RUNTIME ) {
+      admitRuntime();
+      task.counted = true;
+    } else if ( task.priority > PRIORITY_INTERACTIVE ) {
+      if ( !admit() ) {
+        // run by the submitter
+        task.run();
+        return;
+      }
+      // it takes a place in the queue until it is started
+      task.counted = true;
+    }
+    pool.execute( task );
+  }
+
+  /**
+   * Makes room in the queue for a task, according to the rejection policy
+   *
+   * @return true if the task can be queued, false if the submitter has to run it
+   */
+  private boolean admit() {
+    boolean analysisThread = Thread.currentThread() instanceof AnalysisThread;
+    synchronized ( queueLock ) {
+      while ( queued >= queueSize ) {
+        if ( POLICY_ABORT.equals( rejectionPolicy ) ) {
+          throw new RejectedExecutionException( Messages.getString( "ERROR.AnalysisExecutor.QueueFull",
+            Integer.toString( queueSize ) ) );
+        }
+        // an analysis thread that submits tasks (a locator scan) must not wait when the other analysis threads are
+        // waiting too, there would be nobody left to empty the queue
+        if ( POLICY_CALLER_RUNS.equals( rejectionPolicy )
+          || ( analysisThread && blockedSubmitters + 1 >= pool.getMaximumPoolSize() ) ) {
+          return false;
+        }
+        if ( analysisThread ) {
+          blockedSubmitters++;
+        }
+        try {
+          queueLock.wait();
+        } catch ( InterruptedException e ) {
+          Thread.currentThread().interrupt();
+          log.debug( Messages.getString( "DEBUG.AnalysisExecutor.Interrupted" ) );
+          return false;
+        } finally {
+          if ( analysisThread ) {
+            blockedSubmitters--;
+          }
+        }
+      }
+      queued++;
+      return true;
+    }
+  }
+
+  /**
+   * Makes room in the queue for the task of an execution without waiting, using the runtime reserve if the queue is
+   * full
+   *
+   * @throws RejectedExecutionException if the runtime reserve is full too
+   */
+  private void admitRuntime() {
+    synchronized ( queueLock ) {
+      if ( queued >= queueSize + runtimeReserve ) {
+        throw new RejectedExecutionException( Messages.getString( "ERROR.AnalysisExecutor.RuntimeReserveFull",
+          Integer.toString( queueSize + runtimeReserve ) ) );
+      }
+      queued++;
+    }
+  }
+
+  private static int getThreads( int poolSize ) {
+    return poolSize > 0 ? poolSize : Math.max( 2, Runtime.getRuntime().availableProcessors() );
+  }
+
+  /**
+   * A task of this executor, it is ordered by its priority and then by the order in which it was created. Subclasses
+   * can override {@link #done()} to be told when the task completes or is cancelled.
+   */
+  public static class PrioritizedTask<T> extends FutureTask<T> implements Comparable<PrioritizedTask<?>> {
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final int priority;
+    private final long sequenceNumber = SEQUENCE.incrementAndGet();
+    private boolean counted;
+
+    /**
+     * @param callable what the task does
+     * @param priority the priority of the task, the lower it is the sooner the task is run
+     */
+    public PrioritizedTask( Callable<T> callable, int priority ) {
+      super( callable );
+      this.priority = priority;
+    }
+
+    /**
+     * @param runnable what the task does
+     * @param priority the priority of the task, the lower it is the sooner the task is run
+     */
+    public PrioritizedTask( Runnable runnable, int priority ) {
+      super( runnable, null );
+      this.priority = priority;
+    }
+
+    public int getPriority() {
+      return priority;
+    }
+
+    @Override
+    public int compareTo( PrioritizedTask<?> other ) {
+      if ( priority != other.priority ) {
+        return priority < other.priority ? -1 : 1;
+      }
+      return sequenceNumber < other.sequenceNumber ? -1 : ( sequenceNumber == other.sequenceNumber ? 0 : 1 );
+    }
+  }
+
+  /**
+   * The threads of the executor, so that it can tell when a task is submitted by one of its own tasks
+   */
+  private static class AnalysisThread extends Thread {
+    AnalysisThread( Runnable target, String name ) {
+      super( target, name );
+    }
+  }
+}
@@ -0,0 +1,122 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.metaverse.impl;
+
+/**
+ * The progress of the analyses submitted to a completion service, at the time it was taken
+ */
+public class AnalysisProgress {
+
+  private long submitted;
+  private long queued;
+  private long running;
+  private long completed;
+  private long failed;
+  private long cancelled;
+
+  public AnalysisProgress() {
+  }
+
+  public AnalysisProgress( long submitted, long queued, long running, long completed, long failed,
+    long cancelled ) {
+    this.submitted = submitted;
+    this.queued = queued;
+    this.running = running;
+    this.completed = completed;
+    this.failed = failed;
+    this.cancelled = cancelled;
+  }
+
+  /**
+   * @return the number of analyses submitted
+   */
+  public long getSubmitted() {
+    return submitted;
+  }
+
+  public void setSubmitted( long submitted ) {
+    this.submitted = submitted;
+  }
+
+  /**
+   * @return the number of analyses waiting to be run
+   */
+  public long getQueued() {
+    return queued;
+  }
+
+  public void setQueued( long queued ) {
+    this.queued = queued;
+  }
+
+  /**
+   * @return the number of analyses being run
+   */
+  public long getRunning() {
+    return running;
+  }
+
+  public void setRunning( long running ) {
+    this.running = running;
+  }
+
+  /**
+   * @return the number of analyses that completed successfully
+   */
+  public long getCompleted() {
+    return completed;
+  }
+
+  public void setCompleted( long completed ) {
+    this.completed = completed;
+  }
+
+  /**
+   * @return the number of analyses that failed or timed out
+   */
+  public long getFailed() {
+    return failed;
+  }
+
+  public void setFailed( long failed ) {
+    this.failed = failed;
+  }
+
+  /**
+   * @return the number of analyses that were cancelled
+   */
+  public long getCancelled() {
+    return cancelled;
+  }
+
+  public void setCancelled( long cancelled ) {
+    this.cancelled = cancelled;
+  }
+
+  @Override
+  public String toString() {
+    return "submitted=" + submitted + ", queued=" + queued + ", running=" + running + ", completed=" + completed
+      + ", failed=" + failed + ", cancelled=" + cancelled;
+  }
+}
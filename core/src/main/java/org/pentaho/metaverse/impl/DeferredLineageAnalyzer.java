@@ -0,0 +1,501 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.metaverse.impl;
+
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import org.pentaho.di.base.AbstractMeta;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.variables.VariableSpace;
+import org.pentaho.di.core.variables.Variables;
+import org.pentaho.di.core.xml.XMLInterface;
+import org.pentaho.di.job.JobMeta;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.dictionary.DictionaryConst;
+import org.pentaho.metaverse.analyzer.kettle.extensionpoints.BaseRuntimeExtensionPoint;
+import org.pentaho.metaverse.api.AnalysisContext;
+import org.pentaho.metaverse.api.IDocument;
+import org.pentaho.metaverse.api.IDocumentAnalyzer;
+import org.pentaho.metaverse.api.ILineageWriter;
+import org.pentaho.metaverse.api.IMetaverseBuilder;
+import org.pentaho.metaverse.api.IMetaverseNode;
+import org.pentaho.metaverse.api.INamespace;
+import org.pentaho.metaverse.api.MetaverseException;
+import org.pentaho.metaverse.api.Namespace;
+import org.pentaho.metaverse.api.model.IExecutionData;
+import org.pentaho.metaverse.api.model.IExecutionProfile;
+import org.pentaho.metaverse.api.model.LineageHolder;
+import org.pentaho.metaverse.impl.model.ExecutionProfile;
+import org.pentaho.metaverse.messages.Messages;
+import org.pentaho.metaverse.util.MetaverseBeanUtil;
+import org.pentaho.metaverse.util.MetaverseUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLConnection;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Builds the lineage graphs of the executions that ran in the profile-only runtime mode
+ * ({@code lineage.execution.runtime=profile}). In that mode an execution only writes its execution profile; the
+ * lineage graph of a transformation or job that has no parent is queued here instead, as a reference to the document
+ * (its path, a snapshot of its XML) and the values of the variables it ran with.
+ * <p>
+ * Only the document that was run is kept as a snapshot. The documents it refers to (sub-transformations, mappings, the
+ * transformations and jobs of a job) are resolved again when the entry is processed, with the variables the execution
+ * had, against the files as they are then and without a repository: a sub-document that changed since the execution
+ * is analyzed as it is now, and one that lives in a repository (or is not reachable from the node processing the
+ * queue) is not resolved at all.
+ * </p>
+ * <p>
+ * {@link #processQueue()} analyzes the queued executions and writes their graphs through the lineage writer, next to
+ * the execution profiles (the same folders and file names as when the graph is written at runtime). It is meant to be
+ * run outside of the busy hours, or on another node that shares the queue folder: an entry is claimed by renaming it,
+ * so every entry is processed once. A claim older than {@link #getClaimTimeout()} was left by a node that stopped
+ * while processing it, the entry is queued again. An entry that cannot be processed is kept with the
+ * {@value #FAILED_EXTENSION} extension. {@link #processQueueAsync()} processes the queue on the analysis executor.
+ * </p>
+ * <p>
+ * The analyzers are given the builder of each execution they analyze, so they must be dedicated to this class and not
+ * be shared with the locators or the runtime lineage; the queue is processed by one thread at a time.
+ * </p>
+ */
+public class DeferredLineageAnalyzer {
+
+  public static final String DEFAULT_QUEUE_FOLDER = "./pentaho-lineage-deferred";
+
+  /**
+   * The default age, in milliseconds, after which a claim is considered abandoned
+   */
+  public static final long DEFAULT_CLAIM_TIMEOUT = 60L * 60L * 1000L;
+
+  public static final String ENTRY_EXTENSION = ".properties";
+  public static final String SNAPSHOT_EXTENSION = ".xml";
+  public static final String CLAIMED_EXTENSION = ".processing";
+  public static final String FAILED_EXTENSION = ".failed";
+
+  private static final String PATH = "path";
+  private static final String NAME = "name";
+  private static final String TYPE = "type";
+  private static final String START_TIME = "startTime";
+  private static final String VARIABLE_PREFIX = "variable.";
+
+  private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
+  private static final Logger log = LoggerFactory.getLogger( DeferredLineageAnalyzer.class );
+
+  private static final DeferredLineageAnalyzer INSTANCE = new DeferredLineageAnalyzer();
+
+  private volatile File queueFolder = new File( DEFAULT_QUEUE_FOLDER );
+  private volatile long claimTimeout = DEFAULT_CLAIM_TIMEOUT;
+  private final AtomicReference<Future<Integer>> processing = new AtomicReference<Future<Integer>>();
+  private IDocumentAnalyzer transformationAnalyzer;
+  private IDocumentAnalyzer jobAnalyzer;
+  private ILineageWriter lineageWriter;
+
+  protected DeferredLineageAnalyzer() {
+  }
+
+  public static DeferredLineageAnalyzer getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Queues the lineage graph of an execution, with the variables of the transformation or job that was run
+   *
+   * @param profile the execution profile of the execution
+   * @param meta    the transformation or job that was run
+   * @throws IOException if the execution cannot be queued
+   */
+  public void enqueue( IExecutionProfile profile, XMLInterface meta ) throws IOException {
+    enqueue( profile, meta, meta instanceof VariableSpace ? (VariableSpace) meta : null );
+  }
+
+  /**
+   * Queues the lineage graph of an execution
+   *
+   * @param profile   the execution profile of the execution
+   * @param meta      the transformation or job that was run
+   * @param variables the variables the execution ran with (the Trans or Job), so the documents it refers to are
+   *                  resolved the same way when the entry is processed; none if it is null
+   * @throws IOException if the execution cannot be queued
+   */
+  public void enqueue( IExecutionProfile profile, XMLInterface meta, VariableSpace variables ) throws IOException {
+    String xml;
+    try {
+      xml = meta.getXML();
+    } catch ( KettleException e ) {
+      throw new IOException( e );
+    }
+    File folder = getQueueFolderFile();
+    if ( !folder.isDirectory() && !folder.mkdirs() ) {
+      throw new IOException( Messages.getString( "ERROR.DeferredLineage.Queue", folder.getAbsolutePath() ) );
+    }
+
+    IExecutionData executionData = profile.getExecutionData();
+    long startTime = executionData != null && executionData.getStartTime() != null
+      ? executionData.getStartTime().getTime() : System.currentTimeMillis();
+    // the entries sort in the order the executions started
+    String entryName = startTime + "_" + UUID.randomUUID();
+
+    Properties entry = new Properties();
+    setProperty( entry, PATH, profile.getPath() );
+    setProperty( entry, NAME, profile.getName() );
+    setProperty( entry, TYPE, profile.getType() );
+    entry.setProperty( START_TIME, Long.toString( startTime ) );
+    String[] names = variables == null ? null : variables.listVariables();
+    if ( names != null ) {
+      for ( String variable : names ) {
+        setProperty( entry, VARIABLE_PREFIX + variable, variables.getVariable( variable ) );
+      }
+    }
+    // the values the execution profile recorded win over those of the variable space
+    if ( executionData != null && executionData.getVariables() != null ) {
+      for ( Map.Entry<Object, Object> variable : executionData.getVariables().entrySet() ) {
+        if ( variable.getKey() != null && variable.getValue() != null ) {
+          entry.setProperty( VARIABLE_PREFIX + variable.getKey(), variable.getValue().toString() );
+        }
+      }
+    }
+
+    // the snapshot is written first, the entry is only visible once it is complete
+    Files.write( new File( folder, entryName + SNAPSHOT_EXTENSION ).toPath(), xml.getBytes( UTF_8 ) );
+    File temp = new File( folder, entryName + ".tmp" );
+    OutputStream out = new FileOutputStream( temp );
+    try {
+      entry.store( out, null );
+    } finally {
+      out.close();
+    }
+    Files.move( temp.toPath(), new File( folder, entryName + ENTRY_EXTENSION ).toPath(),
+      StandardCopyOption.REPLACE_EXISTING );
+  }
+
+  /**
+   * Processes the queue on the analysis executor, so the caller (a REST request, for instance) does not wait for it.
+   * A request made while the queue is being processed is answered with the processing that is under way.
+   *
+   * @return the future of the processing, it tells the number of graphs that were written
+   */
+  public Future<Integer> processQueueAsync() {
+    while ( true ) {
+      Future<Integer> current = processing.get();
+      if ( current != null && !current.isDone() ) {
+        return current;
+      }
+      AnalysisExecutor.PrioritizedTask<Integer> task = new AnalysisExecutor.PrioritizedTask<Integer>(
+        new Callable<Integer>() {
+          @Override
+          public Integer call() throws Exception {
+            return processQueue();
+          }
+        }, AnalysisExecutor.PRIORITY_INTERACTIVE );
+      if ( processing.compareAndSet( current, task ) ) {
+        // requested by a user, it is not held back by a full queue
+        getExecutor().execute( task );
+        return task;
+      }
+    }
+  }
+
+  /**
+   * Builds and writes the lineage graphs of the queued executions, oldest first
+   *
+   * @return the number of graphs that were written
+   */
+  public synchronized int processQueue() {
+    File folder = getQueueFolderFile();
+    requeueAbandonedClaims( folder );
+    File[] entries = listEntries( folder );
+    Arrays.sort( entries );
+    int processed = 0;
+    for ( File entry : entries ) {
+      String entryName = entry.getName().substring( 0, entry.getName().length() - ENTRY_EXTENSION.length() );
+      File claimed = new File( folder, entryName + CLAIMED_EXTENSION );
+      if ( !entry.renameTo( claimed ) ) {
+        // another node is processing it
+        continue;
+      }
+      // the age of the claim is the time since it was made, renaming keeps the time the entry was written
+      claimed.setLastModified( System.currentTimeMillis() );
+      File snapshot = new File( folder, entryName + SNAPSHOT_EXTENSION );
+      try {
+        process( claimed, snapshot );
+        claimed.delete();
+        snapshot.delete();
+        processed++;
+      } catch ( Exception e ) {
+        log.warn( Messages.getString( "WARNING.DeferredLineage.Failed", entryName, String.valueOf( e.getMessage() ) ),
+          e );
+        claimed.renameTo( new File( folder, entryName + FAILED_EXTENSION ) );
+      }
+    }
+    return processed;
+  }
+
+  /**
+   * Queues the entries again whose claim is older than the claim timeout, they were claimed by a node that stopped
+   * before it was done with them
+   *
+   * @param folder the queue folder
+   */
+  protected void requeueAbandonedClaims( File folder ) {
+    long timeout = claimTimeout;
+    if ( timeout <= 0 ) {
+      return;
+    }
+    File[] claims = folder.listFiles( new FilenameFilter() {
+      @Override
+      public boolean accept( File dir, String name ) {
+        return name.endsWith( CLAIMED_EXTENSION );
+      }
+    } );
+    if ( claims == null ) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    for ( File claim : claims ) {
+      if ( now - claim.lastModified() >= timeout ) {
+        String name = claim.getName();
+        String entryName = name.substring( 0, name.length() - CLAIMED_EXTENSION.length() );
+        if ( claim.renameTo( new File( folder, entryName + ENTRY_EXTENSION ) ) ) {
+          log.warn( Messages.getString( "WARNING.DeferredLineage.Requeued", entryName ) );
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the number of executions waiting to be processed
+   */
+  public int getQueueSize() {
+    return listEntries( getQueueFolderFile() ).length;
+  }
+
+  /**
+   * Builds and writes the lineage graph of a queued execution
+   *
+   * @param entry    the entry of the execution
+   * @param snapshot the snapshot of the document that was run
+   * @throws Exception if the graph cannot be built or written
+   */
+  protected void process( File entry, File snapshot ) throws Exception {
+    Properties properties = new Properties();
+    InputStream in = new FileInputStream( entry );
+    try {
+      properties.load( in );
+    } finally {
+      in.close();
+    }
+    String path = properties.getProperty( PATH );
+    String name = properties.getProperty( NAME );
+    String type = properties.getProperty( TYPE );
+    boolean job = DictionaryConst.NODE_TYPE_JOB.equals( type );
+    IDocumentAnalyzer analyzer = job ? jobAnalyzer : transformationAnalyzer;
+    if ( analyzer == null ) {
+      throw new MetaverseException( Messages.getString( "ERROR.DeferredLineage.NoAnalyzer", path, type ) );
+    }
+
+    // the variables of the execution are there while the document is loaded, and while its sub-documents are resolved
+    VariableSpace variables = new Variables();
+    variables.initializeVariablesFrom( null );
+    for ( String key : properties.stringPropertyNames() ) {
+      if ( key.startsWith( VARIABLE_PREFIX ) ) {
+        variables.setVariable( key.substring( VARIABLE_PREFIX.length() ), properties.getProperty( key ) );
+      }
+    }
+
+    AbstractMeta meta;
+    InputStream xml = new FileInputStream( snapshot );
+    try {
+      meta = loadMeta( job, xml, variables );
+    } finally {
+      xml.close();
+    }
+
+    ExecutionProfile profile = new ExecutionProfile( name, path, type, meta.getDescription() );
+    profile.setExecutionEngine( BaseRuntimeExtensionPoint.getExecutionEngineInfo() );
+    profile.getExecutionData().setStartTime( new Timestamp( Long.parseLong( properties.getProperty( START_TIME ) ) ) );
+    // the document is analyzed with the values the execution had
+    for ( String key : properties.stringPropertyNames() ) {
+      if ( key.startsWith( VARIABLE_PREFIX ) ) {
+        String variable = key.substring( VARIABLE_PREFIX.length() );
+        meta.setVariable( variable, properties.getProperty( key ) );
+        profile.getExecutionData().getVariables().put( variable, properties.getProperty( key ) );
+      }
+    }
+
+    IMetaverseBuilder builder = createMetaverseBuilder();
+    final String clientName = profile.getExecutionEngine().getName();
+    final INamespace namespace = new Namespace( clientName );
+    IMetaverseNode designNode = builder.getMetaverseObjectFactory()
+      .createNodeObject( clientName, clientName, DictionaryConst.NODE_TYPE_LOCATOR );
+    builder.addNode( designNode );
+
+    String extension = job ? "kjb" : "ktr";
+    IDocument document = builder.getMetaverseObjectFactory().createDocumentObject();
+    document.setNamespace( namespace );
+    document.setContent( meta );
+    document.setStringID( path );
+    document.setName( meta.getName() );
+    document.setExtension( extension );
+    document.setMimeType( URLConnection.getFileNameMap().getContentTypeFor( ( job ? "job." : "trans." ) + extension ) );
+    document.setContext( new AnalysisContext( DictionaryConst.CONTEXT_RUNTIME ) );
+    document.setProperty( DictionaryConst.PROPERTY_NAME, name );
+    document.setProperty( DictionaryConst.PROPERTY_PATH, path );
+    document.setProperty( DictionaryConst.PROPERTY_NAMESPACE, namespace.getNamespaceId() );
+
+    analyzer.setMetaverseBuilder( builder );
+    MetaverseUtil.getAnalyzerRunner( analyzer, document ).run();
+
+    if ( lineageWriter != null ) {
+      lineageWriter.outputLineageGraph( new LineageHolder( profile, builder ) );
+    }
+  }
+
+  /**
+   * Loads the snapshot of a queued document. There is no repository, the documents it refers to are resolved from the
+   * files they are in.
+   *
+   * @param job       true for a job, false for a transformation
+   * @param xml       the XML of the document
+   * @param variables the variables the execution ran with
+   * @return the transformation or job
+   * @throws KettleException if the document cannot be loaded
+   */
+  protected AbstractMeta loadMeta( boolean job, InputStream xml, VariableSpace variables ) throws KettleException {
+    if ( job ) {
+      JobMeta jobMeta = new JobMeta( xml, null, null );
+      jobMeta.initializeVariablesFrom( variables );
+      return jobMeta;
+    }
+    return new TransMeta( xml, null, true, variables, null );
+  }
+
+  /**
+   * @return a builder for the graph of an execution
+   */
+  protected IMetaverseBuilder createMetaverseBuilder() {
+    IMetaverseBuilder builder = (IMetaverseBuilder) MetaverseBeanUtil.getInstance().get( "IMetaverseBuilderPrototype" );
+    return builder == null ? new MetaverseBuilder( new TinkerGraph() ) : builder;
+  }
+
+  /**
+   * @return the age, in milliseconds, after which a claim is considered abandoned and its entry queued again
+   */
+  public long getClaimTimeout() {
+    return claimTimeout;
+  }
+
+  /**
+   * Sets the age after which a claim is considered abandoned. It has to be longer than the processing of an entry
+   * takes, or an entry may be processed twice.
+   *
+   * @param claimTimeout the age in milliseconds, 0 (or less) to never queue claimed entries again
+   */
+  public void setClaimTimeout( long claimTimeout ) {
+    this.claimTimeout = claimTimeout;
+  }
+
+  public String getQueueFolder() {
+    return queueFolder.getPath();
+  }
+
+  /**
+   * Sets the folder the executions are queued in, it can be shared by several nodes
+   *
+   * @param queueFolder the folder
+   */
+  public void setQueueFolder( String queueFolder ) {
+    this.queueFolder = new File( queueFolder == null || queueFolder.trim().isEmpty()
+      ? DEFAULT_QUEUE_FOLDER : queueFolder.trim() );
+  }
+
+  public IDocumentAnalyzer getTransformationAnalyzer() {
+    return transformationAnalyzer;
+  }
+
+  public void setTransformationAnalyzer( IDocumentAnalyzer transformationAnalyzer ) {
+    this.transformationAnalyzer = transformationAnalyzer;
+  }
+
+  public IDocumentAnalyzer getJobAnalyzer() {
+    return jobAnalyzer;
+  }
+
+  public void setJobAnalyzer( IDocumentAnalyzer jobAnalyzer ) {
+    this.jobAnalyzer = jobAnalyzer;
+  }
+
+  public ILineageWriter getLineageWriter() {
+    return lineageWriter;
+  }
+
+  public void setLineageWriter( ILineageWriter lineageWriter ) {
+    this.lineageWriter = lineageWriter;
+  }
+
+  /**
+   * @return the executor the queue is processed on by {@link #processQueueAsync()}
+   */
+  protected AnalysisExecutor getExecutor() {
+    return AnalysisExecutor.getInstance();
+  }
+
+  private File getQueueFolderFile() {
+    return queueFolder;
+  }
+
+  private static File[] listEntries( File folder ) {
+    File[] entries = folder.listFiles( new FilenameFilter() {
+      @Override
+      public boolean accept( File dir, String name ) {
+        return name.endsWith( ENTRY_EXTENSION );
+      }
+    } );
+    return entries == null ? new File[ 0 ] : entries;
+  }
+
+  private static void setProperty( Properties properties, String key, String value ) {
+    if ( value != null ) {
+      properties.setProperty( key, value );
+    }
+  }
+}
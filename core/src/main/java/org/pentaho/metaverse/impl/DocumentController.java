@@ -34,6 +34,7 @@ import org.pentaho.metaverse.api.IMetaverseObjectFactory;
 import org.pentaho.metaverse.api.IRequiresMetaverseBuilder;
 import org.pentaho.metaverse.api.MetaverseAnalyzerException;
 import org.pentaho.metaverse.api.MetaverseComponentDescriptor;
+import org.pentaho.metaverse.graph.SynchronizedGraph;
 import org.pentaho.metaverse.messages.Messages;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,6 +47,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Coordinates passing IDocumentEvent's to the appropriate IDocumentAnalyzer's
@@ -216,12 +218,16 @@ public class DocumentController implements IDocumentController, IDocumentListene
   @Override
   public void onEvent( IDocumentEvent event ) {
     List<IDocumentAnalyzer> matchingAnalyzers = getDocumentAnalyzers( event.getDocument().getExtension() );
-    if ( matchingAnalyzers != null ) {
+    if ( matchingAnalyzers != null && !matchingAnalyzers.isEmpty() ) {
+      AnalysisOutcome outcome = new AnalysisOutcome( event, matchingAnalyzers.size() );
       for ( IDocumentAnalyzer analyzer : matchingAnalyzers ) {
-        fireDocumentEvent( event, analyzer );
+        fireDocumentEvent( event, analyzer, outcome );
       }
     } else {
       log.warn( Messages.getString( "WARNING.NoMatchingDocumentAnalyzerFound", event.getDocument().getExtension() ) );
+      if ( event instanceof DocumentEvent ) {
+        ( (DocumentEvent) event ).analysisFinished( false );
+      }
     }
   }
 
@@ -294,9 +300,23 @@ public class DocumentController implements IDocumentController, IDocumentListene
    * @return Future object
    */
   protected Future<?> fireDocumentEvent( final IDocumentEvent event, final IDocumentAnalyzer analyzer ) {
+    return fireDocumentEvent( event, analyzer, null );
+  }
+
+  /**
+   * Submits the analysis of the document of an event, and reports its end to the outcome
+   *
+   * @param event    the event
+   * @param analyzer the analyzer to analyze the document with
+   * @param outcome  the outcome of the analysis of the document by all of its analyzers, none if it is null
+   * @return the future of the analysis
+   */
+  protected Future<?> fireDocumentEvent( final IDocumentEvent event, final IDocumentAnalyzer analyzer,
+                                         final AnalysisOutcome outcome ) {
     Runnable analyzerRunner = new Runnable() {
       @Override
       public void run() {
+        boolean succeeded = false;
         try {
 
           analyzer.analyze(
@@ -306,8 +326,18 @@ public class DocumentController implements IDocumentController, IDocumentListene
               event.getDocument() ),
             event.getDocument()
           );
+          succeeded = true;
+          // the analysis is in the metaverse, it should survive a restart
+          Graph graph = getGraph();
+          if ( graph instanceof SynchronizedGraph ) {
+            ( (SynchronizedGraph) graph ).commit();
+          }
         } catch ( MetaverseAnalyzerException mae ) {
           log.error( Messages.getString( "ERROR.AnalyzingDocument", event.getDocument().getStringID() ), mae );
+        } finally {
+          if ( outcome != null ) {
+            outcome.analyzerFinished( succeeded );
+          }
         }
       }
     };
@@ -315,6 +345,31 @@ public class DocumentController implements IDocumentController, IDocumentListene
     return MetaverseCompletionService.getInstance().submit( analyzerRunner, event.getDocument().getStringID() );
   }
 
+  /**
+   * Collects the results of the analyzers of one document, and tells the analysis listener of the event once the last
+   * of them has finished
+   */
+  protected static class AnalysisOutcome {
+
+    private final IDocumentEvent event;
+    private final AtomicInteger remaining;
+    private volatile boolean failed;
+
+    public AnalysisOutcome( IDocumentEvent event, int analyzers ) {
+      this.event = event;
+      this.remaining = new AtomicInteger( analyzers );
+    }
+
+    public void analyzerFinished( boolean succeeded ) {
+      if ( !succeeded ) {
+        failed = true;
+      }
+      if ( remaining.decrementAndGet() == 0 && event instanceof DocumentEvent ) {
+        ( (DocumentEvent) event ).analysisFinished( !failed );
+      }
+    }
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -337,6 +392,17 @@ public class DocumentController implements IDocumentController, IDocumentListene
     return metaverseBuilder.addLink( iMetaverseLink );
   }
 
+  /*
+   * (non-Javadoc)
+   *
+   * @see
+   * IMetaverseBuilder#addAll(java.util.Collection, java.util.Collection)
+   */
+  @Override
+  public IMetaverseBuilder addAll( Collection<IMetaverseNode> nodes, Collection<IMetaverseLink> links ) {
+    return metaverseBuilder.addAll( nodes, links );
+  }
+
   /*
    * (non-Javadoc)
    * 
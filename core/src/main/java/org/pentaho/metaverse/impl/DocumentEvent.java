@@ -36,6 +36,8 @@ public class DocumentEvent implements IDocumentEvent {
 
   private String type;
 
+  private AnalysisListener analysisListener;
+
   @Override
   public IDocument getDocument() {
     return document;
@@ -54,4 +56,43 @@ public class DocumentEvent implements IDocumentEvent {
     this.type = type;
   }
 
+  public AnalysisListener getAnalysisListener() {
+    return analysisListener;
+  }
+
+  /**
+   * Sets the listener told when the analysis of the document has finished. Analyses run asynchronously, so this is how
+   * the one firing the event learns whether the document made it into the metaverse.
+   *
+   * @param analysisListener the listener, none if it is null
+   */
+  public void setAnalysisListener( AnalysisListener analysisListener ) {
+    this.analysisListener = analysisListener;
+  }
+
+  /**
+   * Tells the analysis listener, if any, that the analysis of the document has finished
+   *
+   * @param succeeded true if the document was analyzed, false if its analysis failed
+   */
+  public void analysisFinished( boolean succeeded ) {
+    if ( analysisListener != null ) {
+      analysisListener.analysisFinished( document, succeeded );
+    }
+  }
+
+  /**
+   * Listens for the end of the analysis of the document of an event
+   */
+  public interface AnalysisListener {
+
+    /**
+     * Called once every analyzer of the document has finished
+     *
+     * @param document  the document
+     * @param succeeded true if every analyzer succeeded, false if one of them failed or none could analyze it
+     */
+    void analysisFinished( IDocument document, boolean succeeded );
+  }
+
 }
@@ -0,0 +1,396 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.metaverse.impl;
+
+import org.pentaho.metaverse.messages.Messages;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The pool the lineage of finished transformations and jobs (their execution profile and lineage graph) is written
+ * out on, so that a server running many short executions uses a fixed number of threads for it and the writes do not
+ * all compete for the disk at once.
+ * <p>
+ * At most {@link #getQueueSize()} outputs wait for a thread. When the queue is full, the overflow policy decides what
+ * happens to the next one: the execution that finished waits for room ({@link #POLICY_BLOCK}), or only its execution
+ * profile is written, right away, and its lineage graph is spilled to the queue of the {@link DeferredLineageAnalyzer}
+ * to be built later ({@link #POLICY_PROFILE_ONLY}).
+ * </p>
+ * <p>
+ * The pipeline is flushed when it is shut down, which the container does when it stops the bundle (the destroy method
+ * of its blueprint bean): the outputs that are queued are written, for up to {@link #getShutdownTimeout()}
+ * milliseconds. The outputs submitted after that are written by the thread submitting them.
+ * </p>
+ * The depth of the queue and the time the outputs take are tracked, see {@link #getQueueDepth()} and
+ * {@link #getAverageWriteMillis()}.
+ */
+public class LineageOutputPipeline {
+
+  /**
+   * The execution that finished waits until there is room for its output in the queue
+   */
+  public static final String POLICY_BLOCK = "block";
+
+  /**
+   * Only the execution profile of an execution that finished when the queue is full is written, by the thread of the
+   * execution, its lineage graph is spilled to the deferred lineage queue
+   */
+  public static final String POLICY_PROFILE_ONLY = "profileOnly";
+
+  public static final int DEFAULT_POOL_SIZE = 2;
+  public static final int DEFAULT_QUEUE_SIZE = 100;
+  public static final long DEFAULT_SHUTDOWN_TIMEOUT = 60000L;
+
+  private static final long KEEP_ALIVE_SECONDS = 60L;
+
+  private static final Logger log = LoggerFactory.getLogger( LineageOutputPipeline.class );
+
+  private static final LineageOutputPipeline INSTANCE =
+    new LineageOutputPipeline( DEFAULT_POOL_SIZE, DEFAULT_QUEUE_SIZE, POLICY_BLOCK );
+
+  private final ThreadPoolExecutor pool;
+  private final Object lock = new Object();
+  private int queued;
+  private int active;
+  private boolean shutdown;
+  private int queueSize;
+  private String overflowPolicy;
+  private volatile long shutdownTimeout = DEFAULT_SHUTDOWN_TIMEOUT;
+
+  private final AtomicLong written = new AtomicLong();
+  private final AtomicLong profilesOnly = new AtomicLong();
+  private final AtomicLong writeNanos = new AtomicLong();
+  private final AtomicLong maxWriteNanos = new AtomicLong();
+
+  /**
+   * Creates a pipeline
+   *
+   * @param poolSize       the number of output threads, at least 1
+   * @param queueSize      the number of outputs that can wait for a thread
+   * @param overflowPolicy what to do with the outputs submitted when the queue is full
+   */
+  protected LineageOutputPipeline( int poolSize, int queueSize, String overflowPolicy ) {
+    final AtomicInteger threadNumber = new AtomicInteger();
+    int threads = Math.max( 1, poolSize );
+    pool = new ThreadPoolExecutor( threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+      new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        @Override
+        public Thread newThread( Runnable r ) {
+          Thread thread = new Thread( r, "metaverse-lineage-output-" + threadNumber.incrementAndGet() );
+          thread.setDaemon( true );
+          return thread;
+        }
+      } );
+    pool.allowCoreThreadTimeOut( true );
+    setQueueSize( queueSize );
+    setOverflowPolicy( overflowPolicy );
+  }
+
+  public static LineageOutputPipeline getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * @return the number of output threads
+   */
+  public int getPoolSize() {
+    return pool.getMaximumPoolSize();
+  }
+
+  /**
+   * Sets the number of output threads
+   *
+   * @param poolSize the number of threads, at least 1
+   */
+  public void setPoolSize( int poolSize ) {
+    int threads = Math.max( 1, poolSize );
+    if ( threads > pool.getMaximumPoolSize() ) {
+      pool.setMaximumPoolSize( threads );
+      pool.setCorePoolSize( threads );
+    } else {
+      pool.setCorePoolSize( threads );
+      pool.setMaximumPoolSize( threads );
+    }
+  }
+
+  /**
+   * @return the number of outputs that can wait for a thread
+   */
+  public int getQueueSize() {
+    synchronized ( lock ) {
+      return queueSize;
+    }
+  }
+
+  /**
+   * Sets the number of outputs that can wait for a thread
+   *
+   * @param queueSize the size of the queue, at least 1
+   */
+  public void setQueueSize( int queueSize ) {
+    synchronized ( lock ) {
+      this.queueSize = Math.max( 1, queueSize );
+      lock.notifyAll();
+    }
+  }
+
+  /**
+   * @return what is done with the outputs submitted when the queue is full
+   */
+  public String getOverflowPolicy() {
+    synchronized ( lock ) {
+      return overflowPolicy;
+    }
+  }
+
+  /**
+   * Sets what is done with the outputs submitted when the queue is full. Unknown policies are treated as
+   * {@link #POLICY_BLOCK}.
+   *
+   * @param overflowPolicy {@link #POLICY_BLOCK} or {@link #POLICY_PROFILE_ONLY}
+   */
+  public void setOverflowPolicy( String overflowPolicy ) {
+    String policy = overflowPolicy == null ? "" : overflowPolicy.trim();
+    synchronized ( lock ) {
+      this.overflowPolicy = POLICY_PROFILE_ONLY.equalsIgnoreCase( policy ) ? POLICY_PROFILE_ONLY : POLICY_BLOCK;
+      lock.notifyAll();
+    }
+  }
+
+  /**
+   * @return how long shutting the pipeline down waits for the queued outputs to be written, in milliseconds
+   */
+  public long getShutdownTimeout() {
+    return shutdownTimeout;
+  }
+
+  /**
+   * Sets how long shutting the pipeline down waits for the queued outputs to be written
+   *
+   * @param shutdownTimeout the timeout in milliseconds
+   */
+  public void setShutdownTimeout( long shutdownTimeout ) {
+    this.shutdownTimeout = Math.max( 0L, shutdownTimeout );
+  }
+
+  /**
+   * Writes the lineage of an execution on an output thread
+   *
+   * @param name          the name of the execution, for the log
+   * @param output        writes the execution profile and the lineage graph of the execution
+   * @param profileOutput writes only the execution profile and spills the lineage graph to the deferred lineage queue,
+   *                      or null if the output cannot be reduced to it
+   */
+  public void submit( String name, Runnable output, Runnable profileOutput ) {
+    boolean queue = false;
+    boolean profileOnly = false;
+    synchronized ( lock ) {
+      while ( !shutdown && queued >= queueSize ) {
+        if ( POLICY_PROFILE_ONLY.equals( overflowPolicy ) && profileOutput != null ) {
+          profileOnly = true;
+          break;
+        }
+        try {
+          lock.wait();
+        } catch ( InterruptedException e ) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+      if ( !shutdown && !profileOnly && queued < queueSize ) {
+        queued++;
+        queue = true;
+      }
+    }
+    if ( queue ) {
+      try {
+        pool.execute( new OutputTask( name, output ) );
+        return;
+      } catch ( RejectedExecutionException e ) {
+        // the pool was shut down in the meantime
+        synchronized ( lock ) {
+          queued--;
+          lock.notifyAll();
+        }
+      }
+    }
+    if ( profileOnly ) {
+      profilesOnly.incrementAndGet();
+      log.warn( Messages.getString( "WARNING.LineageOutput.ProfileOnly", name, Integer.toString( getQueueSize() ) ) );
+      write( name, profileOutput );
+    } else {
+      write( name, output );
+    }
+  }
+
+  /**
+   * Waits until the outputs that were submitted are written
+   *
+   * @param timeout the longest time to wait
+   * @param unit    the unit of the timeout
+   * @return true if they were all written, false if the timeout expired first
+   * @throws InterruptedException if the thread is interrupted while waiting
+   */
+  public boolean flush( long timeout, TimeUnit unit ) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos( timeout );
+    synchronized ( lock ) {
+      while ( queued > 0 || active > 0 ) {
+        long remaining = TimeUnit.NANOSECONDS.toMillis( deadline - System.nanoTime() );
+        if ( remaining <= 0 ) {
+          return false;
+        }
+        lock.wait( remaining );
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Stops queueing outputs, waits for the queued ones to be written (for up to the shutdown timeout) and stops the
+   * output threads. The outputs submitted afterwards are written by the thread submitting them.
+   */
+  public void shutdown() {
+    synchronized ( lock ) {
+      if ( shutdown ) {
+        return;
+      }
+      shutdown = true;
+      lock.notifyAll();
+    }
+    try {
+      if ( !flush( shutdownTimeout, TimeUnit.MILLISECONDS ) ) {
+        log.warn( Messages.getString( "WARNING.LineageOutput.NotFlushed", Integer.toString( getQueueDepth() ),
+          Long.toString( shutdownTimeout ) ) );
+      }
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+    }
+    pool.shutdown();
+  }
+
+  /**
+   * @return the number of outputs waiting for a thread
+   */
+  public int getQueueDepth() {
+    synchronized ( lock ) {
+      return queued;
+    }
+  }
+
+  /**
+   * @return the number of outputs being written
+   */
+  public int getActiveWrites() {
+    synchronized ( lock ) {
+      return active;
+    }
+  }
+
+  /**
+   * @return the number of outputs written, including the ones reduced to the execution profile
+   */
+  public long getWrittenCount() {
+    return written.get();
+  }
+
+  /**
+   * @return the number of outputs reduced to the execution profile (their graph spilled) because the queue was full
+   */
+  public long getProfileOnlyCount() {
+    return profilesOnly.get();
+  }
+
+  /**
+   * @return the average time an output took to write, in milliseconds
+   */
+  public long getAverageWriteMillis() {
+    long count = written.get();
+    return count == 0 ? 0L : TimeUnit.NANOSECONDS.toMillis( writeNanos.get() / count );
+  }
+
+  /**
+   * @return the longest time an output took to write, in milliseconds
+   */
+  public long getMaxWriteMillis() {
+    return TimeUnit.NANOSECONDS.toMillis( maxWriteNanos.get() );
+  }
+
+  /**
+   * Writes an output and records how long it took
+   */
+  private void write( String name, Runnable output ) {
+    long start = System.nanoTime();
+    try {
+      output.run();
+    } catch ( Throwable t ) {
+      log.warn( Messages.getString( "ERROR.LineageOutput.Failed", name, String.valueOf( t.getMessage() ) ), t );
+    } finally {
+      long nanos = System.nanoTime() - start;
+      written.incrementAndGet();
+      writeNanos.addAndGet( nanos );
+      long max = maxWriteNanos.get();
+      while ( nanos > max && !maxWriteNanos.compareAndSet( max, nanos ) ) {
+        max = maxWriteNanos.get();
+      }
+    }
+  }
+
+  /**
+   * An output waiting for, or running on, an output thread
+   */
+  private class OutputTask implements Runnable {
+    private final String name;
+    private final Runnable output;
+
+    OutputTask( String name, Runnable output ) {
+      this.name = name;
+      this.output = output;
+    }
+
+    @Override
+    public void run() {
+      synchronized ( lock ) {
+        queued--;
+        active++;
+        lock.notifyAll();
+      }
+      try {
+        write( name, output );
+      } finally {
+        synchronized ( lock ) {
+          active--;
+          lock.notifyAll();
+        }
+      }
+    }
+  }
+}
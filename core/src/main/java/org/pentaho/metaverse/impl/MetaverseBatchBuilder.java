@@ -0,0 +1,199 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.impl;
+
+import com.tinkerpop.blueprints.Graph;
+import org.pentaho.metaverse.api.IMetaverseBuilder;
+import org.pentaho.metaverse.api.IMetaverseLink;
+import org.pentaho.metaverse.api.IMetaverseNode;
+import org.pentaho.metaverse.api.IMetaverseObjectFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A metaverse builder that buffers the nodes and links added to it and hands them to a delegate builder in one
+ * {@link IMetaverseBuilder#addAll(Collection, Collection)} call when {@link #commit()} is called. Document analyzers
+ * use it to apply everything they find in a document as a single batch instead of one graph operation per element.
+ * <p/>
+ * Operations other than adds (deletes and updates) flush the buffer first and are then passed straight through, so
+ * they always see the elements added before them. Once committed, the builder stops buffering and behaves as a
+ * plain pass-through to its delegate.
+ * <p/>
+ * A batch can be shared by several threads, and a batch can be the delegate of other batches (one per step of a
+ * transformation, say) that are committed into it.
+ */
+public class MetaverseBatchBuilder implements IMetaverseBuilder {
+
+  private final IMetaverseBuilder delegate;
+
+  private List<IMetaverseNode> nodes = new ArrayList<>();
+
+  private List<IMetaverseLink> links = new ArrayList<>();
+
+  private boolean committed = false;
+
+  /**
+   * Creates a batch on top of the given builder
+   *
+   * @param delegate the builder that the batch will be applied to
+   */
+  public MetaverseBatchBuilder( IMetaverseBuilder delegate ) {
+    this.delegate = delegate;
+  }
+
+  /**
+   * Returns the builder this batch is applied to
+   *
+   * @return the delegate builder
+   */
+  public IMetaverseBuilder getDelegate() {
+    return delegate;
+  }
+
+  /**
+   * Applies the buffered nodes and links to the delegate builder and ends the batch
+   *
+   * @return the delegate builder
+   */
+  public synchronized IMetaverseBuilder commit() {
+    flush();
+    committed = true;
+    return delegate;
+  }
+
+  /**
+   * @return true if this batch has been committed, false if it is still buffering
+   */
+  public synchronized boolean isCommitted() {
+    return committed;
+  }
+
+  /**
+   * Applies the buffered nodes and links to the delegate builder, leaving the batch open
+   */
+  protected synchronized void flush() {
+    if ( !nodes.isEmpty() || !links.isEmpty() ) {
+      List<IMetaverseNode> batchNodes = nodes;
+      List<IMetaverseLink> batchLinks = links;
+      nodes = new ArrayList<>();
+      links = new ArrayList<>();
+      delegate.addAll( batchNodes, batchLinks );
+    }
+  }
+
+  @Override
+  public synchronized IMetaverseBuilder addNode( IMetaverseNode node ) {
+    if ( committed ) {
+      delegate.addNode( node );
+    } else if ( node != null ) {
+      nodes.add( node );
+    }
+    return this;
+  }
+
+  @Override
+  public synchronized IMetaverseBuilder addLink( IMetaverseLink link ) {
+    if ( committed ) {
+      delegate.addLink( link );
+    } else if ( link != null ) {
+      links.add( link );
+    }
+    return this;
+  }
+
+  @Override
+  public IMetaverseBuilder addLink( IMetaverseNode fromNode, String label, IMetaverseNode toNode ) {
+    IMetaverseLink link = getMetaverseObjectFactory().createLinkObject();
+    link.setFromNode( fromNode );
+    link.setLabel( label );
+    link.setToNode( toNode );
+    return addLink( link );
+  }
+
+  @Override
+  public synchronized IMetaverseBuilder addAll( Collection<IMetaverseNode> nodes, Collection<IMetaverseLink> links ) {
+    if ( committed ) {
+      delegate.addAll( nodes, links );
+    } else {
+      if ( nodes != null ) {
+        this.nodes.addAll( nodes );
+      }
+      if ( links != null ) {
+        this.links.addAll( links );
+      }
+    }
+    return this;
+  }
+
+  @Override
+  public synchronized IMetaverseBuilder deleteNode( IMetaverseNode node ) {
+    flush();
+    delegate.deleteNode( node );
+    return this;
+  }
+
+  @Override
+  public synchronized IMetaverseBuilder deleteLink( IMetaverseLink link ) {
+    flush();
+    delegate.deleteLink( link );
+    return this;
+  }
+
+  @Override
+  public synchronized IMetaverseBuilder updateNode( IMetaverseNode updatedNode ) {
+    flush();
+    delegate.updateNode( updatedNode );
+    return this;
+  }
+
+  @Override
+  public synchronized IMetaverseBuilder updateLinkLabel( IMetaverseLink link, String newLabel ) {
+    flush();
+    delegate.updateLinkLabel( link, newLabel );
+    return this;
+  }
+
+  @Override
+  public IMetaverseObjectFactory getMetaverseObjectFactory() {
+    return delegate.getMetaverseObjectFactory();
+  }
+
+  @Override
+  public void setMetaverseObjectFactory( IMetaverseObjectFactory metaverseObjectFactory ) {
+    delegate.setMetaverseObjectFactory( metaverseObjectFactory );
+  }
+
+  @Override
+  public synchronized Graph getGraph() {
+    flush();
+    return delegate.getGraph();
+  }
+
+  @Override
+  public synchronized void setGraph( Graph graph ) {
+    flush();
+    delegate.setGraph( graph );
+  }
+}
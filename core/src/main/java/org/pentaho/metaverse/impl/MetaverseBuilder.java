@@ -33,8 +33,21 @@ import org.pentaho.metaverse.api.IMetaverseLink;
 import org.pentaho.metaverse.api.IMetaverseNode;
 import org.pentaho.metaverse.api.IMetaverseObjectFactory;
 import org.pentaho.metaverse.api.MetaverseObjectFactory;
+import org.pentaho.metaverse.api.PropertiesHolder;
+import org.pentaho.metaverse.graph.PropertyValueDictionary;
+import org.pentaho.metaverse.graph.SynchronizedGraph;
 import org.pentaho.platform.engine.core.system.PentahoSystem;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
 /**
  * This is the reference implementation for IMetaverseBuilder, offering the ability to add nodes, links, etc. to an
  * underlying graph
@@ -49,6 +62,15 @@ public class MetaverseBuilder extends MetaverseObjectFactory implements IMetaver
 
   private Graph graph;
 
+  /**
+   * The vertex each node's properties were last copied to by this builder, and the version of the node properties
+   * copied. A node copied to the same vertex again only needs the properties changed since that version copied. Kept
+   * per builder, since the node does not know which builders have seen which of its changes. Cleared whenever a vertex
+   * is removed, since its id may then be reused.
+   */
+  private final Map<IMetaverseNode, SyncedVersion> syncedVersions =
+    Collections.synchronizedMap( new WeakHashMap<IMetaverseNode, SyncedVersion>() );
+
   /**
    * This is a possible delegate reference to a metaverse object factory. This builder is itself a
    * metaverse object factory, so the reference is initialized to "this".
@@ -98,6 +120,7 @@ public class MetaverseBuilder extends MetaverseObjectFactory implements IMetaver
   @Override
   public void setGraph( Graph graph ) {
     this.graph = graph;
+    syncedVersions.clear();
   }
 
   /**
@@ -108,30 +131,131 @@ public class MetaverseBuilder extends MetaverseObjectFactory implements IMetaver
    */
   @Override
   public IMetaverseBuilder addLink( IMetaverseLink link ) {
+    // a batch of one link: missing from/to nodes are added as virtual nodes, existing ones get their properties updated
+    return addAll( null, Collections.singletonList( link ) );
+  }
 
-    // make sure the from and to nodes exist in the graph
-    Vertex fromVertex = getVertexForNode( link.getFromNode() );
-    Vertex toVertex = getVertexForNode( link.getToNode() );
+  /**
+   * Adds the nodes and then the links to the underlying graph in a single pass. When the graph is a
+   * {@link SynchronizedGraph} the whole batch is applied while holding its lock once, rather than once per element.
+   *
+   * @param nodes the nodes to add
+   * @param links the links to add
+   * @return the builder
+   */
+  @Override
+  public IMetaverseBuilder addAll( final Collection<IMetaverseNode> nodes, final Collection<IMetaverseLink> links ) {
+    executeInLock( new Runnable() {
+      @Override
+      public void run() {
+        applyBatch( nodes, links );
+      }
+    } );
+    return this;
+  }
 
-    // add the "from" vertex to the graph if it wasn't found
-    if ( fromVertex == null ) {
-      fromVertex = addVertex( link.getFromNode() );
-      // set the virtual node property to true since this is an implicit adding of a node
-      fromVertex.setProperty( DictionaryConst.NODE_VIRTUAL, true );
+  /**
+   * Runs a modification of the graph. Setting a property on a vertex also updates the graph's key indices, so when the
+   * graph is a {@link SynchronizedGraph} the modification is made while holding its write lock.
+   *
+   * @param work the modification to run
+   */
+  protected void executeInLock( Runnable work ) {
+    if ( graph instanceof SynchronizedGraph ) {
+      ( (SynchronizedGraph) graph ).executeInLock( work );
+    } else {
+      work.run();
     }
-    // update the vertex properties from the fromNode
-    copyNodePropertiesToVertex( link.getFromNode(), fromVertex );
+  }
 
-    // add the "to" vertex to the graph if it wasn't found
-    if ( toVertex == null ) {
-      toVertex = addVertex( link.getToNode() );
+  /**
+   * Applies a batch of nodes and links. Each logical id is resolved to a vertex only once per batch, and the
+   * properties of a given node object are only copied once (using its state at the time the batch is applied).
+   *
+   * @param nodes the nodes to add
+   * @param links the links to add
+   */
+  protected void applyBatch( Collection<IMetaverseNode> nodes, Collection<IMetaverseLink> links ) {
+    Map<String, Vertex> resolved = new HashMap<>();
+    Set<IMetaverseNode> copied = Collections.newSetFromMap( new IdentityHashMap<IMetaverseNode, Boolean>() );
+
+    if ( nodes != null ) {
+      for ( IMetaverseNode node : lastOccurrences( nodes ) ) {
+        Vertex v = resolveVertex( node, resolved );
+        if ( v == null ) {
+          v = addVertex( node );
+          resolved.put( node.getLogicalId(), v );
+        }
+        // adding this node means that it is no longer a virtual node
+        v.setProperty( DictionaryConst.NODE_VIRTUAL, false );
+        copyNodePropertiesToVertex( node, v );
+        copied.add( node );
+      }
+    }
+
+    if ( links != null ) {
+      for ( IMetaverseLink link : links ) {
+        Vertex fromVertex = resolveLinkVertex( link.getFromNode(), resolved, copied );
+        Vertex toVertex = resolveLinkVertex( link.getToNode(), resolved, copied );
+        Edge edge = getOrAddEdge( fromVertex, link.getLabel(), toVertex );
+        copyLinkPropertiesToEdge( link, edge );
+      }
+    }
+  }
+
+  /**
+   * Returns the distinct node objects in the order of their last occurrence, so that applying them in order leaves
+   * the same properties on a shared vertex as adding them one at a time would have
+   */
+  private List<IMetaverseNode> lastOccurrences( Collection<IMetaverseNode> nodes ) {
+    List<IMetaverseNode> reversed = new ArrayList<>( nodes );
+    Collections.reverse( reversed );
+    Set<IMetaverseNode> seen = Collections.newSetFromMap( new IdentityHashMap<IMetaverseNode, Boolean>() );
+    List<IMetaverseNode> distinct = new ArrayList<>( reversed.size() );
+    for ( IMetaverseNode node : reversed ) {
+      if ( node != null && seen.add( node ) ) {
+        distinct.add( node );
+      }
+    }
+    Collections.reverse( distinct );
+    return distinct;
+  }
+
+  private Vertex resolveVertex( IMetaverseNode node, Map<String, Vertex> resolved ) {
+    String logicalId = node.getLogicalId();
+    Vertex v = resolved.get( logicalId );
+    if ( v == null ) {
+      v = getVertexForNode( node );
+      if ( v != null ) {
+        resolved.put( logicalId, v );
+      }
+    }
+    return v;
+  }
+
+  private Vertex resolveLinkVertex( IMetaverseNode node, Map<String, Vertex> resolved, Set<IMetaverseNode> copied ) {
+    Vertex v = resolveVertex( node, resolved );
+    if ( v == null ) {
+      v = addVertex( node );
       // set the virtual node property to true since this is an implicit adding of a node
-      toVertex.setProperty( DictionaryConst.NODE_VIRTUAL, true );
+      v.setProperty( DictionaryConst.NODE_VIRTUAL, true );
+      resolved.put( node.getLogicalId(), v );
     }
-    // update the to vertex properties from the toNode
-    copyNodePropertiesToVertex( link.getToNode(), toVertex );
+    if ( copied.add( node ) ) {
+      copyNodePropertiesToVertex( node, v );
+    }
+    return v;
+  }
 
-    String label = link.getLabel();
+  /**
+   * Returns the edge with the given label between the given vertices, adding it if it does not already exist
+   *
+   * @param fromVertex the source vertex
+   * @param label      the edge label
+   * @param toVertex   the target vertex
+   * @return the existing or newly added edge
+   */
+  private Edge getOrAddEdge( Vertex fromVertex, String label, Vertex toVertex ) {
     String edgeId = getEdgeId( fromVertex, label, toVertex );
     // only add the link if the edge doesn't already exist
     Edge edge = graph.getEdge( edgeId );
@@ -139,10 +263,7 @@ public class MetaverseBuilder extends MetaverseObjectFactory implements IMetaver
       edge = graph.addEdge( edgeId, fromVertex, toVertex, label );
       edge.setProperty( "text", label );
     }
-
-    copyLinkPropertiesToEdge( link, edge );
-
-    return this;
+    return edge;
   }
 
   /**
@@ -165,20 +286,8 @@ public class MetaverseBuilder extends MetaverseObjectFactory implements IMetaver
    */
   @Override
   public IMetaverseBuilder addNode( IMetaverseNode node ) {
-    // does the node already exist?
-    Vertex v = getVertexForNode( node );
-
-    if ( v == null ) {
-      // it's a new node, add it to the graph
-      v = addVertex( node );
-    }
-
-    // adding this node means that it is no longer a virtual node
-    v.setProperty( DictionaryConst.NODE_VIRTUAL, false );
-
-    copyNodePropertiesToVertex( node, v );
-
-    return this;
+    // a batch of one node: it is added if it doesn't exist yet, and is no longer virtual if it does
+    return addAll( Collections.singletonList( node ), null );
   }
 
   /**
@@ -267,7 +376,8 @@ public class MetaverseBuilder extends MetaverseObjectFactory implements IMetaver
   }
 
   /**
-   * Copies all properties from a node into the properties of a Vertex
+   * Copies the properties from a node into the properties of a Vertex. If the node was last copied to the same vertex,
+   * only the properties changed since then are copied.
    *
    * @param node node with properties desired in a Vertex
    * @param v    Vertex to set properties on
@@ -287,18 +397,55 @@ public class MetaverseBuilder extends MetaverseObjectFactory implements IMetaver
       skipLogicalId = true;
     }
 
-    // set all of the properties, except the id and virtual (since that is an internally set prop)
-    for ( String propertyKey : node.getPropertyKeys() ) {
+    // read the version first, a change made while the properties are copied is then copied again the next time
+    long version = node instanceof PropertiesHolder ? ( (PropertiesHolder) node ).getVersion() : 0;
+
+    // set all of the (changed) properties, except the id and virtual (since that is an internally set prop)
+    for ( String propertyKey : getPropertyKeysToCopy( node, v ) ) {
       if ( !propertyKey.equals( DictionaryConst.PROPERTY_ID )
         && !propertyKey.equals( DictionaryConst.NODE_VIRTUAL )
         && !( skipLogicalId && propertyKey.equals( DictionaryConst.PROPERTY_LOGICAL_ID ) ) ) {
         Object value = node.getProperty( propertyKey );
         if ( value != null ) {
-          v.setProperty( propertyKey, value );
+          v.setProperty( propertyKey, encodePropertyValue( propertyKey, value ) );
         }
       }
     }
     node.setDirty( false );
+    if ( skipLogicalId || !( node instanceof PropertiesHolder ) ) {
+      // the vertex did not get every property of the node, copy all of them the next time
+      syncedVersions.remove( node );
+    } else {
+      syncedVersions.put( node, new SyncedVersion( v.getId(), version ) );
+    }
+  }
+
+  /**
+   * Returns the keys of the node properties to copy to the vertex: the keys changed since the last copy if this
+   * builder last copied the node to this same vertex, all of its keys otherwise
+   *
+   * @param node the node to copy
+   * @param v    the vertex to copy to
+   * @return the property keys to copy
+   */
+  protected Collection<String> getPropertyKeysToCopy( IMetaverseNode node, Vertex v ) {
+    SyncedVersion synced = syncedVersions.get( node );
+    if ( node instanceof PropertiesHolder && synced != null && synced.vertexId.equals( v.getId() ) ) {
+      return ( (PropertiesHolder) node ).getChangedKeys( synced.version );
+    }
+    return node.getPropertyKeys();
+  }
+
+  /**
+   * Returns the value to store on a vertex or edge for the given property. Values drawn from a small vocabulary
+   * (types, categories, colors, ...) are replaced with their canonical instance so vertices share them.
+   *
+   * @param key   the property key
+   * @param value the property value
+   * @return the value to store
+   */
+  protected Object encodePropertyValue( String key, Object value ) {
+    return PropertyValueDictionary.encode( key, value );
   }
 
   /**
@@ -315,7 +462,7 @@ public class MetaverseBuilder extends MetaverseObjectFactory implements IMetaver
         if ( !DictionaryConst.PROPERTY_LABEL.equals( propertyKey ) ) {
           Object value = link.getProperty( propertyKey );
           if ( value != null ) {
-            e.setProperty( propertyKey, value );
+            e.setProperty( propertyKey, encodePropertyValue( propertyKey, value ) );
           }
         }
       }
@@ -350,8 +497,13 @@ public class MetaverseBuilder extends MetaverseObjectFactory implements IMetaver
   }
 
   @Override
-  public IMetaverseBuilder deleteLink( IMetaverseLink link ) {
-    deleteLink( link, true );
+  public IMetaverseBuilder deleteLink( final IMetaverseLink link ) {
+    executeInLock( new Runnable() {
+      @Override
+      public void run() {
+        deleteLink( link, true );
+      }
+    } );
     return this;
   }
 
@@ -398,6 +550,7 @@ public class MetaverseBuilder extends MetaverseObjectFactory implements IMetaver
         for ( Vertex v : fromAndTo ) {
           if ( isVirtual( v ) ) {
             graph.removeVertex( v );
+            syncedVersions.clear();
           }
         }
       }
@@ -406,11 +559,17 @@ public class MetaverseBuilder extends MetaverseObjectFactory implements IMetaver
   }
 
   @Override
-  public IMetaverseBuilder deleteNode( IMetaverseNode node ) {
-    Vertex v = getVertexForNode( node );
-    if ( v != null ) {
-      graph.removeVertex( v );
-    }
+  public IMetaverseBuilder deleteNode( final IMetaverseNode node ) {
+    executeInLock( new Runnable() {
+      @Override
+      public void run() {
+        Vertex v = getVertexForNode( node );
+        if ( v != null ) {
+          graph.removeVertex( v );
+          syncedVersions.clear();
+        }
+      }
+    } );
     return this;
   }
 
@@ -421,11 +580,16 @@ public class MetaverseBuilder extends MetaverseObjectFactory implements IMetaver
    * IMetaverseBuilder#updateLink(IMetaverseLink)
    */
   @Override
-  public IMetaverseBuilder updateLinkLabel( IMetaverseLink link, String label ) {
-    if ( label != null && deleteLink( link, false ) ) {
-      link.setLabel( label );
-      addLink( link );
-    }
+  public IMetaverseBuilder updateLinkLabel( final IMetaverseLink link, final String label ) {
+    executeInLock( new Runnable() {
+      @Override
+      public void run() {
+        if ( label != null && deleteLink( link, false ) ) {
+          link.setLabel( label );
+          addLink( link );
+        }
+      }
+    } );
     return this;
   }
 
@@ -458,13 +622,16 @@ public class MetaverseBuilder extends MetaverseObjectFactory implements IMetaver
    * IMetaverseBuilder#updateNode(IMetaverseNode)
    */
   @Override
-  public IMetaverseBuilder updateNode( IMetaverseNode node ) {
-
-    Vertex v = getVertexForNode( node );
-    if ( v != null ) {
-      copyNodePropertiesToVertex( node, v );
-    }
-
+  public IMetaverseBuilder updateNode( final IMetaverseNode node ) {
+    executeInLock( new Runnable() {
+      @Override
+      public void run() {
+        Vertex v = getVertexForNode( node );
+        if ( v != null ) {
+          copyNodePropertiesToVertex( node, v );
+        }
+      }
+    } );
     return this;
   }
 
@@ -491,12 +658,7 @@ public class MetaverseBuilder extends MetaverseObjectFactory implements IMetaver
   }
 
   protected void addLink( Vertex fromVertex, String label, Vertex toVertex ) {
-    String edgeId = getEdgeId( fromVertex, label, toVertex );
-    // only add the link if the edge doesn't already exist
-    if ( graph.getEdge( edgeId ) == null ) {
-      Edge e = graph.addEdge( edgeId, fromVertex, toVertex, label );
-      e.setProperty( "text", label );
-    }
+    getOrAddEdge( fromVertex, label, toVertex );
   }
 
   /**
@@ -515,4 +677,16 @@ public class MetaverseBuilder extends MetaverseObjectFactory implements IMetaver
     return isVirtual == null ? false : isVirtual;
   }
 
+  /**
+   * The vertex a node was copied to and the version of the node properties copied
+   */
+  private static final class SyncedVersion {
+    private final Object vertexId;
+    private final long version;
+
+    private SyncedVersion( Object vertexId, long version ) {
+      this.vertexId = vertexId;
+      this.version = version;
+    }
+  }
 }
@@ -30,11 +30,10 @@ import org.pentaho.metaverse.api.model.IUserMetadata;
 
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Hashtable;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ExecutionData implements IExecutionData {
   private Date startTime;
@@ -46,7 +45,7 @@ public class ExecutionData implements IExecutionData {
   private String loggingChannelId;
   private List<IParamInfo<String>> parameters = new ArrayList<IParamInfo<String>>();
   private Map<String, List<IExternalResourceInfo>> externalResources =
-    new HashMap<String, List<IExternalResourceInfo>>();
+    new ConcurrentHashMap<String, List<IExternalResourceInfo>>();
   private Map<Object, Object> variables = new Hashtable<Object, Object>();
   private List<Object> arguments = new ArrayList<Object>();
   private IArtifactMetadata artifactMetadata;
@@ -144,17 +143,22 @@ public class ExecutionData implements IExecutionData {
 
   @Override
   public void setExternalResources( Map<String, List<IExternalResourceInfo>> externalResources ) {
-    this.externalResources = externalResources;
+    // the steps (and the copies of a step) add their resources concurrently
+    ConcurrentHashMap<String, List<IExternalResourceInfo>> resources =
+      new ConcurrentHashMap<String, List<IExternalResourceInfo>>();
+    if ( externalResources != null ) {
+      for ( Map.Entry<String, List<IExternalResourceInfo>> entry : externalResources.entrySet() ) {
+        if ( entry.getKey() != null && entry.getValue() != null ) {
+          resources.put( entry.getKey(), entry.getValue() );
+        }
+      }
+    }
+    this.externalResources = resources;
   }
 
   @Override
   public void addExternalResource( String consumerName, IExternalResourceInfo externalResource ) {
-    List<IExternalResourceInfo> resources = this.externalResources.get( consumerName );
-    if ( resources == null ) {
-      resources = new LinkedList<IExternalResourceInfo>();
-    }
-    resources.add( externalResource );
-    this.externalResources.put( consumerName, resources );
+    ExternalResourceAccumulator.forStep( externalResources, consumerName ).add( externalResource );
   }
 
   @Override
@@ -0,0 +1,278 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.metaverse.impl.model;
+
+import org.pentaho.di.core.Const;
+import org.pentaho.metaverse.api.model.IExternalResourceInfo;
+import org.pentaho.metaverse.messages.Messages;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The external resources a step used while it ran, as they are recorded in its execution profile. A data-driven step
+ * reports the resources of every row it reads, mostly the same few ones over and over again, so the accumulator keeps
+ * each distinct resource once (resources are told apart by their type, direction, name, description and attributes)
+ * and stops adding new ones once it holds the maximum number of them. The resources it turns away are counted.
+ * <p>
+ * Several threads (the copies of a step) can add resources at the same time, adding a resource that is already there
+ * only takes a lookup.
+ * </p>
+ */
+public class ExternalResourceAccumulator extends AbstractList<IExternalResourceInfo> {
+
+  /**
+   * The system property (it can be set in kettle.properties) holding the maximum number of distinct resources kept
+   * per step
+   */
+  public static final String MAX_RESOURCES_PROPERTY = "pentaho.metaverse.lineage.maxResourcesPerStep";
+  public static final int DEFAULT_MAX_RESOURCES = 1000;
+
+  private static final Logger log = LoggerFactory.getLogger( ExternalResourceAccumulator.class );
+
+  private final String stepName;
+  private final int maxResources;
+  private final ConcurrentMap<ResourceKey, Boolean> keys = new ConcurrentHashMap<ResourceKey, Boolean>();
+  private final List<IExternalResourceInfo> resources = new CopyOnWriteArrayList<IExternalResourceInfo>();
+  private final AtomicInteger distinct = new AtomicInteger();
+  // every row of every copy of the step counts, the counters are striped so the copies do not contend on them
+  private final LongAdder duplicates = new LongAdder();
+  private final LongAdder overflow = new LongAdder();
+  private final AtomicBoolean overflowLogged = new AtomicBoolean();
+
+  /**
+   * @param stepName     the name of the step the resources are used by
+   * @param maxResources the maximum number of distinct resources to keep
+   */
+  public ExternalResourceAccumulator( String stepName, int maxResources ) {
+    this.stepName = stepName;
+    this.maxResources = Math.max( 1, maxResources );
+  }
+
+  /**
+   * Creates an accumulator keeping the number of distinct resources set by {@link #MAX_RESOURCES_PROPERTY}
+   *
+   * @param stepName the name of the step the resources are used by
+   */
+  public ExternalResourceAccumulator( String stepName ) {
+    this( stepName, Const.toInt( System.getProperty( MAX_RESOURCES_PROPERTY ), DEFAULT_MAX_RESOURCES ) );
+  }
+
+  /**
+   * Gets the accumulator of the resources of a step from the external resources of an execution, the resources
+   * recorded for the step so far are moved into the accumulator when it is created
+   *
+   * @param resourceMap the external resources of the execution, by step name
+   * @param stepName    the name of the step
+   * @return the accumulator of the step
+   */
+  public static ExternalResourceAccumulator forStep(
+    Map<String, List<IExternalResourceInfo>> resourceMap, String stepName ) {
+    if ( resourceMap instanceof ConcurrentMap ) {
+      // the copies of a step ask for its accumulator at the same time, the first one to store one wins
+      ConcurrentMap<String, List<IExternalResourceInfo>> concurrentMap =
+        (ConcurrentMap<String, List<IExternalResourceInfo>>) resourceMap;
+      while ( true ) {
+        List<IExternalResourceInfo> recorded = concurrentMap.get( stepName );
+        if ( recorded instanceof ExternalResourceAccumulator ) {
+          return (ExternalResourceAccumulator) recorded;
+        }
+        ExternalResourceAccumulator accumulator = newAccumulator( stepName, recorded );
+        if ( recorded == null ? concurrentMap.putIfAbsent( stepName, accumulator ) == null
+          : concurrentMap.replace( stepName, recorded, accumulator ) ) {
+          return accumulator;
+        }
+      }
+    }
+    synchronized ( resourceMap ) {
+      List<IExternalResourceInfo> recorded = resourceMap.get( stepName );
+      if ( recorded instanceof ExternalResourceAccumulator ) {
+        return (ExternalResourceAccumulator) recorded;
+      }
+      ExternalResourceAccumulator accumulator = newAccumulator( stepName, recorded );
+      resourceMap.put( stepName, accumulator );
+      return accumulator;
+    }
+  }
+
+  private static ExternalResourceAccumulator newAccumulator( String stepName, List<IExternalResourceInfo> recorded ) {
+    ExternalResourceAccumulator accumulator = new ExternalResourceAccumulator( stepName );
+    if ( recorded != null ) {
+      accumulator.addAll( recorded );
+    }
+    return accumulator;
+  }
+
+  /**
+   * Adds a resource, unless an equal one was added already or the accumulator is full
+   *
+   * @param resource the resource
+   * @return true if the resource was added
+   */
+  @Override
+  public boolean add( IExternalResourceInfo resource ) {
+    if ( resource == null ) {
+      return false;
+    }
+    ResourceKey key = new ResourceKey( resource );
+    if ( keys.containsKey( key ) ) {
+      duplicates.increment();
+      return false;
+    }
+    if ( distinct.incrementAndGet() > maxResources ) {
+      distinct.decrementAndGet();
+      overflow.increment();
+      if ( overflowLogged.compareAndSet( false, true ) ) {
+        log.warn( Messages.getString( "WARNING.ExternalResources.Overflow", stepName,
+          Integer.toString( maxResources ) ) );
+      }
+      return false;
+    }
+    if ( keys.putIfAbsent( key, Boolean.TRUE ) != null ) {
+      // another copy of the step added it in the meantime
+      distinct.decrementAndGet();
+      duplicates.increment();
+      return false;
+    }
+    resources.add( resource );
+    return true;
+  }
+
+  @Override
+  public IExternalResourceInfo get( int index ) {
+    return resources.get( index );
+  }
+
+  @Override
+  public int size() {
+    return resources.size();
+  }
+
+  @Override
+  public Iterator<IExternalResourceInfo> iterator() {
+    return resources.iterator();
+  }
+
+  @Override
+  public void clear() {
+    keys.clear();
+    resources.clear();
+    distinct.set( 0 );
+  }
+
+  /**
+   * @return the name of the step the resources are used by
+   */
+  public String getStepName() {
+    return stepName;
+  }
+
+  /**
+   * @return the maximum number of distinct resources kept
+   */
+  public int getMaxResources() {
+    return maxResources;
+  }
+
+  /**
+   * @return how many times a resource that had already been added was added again
+   */
+  public long getDuplicateCount() {
+    return duplicates.sum();
+  }
+
+  /**
+   * @return how many times a new resource was turned away because the accumulator was full
+   */
+  public long getOverflowCount() {
+    return overflow.sum();
+  }
+
+  /**
+   * What tells resources apart. The resources are built from a row and not changed afterwards, so the key refers to
+   * their values instead of copying them.
+   */
+  private static final class ResourceKey {
+    private final Class<?> resourceClass;
+    private final String type;
+    private final boolean input;
+    private final String name;
+    private final String description;
+    private final Map<Object, Object> attributes;
+    private final int hash;
+
+    ResourceKey( IExternalResourceInfo resource ) {
+      resourceClass = resource.getClass();
+      type = resource.getType();
+      input = resource.isInput();
+      name = resource.getName();
+      description = resource.getDescription();
+      attributes = resource.getAttributes();
+      int result = resourceClass.hashCode();
+      result = 31 * result + ( type != null ? type.hashCode() : 0 );
+      result = 31 * result + ( input ? 1 : 0 );
+      result = 31 * result + ( name != null ? name.hashCode() : 0 );
+      result = 31 * result + ( description != null ? description.hashCode() : 0 );
+      result = 31 * result + ( attributes != null ? attributes.hashCode() : 0 );
+      hash = result;
+    }
+
+    @Override
+    public boolean equals( Object o ) {
+      if ( this == o ) {
+        return true;
+      }
+      if ( !( o instanceof ResourceKey ) ) {
+        return false;
+      }
+      ResourceKey that = (ResourceKey) o;
+      return hash == that.hash
+        && resourceClass == that.resourceClass
+        && input == that.input
+        && equal( type, that.type )
+        && equal( name, that.name )
+        && equal( description, that.description )
+        && equal( attributes, that.attributes );
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    private static boolean equal( Object a, Object b ) {
+      return a == null ? b == null : a.equals( b );
+    }
+  }
+}
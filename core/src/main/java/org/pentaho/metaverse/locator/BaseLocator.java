@@ -38,6 +38,7 @@ import org.pentaho.platform.api.engine.IPentahoSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Date;
@@ -104,6 +105,16 @@ public abstract class BaseLocator<T> implements IDocumentLocator {
    */
   protected List<IDocumentListener> listeners = new ArrayList<IDocumentListener>();
 
+  /**
+   * The directory the fingerprints of the analyzed documents are kept in, none if it is empty
+   */
+  protected String fingerprintDirectory;
+
+  /**
+   * The fingerprints of the documents this locator has analyzed
+   */
+  protected DocumentFingerprintStore fingerprintStore;
+
   /**
    * Constructor for the abstract super class
    */
@@ -129,6 +140,26 @@ public abstract class BaseLocator<T> implements IDocumentLocator {
    */
   protected abstract Object getContents( T locatedItem ) throws Exception;
 
+  /**
+   * Returns the size of a located item, so a scan can tell whether it changed without reading it
+   *
+   * @param locatedItem the located item; ie., a file
+   * @return the size, or -1 if it is not known
+   */
+  protected long getSize( T locatedItem ) {
+    return -1;
+  }
+
+  /**
+   * Returns the time a located item was last modified, so a scan can tell whether it changed without reading it
+   *
+   * @param locatedItem the located item; ie., a file
+   * @return the last modification time in milliseconds, or -1 if it is not known
+   */
+  protected long getLastModified( T locatedItem ) {
+    return -1;
+  }
+
   @Override
   public void addDocumentListener( IDocumentListener listener ) {
     listeners.add( listener );
@@ -162,6 +193,36 @@ public abstract class BaseLocator<T> implements IDocumentLocator {
     this.locatorType = locatorType;
   }
 
+  public String getFingerprintDirectory() {
+    return fingerprintDirectory;
+  }
+
+  /**
+   * Sets the directory the fingerprints of the analyzed documents are kept in. Scans skip the documents that did not
+   * change since they were analyzed, which is only right when the graph they were analyzed into is kept as well, so
+   * this is normally set along with the directory of the persisted graph. It must not be that directory itself, the
+   * persisted graph manages the files in there.
+   *
+   * @param fingerprintDirectory the directory, none if it is null or empty
+   */
+  public void setFingerprintDirectory( String fingerprintDirectory ) {
+    this.fingerprintDirectory = fingerprintDirectory;
+    this.fingerprintStore = null;
+  }
+
+  /**
+   * Returns the fingerprints of the documents this locator has analyzed
+   *
+   * @return the fingerprints, or null if they are not kept
+   */
+  public synchronized DocumentFingerprintStore getFingerprintStore() {
+    if ( fingerprintStore == null && fingerprintDirectory != null && !fingerprintDirectory.trim().isEmpty() ) {
+      String fileName = "fingerprints-" + getRepositoryId().replaceAll( "[^A-Za-z0-9_.-]", "_" ) + ".properties";
+      fingerprintStore = DocumentFingerprintStore.open( new File( fingerprintDirectory.trim(), fileName ) );
+    }
+    return fingerprintStore;
+  }
+
   public IMetaverseBuilder getMetaverseBuilder() {
     return metaverseBuilder;
   }
@@ -257,6 +318,7 @@ public abstract class BaseLocator<T> implements IDocumentLocator {
 
     runner = locatorRunner;
     runner.setLocator( this );
+    runner.setFingerprintStore( getFingerprintStore() );
 
     LOG.debug( Messages.getString( "DEBUG.Locator.StartScan", getLocatorType() ) );
 
@@ -0,0 +1,343 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.metaverse.locator;
+
+import org.pentaho.di.core.xml.XMLInterface;
+import org.pentaho.metaverse.messages.Messages;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers, across scans and restarts, the documents a locator has analyzed: their size, last modification time and
+ * content hash, and the version of the analysis that put them in the graph. A scan uses it to skip the documents that
+ * have not changed since they were analyzed.
+ * <p>
+ * The fingerprints are kept in a properties file next to the (persisted) graph, keyed by the id of the document.
+ * </p>
+ */
+public class DocumentFingerprintStore {
+
+  /**
+   * The version of the graph the analyzers build. Documents analyzed by another version are analyzed again.
+   */
+  public static final int ANALYSIS_VERSION = 1;
+
+  private static final Logger LOG = LoggerFactory.getLogger( DocumentFingerprintStore.class );
+
+  private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
+  private static final String DIGEST_ALGORITHM = "SHA-1";
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private final File file;
+
+  private final int analysisVersion;
+
+  private final Map<String, Fingerprint> fingerprints = new ConcurrentHashMap<String, Fingerprint>();
+
+  private volatile boolean dirty;
+
+  /**
+   * @param file            the file the fingerprints are kept in
+   * @param analysisVersion the version of the analysis
+   */
+  public DocumentFingerprintStore( File file, int analysisVersion ) {
+    this.file = file;
+    this.analysisVersion = analysisVersion;
+  }
+
+  /**
+   * Opens the fingerprints kept in a file. A missing or unreadable file gives an empty store, so every document is
+   * analyzed again.
+   *
+   * @param file the file
+   * @return the store
+   */
+  public static DocumentFingerprintStore open( File file ) {
+    DocumentFingerprintStore store = new DocumentFingerprintStore( file, ANALYSIS_VERSION );
+    store.load();
+    return store;
+  }
+
+  /**
+   * Loads the fingerprints from the file, replacing the ones in memory
+   */
+  protected void load() {
+    fingerprints.clear();
+    if ( !file.isFile() ) {
+      return;
+    }
+    Properties properties = new Properties();
+    try {
+      InputStream in = new FileInputStream( file );
+      try {
+        properties.load( in );
+      } finally {
+        in.close();
+      }
+    } catch ( IOException e ) {
+      LOG.warn( Messages.getString( "WARNING.FingerprintStore.Load", file.getAbsolutePath() ), e );
+      return;
+    }
+    for ( String id : properties.stringPropertyNames() ) {
+      Fingerprint fingerprint = Fingerprint.parse( properties.getProperty( id ) );
+      if ( fingerprint != null ) {
+        fingerprints.put( id, fingerprint );
+      }
+    }
+    dirty = false;
+  }
+
+  /**
+   * Writes the fingerprints to the file if they changed. The file is replaced in one step, so it is never left half
+   * written.
+   *
+   * @throws IOException if the fingerprints cannot be written
+   */
+  public synchronized void save() throws IOException {
+    if ( !dirty ) {
+      return;
+    }
+    dirty = false;
+    Properties properties = new Properties();
+    for ( Map.Entry<String, Fingerprint> fingerprint : fingerprints.entrySet() ) {
+      properties.setProperty( fingerprint.getKey(), fingerprint.getValue().toString() );
+    }
+    File directory = file.getAbsoluteFile().getParentFile();
+    if ( directory != null && !directory.isDirectory() && !directory.mkdirs() ) {
+      dirty = true;
+      throw new IOException( Messages.getString( "ERROR.FingerprintStore.Save", file.getAbsolutePath() ) );
+    }
+    File temp = new File( directory, file.getName() + ".tmp" );
+    try {
+      OutputStream out = new FileOutputStream( temp );
+      try {
+        properties.store( out, null );
+      } finally {
+        out.close();
+      }
+      Files.move( temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+    } catch ( IOException e ) {
+      dirty = true;
+      throw e;
+    }
+  }
+
+  /**
+   * @param id the id of the document
+   * @return the fingerprint of the document when it was last analyzed, or null if it was not
+   */
+  public Fingerprint get( String id ) {
+    return id == null ? null : fingerprints.get( id );
+  }
+
+  /**
+   * Records the fingerprint of an analyzed document
+   *
+   * @param id          the id of the document
+   * @param fingerprint its fingerprint
+   */
+  public void put( String id, Fingerprint fingerprint ) {
+    fingerprints.put( id, fingerprint );
+    dirty = true;
+  }
+
+  /**
+   * Forgets a document
+   *
+   * @param id the id of the document
+   * @return the fingerprint it had, or null if there was none
+   */
+  public Fingerprint remove( String id ) {
+    Fingerprint removed = fingerprints.remove( id );
+    if ( removed != null ) {
+      dirty = true;
+    }
+    return removed;
+  }
+
+  /**
+   * @return the ids of the documents with a fingerprint
+   */
+  public Set<String> getIds() {
+    return new HashSet<String>( fingerprints.keySet() );
+  }
+
+  public int size() {
+    return fingerprints.size();
+  }
+
+  public int getAnalysisVersion() {
+    return analysisVersion;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Creates the fingerprint of a document for the current analysis version
+   *
+   * @param size         the size of the document, or -1 if it is not known
+   * @param lastModified the last modification time of the document, or -1 if it is not known
+   * @param contents     the contents of the document
+   * @return the fingerprint
+   */
+  public Fingerprint createFingerprint( long size, long lastModified, Object contents ) {
+    return new Fingerprint( size, lastModified, hash( contents ), analysisVersion );
+  }
+
+  /**
+   * Tells whether the document with the given fingerprint was analyzed by the current analysis version and has not
+   * been modified since, judging by its size and modification time
+   *
+   * @param fingerprint  the fingerprint of the document when it was analyzed, can be null
+   * @param size         the current size of the document, or -1 if it is not known
+   * @param lastModified the current modification time of the document, or -1 if it is not known
+   * @return true if the document does not need to be read again
+   */
+  public boolean isUnmodified( Fingerprint fingerprint, long size, long lastModified ) {
+    return fingerprint != null && fingerprint.analysisVersion == analysisVersion && size >= 0 && lastModified >= 0
+      && fingerprint.size == size && fingerprint.lastModified == lastModified;
+  }
+
+  /**
+   * Tells whether a document that was read again has the same contents as when it was analyzed (it was only touched)
+   *
+   * @param previous the fingerprint of the document when it was analyzed, can be null
+   * @param current  the fingerprint of the document now
+   * @return true if the document does not need to be analyzed again
+   */
+  public boolean isUnchanged( Fingerprint previous, Fingerprint current ) {
+    return previous != null && previous.analysisVersion == analysisVersion && previous.hash != null
+      && previous.hash.equals( current.hash );
+  }
+
+  /**
+   * Hashes the contents of a document: the text of a file, or the XML of a transformation or job loaded from a
+   * repository
+   *
+   * @param contents the contents
+   * @return the hash, or null if the contents cannot be hashed
+   */
+  public static String hash( Object contents ) {
+    String text;
+    try {
+      if ( contents instanceof String ) {
+        text = (String) contents;
+      } else if ( contents instanceof XMLInterface ) {
+        text = ( (XMLInterface) contents ).getXML();
+      } else {
+        return null;
+      }
+    } catch ( Exception e ) {
+      return null;
+    }
+    if ( text == null ) {
+      return null;
+    }
+    byte[] hash;
+    try {
+      hash = MessageDigest.getInstance( DIGEST_ALGORITHM ).digest( text.getBytes( UTF_8 ) );
+    } catch ( NoSuchAlgorithmException e ) {
+      // every Java platform is required to support SHA-1
+      throw new IllegalStateException( e );
+    }
+    char[] hex = new char[ hash.length * 2 ];
+    for ( int i = 0; i < hash.length; i++ ) {
+      hex[ i * 2 ] = HEX_DIGITS[ ( hash[ i ] >> 4 ) & 0x0f ];
+      hex[ i * 2 + 1 ] = HEX_DIGITS[ hash[ i ] & 0x0f ];
+    }
+    return new String( hex );
+  }
+
+  /**
+   * The fingerprint of an analyzed document
+   */
+  public static class Fingerprint {
+    private final long size;
+    private final long lastModified;
+    private final String hash;
+    private final int analysisVersion;
+
+    public Fingerprint( long size, long lastModified, String hash, int analysisVersion ) {
+      this.size = size;
+      this.lastModified = lastModified;
+      this.hash = hash;
+      this.analysisVersion = analysisVersion;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    public String getHash() {
+      return hash;
+    }
+
+    public int getAnalysisVersion() {
+      return analysisVersion;
+    }
+
+    @Override
+    public String toString() {
+      return size + "," + lastModified + "," + ( hash == null ? "" : hash ) + "," + analysisVersion;
+    }
+
+    static Fingerprint parse( String value ) {
+      String[] parts = value == null ? null : value.split( ",", -1 );
+      if ( parts == null || parts.length != 4 ) {
+        return null;
+      }
+      try {
+        return new Fingerprint( Long.parseLong( parts[ 0 ] ), Long.parseLong( parts[ 1 ] ),
+          parts[ 2 ].isEmpty() ? null : parts[ 2 ], Integer.parseInt( parts[ 3 ] ) );
+      } catch ( NumberFormatException e ) {
+        return null;
+      }
+    }
+  }
+}
@@ -88,6 +88,17 @@ public class FileSystemLocator extends BaseLocator<File> {
     return content;
   }
 
+  @Override
+  protected long getSize( File file ) {
+    return file.length();
+  }
+
+  @Override
+  protected long getLastModified( File file ) {
+    long lastModified = file.lastModified();
+    return lastModified == 0 ? -1 : lastModified;
+  }
+
   public String getRootFolder() {
     return rootFolder;
   }
@@ -22,17 +22,27 @@
 
 package org.pentaho.metaverse.locator;
 
+import com.tinkerpop.blueprints.Graph;
 import org.apache.commons.io.FilenameUtils;
+import org.pentaho.metaverse.analyzer.kettle.ParsedMetaCache;
 import org.pentaho.metaverse.api.IDocument;
+import org.pentaho.metaverse.api.IMetaverseBuilder;
 import org.pentaho.metaverse.api.INamespace;
+import org.pentaho.metaverse.graph.GraphUtil;
 import org.pentaho.metaverse.impl.DocumentEvent;
 import org.pentaho.metaverse.messages.Messages;
 import org.pentaho.metaverse.util.MetaverseUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.net.FileNameMap;
 import java.net.URLConnection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The LocatorRunner is a execution construct for concurrently running document locator logic.
@@ -65,6 +75,35 @@ public abstract class LocatorRunner<T> implements Runnable {
    */
   protected boolean running;
 
+  /**
+   * The fingerprints of the documents analyzed by earlier scans, none if every document is analyzed
+   */
+  protected DocumentFingerprintStore fingerprintStore;
+
+  /**
+   * The ids of the documents found by the current scan
+   */
+  protected Set<String> locatedIds = Collections.newSetFromMap( new ConcurrentHashMap<String, Boolean>() );
+
+  /**
+   * The number of documents this scan submitted whose analysis has not finished yet
+   */
+  protected final AtomicInteger pendingAnalyses = new AtomicInteger();
+
+  /**
+   * A flag to identify if the current scan is still locating documents
+   */
+  protected volatile boolean locating;
+
+  /**
+   * A flag to identify if the current scan has ended, once it has located its documents and they have been analyzed
+   */
+  private final AtomicBoolean scanEnded = new AtomicBoolean( true );
+
+  private int analyzedDocuments;
+  private int skippedDocuments;
+  private int removedDocuments;
+
   public void setRoot( T root ) {
     this.root = root;
   }
@@ -73,13 +112,59 @@ public abstract class LocatorRunner<T> implements Runnable {
     this.locator = repoLocator;
   }
 
+  public void setFingerprintStore( DocumentFingerprintStore fingerprintStore ) {
+    this.fingerprintStore = fingerprintStore;
+  }
+
   @Override
   public void run() {
     running = true;
-    locate( root );
+    locatedIds.clear();
+    analyzedDocuments = 0;
+    skippedDocuments = 0;
+    removedDocuments = 0;
+    locating = true;
+    // the sub-transformations and sub-jobs shared by the documents of the scan are loaded once per scan
+    scanEnded.set( false );
+    ParsedMetaCache.getInstance().beginScan();
+    try {
+      locate( root );
+      if ( fingerprintStore != null && !stopping ) {
+        removeDeletedDocuments();
+      }
+    } finally {
+      locating = false;
+      if ( pendingAnalyses.get() == 0 ) {
+        endScan();
+      }
+    }
+    // the fingerprints of the documents whose analysis is still running are saved once the last of them finishes
+    saveFingerprints();
     running = false;
   }
 
+  /**
+   * Ends the scan, once it has located its documents and the last of their analyses has finished
+   */
+  protected void endScan() {
+    if ( scanEnded.compareAndSet( false, true ) ) {
+      ParsedMetaCache.getInstance().endScan();
+    }
+  }
+
+  /**
+   * Saves the fingerprints of the documents analyzed so far
+   */
+  protected void saveFingerprints() {
+    if ( fingerprintStore != null ) {
+      try {
+        fingerprintStore.save();
+      } catch ( IOException e ) {
+        LOG.error( Messages.getString( "ERROR.FingerprintStore.Save", fingerprintStore.getFile().getPath() ), e );
+      }
+    }
+  }
+
   public boolean isRunning() {
     return running;
   }
@@ -129,14 +214,52 @@ public abstract class LocatorRunner<T> implements Runnable {
 
     try {
 
+      Object contents;
+      DocumentFingerprintStore.Fingerprint fingerprint = null;
+      if ( fingerprintStore != null && id != null ) {
+        locatedIds.add( id );
+        // a document that has not changed since it was analyzed is neither read nor analyzed again
+        DocumentFingerprintStore.Fingerprint previous = fingerprintStore.get( id );
+        long size = locator.getSize( file );
+        long lastModified = locator.getLastModified( file );
+        if ( fingerprintStore.isUnmodified( previous, size, lastModified ) ) {
+          skippedDocuments++;
+          return;
+        }
+        contents = locator.getContents( file );
+        fingerprint = fingerprintStore.createFingerprint( size, lastModified, contents );
+        if ( fingerprintStore.isUnchanged( previous, fingerprint ) ) {
+          fingerprintStore.put( id, fingerprint );
+          skippedDocuments++;
+          return;
+        }
+        if ( previous != null ) {
+          // what the previous version of the document put in the graph is replaced
+          removeDocument( id, false );
+        }
+      } else {
+        contents = locator.getContents( file );
+      }
+
       IDocument metaverseDocument = MetaverseUtil.createDocument(
-        namespace, locator.getContents( file ), id, name, extension, mimeType );
+        namespace, contents, id, name, extension, mimeType );
 
       DocumentEvent event = new DocumentEvent();
       event.setEventType( "add" );
       event.setDocument( metaverseDocument );
+      // the document is only skipped by later scans once it is in the metaverse, and the scan only ends once every
+      // document has been analyzed
+      pendingAnalyses.incrementAndGet();
+      event.setAnalysisListener( new FingerprintRecorder( id, fingerprint ) );
 
-      locator.notifyListeners( event );
+      try {
+        locator.notifyListeners( event );
+      } catch ( RuntimeException e ) {
+        // the scan does not wait for an analysis that may not have been submitted
+        event.analysisFinished( false );
+        throw e;
+      }
+      analyzedDocuments++;
     } catch ( Exception e ) {
 
       LOG.error( Messages.getString( "ERROR.NoContentForFile", name ), e );
@@ -145,4 +268,87 @@ public abstract class LocatorRunner<T> implements Runnable {
 
   }
 
+  /**
+   * Removes the documents analyzed by earlier scans that this scan did not find
+   */
+  protected void removeDeletedDocuments() {
+    for ( String id : fingerprintStore.getIds() ) {
+      if ( !locatedIds.contains( id ) ) {
+        removeDocument( id, true );
+        fingerprintStore.remove( id );
+      }
+    }
+  }
+
+  /**
+   * Removes what the analysis of a document put in the graph
+   *
+   * @param id      the id of the document
+   * @param deleted true if the document was deleted, false if it is about to be analyzed again
+   */
+  protected void removeDocument( String id, boolean deleted ) {
+    IMetaverseBuilder builder = locator.getMetaverseBuilder();
+    Graph graph = builder == null ? null : builder.getGraph();
+    if ( graph != null ) {
+      GraphUtil.removeDocument( graph, id, deleted );
+    }
+    removedDocuments++;
+  }
+
+  /**
+   * Records the fingerprint of a document once it has been analyzed. A document whose analysis failed keeps its
+   * previous fingerprint (if any), which does not match the document, so the next scan analyzes it again. The scan
+   * ends once the last of its documents has been analyzed.
+   */
+  protected class FingerprintRecorder implements DocumentEvent.AnalysisListener {
+
+    private final String id;
+    private final DocumentFingerprintStore.Fingerprint fingerprint;
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    /**
+     * @param id          the id of the document
+     * @param fingerprint the fingerprint of the document, none if the scan does not record fingerprints
+     */
+    public FingerprintRecorder( String id, DocumentFingerprintStore.Fingerprint fingerprint ) {
+      this.id = id;
+      this.fingerprint = fingerprint;
+    }
+
+    @Override
+    public void analysisFinished( IDocument document, boolean succeeded ) {
+      if ( !finished.compareAndSet( false, true ) ) {
+        return;
+      }
+      if ( succeeded && fingerprint != null ) {
+        fingerprintStore.put( id, fingerprint );
+      }
+      if ( pendingAnalyses.decrementAndGet() == 0 && !locating ) {
+        saveFingerprints();
+        endScan();
+      }
+    }
+  }
+
+  /**
+   * @return the number of documents the last scan analyzed
+   */
+  public int getAnalyzedDocuments() {
+    return analyzedDocuments;
+  }
+
+  /**
+   * @return the number of documents the last scan skipped because they had not changed
+   */
+  public int getSkippedDocuments() {
+    return skippedDocuments;
+  }
+
+  /**
+   * @return the number of documents whose earlier analysis the last scan removed from the graph
+   */
+  public int getRemovedDocuments() {
+    return removedDocuments;
+  }
+
 }
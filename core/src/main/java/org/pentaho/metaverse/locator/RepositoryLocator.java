@@ -32,6 +32,7 @@ import org.pentaho.platform.api.repository2.unified.RepositoryFileTree;
 import org.pentaho.platform.api.repository2.unified.RepositoryRequest;
 import org.pentaho.platform.repository2.ClientRepositoryPaths;
 
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -67,6 +68,17 @@ public abstract class RepositoryLocator extends BaseLocator<RepositoryFile> {
    */
   protected abstract IUnifiedRepository getUnifiedRepository( IPentahoSession session ) throws Exception;
 
+  @Override
+  protected long getSize( RepositoryFile file ) {
+    return file.getFileSize();
+  }
+
+  @Override
+  protected long getLastModified( RepositoryFile file ) {
+    Date lastModified = file.getLastModifiedDate();
+    return lastModified == null ? -1 : lastModified.getTime();
+  }
+
   @Override
   public void startScan() throws MetaverseLocatorException {
 
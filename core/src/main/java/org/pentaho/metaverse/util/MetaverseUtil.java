@@ -26,11 +26,8 @@ import com.tinkerpop.blueprints.Edge;
 import com.tinkerpop.blueprints.Graph;
 import com.tinkerpop.blueprints.Vertex;
 import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
-import flexjson.JSONDeserializer;
-import org.pentaho.di.core.Const;
 import org.pentaho.dictionary.DictionaryConst;
 import org.pentaho.dictionary.DictionaryHelper;
-import org.pentaho.metaverse.api.ChangeType;
 import org.pentaho.metaverse.api.IDocument;
 import org.pentaho.metaverse.api.IDocumentAnalyzer;
 import org.pentaho.metaverse.api.IDocumentController;
@@ -39,16 +36,15 @@ import org.pentaho.metaverse.api.INamespace;
 import org.pentaho.metaverse.api.MetaverseAnalyzerException;
 import org.pentaho.metaverse.api.MetaverseComponentDescriptor;
 import org.pentaho.metaverse.api.MetaverseException;
-import org.pentaho.metaverse.api.model.IOperation;
-import org.pentaho.metaverse.api.model.Operation;
 import org.pentaho.metaverse.api.model.Operations;
+import org.pentaho.metaverse.api.model.OperationsProperty;
 import org.pentaho.metaverse.graph.LineageGraphCompletionService;
 import org.pentaho.metaverse.graph.LineageGraphMap;
+import org.pentaho.metaverse.graph.PropertyValueDictionary;
 import org.pentaho.metaverse.impl.MetaverseBuilder;
 import org.pentaho.metaverse.messages.Messages;
 
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.Future;
 
 
@@ -129,8 +125,12 @@ public class MetaverseUtil {
           Future<Graph> transAnalysis =
             LineageGraphCompletionService.getInstance().submit( analyzerRunner, g );
 
-          // Save this Future, the client will call it when the analysis is needed
-          LineageGraphMap.getInstance().put( document.getContent(), transAnalysis );
+          // Save this Future, the client will call it when the analysis is needed. The analysis it replaces is
+          // superseded, its graph is not needed anymore.
+          Future<Graph> superseded = LineageGraphMap.getInstance().put( document.getContent(), transAnalysis );
+          if ( superseded != null && superseded != transAnalysis ) {
+            superseded.cancel( false );
+          }
         }
       }
     }
@@ -160,38 +160,35 @@ public class MetaverseUtil {
     //localize the node type
     String localizedType = Messages.getString( MESSAGE_PREFIX_NODETYPE + type );
     if ( !localizedType.startsWith( MESSAGE_FAILED_PREFIX ) ) {
-      vertex.setProperty( DictionaryConst.PROPERTY_TYPE_LOCALIZED, localizedType );
+      vertex.setProperty(
+        DictionaryConst.PROPERTY_TYPE_LOCALIZED, PropertyValueDictionary.canonicalize( localizedType ) );
     }
     // get the vertex category and set it
-    String category = DictionaryHelper.getCategoryForType( type );
+    String category = PropertyValueDictionary.canonicalize( DictionaryHelper.getCategoryForType( type ) );
     vertex.setProperty( DictionaryConst.PROPERTY_CATEGORY, category );
     // get the vertex category color and set it
-    String color = DictionaryHelper.getColorForCategory( category );
+    String color = PropertyValueDictionary.canonicalize( DictionaryHelper.getColorForCategory( category ) );
     vertex.setProperty( DictionaryConst.PROPERTY_COLOR, color );
     //localize the category
     String localizedCat = Messages.getString( MESSAGE_PREFIX_CATEGORY + category );
     if ( !localizedCat.startsWith( MESSAGE_FAILED_PREFIX ) ) {
-      vertex.setProperty( DictionaryConst.PROPERTY_CATEGORY_LOCALIZED, localizedCat );
+      vertex.setProperty(
+        DictionaryConst.PROPERTY_CATEGORY_LOCALIZED, PropertyValueDictionary.canonicalize( localizedCat ) );
     }
   }
 
   public static Operations convertOperationsStringToMap( String operations ) {
-    Operations resultOps = null;
-    if ( !Const.isEmpty( operations ) ) {
-      try {
-        Map<String, List<IOperation>> rawOpsMap = new JSONDeserializer<Map<String, List<IOperation>>>().
-          use( "values.values", Operation.class ).
-          deserialize( operations );
-        resultOps = new Operations();
-        for ( String key : rawOpsMap.keySet() ) {
-          resultOps.put( ChangeType.forValue( key ), rawOpsMap.get( key ) );
-        }
-      } catch ( Exception e ) {
-        resultOps = null;
-      }
-      //return new JSONDeserializer<Operations>().use(null, Operations.class).deserialize( operations );
-    }
-    return resultOps;
+    return OperationsProperty.fromJson( operations );
+  }
+
+  /**
+   * Reads the operations property of a node
+   *
+   * @param operations the value of the operations property, either the operations or their JSON
+   * @return the operations, or null if there are none
+   */
+  public static Operations convertOperationsToMap( Object operations ) {
+    return OperationsProperty.getOperations( operations );
   }
 
   public static Runnable getAnalyzerRunner( final IDocumentAnalyzer analyzer, final IDocument document ) {
@@ -0,0 +1,149 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.metaverse.analyzer.kettle;
+
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AnalyzerResolutionCacheTest {
+
+  interface Component {
+  }
+
+  interface SerializableComponent extends Component, Serializable {
+  }
+
+  static class BaseComponent implements SerializableComponent {
+  }
+
+  static class TableComponent extends BaseComponent {
+  }
+
+  static class OtherComponent implements SerializableComponent {
+  }
+
+  @Test
+  public void testGetAnalyzers() throws Exception {
+    Map<Class<?>, Collection<String>> analyzerTypeMap = new HashMap<Class<?>, Collection<String>>();
+    analyzerTypeMap.put( BaseComponent.class, Collections.singleton( "base" ) );
+    analyzerTypeMap.put( Component.class, Collections.singleton( "component" ) );
+    AnalyzerResolutionCache<String> cache = newCache( analyzerTypeMap );
+
+    assertEquals( Collections.singletonList( "base" ), cache.getAnalyzers( BaseComponent.class ) );
+    // the nearest superclass wins over the interfaces
+    assertEquals( Collections.singletonList( "base" ), cache.getAnalyzers( TableComponent.class ) );
+    assertEquals( Collections.singletonList( "component" ),
+      cache.getAnalyzers( OtherComponent.class ) );
+    assertTrue( cache.getAnalyzers( String.class ).isEmpty() );
+    assertTrue( cache.getAnalyzers( null ).isEmpty() );
+    assertEquals( 4, cache.size() );
+  }
+
+  @Test
+  public void testInvalidate() throws Exception {
+    Map<Class<?>, Collection<String>> analyzerTypeMap = new HashMap<Class<?>, Collection<String>>();
+    analyzerTypeMap.put( BaseComponent.class, Collections.singleton( "base" ) );
+    AnalyzerResolutionCache<String> cache = newCache( analyzerTypeMap );
+
+    List<String> analyzers = cache.getAnalyzers( TableComponent.class );
+    assertSame( analyzers, cache.getAnalyzers( TableComponent.class ) );
+
+    // the cache does not see changes to the map until it is invalidated
+    analyzerTypeMap.put( TableComponent.class, Collections.singleton( "table" ) );
+    assertSame( analyzers, cache.getAnalyzers( TableComponent.class ) );
+    cache.invalidate();
+    assertEquals( 0, cache.size() );
+    List<String> resolved = cache.getAnalyzers( TableComponent.class );
+    assertNotSame( analyzers, resolved );
+    assertEquals( Collections.singletonList( "table" ), resolved );
+  }
+
+  @Test( expected = UnsupportedOperationException.class )
+  public void testGetAnalyzers_unmodifiable() throws Exception {
+    Map<Class<?>, Collection<String>> analyzerTypeMap = new HashMap<Class<?>, Collection<String>>();
+    analyzerTypeMap.put( BaseComponent.class, Collections.singleton( "base" ) );
+    newCache( analyzerTypeMap ).getAnalyzers( BaseComponent.class ).add( "other" );
+  }
+
+  @Test
+  public void testLookups() throws Exception {
+    final int[] mapLookups = new int[ 1 ];
+    Map<Class<?>, Collection<String>> analyzerTypeMap = new HashMap<Class<?>, Collection<String>>() {
+      @Override
+      public Collection<String> get( Object key ) {
+        mapLookups[ 0 ]++;
+        return super.get( key );
+      }
+    };
+    analyzerTypeMap.put( Component.class, Collections.singleton( "component" ) );
+    AnalyzerResolutionCache<String> cache = newCache( analyzerTypeMap );
+
+    // the class is resolved through its superclasses and interfaces once
+    List<String> analyzers = cache.getAnalyzers( TableComponent.class );
+    int resolveLookups = mapLookups[ 0 ];
+    assertTrue( resolveLookups > 1 );
+    for ( int i = 0; i < 1000; i++ ) {
+      assertSame( analyzers, cache.getAnalyzers( TableComponent.class ) );
+    }
+    assertEquals( resolveLookups, mapLookups[ 0 ] );
+    assertEquals( 1, cache.size() );
+  }
+
+  @Test
+  public void testResolvedWhileHoldingTheLock() throws Exception {
+    final boolean[] holdsLock = new boolean[ 1 ];
+    AnalyzerResolutionCache<String> cache = new AnalyzerResolutionCache<String>( this,
+      new AnalyzerResolutionCache.AnalyzerTypeMapSource<String>() {
+        @Override
+        public Map<? extends Class<?>, ? extends Collection<String>> getAnalyzerTypeMap() {
+          holdsLock[ 0 ] = Thread.holdsLock( AnalyzerResolutionCacheTest.this );
+          return Collections.singletonMap( BaseComponent.class, Collections.singleton( "base" ) );
+        }
+      } );
+
+    // the registered analyzers are read under the lock the provider changes them under
+    assertEquals( Collections.singletonList( "base" ), cache.getAnalyzers( TableComponent.class ) );
+    assertTrue( holdsLock[ 0 ] );
+  }
+
+  private AnalyzerResolutionCache<String> newCache( final Map<Class<?>, Collection<String>> analyzerTypeMap ) {
+    return new AnalyzerResolutionCache<String>( this, new AnalyzerResolutionCache.AnalyzerTypeMapSource<String>() {
+      @Override
+      public Map<? extends Class<?>, ? extends Collection<String>> getAnalyzerTypeMap() {
+        return analyzerTypeMap;
+      }
+    } );
+  }
+}
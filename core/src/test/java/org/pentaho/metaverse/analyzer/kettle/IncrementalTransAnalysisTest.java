@@ -0,0 +1,276 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.metaverse.analyzer.kettle;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.trans.TransHopMeta;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.step.StepMetaInterface;
+import org.pentaho.dictionary.DictionaryConst;
+import org.pentaho.metaverse.api.IMetaverseBuilder;
+import org.pentaho.metaverse.api.IMetaverseNode;
+import org.pentaho.metaverse.api.IMetaverseObjectFactory;
+import org.pentaho.metaverse.testutils.MetaverseTestUtils;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IncrementalTransAnalysisTest {
+
+  private TransMeta transMeta;
+  private List<StepMeta> steps;
+  private List<TransHopMeta> hops;
+  private IMetaverseObjectFactory factory;
+
+  @Before
+  public void setUp() throws Exception {
+    factory = MetaverseTestUtils.getMetaverseObjectFactory();
+    transMeta = mock( TransMeta.class );
+    steps = new ArrayList<StepMeta>();
+    hops = new ArrayList<TransHopMeta>();
+    when( transMeta.nrSteps() ).thenAnswer( new Answer<Integer>() {
+      @Override
+      public Integer answer( InvocationOnMock invocation ) throws Throwable {
+        return steps.size();
+      }
+    } );
+    when( transMeta.getStep( anyInt() ) ).thenAnswer( new Answer<StepMeta>() {
+      @Override
+      public StepMeta answer( InvocationOnMock invocation ) throws Throwable {
+        return steps.get( (Integer) invocation.getArguments()[ 0 ] );
+      }
+    } );
+    when( transMeta.nrTransHops() ).thenAnswer( new Answer<Integer>() {
+      @Override
+      public Integer answer( InvocationOnMock invocation ) throws Throwable {
+        return hops.size();
+      }
+    } );
+    when( transMeta.getTransHop( anyInt() ) ).thenAnswer( new Answer<TransHopMeta>() {
+      @Override
+      public TransHopMeta answer( InvocationOnMock invocation ) throws Throwable {
+        return hops.get( (Integer) invocation.getArguments()[ 0 ] );
+      }
+    } );
+    // step0 -> step1 -> step2, step3 on its own
+    for ( int i = 0; i < 4; i++ ) {
+      addStep( i );
+    }
+    hops.add( new TransHopMeta( steps.get( 0 ), steps.get( 1 ) ) );
+    hops.add( new TransHopMeta( steps.get( 1 ), steps.get( 2 ) ) );
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    IncrementalTransAnalysis.disable( transMeta );
+  }
+
+  @Test
+  public void testEnableDisable() throws Exception {
+    assertNull( IncrementalTransAnalysis.get( transMeta ) );
+    IncrementalTransAnalysis incremental = IncrementalTransAnalysis.enable( transMeta );
+    assertSame( incremental, IncrementalTransAnalysis.get( transMeta ) );
+    assertSame( incremental, IncrementalTransAnalysis.enable( transMeta ) );
+    IncrementalTransAnalysis.disable( transMeta );
+    assertNull( IncrementalTransAnalysis.get( transMeta ) );
+    assertNull( IncrementalTransAnalysis.get( null ) );
+  }
+
+  @Test
+  public void testFirstAnalysisAnalyzesEverything() throws Exception {
+    IncrementalTransAnalysis incremental = IncrementalTransAnalysis.enable( transMeta );
+    IncrementalTransAnalysis.Plan plan = incremental.plan( transMeta, "trans" );
+    for ( StepMeta step : steps ) {
+      assertNull( plan.getReplay( step ) );
+      assertNotNull( plan.getFingerprint( step ) );
+    }
+    assertEquals( 4, incremental.getAnalyzedSteps() );
+    assertEquals( 0, incremental.getReplayedSteps() );
+  }
+
+  @Test
+  public void testMovedStepIsReplayed() throws Exception {
+    IncrementalTransAnalysis incremental = analyze( "trans" );
+    when( steps.get( 1 ).getXML() ).thenReturn( xml( 1, "<GUI><xloc>200</xloc><yloc>64</yloc></GUI>" ) );
+
+    IncrementalTransAnalysis.Plan plan = incremental.plan( transMeta, "trans" );
+    for ( StepMeta step : steps ) {
+      assertNotNull( plan.getReplay( step ) );
+    }
+    assertEquals( 0, incremental.getAnalyzedSteps() );
+    assertEquals( 4, incremental.getReplayedSteps() );
+  }
+
+  @Test
+  public void testChangedStepAndDownstreamAreAnalyzed() throws Exception {
+    IncrementalTransAnalysis incremental = analyze( "trans" );
+    when( steps.get( 1 ).getXML() ).thenReturn( xml( 1, "<distribute>N</distribute>" ) );
+
+    IncrementalTransAnalysis.Plan plan = incremental.plan( transMeta, "trans" );
+    assertNotNull( plan.getReplay( steps.get( 0 ) ) );
+    assertNull( plan.getReplay( steps.get( 1 ) ) );
+    assertNull( plan.getReplay( steps.get( 2 ) ) );
+    assertNotNull( plan.getReplay( steps.get( 3 ) ) );
+    assertEquals( 2, incremental.getAnalyzedSteps() );
+  }
+
+  @Test
+  public void testChangedHopIsAnalyzed() throws Exception {
+    IncrementalTransAnalysis incremental = analyze( "trans" );
+    hops.add( new TransHopMeta( steps.get( 3 ), steps.get( 2 ) ) );
+
+    IncrementalTransAnalysis.Plan plan = incremental.plan( transMeta, "trans" );
+    assertNotNull( plan.getReplay( steps.get( 0 ) ) );
+    assertNotNull( plan.getReplay( steps.get( 1 ) ) );
+    assertNull( plan.getReplay( steps.get( 2 ) ) );
+    assertNull( plan.getReplay( steps.get( 3 ) ) );
+  }
+
+  @Test
+  public void testChangedConnectionIsAnalyzed() throws Exception {
+    DatabaseMeta connection = mock( DatabaseMeta.class );
+    when( connection.getXML() ).thenReturn( "<connection><server>${db.host}</server></connection>" );
+    StepMetaInterface meta = mock( StepMetaInterface.class );
+    when( meta.getUsedDatabaseConnections() ).thenReturn( new DatabaseMeta[] { connection } );
+    when( steps.get( 3 ).getStepMetaInterface() ).thenReturn( meta );
+    when( transMeta.getVariable( "db.host" ) ).thenReturn( "localhost" );
+    IncrementalTransAnalysis incremental = analyze( "trans" );
+
+    // the connection is edited, the step is not
+    when( connection.getXML() ).thenReturn( "<connection><server>${db.host}</server><port>5433</port></connection>" );
+    IncrementalTransAnalysis.Plan plan = incremental.plan( transMeta, "trans" );
+    assertNull( plan.getReplay( steps.get( 3 ) ) );
+    assertNotNull( plan.getReplay( steps.get( 0 ) ) );
+  }
+
+  @Test
+  public void testChangedVariableIsAnalyzed() throws Exception {
+    when( steps.get( 3 ).getXML() ).thenReturn( xml( 3, "<filename>${input.dir}/in.csv</filename>" ) );
+    when( transMeta.getVariable( "input.dir" ) ).thenReturn( "/data" );
+    IncrementalTransAnalysis incremental = analyze( "trans" );
+    assertNotNull( incremental.plan( transMeta, "trans" ).getReplay( steps.get( 3 ) ) );
+
+    when( transMeta.getVariable( "input.dir" ) ).thenReturn( "/archive" );
+    IncrementalTransAnalysis.Plan plan = incremental.plan( transMeta, "trans" );
+    assertNull( plan.getReplay( steps.get( 3 ) ) );
+    assertEquals( 1, incremental.getAnalyzedSteps() );
+  }
+
+  @Test
+  public void testStepWithSubDocumentIsAlwaysAnalyzed() throws Exception {
+    StepMetaInterface meta = mock( StepMetaInterface.class );
+    when( meta.getReferencedObjectDescriptions() ).thenReturn( new String[] { "Transformation" } );
+    when( meta.isReferencedObjectEnabled() ).thenReturn( new boolean[] { true } );
+    when( steps.get( 1 ).getStepMetaInterface() ).thenReturn( meta );
+    IncrementalTransAnalysis incremental = analyze( "trans" );
+
+    // nothing changed, but the sub-transformation may have
+    IncrementalTransAnalysis.Plan plan = incremental.plan( transMeta, "trans" );
+    assertNotNull( plan.getReplay( steps.get( 0 ) ) );
+    assertNull( plan.getReplay( steps.get( 1 ) ) );
+    assertNull( plan.getReplay( steps.get( 2 ) ) );
+    assertNotNull( plan.getReplay( steps.get( 3 ) ) );
+  }
+
+  @Test
+  public void testRenamedTransformationIsAnalyzed() throws Exception {
+    IncrementalTransAnalysis incremental = analyze( "trans" );
+    incremental.plan( transMeta, "renamed" );
+    assertEquals( 4, incremental.getAnalyzedSteps() );
+  }
+
+  @Test
+  public void testStepRecorder() throws Exception {
+    IMetaverseBuilder delegate = mock( IMetaverseBuilder.class );
+    when( delegate.getMetaverseObjectFactory() ).thenReturn( factory );
+    IncrementalTransAnalysis.StepRecorder recorder = new IncrementalTransAnalysis.StepRecorder( delegate );
+    IMetaverseNode step = node( "step" );
+    IMetaverseNode field = node( "field" );
+    recorder.addNode( step );
+    recorder.addNode( field );
+    recorder.addLink( step, DictionaryConst.LINK_OUTPUTS, field );
+    verify( delegate ).addNode( step );
+    verify( delegate ).addNode( field );
+
+    IncrementalTransAnalysis.StepRecord record = recorder.toRecord( "fingerprint", step );
+    assertNotNull( record );
+    IMetaverseBuilder builder = mock( IMetaverseBuilder.class );
+    assertSame( step, record.replay( builder ) );
+
+    // what deletes or updates elements cannot be replayed
+    recorder.updateNode( field );
+    assertNull( recorder.toRecord( "fingerprint", step ) );
+  }
+
+  /**
+   * Analyzes the transformation as a whole, recording every step
+   */
+  private IncrementalTransAnalysis analyze( String transNodeId ) throws Exception {
+    IncrementalTransAnalysis incremental = IncrementalTransAnalysis.enable( transMeta );
+    IncrementalTransAnalysis.Plan plan = incremental.plan( transMeta, transNodeId );
+    Map<StepMeta, IncrementalTransAnalysis.StepRecord> records =
+      new IdentityHashMap<StepMeta, IncrementalTransAnalysis.StepRecord>();
+    for ( StepMeta step : steps ) {
+      IncrementalTransAnalysis.StepRecorder recorder =
+        new IncrementalTransAnalysis.StepRecorder( mock( IMetaverseBuilder.class ) );
+      IMetaverseNode node = node( step.getName() );
+      recorder.addNode( node );
+      records.put( step, recorder.toRecord( plan.getFingerprint( step ), node ) );
+    }
+    incremental.update( plan, records );
+    return incremental;
+  }
+
+  private void addStep( int i ) throws Exception {
+    StepMeta step = mock( StepMeta.class );
+    when( step.getName() ).thenReturn( "step" + i );
+    when( step.getXML() ).thenReturn( xml( i, "<GUI><xloc>" + i * 100 + "</xloc><yloc>64</yloc></GUI>" ) );
+    steps.add( step );
+  }
+
+  private IMetaverseNode node( String name ) {
+    return factory.createNodeObject( name, name, DictionaryConst.NODE_TYPE_TRANS_STEP );
+  }
+
+  private static String xml( int i, String more ) {
+    return "<step><name>step" + i + "</name><type>Dummy</type>" + more + "</step>";
+  }
+}
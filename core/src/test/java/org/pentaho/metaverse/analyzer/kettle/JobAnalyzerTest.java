@@ -28,6 +28,7 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.pentaho.di.core.KettleEnvironment;
@@ -41,6 +42,7 @@ import org.pentaho.di.job.entry.JobEntryInterface;
 import org.pentaho.dictionary.DictionaryConst;
 import org.pentaho.metaverse.api.IDocument;
 import org.pentaho.metaverse.api.IMetaverseBuilder;
+import org.pentaho.metaverse.api.IMetaverseLink;
 import org.pentaho.metaverse.api.IMetaverseNode;
 import org.pentaho.metaverse.api.IMetaverseObjectFactory;
 import org.pentaho.metaverse.api.INamespace;
@@ -48,19 +50,26 @@ import org.pentaho.metaverse.api.MetaverseAnalyzerException;
 import org.pentaho.metaverse.api.MetaverseComponentDescriptor;
 import org.pentaho.metaverse.api.analyzer.kettle.jobentry.IJobEntryAnalyzer;
 import org.pentaho.metaverse.api.analyzer.kettle.jobentry.IJobEntryAnalyzerProvider;
+import org.pentaho.metaverse.api.analyzer.kettle.jobentry.JobEntryAnalyzer;
 import org.pentaho.metaverse.testutils.MetaverseTestUtils;
 
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -258,4 +267,69 @@ public class JobAnalyzerTest {
     Set<String> types = analyzer.getSupportedTypes();
     assertTrue( types == JobAnalyzer.defaultSupportedTypes );
   }
+
+  @Test
+  @SuppressWarnings( "unchecked" )
+  public void testAnalyzeJobEntriesConcurrently() throws Exception {
+    int entries = 60;
+    when( mockContent.nrJobEntries() ).thenReturn( entries );
+    for ( int i = 0; i < entries; i++ ) {
+      JobEntryCopy entry = mock( JobEntryCopy.class );
+      when( entry.getName() ).thenReturn( "entry" + i );
+      when( entry.getEntry() ).thenReturn( mockJobEntryInterface );
+      when( mockContent.getJobEntry( i ) ).thenReturn( entry );
+    }
+    Map<String, Object> analyzedBy = new ConcurrentHashMap<String, Object>();
+    List<IJobEntryAnalyzer> jobEntryAnalyzers = new ArrayList<IJobEntryAnalyzer>();
+    jobEntryAnalyzers.add( new RecordingJobEntryAnalyzer( analyzedBy ) );
+    doReturn( jobEntryAnalyzers ).when( jobEntryAnalyzerProvider ).getAnalyzers( any( Collection.class ) );
+    analyzer.setJobEntryAnalyzerProvider( jobEntryAnalyzerProvider );
+
+    analyzer.analyze( descriptor, mockJobDoc );
+
+    // every entry had an analyzer of its own
+    assertEquals( entries, analyzedBy.size() );
+    assertEquals( entries, new HashSet<Object>( analyzedBy.values() ).size() );
+
+    // the entries are added to the job in their order
+    ArgumentCaptor<Collection> links = ArgumentCaptor.forClass( Collection.class );
+    verify( mockBuilder ).addAll( anyCollection(), links.capture() );
+    List<String> containedEntries = new ArrayList<String>();
+    for ( IMetaverseLink link : (Collection<IMetaverseLink>) links.getValue() ) {
+      if ( DictionaryConst.LINK_CONTAINS.equals( link.getLabel() ) ) {
+        containedEntries.add( link.getToNode().getName() );
+      }
+    }
+    assertEquals( entries, containedEntries.size() );
+    for ( int i = 0; i < entries; i++ ) {
+      assertEquals( "entry" + i, containedEntries.get( i ) );
+    }
+  }
+
+  /**
+   * A job entry analyzer that records which instance analyzed each entry
+   */
+  private static class RecordingJobEntryAnalyzer extends JobEntryAnalyzer<JobEntryInterface> {
+    private final Map<String, Object> analyzedBy;
+
+    RecordingJobEntryAnalyzer( Map<String, Object> analyzedBy ) {
+      this.analyzedBy = analyzedBy;
+    }
+
+    @Override
+    protected JobEntryAnalyzer<JobEntryInterface> newInstance() {
+      return new RecordingJobEntryAnalyzer( analyzedBy );
+    }
+
+    @Override
+    protected void customAnalyze( JobEntryInterface entry, IMetaverseNode rootNode )
+      throws MetaverseAnalyzerException {
+      analyzedBy.put( descriptor.getName(), this );
+    }
+
+    @Override
+    public Set<Class<? extends JobEntryInterface>> getSupportedEntries() {
+      return null;
+    }
+  }
 }
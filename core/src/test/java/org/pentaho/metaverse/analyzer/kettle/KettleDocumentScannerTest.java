@@ -0,0 +1,236 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.metaverse.analyzer.kettle;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.dictionary.DictionaryConst;
+import org.pentaho.metaverse.api.MetaverseAnalyzerException;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class KettleDocumentScannerTest {
+
+  private static final String TRANS_XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+    + "<transformation>"
+    + "<info><name>customers</name><description>loads the customers</description>"
+    + "<extended_description>nightly</extended_description><trans_version>1.2</trans_version>"
+    + "<trans_status>2</trans_status><created_user>joe</created_user>"
+    + "<created_date>2017/03/01 10:00:00.000</created_date><modified_user>suzy</modified_user>"
+    + "<modified_date>2017/03/02 10:00:00.000</modified_date>"
+    + "<parameters><parameter><name>DIR</name><default_value>/tmp</default_value>"
+    + "<description>the input folder</description></parameter></parameters>"
+    + "<log><trans-log-table><connection>logging</connection></trans-log-table></log></info>"
+    + "<notepads><notepad><note>not lineage</note></notepad></notepads>"
+    + "<connection><name>sales</name><server>db.example.com</server><type>MYSQL</type><access>Native</access>"
+    + "<database>sales</database><port>3306</port><username>etl</username>"
+    + "<attributes><attribute><code>EXTRA</code><attribute>Y</attribute></attribute></attributes></connection>"
+    + "<order>"
+    + "<hop><from>Table input</from><to>Select values</to><enabled>Y</enabled></hop>"
+    + "<hop><from>Select values</from><to>Errors</to><enabled>N</enabled></hop>"
+    + "</order>"
+    + "<step><name>Table input</name><type>TableInput</type><description>reads</description>"
+    + "<copies>2</copies><connection>sales</connection><sql>SELECT * FROM customers</sql></step>"
+    + "<step><name>Select values</name><type>SelectValues</type>"
+    + "<fields><field><name>id</name><rename>customer_id</rename></field><field><name>name</name></field>"
+    + "<select_unspecified>N</select_unspecified></fields></step>"
+    + "<step><name>Errors</name><type>SomeMissingPlugin</type><![CDATA[ignored]]></step>"
+    + "<step_error_handling><error><source_step>Select values</source_step><target_step>Errors</target_step>"
+    + "<is_enabled>Y</is_enabled></error></step_error_handling>"
+    + "</transformation>";
+
+  private static final String JOB_XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+    + "<job><name>nightly</name><job_version>3</job_version><job_status>1</job_status>"
+    + "<parameters><parameter><name>DAY</name><default_value>today</default_value></parameter></parameters>"
+    + "<connection><name>warehouse</name><type>POSTGRESQL</type><access>JNDI</access>"
+    + "<database>dwh</database></connection>"
+    + "<entries>"
+    + "<entry><name>START</name><type>SPECIAL</type></entry>"
+    + "<entry><name>Truncate</name><type>SQL</type><connection>warehouse</connection></entry>"
+    + "<entry><name>Load</name><type>TRANS</type><filename>customers.ktr</filename></entry>"
+    + "<entry><name>Load</name><type>TRANS</type><nr>1</nr></entry>"
+    + "</entries>"
+    + "<hops><hop><from>START</from><to>Truncate</to><enabled>Y</enabled></hop>"
+    + "<hop><from>Truncate</from><to>Load</to><enabled>Y</enabled></hop></hops>"
+    + "</job>";
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    try {
+      KettleEnvironment.init();
+    } catch ( KettleException e ) {
+      e.printStackTrace();
+    }
+  }
+
+  @Test
+  public void testScanTransformation() throws Exception {
+    ScannedDocument document = new KettleDocumentScanner().scan( TRANS_XML );
+
+    assertEquals( DictionaryConst.NODE_TYPE_TRANS, document.getType() );
+    assertEquals( "customers", document.getName() );
+    assertEquals( "loads the customers", document.getDescription() );
+    assertEquals( "nightly", document.getExtendedDescription() );
+    assertEquals( "1.2", document.getVersion() );
+    assertEquals( 2, document.getStatus() );
+    assertEquals( "joe", document.getCreatedUser() );
+    assertNotNull( document.getCreatedDate() );
+    assertEquals( "suzy", document.getModifiedUser() );
+    assertTrue( document.getModifiedDate().after( document.getCreatedDate() ) );
+
+    ScannedDocument.Parameter parameter = document.getParameters().get( "DIR" );
+    assertEquals( "/tmp", parameter.getDefaultValue() );
+    assertEquals( "the input folder", parameter.getDescription() );
+
+    assertEquals( 1, document.getConnections().size() );
+    ScannedDocument.Connection connection = document.getConnection( "sales" );
+    assertEquals( "MYSQL", connection.getDatabaseType() );
+    assertEquals( "Native", connection.getAccess() );
+    assertEquals( "db.example.com", connection.getHostName() );
+    assertEquals( "sales", connection.getDatabaseName() );
+    assertEquals( "3306", connection.getPort() );
+    assertEquals( "etl", connection.getUserName() );
+
+    assertEquals( 3, document.getSteps().size() );
+    ScannedDocument.Step tableInput = document.getSteps().get( 0 );
+    assertEquals( "Table input", tableInput.getName() );
+    assertEquals( "TableInput", tableInput.getPluginId() );
+    assertEquals( "reads", tableInput.getDescription() );
+    assertEquals( 2, tableInput.getCopies() );
+    assertEquals( Arrays.asList( "sales" ), tableInput.getConnectionNames() );
+    ScannedDocument.Step selectValues = document.getSteps().get( 1 );
+    assertEquals( Arrays.asList( "id", "name" ), selectValues.getFieldNames() );
+    assertEquals( 1, selectValues.getCopies() );
+    assertEquals( "SomeMissingPlugin", document.getSteps().get( 2 ).getPluginId() );
+
+    assertEquals( 2, document.getHops().size() );
+    ScannedDocument.Hop hop = document.getHops().get( 0 );
+    assertEquals( "Table input", hop.getFrom() );
+    assertEquals( "Select values", hop.getTo() );
+    assertTrue( hop.isEnabled() );
+    assertFalse( hop.isError() );
+    hop = document.getHops().get( 1 );
+    assertFalse( hop.isEnabled() );
+    assertTrue( hop.isError() );
+  }
+
+  @Test
+  public void testScanJob() throws Exception {
+    ScannedDocument document = new KettleDocumentScanner().scan(
+      new ByteArrayInputStream( JOB_XML.getBytes( "UTF-8" ) ) );
+
+    assertEquals( DictionaryConst.NODE_TYPE_JOB, document.getType() );
+    assertEquals( "nightly", document.getName() );
+    assertEquals( "3", document.getVersion() );
+    assertEquals( 1, document.getStatus() );
+    assertNull( document.getDescription() );
+    assertEquals( "today", document.getParameters().get( "DAY" ).getDefaultValue() );
+    assertEquals( "JNDI", document.getConnection( "warehouse" ).getAccess() );
+
+    // the copies of an entry are listed separately
+    assertEquals( 4, document.getSteps().size() );
+    assertEquals( "SQL", document.getSteps().get( 1 ).getPluginId() );
+    assertEquals( Arrays.asList( "warehouse" ), document.getSteps().get( 1 ).getConnectionNames() );
+    assertEquals( 2, document.getHops().size() );
+    assertEquals( "Load", document.getHops().get( 1 ).getTo() );
+  }
+
+  @Test
+  public void testScanFile() throws Exception {
+    File file = new File( "src/test/resources/solution/folder 2/examine sessions.ktr" );
+    ScannedDocument document = new KettleDocumentScanner().scan( FileUtils.readFileToString( file, "UTF-8" ) );
+    TransMeta transMeta = new TransMeta( file.getPath() );
+
+    assertEquals( transMeta.getName(), document.getName() );
+    assertEquals( transMeta.nrSteps(), document.getSteps().size() );
+    assertEquals( transMeta.nrTransHops(), document.getHops().size() );
+    assertEquals( transMeta.nrDatabases(), document.getConnections().size() );
+    for ( int i = 0; i < transMeta.nrSteps(); i++ ) {
+      assertEquals( transMeta.getStep( i ).getName(), document.getSteps().get( i ).getName() );
+      assertEquals( transMeta.getStep( i ).getStepID(), document.getSteps().get( i ).getPluginId() );
+    }
+  }
+
+  @Test( expected = MetaverseAnalyzerException.class )
+  public void testScanNotADocument() throws Exception {
+    new KettleDocumentScanner().scan( "<?xml version=\"1.0\"?><report><name>not lineage</name></report>" );
+  }
+
+  @Test( expected = MetaverseAnalyzerException.class )
+  public void testScanInvalidXml() throws Exception {
+    new KettleDocumentScanner().scan( "<transformation>This is not a valid TransMeta doc!" );
+  }
+
+  @Test( expected = MetaverseAnalyzerException.class )
+  public void testScanExternalEntity() throws Exception {
+    new KettleDocumentScanner().scan( "<?xml version=\"1.0\"?><!DOCTYPE transformation ["
+      + "<!ENTITY secret SYSTEM \"file:///etc/passwd\">]><transformation><info><name>&secret;</name></info>"
+      + "</transformation>" );
+  }
+
+  @Test
+  public void testScanMatchesTransMeta() throws Exception {
+    int steps = 200;
+    StringBuilder xml = new StringBuilder( "<?xml version=\"1.0\" encoding=\"UTF-8\"?><transformation><info>"
+      + "<name>generated</name></info><order>" );
+    for ( int i = 1; i < steps; i++ ) {
+      xml.append( "<hop><from>step" ).append( i - 1 ).append( "</from><to>step" ).append( i )
+        .append( "</to><enabled>Y</enabled></hop>" );
+    }
+    xml.append( "</order>" );
+    for ( int i = 0; i < steps; i++ ) {
+      xml.append( "<step><name>step" ).append( i ).append( "</name><type>Dummy</type><copies>1</copies>"
+        + "<GUI><xloc>" ).append( i * 10 ).append( "</xloc><yloc>100</yloc><draw>Y</draw></GUI></step>" );
+    }
+    xml.append( "</transformation>" );
+    String content = xml.toString();
+
+    // the scanner sees the steps and hops Kettle loads from the same document
+    ScannedDocument document = new KettleDocumentScanner().scan( content );
+    TransMeta transMeta = new TransMeta( new ByteArrayInputStream( content.getBytes() ), null, false, null, null );
+    assertEquals( transMeta.getName(), document.getName() );
+    assertEquals( transMeta.nrSteps(), document.getSteps().size() );
+    for ( int i = 0; i < steps; i++ ) {
+      assertEquals( transMeta.getStep( i ).getName(), document.getSteps().get( i ).getName() );
+      assertEquals( transMeta.getStep( i ).getStepID(), document.getSteps().get( i ).getPluginId() );
+    }
+    assertEquals( transMeta.nrTransHops(), document.getHops().size() );
+    for ( int i = 0; i < steps - 1; i++ ) {
+      assertEquals( transMeta.getTransHop( i ).getFromStep().getName(), document.getHops().get( i ).getFrom() );
+      assertEquals( transMeta.getTransHop( i ).getToStep().getName(), document.getHops().get( i ).getTo() );
+    }
+  }
+}
@@ -0,0 +1,291 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.metaverse.analyzer.kettle;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.di.core.ProgressMonitorListener;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.job.JobMeta;
+import org.pentaho.di.repository.ObjectId;
+import org.pentaho.di.repository.Repository;
+import org.pentaho.di.repository.RepositoryDirectoryInterface;
+import org.pentaho.di.repository.RepositoryObject;
+import org.pentaho.di.repository.RepositoryObjectType;
+import org.pentaho.di.repository.StringObjectId;
+import org.pentaho.di.trans.TransMeta;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ParsedMetaCacheTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private ParsedMetaCache cache;
+
+  @Before
+  public void setUp() throws Exception {
+    cache = new ParsedMetaCache();
+  }
+
+  @Test
+  public void testGetFileMeta() throws Exception {
+    File file = folder.newFile( "sub.ktr" );
+    file.setLastModified( 1000000L );
+    CountingParser parser = new CountingParser();
+
+    // a sub-transformation shared by many parents is parsed once
+    TransMeta transMeta = cache.getFileMeta( file.getAbsolutePath(), TransMeta.class, parser );
+    for ( int i = 0; i < 200; i++ ) {
+      assertSame( transMeta, cache.getFileMeta( file.getAbsolutePath(), TransMeta.class, parser ) );
+    }
+    assertEquals( 1, parser.parses.get() );
+    assertEquals( 200, cache.getHits() );
+    assertEquals( 1, cache.getMisses() );
+
+    // a modified file is parsed again
+    file.setLastModified( 2000000L );
+    assertNotSame( transMeta, cache.getFileMeta( file.getAbsolutePath(), TransMeta.class, parser ) );
+    assertEquals( 2, parser.parses.get() );
+    assertEquals( 1, cache.size() );
+  }
+
+  @Test
+  public void testGetFileMeta_notCached() throws Exception {
+    CountingParser parser = new CountingParser();
+    String path = new File( folder.getRoot(), "missing.ktr" ).getAbsolutePath();
+    cache.getFileMeta( path, TransMeta.class, parser );
+    cache.getFileMeta( path, TransMeta.class, parser );
+    assertEquals( 2, parser.parses.get() );
+    assertEquals( 0, cache.size() );
+
+    File file = folder.newFile( "sub.ktr" );
+    file.setLastModified( 1000000L );
+    cache.setMaxSize( 0 );
+    cache.getFileMeta( file.getAbsolutePath(), TransMeta.class, parser );
+    cache.getFileMeta( file.getAbsolutePath(), TransMeta.class, parser );
+    assertEquals( 4, parser.parses.get() );
+    assertEquals( 4, cache.getMisses() );
+  }
+
+  @Test( expected = KettleException.class )
+  public void testGetFileMeta_failure() throws Exception {
+    File file = folder.newFile( "sub.ktr" );
+    file.setLastModified( 1000000L );
+    cache.getFileMeta( file.getAbsolutePath(), TransMeta.class, new Callable<TransMeta>() {
+      @Override
+      public TransMeta call() throws Exception {
+        throw new KettleException( "not a transformation" );
+      }
+    } );
+  }
+
+  @Test
+  public void testGetFileMeta_concurrently() throws Exception {
+    final File file = folder.newFile( "sub.ktr" );
+    file.setLastModified( 1000000L );
+    final CountingParser parser = new CountingParser() {
+      @Override
+      public TransMeta call() throws Exception {
+        // parsing the file takes a while
+        Thread.sleep( 200 );
+        return super.call();
+      }
+    };
+
+    // the entries of a job executing the same sub-transformation are analyzed concurrently
+    int threads = 8;
+    final CountDownLatch start = new CountDownLatch( 1 );
+    final Set<TransMeta> metas = Collections.newSetFromMap( new ConcurrentHashMap<TransMeta, Boolean>() );
+    ExecutorService executor = Executors.newFixedThreadPool( threads );
+    try {
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      for ( int i = 0; i < threads; i++ ) {
+        futures.add( executor.submit( new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            start.await();
+            metas.add( cache.getFileMeta( file.getAbsolutePath(), TransMeta.class, parser ) );
+            return null;
+          }
+        } ) );
+      }
+      start.countDown();
+      for ( Future<?> future : futures ) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    // the file was parsed once, the other entries waited for it
+    assertEquals( 1, parser.parses.get() );
+    assertEquals( 1, metas.size() );
+    assertEquals( 1, cache.getMisses() );
+    assertEquals( threads - 1, cache.getHits() );
+  }
+
+  @Test
+  public void testMaxSize() throws Exception {
+    cache.setMaxSize( 2 );
+    CountingParser parser = new CountingParser();
+    File[] files = new File[ 3 ];
+    for ( int i = 0; i < files.length; i++ ) {
+      files[ i ] = folder.newFile( "sub" + i + ".ktr" );
+      files[ i ].setLastModified( 1000000L );
+      cache.getFileMeta( files[ i ].getAbsolutePath(), TransMeta.class, parser );
+    }
+    assertEquals( 2, cache.size() );
+    assertEquals( 1, cache.getEvictions() );
+
+    // the least recently used one was evicted
+    cache.getFileMeta( files[ 2 ].getAbsolutePath(), TransMeta.class, parser );
+    assertEquals( 3, parser.parses.get() );
+    cache.getFileMeta( files[ 0 ].getAbsolutePath(), TransMeta.class, parser );
+    assertEquals( 4, parser.parses.get() );
+
+    cache.setMaxSize( 1 );
+    assertEquals( 1, cache.size() );
+    assertEquals( 3, cache.getEvictions() );
+  }
+
+  @Test
+  public void testScan() throws Exception {
+    cache.setMaxSize( 1 );
+    CountingParser parser = new CountingParser();
+    File first = folder.newFile( "first.ktr" );
+    first.setLastModified( 1000000L );
+    File second = folder.newFile( "second.ktr" );
+    second.setLastModified( 1000000L );
+    String missing = new File( folder.getRoot(), "missing.ktr" ).getAbsolutePath();
+
+    // while a scan is running, the metas evicted or not cached are kept for it
+    cache.beginScan();
+    for ( int i = 0; i < 10; i++ ) {
+      cache.getFileMeta( first.getAbsolutePath(), TransMeta.class, parser );
+      cache.getFileMeta( second.getAbsolutePath(), TransMeta.class, parser );
+      cache.getFileMeta( missing, TransMeta.class, parser );
+    }
+    assertEquals( 3, parser.parses.get() );
+    assertEquals( 1, cache.size() );
+
+    // they are dropped once the last running scan ends
+    cache.beginScan();
+    cache.endScan();
+    cache.getFileMeta( missing, TransMeta.class, parser );
+    assertEquals( 3, parser.parses.get() );
+    cache.endScan();
+    assertEquals( 0, cache.getScans() );
+    cache.getFileMeta( missing, TransMeta.class, parser );
+    cache.getFileMeta( first.getAbsolutePath(), TransMeta.class, parser );
+    assertEquals( 5, parser.parses.get() );
+  }
+
+  @Test
+  public void testLoadTransformation() throws Exception {
+    Repository repo = mock( Repository.class );
+    RepositoryDirectoryInterface directory = mock( RepositoryDirectoryInterface.class );
+    ObjectId objectId = new StringObjectId( "trans-id" );
+    RepositoryObject information = mock( RepositoryObject.class );
+    when( information.getModifiedDate() ).thenReturn( new Date( 1000000L ) );
+    when( repo.getName() ).thenReturn( "repo" );
+    when( repo.getTransformationID( "sub", directory ) ).thenReturn( objectId );
+    when( repo.getObjectInformation( objectId, RepositoryObjectType.TRANSFORMATION ) ).thenReturn( information );
+    TransMeta byName = mock( TransMeta.class );
+    when( repo.loadTransformation( eq( "sub" ), eq( directory ), any( ProgressMonitorListener.class ),
+      anyBoolean(), anyString() ) ).thenReturn( byName );
+
+    assertSame( byName, cache.loadTransformation( repo, "sub", directory ) );
+    // loading it by reference finds the same transformation
+    assertSame( byName, cache.loadTransformation( repo, objectId ) );
+    verify( repo, times( 0 ) ).loadTransformation( any( ObjectId.class ), anyString() );
+
+    // a modified transformation is loaded again
+    when( information.getModifiedDate() ).thenReturn( new Date( 2000000L ) );
+    TransMeta byReference = mock( TransMeta.class );
+    when( repo.loadTransformation( objectId, null ) ).thenReturn( byReference );
+    assertSame( byReference, cache.loadTransformation( repo, objectId ) );
+    assertEquals( 1, cache.getHits() );
+    assertEquals( 2, cache.getMisses() );
+  }
+
+  @Test
+  public void testLoadJob_notCached() throws Exception {
+    Repository repo = mock( Repository.class );
+    ObjectId objectId = new StringObjectId( "job-id" );
+    JobMeta jobMeta = mock( JobMeta.class );
+    when( repo.loadJob( objectId, null ) ).thenReturn( jobMeta );
+
+    // the repository does not tell when the job was modified
+    assertSame( jobMeta, cache.loadJob( repo, objectId ) );
+    assertSame( jobMeta, cache.loadJob( repo, objectId ) );
+    verify( repo, times( 2 ) ).loadJob( objectId, null );
+    assertEquals( 0, cache.size() );
+  }
+
+  @Test( expected = KettleException.class )
+  public void testLoadJob_failure() throws Exception {
+    Repository repo = mock( Repository.class );
+    ObjectId objectId = new StringObjectId( "job-id" );
+    when( repo.loadJob( objectId, null ) ).thenThrow( new KettleException( "no such job" ) );
+    cache.loadJob( repo, objectId );
+  }
+
+  private static class CountingParser implements Callable<TransMeta> {
+    private final AtomicInteger parses = new AtomicInteger();
+
+    @Override
+    public TransMeta call() throws Exception {
+      parses.incrementAndGet();
+      return mock( TransMeta.class );
+    }
+  }
+}
@@ -28,6 +28,7 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.pentaho.di.core.KettleEnvironment;
@@ -45,19 +46,31 @@ import org.pentaho.dictionary.DictionaryConst;
 import org.pentaho.metaverse.api.IComponentDescriptor;
 import org.pentaho.metaverse.api.IDocument;
 import org.pentaho.metaverse.api.IMetaverseBuilder;
+import org.pentaho.metaverse.api.IMetaverseLink;
 import org.pentaho.metaverse.api.IMetaverseNode;
 import org.pentaho.metaverse.api.IMetaverseObjectFactory;
 import org.pentaho.metaverse.api.INamespace;
 import org.pentaho.metaverse.api.MetaverseAnalyzerException;
 import org.pentaho.metaverse.api.MetaverseComponentDescriptor;
+import org.pentaho.metaverse.api.analyzer.kettle.step.IClonableStepAnalyzer;
+import org.pentaho.metaverse.api.analyzer.kettle.step.IStepAnalyzer;
 import org.pentaho.metaverse.api.analyzer.kettle.step.IStepAnalyzerProvider;
 import org.pentaho.metaverse.testutils.MetaverseTestUtils;
 
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyCollection;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.*;
 
@@ -232,6 +245,83 @@ public class TransformationAnalyzerTest {
     analyzer.analyze( descriptor, newMockTransDoc );
   }
 
+  @Test
+  @SuppressWarnings( "unchecked" )
+  public void testAnalyzeWithMissingPlugin_fallback() throws MetaverseAnalyzerException {
+    IDocument newMockTransDoc = mock( IDocument.class );
+    when( newMockTransDoc.getType() ).thenReturn( DictionaryConst.NODE_TYPE_TRANS );
+    when( newMockTransDoc.getNamespace() ).thenReturn( namespace );
+    when( newMockTransDoc.getContent() ).thenReturn(
+      "<?xml version=\"1.0\" encoding=\"UTF-8\"?><transformation><info><name>missing</name></info>"
+        + "<step><name>Load text from file</name><type>LoadTextFromFile</type></step></transformation>" );
+    analyzer.setScanMode( "Fallback" );
+    assertEquals( TransformationAnalyzer.SCAN_MODE_FALLBACK, analyzer.getScanMode() );
+
+    IMetaverseNode node = analyzer.analyze( descriptor, newMockTransDoc );
+    assertEquals( "missing", node.getName() );
+    ArgumentCaptor<Collection> nodes = ArgumentCaptor.forClass( Collection.class );
+    verify( mockBuilder ).addAll( nodes.capture(), anyCollection() );
+    IMetaverseNode stepNode = null;
+    for ( IMetaverseNode added : (Collection<IMetaverseNode>) nodes.getValue() ) {
+      if ( DictionaryConst.NODE_TYPE_TRANS_STEP.equals( added.getType() ) ) {
+        stepNode = added;
+      }
+    }
+    assertEquals( "Load text from file", stepNode.getName() );
+    assertEquals( "LoadTextFromFile", stepNode.getProperty( DictionaryConst.PROPERTY_PLUGIN_ID ) );
+  }
+
+  @Test
+  @SuppressWarnings( "unchecked" )
+  public void testAnalyzeScanned() throws MetaverseAnalyzerException {
+    IDocument newMockTransDoc = mock( IDocument.class );
+    when( newMockTransDoc.getType() ).thenReturn( DictionaryConst.NODE_TYPE_TRANS );
+    when( newMockTransDoc.getNamespace() ).thenReturn( namespace );
+    when( newMockTransDoc.getContent() ).thenReturn(
+      "<?xml version=\"1.0\" encoding=\"UTF-8\"?><transformation><info><name>scanned</name>"
+        + "<description>a description</description><trans_status>1</trans_status></info>"
+        + "<connection><name>sales</name><server>localhost</server><type>MYSQL</type><access>Native</access>"
+        + "<database>sales</database><port>3306</port><username>etl</username></connection>"
+        + "<order><hop><from>Table input</from><to>Dummy</to><enabled>Y</enabled></hop></order>"
+        + "<step><name>Table input</name><type>TableInput</type><connection>sales</connection></step>"
+        + "<step><name>Dummy</name><type>Dummy</type></step></transformation>" );
+    analyzer.setScanMode( TransformationAnalyzer.SCAN_MODE_LIGHTWEIGHT );
+
+    IMetaverseNode node = analyzer.analyze( descriptor, newMockTransDoc );
+    assertEquals( "scanned", node.getName() );
+    assertEquals( "a description", node.getProperty( DictionaryConst.PROPERTY_DESCRIPTION ) );
+    assertEquals( "DRAFT", node.getProperty( DictionaryConst.PROPERTY_STATUS ) );
+
+    ArgumentCaptor<Collection> nodes = ArgumentCaptor.forClass( Collection.class );
+    ArgumentCaptor<Collection> links = ArgumentCaptor.forClass( Collection.class );
+    verify( mockBuilder ).addAll( nodes.capture(), links.capture() );
+    Map<String, IMetaverseNode> addedNodes = new HashMap<String, IMetaverseNode>();
+    for ( IMetaverseNode added : (Collection<IMetaverseNode>) nodes.getValue() ) {
+      addedNodes.put( added.getName(), added );
+    }
+    IMetaverseNode tableInput = addedNodes.get( "Table input" );
+    assertEquals( DictionaryConst.NODE_TYPE_TRANS_STEP, tableInput.getType() );
+    assertEquals( "TableInput", tableInput.getProperty( DictionaryConst.PROPERTY_PLUGIN_ID ) );
+    assertEquals( node.getLogicalId(), tableInput.getProperty( DictionaryConst.PROPERTY_NAMESPACE ) );
+    IMetaverseNode connection = addedNodes.get( "sales" );
+    assertEquals( DictionaryConst.NODE_TYPE_DATASOURCE, connection.getType() );
+    assertEquals( "localhost", connection.getProperty( DictionaryConst.PROPERTY_HOST_NAME ) );
+    assertEquals( "Native", connection.getProperty( "accessTypeDesc" ) );
+
+    Set<String> addedLinks = new HashSet<String>();
+    for ( IMetaverseLink link : (Collection<IMetaverseLink>) links.getValue() ) {
+      addedLinks.add( link.getFromNode().getName() + " " + link.getLabel() + " " + link.getToNode().getName() );
+      if ( DictionaryConst.LINK_HOPSTO.equals( link.getLabel() ) ) {
+        assertEquals( "target", link.getProperty( DictionaryConst.PROPERTY_TYPE ) );
+        assertEquals( tableInput.getLogicalId(), link.getFromNode().getLogicalId() );
+      }
+    }
+    assertTrue( addedLinks.contains( "scanned " + DictionaryConst.LINK_CONTAINS + " Table input" ) );
+    assertTrue( addedLinks.contains( "scanned " + DictionaryConst.LINK_CONTAINS + " Dummy" ) );
+    assertTrue( addedLinks.contains( "sales " + DictionaryConst.LINK_DEPENDENCYOF + " Table input" ) );
+    assertTrue( addedLinks.contains( "Table input " + DictionaryConst.LINK_HOPSTO + " Dummy" ) );
+  }
+
   @Test
   public void testGetBaseStepMetaFromStepMetaWithNull() {
     // BaseStepMeta should not be null, but its parent should be
@@ -294,4 +384,182 @@ public class TransformationAnalyzerTest {
     Set<String> types = analyzer.getSupportedTypes();
     assertTrue( types == TransformationAnalyzer.defaultSupportedTypes );
   }
+
+  @Test
+  public void testAnalyzeStepsConcurrently() throws Exception {
+    int steps = 400;
+    setUpSteps( steps );
+
+    // the steps analyzed one after the other by a shared analyzer, then concurrently by clones
+    Map<String, Object> sharedAnalyzers = analyzeSteps( steps, false );
+    Map<String, Object> clonedAnalyzers = analyzeSteps( steps, true );
+
+    assertEquals( steps, sharedAnalyzers.size() );
+    assertEquals( 1, new HashSet<Object>( sharedAnalyzers.values() ).size() );
+    assertEquals( steps, clonedAnalyzers.size() );
+    // every step had an analyzer of its own
+    assertEquals( steps, new HashSet<Object>( clonedAnalyzers.values() ).size() );
+  }
+
+  @Test
+  @SuppressWarnings( "unchecked" )
+  public void testSharedAnalyzerIsLocked() throws Exception {
+    int steps = 5;
+    setUpSteps( steps );
+    final Map<String, Object> analyzedBy = new ConcurrentHashMap<String, Object>();
+    RecordingStepAnalyzer shared = new RecordingStepAnalyzer( analyzedBy, false );
+    List<IStepAnalyzer> stepAnalyzers = new ArrayList<IStepAnalyzer>();
+    stepAnalyzers.add( shared );
+    doReturn( stepAnalyzers ).when( stepAnalyzerProvider ).getAnalyzers( any( Collection.class ) );
+    analyzer.setStepAnalyzerProvider( stepAnalyzerProvider );
+
+    Thread analysis = new Thread( new Runnable() {
+      @Override
+      public void run() {
+        try {
+          analyzer.analyze( descriptor, mockTransDoc );
+        } catch ( MetaverseAnalyzerException e ) {
+          throw new RuntimeException( e );
+        }
+      }
+    } );
+    // the analyzer is in use by the analysis of another document
+    synchronized ( shared ) {
+      analysis.start();
+      long deadline = System.currentTimeMillis() + 10000L;
+      while ( analysis.getState() != Thread.State.BLOCKED && System.currentTimeMillis() < deadline ) {
+        Thread.sleep( 10L );
+      }
+      assertEquals( Thread.State.BLOCKED, analysis.getState() );
+      assertTrue( analyzedBy.isEmpty() );
+    }
+    analysis.join( 10000L );
+    assertEquals( steps, analyzedBy.size() );
+  }
+
+  @Test
+  @SuppressWarnings( "unchecked" )
+  public void testAnalyzeStepsConcurrently_stepOrder() throws Exception {
+    int steps = 50;
+    setUpSteps( steps );
+    analyzeSteps( steps, true );
+
+    ArgumentCaptor<Collection> links = ArgumentCaptor.forClass( Collection.class );
+    verify( mockBuilder ).addAll( anyCollection(), links.capture() );
+    List<String> containedSteps = new ArrayList<String>();
+    for ( IMetaverseLink link : (Collection<IMetaverseLink>) links.getValue() ) {
+      if ( DictionaryConst.LINK_CONTAINS.equals( link.getLabel() ) ) {
+        containedSteps.add( link.getToNode().getName() );
+      }
+    }
+    assertEquals( steps, containedSteps.size() );
+    for ( int i = 0; i < steps; i++ ) {
+      assertEquals( "step" + i, containedSteps.get( i ) );
+    }
+  }
+
+  @Test
+  @SuppressWarnings( "unchecked" )
+  public void testAnalyzeStepsIncrementally() throws Exception {
+    int steps = 20;
+    setUpSteps( steps );
+    for ( int i = 0; i < steps; i++ ) {
+      when( mockContent.getStep( i ).getXML() ).thenReturn( "<step><name>step" + i + "</name></step>" );
+    }
+    IncrementalTransAnalysis incremental = IncrementalTransAnalysis.enable( mockContent );
+    try {
+      assertEquals( steps, analyzeSteps( steps, true ).size() );
+
+      // nothing changed, every step is replayed
+      Map<String, Object> analyzedBy = analyzeSteps( steps, true );
+      assertTrue( analyzedBy.isEmpty() );
+      assertEquals( steps, incremental.getReplayedSteps() );
+      ArgumentCaptor<Collection> links = ArgumentCaptor.forClass( Collection.class );
+      verify( mockBuilder, times( 2 ) ).addAll( anyCollection(), links.capture() );
+      int containedSteps = 0;
+      for ( IMetaverseLink link : (Collection<IMetaverseLink>) links.getValue() ) {
+        if ( DictionaryConst.LINK_CONTAINS.equals( link.getLabel() ) ) {
+          containedSteps++;
+        }
+      }
+      assertEquals( steps, containedSteps );
+
+      // only the changed step is analyzed
+      when( mockContent.getStep( 3 ).getXML() ).thenReturn( "<step><name>step3</name><copies>2</copies></step>" );
+      analyzedBy = analyzeSteps( steps, true );
+      assertEquals( 1, analyzedBy.size() );
+      assertTrue( analyzedBy.containsKey( "step3" ) );
+    } finally {
+      IncrementalTransAnalysis.disable( mockContent );
+    }
+  }
+
+  private void setUpSteps( int steps ) {
+    when( mockContent.nrSteps() ).thenReturn( steps );
+    for ( int i = 0; i < steps; i++ ) {
+      StepMeta stepMeta = mock( StepMeta.class );
+      when( stepMeta.getName() ).thenReturn( "step" + i );
+      when( stepMeta.getStepMetaInterface() ).thenReturn( mockGenRowsStepMeta );
+      when( stepMeta.getParentTransMeta() ).thenReturn( mockContent );
+      when( mockContent.getStep( i ) ).thenReturn( stepMeta );
+    }
+  }
+
+  /**
+   * Analyzes the transformation with a step analyzer that can or cannot be cloned, and returns the analyzer instance
+   * that analyzed each step
+   */
+  @SuppressWarnings( "unchecked" )
+  private Map<String, Object> analyzeSteps( int steps, boolean clonable ) throws Exception {
+    Map<String, Object> analyzedBy = new ConcurrentHashMap<String, Object>();
+    List<IStepAnalyzer> stepAnalyzers = new ArrayList<IStepAnalyzer>();
+    stepAnalyzers.add( new RecordingStepAnalyzer( analyzedBy, clonable ) );
+    doReturn( stepAnalyzers ).when( stepAnalyzerProvider ).getAnalyzers( any( Collection.class ) );
+    analyzer.setStepAnalyzerProvider( stepAnalyzerProvider );
+    analyzer.analyze( descriptor, mockTransDoc );
+    return analyzedBy;
+  }
+
+  /**
+   * A step analyzer that records the instance that analyzed each step
+   */
+  private static class RecordingStepAnalyzer implements IClonableStepAnalyzer<BaseStepMeta> {
+    private final Map<String, Object> analyzedBy;
+    private final boolean clonable;
+    private IMetaverseBuilder metaverseBuilder;
+
+    RecordingStepAnalyzer( Map<String, Object> analyzedBy, boolean clonable ) {
+      this.analyzedBy = analyzedBy;
+      this.clonable = clonable;
+    }
+
+    @Override
+    public IClonableStepAnalyzer<BaseStepMeta> cloneAnalyzer() {
+      return clonable ? new RecordingStepAnalyzer( analyzedBy, clonable ) : null;
+    }
+
+    @Override
+    public IMetaverseNode analyze( IComponentDescriptor descriptor, BaseStepMeta meta ) {
+      IMetaverseNode node = metaverseBuilder.getMetaverseObjectFactory().createNodeObject(
+        UUID.randomUUID().toString(), descriptor.getName(), DictionaryConst.NODE_TYPE_TRANS_STEP );
+      metaverseBuilder.addNode( node );
+      analyzedBy.put( descriptor.getName(), this );
+      return node;
+    }
+
+    @Override
+    public Set<Class<? extends BaseStepMeta>> getSupportedSteps() {
+      return null;
+    }
+
+    @Override
+    public void setMetaverseBuilder( IMetaverseBuilder builder ) {
+      this.metaverseBuilder = builder;
+    }
+
+    @Override
+    public IMetaverseBuilder getMetaverseBuilder() {
+      return metaverseBuilder;
+    }
+  }
 }
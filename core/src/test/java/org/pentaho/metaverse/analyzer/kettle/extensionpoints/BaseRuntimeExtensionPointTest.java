@@ -134,4 +134,20 @@ public class BaseRuntimeExtensionPointTest {
     assertFalse( called.get() );
   }
 
+  @Test
+  public void testProfileOnly() throws Exception {
+    assertFalse( extensionPoint.isProfileOnly() );
+    extensionPoint.setRuntimeEnabled( "profile" );
+    assertTrue( extensionPoint.isRuntimeEnabled() );
+    assertTrue( extensionPoint.isProfileOnly() );
+    extensionPoint.setRuntimeEnabled( "on" );
+    assertTrue( extensionPoint.isRuntimeEnabled() );
+    assertFalse( extensionPoint.isProfileOnly() );
+    extensionPoint.setRuntimeEnabled( "PROFILE" );
+    assertTrue( extensionPoint.isProfileOnly() );
+    extensionPoint.setRuntimeEnabled( "off" );
+    assertFalse( extensionPoint.isRuntimeEnabled() );
+    assertFalse( extensionPoint.isProfileOnly() );
+  }
+
 }
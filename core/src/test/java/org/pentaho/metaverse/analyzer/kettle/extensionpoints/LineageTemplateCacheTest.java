@@ -0,0 +1,247 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.metaverse.analyzer.kettle.extensionpoints;
+
+import com.tinkerpop.blueprints.Graph;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.di.core.variables.Variables;
+import org.pentaho.di.core.xml.XMLInterface;
+import org.pentaho.dictionary.DictionaryConst;
+import org.pentaho.dictionary.MetaverseTransientNode;
+import org.pentaho.metaverse.api.IComponentDescriptor;
+import org.pentaho.metaverse.api.IDocument;
+import org.pentaho.metaverse.api.IDocumentAnalyzer;
+import org.pentaho.metaverse.api.IMetaverseBuilder;
+import org.pentaho.metaverse.api.IMetaverseLink;
+import org.pentaho.metaverse.api.IMetaverseNode;
+import org.pentaho.metaverse.api.MetaverseAnalyzerException;
+import org.pentaho.metaverse.impl.MetaverseBuilder;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LineageTemplateCacheTest {
+
+  private static final String PATH = "/etl/trans.ktr";
+
+  private LineageTemplateCache cache;
+  private TestAnalyzer analyzer;
+  private IDocument document;
+
+  @Before
+  public void setUp() throws Exception {
+    cache = new LineageTemplateCache( 10, 0L );
+    analyzer = new TestAnalyzer( 5 );
+    document = mock( IDocument.class );
+    when( document.getName() ).thenReturn( "trans" );
+  }
+
+  @Test
+  public void testGetKey() throws Exception {
+    Variables space = new Variables();
+    space.setVariable( "DIR", "/in" );
+    space.setVariable( "UNUSED", "a" );
+    String key = LineageTemplateCache.getKey( PATH, meta( "<transformation/>" ), space, Arrays.asList( "DIR" ) );
+    assertNotNull( key );
+    assertEquals( key, LineageTemplateCache.getKey( PATH, meta( "<transformation/>" ), space,
+      Arrays.asList( "DIR" ) ) );
+
+    // another document, other contents, other values of the variables it uses get another template
+    assertNotEquals( key, LineageTemplateCache.getKey( "/etl/other.ktr", meta( "<transformation/>" ), space,
+      Arrays.asList( "DIR" ) ) );
+    assertNotEquals( key, LineageTemplateCache.getKey( PATH, meta( "<transformation><step/></transformation>" ),
+      space, Arrays.asList( "DIR" ) ) );
+    space.setVariable( "UNUSED", "b" );
+    assertEquals( key, LineageTemplateCache.getKey( PATH, meta( "<transformation/>" ), space,
+      Arrays.asList( "DIR" ) ) );
+    space.setVariable( "DIR", "/archive" );
+    assertNotEquals( key, LineageTemplateCache.getKey( PATH, meta( "<transformation/>" ), space,
+      Arrays.asList( "DIR" ) ) );
+
+    // a document that cannot be hashed has no template
+    XMLInterface broken = mock( XMLInterface.class );
+    when( broken.getXML() ).thenThrow( new IllegalStateException( "no XML" ) );
+    assertNull( LineageTemplateCache.getKey( PATH, broken, space, Arrays.asList( "DIR" ) ) );
+  }
+
+  @Test
+  public void testReplay() throws Exception {
+    Graph first = new TinkerGraph();
+    cache.getAnalyzerRunner( analyzer, document, new MetaverseBuilder( first ), "key" ).run();
+    assertEquals( 1, analyzer.analyses );
+    assertEquals( 1, cache.size() );
+    assertEquals( 1, cache.getMisses() );
+
+    Graph second = new TinkerGraph();
+    cache.getAnalyzerRunner( analyzer, document, new MetaverseBuilder( second ), "key" ).run();
+    // the document was not analyzed again, its lineage was replayed into the graph of the second execution
+    assertEquals( 1, analyzer.analyses );
+    assertEquals( 1, cache.getHits() );
+    assertEquals( count( first.getVertices() ), count( second.getVertices() ) );
+    assertEquals( count( first.getEdges() ), count( second.getEdges() ) );
+    assertNotNull( second.getVertex( "trans" ) );
+  }
+
+  @Test
+  public void testNoKey() throws Exception {
+    cache.getAnalyzerRunner( analyzer, document, new MetaverseBuilder( new TinkerGraph() ), null ).run();
+    cache.getAnalyzerRunner( analyzer, document, new MetaverseBuilder( new TinkerGraph() ), null ).run();
+    assertEquals( 2, analyzer.analyses );
+    assertEquals( 0, cache.size() );
+  }
+
+  @Test
+  public void testNotReplayable() throws Exception {
+    analyzer.update = true;
+    cache.getAnalyzerRunner( analyzer, document, new MetaverseBuilder( new TinkerGraph() ), "key" ).run();
+    // an analysis that updates the graph is not kept
+    assertEquals( 0, cache.size() );
+    cache.getAnalyzerRunner( analyzer, document, new MetaverseBuilder( new TinkerGraph() ), "key" ).run();
+    assertEquals( 2, analyzer.analyses );
+  }
+
+  @Test
+  public void testBounded() throws Exception {
+    LineageTemplateCache.Template template = new LineageTemplateCache.Template(
+      Collections.<IMetaverseNode>emptyList(), Collections.<IMetaverseLink>emptyList() );
+    for ( int i = 0; i < 15; i++ ) {
+      cache.put( "key" + i, template );
+    }
+    assertEquals( cache.getMaxTemplates(), cache.size() );
+    assertNull( cache.get( "key0" ) );
+    assertSame( template, cache.get( "key14" ) );
+    cache.clear();
+    assertEquals( 0, cache.size() );
+  }
+
+  @Test
+  public void testExpired() throws Exception {
+    cache = new LineageTemplateCache( 10, 1L );
+    cache.getAnalyzerRunner( analyzer, document, new MetaverseBuilder( new TinkerGraph() ), "key" ).run();
+    Thread.sleep( 10 );
+    assertNull( cache.get( "key" ) );
+    cache.getAnalyzerRunner( analyzer, document, new MetaverseBuilder( new TinkerGraph() ), "key" ).run();
+    assertEquals( 2, analyzer.analyses );
+  }
+
+  @Test
+  public void testScheduledExecutions() throws Exception {
+    int executions = 50;
+    TestAnalyzer largeAnalyzer = new TestAnalyzer( 200 );
+
+    // executions without a key are analyzed every time, the ones of an unchanged document only the first time
+    for ( int i = 0; i < executions; i++ ) {
+      cache.getAnalyzerRunner( largeAnalyzer, document, new MetaverseBuilder( new TinkerGraph() ), null ).run();
+    }
+    assertEquals( executions, largeAnalyzer.analyses );
+    for ( int i = 0; i < executions; i++ ) {
+      cache.getAnalyzerRunner( largeAnalyzer, document, new MetaverseBuilder( new TinkerGraph() ), "key" ).run();
+    }
+    assertEquals( executions + 1, largeAnalyzer.analyses );
+  }
+
+  private static XMLInterface meta( String xml ) throws Exception {
+    XMLInterface meta = mock( XMLInterface.class );
+    when( meta.getXML() ).thenReturn( xml );
+    return meta;
+  }
+
+  private static int count( Iterable<?> elements ) {
+    int count = 0;
+    for ( Object ignored : elements ) {
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Adds a transformation node and a chain of step nodes to the builder it is given
+   */
+  private static class TestAnalyzer implements IDocumentAnalyzer<IMetaverseNode> {
+    private final int steps;
+    private IMetaverseBuilder builder;
+    int analyses;
+    boolean update;
+
+    TestAnalyzer( int steps ) {
+      this.steps = steps;
+    }
+
+    @Override
+    public IMetaverseNode analyze( IComponentDescriptor descriptor, IDocument document )
+      throws MetaverseAnalyzerException {
+      analyses++;
+      IMetaverseNode trans = node( "trans", DictionaryConst.NODE_TYPE_TRANS );
+      builder.addNode( trans );
+      IMetaverseNode previous = null;
+      for ( int i = 0; i < steps; i++ ) {
+        IMetaverseNode step = node( "step" + i, DictionaryConst.NODE_TYPE_TRANS_STEP );
+        builder.addNode( step );
+        builder.addLink( trans, DictionaryConst.LINK_CONTAINS, step );
+        if ( previous != null ) {
+          builder.addLink( previous, DictionaryConst.LINK_HOPSTO, step );
+        }
+        previous = step;
+      }
+      if ( update ) {
+        builder.updateNode( trans );
+      }
+      return trans;
+    }
+
+    @Override
+    public Set<String> getSupportedTypes() {
+      return Collections.singleton( "ktr" );
+    }
+
+    @Override
+    public void setMetaverseBuilder( IMetaverseBuilder builder ) {
+      this.builder = builder;
+    }
+
+    @Override
+    public IMetaverseBuilder getMetaverseBuilder() {
+      return builder;
+    }
+
+    private static IMetaverseNode node( String name, String type ) {
+      MetaverseTransientNode node = new MetaverseTransientNode( name );
+      node.setName( name );
+      node.setType( type );
+      node.setProperty( DictionaryConst.PROPERTY_NAMESPACE, "trans" );
+      return node;
+    }
+  }
+}
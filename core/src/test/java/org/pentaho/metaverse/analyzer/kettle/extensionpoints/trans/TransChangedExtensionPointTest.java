@@ -29,9 +29,19 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.pentaho.di.core.KettleClientEnvironment;
 import org.pentaho.di.trans.TransMeta;
+import org.pentaho.metaverse.graph.LineageGraphUpdateScheduler;
 import org.pentaho.metaverse.testutils.MetaverseTestUtils;
 import org.pentaho.metaverse.util.MetaverseUtil;
 
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith( MockitoJUnitRunner.class )
@@ -54,4 +64,41 @@ public class TransChangedExtensionPointTest {
     extensionPoint.callExtensionPoint( null, null );
     extensionPoint.callExtensionPoint( null, transMeta );
   }
+
+  @Test
+  public void testContentChangedIsCoalesced() throws Exception {
+    final LineageGraphUpdateScheduler scheduler = new LineageGraphUpdateScheduler( 10 );
+    TransChangedExtensionPoint extensionPoint = spy( new TransChangedExtensionPoint() );
+    doReturn( scheduler ).when( extensionPoint ).getUpdateScheduler();
+    doNothing().when( extensionPoint ).updateLineage( any() );
+
+    // the updates run one at a time, none of the burst can run before the update of another document is done
+    final CountDownLatch blocked = new CountDownLatch( 1 );
+    scheduler.schedule( new Object(), new Runnable() {
+      @Override
+      public void run() {
+        try {
+          blocked.await();
+        } catch ( InterruptedException e ) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    } );
+    for ( int i = 0; i < 5; i++ ) {
+      extensionPoint.contentChanged( transMeta );
+    }
+    extensionPoint.contentSafe( transMeta );
+    extensionPoint.contentChanged( "not a transformation" );
+    assertTrue( scheduler.isPending( transMeta ) );
+    blocked.countDown();
+
+    // an update scheduled after the burst runs after it
+    scheduler.schedule( new Object(), new Runnable() {
+      @Override
+      public void run() {
+      }
+    } ).get();
+    verify( extensionPoint ).updateLineage( transMeta );
+    verify( extensionPoint, times( 1 ) ).updateLineage( any() );
+  }
 }
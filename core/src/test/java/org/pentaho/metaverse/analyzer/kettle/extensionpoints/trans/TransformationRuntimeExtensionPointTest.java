@@ -24,7 +24,9 @@ package org.pentaho.metaverse.analyzer.kettle.extensionpoints.trans;
 
 import org.junit.Before;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.Mockito;
 import org.pentaho.di.core.KettleClientEnvironment;
 import org.pentaho.di.core.KettleEnvironment;
@@ -37,10 +39,14 @@ import org.pentaho.di.trans.TransMeta;
 import org.pentaho.metaverse.api.ILineageWriter;
 import org.pentaho.metaverse.api.IMetaverseBuilder;
 import org.pentaho.metaverse.api.model.IExecutionProfile;
+import org.pentaho.metaverse.api.model.LineageHolder;
+import org.pentaho.metaverse.impl.DeferredLineageAnalyzer;
+import org.pentaho.metaverse.impl.model.ExecutionProfile;
 
 import java.util.Collections;
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
@@ -61,6 +67,9 @@ public class TransformationRuntimeExtensionPointTest {
   private static final String TEST_PARAM_DESCRIPTION = "Test parameter description";
 
 
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
   TransformationRuntimeExtensionPoint transExtensionPoint;
   Trans trans;
   TransMeta transMeta;
@@ -182,4 +191,25 @@ public class TransformationRuntimeExtensionPointTest {
     assertNotNull( listeners );
     assertFalse( listeners.contains( transExtensionPoint ) );
   }
+
+  @Test
+  public void testCreateLineGraphProfileOnly() throws Exception {
+    DeferredLineageAnalyzer deferredLineageAnalyzer = DeferredLineageAnalyzer.getInstance();
+    String queueFolder = deferredLineageAnalyzer.getQueueFolder();
+    deferredLineageAnalyzer.setQueueFolder( folder.getRoot().getAbsolutePath() );
+    try {
+      IExecutionProfile executionProfile = new ExecutionProfile();
+      transExtensionPoint.populateExecutionProfile( executionProfile, trans );
+      TransLineageHolderMap.getInstance().getLineageHolder( trans ).setExecutionProfile( executionProfile );
+      when( lineageWriter.getOutputStrategy() ).thenReturn( "all" );
+
+      // the output queue was full: the execution profile is written, the graph is built later
+      transExtensionPoint.createLineGraph( trans, false );
+      verify( lineageWriter ).outputExecutionProfile( any( LineageHolder.class ) );
+      verify( lineageWriter, never() ).outputLineageGraph( any( LineageHolder.class ) );
+      assertEquals( 1, deferredLineageAnalyzer.getQueueSize() );
+    } finally {
+      deferredLineageAnalyzer.setQueueFolder( queueFolder );
+    }
+  }
 }
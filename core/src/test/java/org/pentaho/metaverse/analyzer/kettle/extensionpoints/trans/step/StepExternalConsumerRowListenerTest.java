@@ -23,6 +23,8 @@
 package org.pentaho.metaverse.analyzer.kettle.extensionpoints.trans.step;
 
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.step.BaseStep;
@@ -32,10 +34,24 @@ import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.step.StepMetaInterface;
 import org.pentaho.metaverse.analyzer.kettle.extensionpoints.trans.TransLineageHolderMap;
 import org.pentaho.metaverse.api.analyzer.kettle.step.IStepExternalResourceConsumer;
+import org.pentaho.metaverse.api.model.ExternalResourceInfoFactory;
 import org.pentaho.metaverse.api.model.IExecutionData;
 import org.pentaho.metaverse.api.model.IExecutionProfile;
+import org.pentaho.metaverse.api.model.IExternalResourceInfo;
 import org.pentaho.metaverse.api.model.LineageHolder;
+import org.pentaho.metaverse.impl.model.ExecutionData;
+import org.pentaho.metaverse.impl.model.ExternalResourceAccumulator;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.*;
 
 public class StepExternalConsumerRowListenerTest {
@@ -67,4 +83,103 @@ public class StepExternalConsumerRowListenerTest {
     listener.rowReadEvent( rmi, row );
   }
 
+  @Test
+  public void testRowReadEvent_distinctResources() throws Exception {
+    IStepExternalResourceConsumer consumer = mock( IStepExternalResourceConsumer.class );
+    BaseStep mockStep = mock( BaseStep.class, withSettings().extraInterfaces( StepInterface.class ) );
+    Trans mockTrans = mock( Trans.class );
+    when( mockStep.getTrans() ).thenReturn( mockTrans );
+    when( mockStep.getStepname() ).thenReturn( "REST client" );
+
+    IExecutionProfile executionProfile = mock( IExecutionProfile.class );
+    ExecutionData executionData = new ExecutionData();
+    when( executionProfile.getExecutionData() ).thenReturn( executionData );
+    LineageHolder holder = new LineageHolder();
+    holder.setExecutionProfile( executionProfile );
+    TransLineageHolderMap.getInstance().putLineageHolder( mockTrans, holder );
+
+    IExternalResourceInfo resource = ExternalResourceInfoFactory.createURLResource( "http://example.com", true );
+    when( consumer.getResourcesFromRow( any( BaseStep.class ), any( RowMetaInterface.class ), any( Object[].class ) ) )
+      .thenReturn( Collections.singletonList( resource ) );
+
+    StepExternalConsumerRowListener listener = new StepExternalConsumerRowListener( consumer, mockStep );
+    RowMetaInterface rmi = mock( RowMetaInterface.class );
+    for ( int i = 0; i < 100; i++ ) {
+      listener.rowReadEvent( rmi, new Object[ 0 ] );
+    }
+
+    List<IExternalResourceInfo> resources = executionData.getExternalResources().get( "REST client" );
+    assertEquals( 1, resources.size() );
+    assertEquals( 99, ( (ExternalResourceAccumulator) resources ).getDuplicateCount() );
+  }
+
+  @Test
+  public void testRowReadEvent_stepCopies() throws Exception {
+    final int copies = 8;
+    final int rows = 20000;
+    final int distinct = 300;
+    Trans mockTrans = mock( Trans.class );
+    IExecutionProfile executionProfile = mock( IExecutionProfile.class );
+    ExecutionData executionData = new ExecutionData();
+    when( executionProfile.getExecutionData() ).thenReturn( executionData );
+    LineageHolder holder = new LineageHolder();
+    holder.setExecutionProfile( executionProfile );
+    TransLineageHolderMap.getInstance().putLineageHolder( mockTrans, holder );
+
+    // every row references one of the urls, the copies of the step read the same rows
+    IStepExternalResourceConsumer consumer = mock( IStepExternalResourceConsumer.class );
+    when( consumer.getResourcesFromRow( any( BaseStep.class ), any( RowMetaInterface.class ), any( Object[].class ) ) )
+      .thenAnswer( new Answer<Collection<IExternalResourceInfo>>() {
+        @Override
+        public Collection<IExternalResourceInfo> answer( InvocationOnMock invocation ) throws Throwable {
+          Object[] row = (Object[]) invocation.getArguments()[ 2 ];
+          return Collections.singletonList(
+            ExternalResourceInfoFactory.createURLResource( "http://example.com/" + row[ 0 ], true ) );
+        }
+      } );
+
+    StepExternalResourceConsumerListener stepListener = new StepExternalResourceConsumerListener();
+    final CountDownLatch start = new CountDownLatch( 1 );
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    final RowMetaInterface rmi = mock( RowMetaInterface.class );
+    List<Thread> threads = new ArrayList<Thread>();
+    for ( int c = 0; c < copies; c++ ) {
+      BaseStep mockStep = mock( BaseStep.class, withSettings().extraInterfaces( StepInterface.class ) );
+      when( mockStep.getTrans() ).thenReturn( mockTrans );
+      when( mockStep.getStepname() ).thenReturn( "REST client" );
+      final StepExternalConsumerRowListener listener = new StepExternalConsumerRowListener( consumer, mockStep );
+      // the resources known before the step starts are reported by every copy
+      stepListener.addExternalResources( Collections.singletonList(
+        ExternalResourceInfoFactory.createURLResource( "http://example.com/0", true ) ), mockStep );
+      Thread thread = new Thread( new Runnable() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            for ( int i = 0; i < rows; i++ ) {
+              listener.rowReadEvent( rmi, new Object[] { i % distinct } );
+            }
+          } catch ( Throwable t ) {
+            failure.compareAndSet( null, t );
+          }
+        }
+      } );
+      thread.start();
+      threads.add( thread );
+    }
+
+    start.countDown();
+    for ( Thread thread : threads ) {
+      thread.join();
+    }
+
+    assertNull( failure.get() );
+    assertEquals( 1, executionData.getExternalResources().size() );
+    ExternalResourceAccumulator resources =
+      (ExternalResourceAccumulator) executionData.getExternalResources().get( "REST client" );
+    // no resource was lost or recorded twice
+    assertEquals( distinct, resources.size() );
+    assertEquals( (long) copies * rows + copies, resources.size() + resources.getDuplicateCount() );
+    assertEquals( 0, resources.getOverflowCount() );
+  }
 }
@@ -35,6 +35,7 @@ import org.pentaho.di.job.entry.JobEntryInterface;
 import org.pentaho.metaverse.api.analyzer.kettle.jobentry.IJobEntryAnalyzer;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -97,6 +98,29 @@ public class JobEntryAnalyzerProviderTest {
     assertEquals( analyzers.size(), 1 );
   }
 
+  @Test
+  public void testGetAnalyzersForImplementingClass() throws Exception {
+    IJobEntryAnalyzer baseJobEntryAnalyzer = mock( IJobEntryAnalyzer.class );
+    when( baseJobEntryAnalyzer.getSupportedEntries() ).thenReturn( Sets.newSet( JobEntryInterface.class ) );
+    provider.setJobEntryAnalyzers( Lists.newArrayList( baseJobEntryAnalyzer ) );
+
+    // JobEntryTrans has no analyzer of its own, it gets the analyzer of the interface it implements
+    List<IJobEntryAnalyzer> analyzers = provider.getAnalyzers( Collections.<Class<?>>singleton( JobEntryTrans.class ) );
+    assertEquals( Lists.newArrayList( baseJobEntryAnalyzer ), analyzers );
+    assertSame( analyzers, provider.getAnalyzers( Collections.<Class<?>>singleton( JobEntryTrans.class ) ) );
+
+    // adding and removing analyzers invalidates the resolved analyzers
+    IJobEntryAnalyzer jobEntryTransAnalyzer = mock( IJobEntryAnalyzer.class );
+    when( jobEntryTransAnalyzer.getSupportedEntries() ).thenReturn( Sets.newSet( JobEntryTrans.class ) );
+    provider.addAnalyzer( jobEntryTransAnalyzer );
+    assertEquals( Lists.newArrayList( jobEntryTransAnalyzer ),
+      provider.getAnalyzers( Collections.<Class<?>>singleton( JobEntryTrans.class ) ) );
+
+    provider.removeAnalyzer( jobEntryTransAnalyzer );
+    assertEquals( Lists.newArrayList( baseJobEntryAnalyzer ),
+      provider.getAnalyzers( Collections.<Class<?>>singleton( JobEntryTrans.class ) ) );
+  }
+
   @Test
   public void testsetJobEntryAnalyzersNull() throws Exception {
     assertNotNull( provider.jobEntryAnalyzers );
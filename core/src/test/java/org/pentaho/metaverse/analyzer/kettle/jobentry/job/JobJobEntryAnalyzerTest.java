@@ -180,7 +180,7 @@ public class JobJobEntryAnalyzerTest {
 
   @Test( expected = MetaverseAnalyzerException.class )
   public void testAnalyzeWithException() throws Exception {
-    when( mockParentJobMeta.environmentSubstitute( anyString() ) ).thenThrow( new RuntimeException() );
+    when( jobEntryJob.getFilename() ).thenThrow( new RuntimeException() );
     spyAnalyzer.analyze( descriptor, jobEntryJob );
   }
 
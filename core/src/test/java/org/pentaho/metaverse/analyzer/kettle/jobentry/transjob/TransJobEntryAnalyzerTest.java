@@ -50,6 +50,7 @@ import org.pentaho.metaverse.api.IMetaverseObjectFactory;
 import org.pentaho.metaverse.api.INamespace;
 import org.pentaho.metaverse.api.MetaverseAnalyzerException;
 import org.pentaho.metaverse.api.MetaverseComponentDescriptor;
+import org.pentaho.metaverse.api.analyzer.kettle.KettleAnalyzerUtil;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -147,6 +148,22 @@ public class TransJobEntryAnalyzerTest {
     assertNotNull( spyAnalyzer.analyze( descriptor, jobEntryTrans ) );
   }
 
+  @Test
+  public void testAnalyzeWithParameters() throws Exception {
+    when( mockParentJobMeta.listVariables() ).thenReturn( new String[] { "base" } );
+    when( mockParentJobMeta.getVariable( "base" ) ).thenReturn( "/etl" );
+    when( mockParentJobMeta.listParameters() ).thenReturn( new String[] { "dir" } );
+    when( mockParentJobMeta.getParameterValue( "dir" ) ).thenReturn( "" );
+    when( mockParentJobMeta.getParameterDefault( "dir" ) ).thenReturn( "sub" );
+    when( jobEntryTrans.getFilename() ).thenReturn( "${base}/${dir}/" + TEST_FILE_NAME );
+
+    assertNotNull( spyAnalyzer.analyze( descriptor, jobEntryTrans ) );
+    verify( spyAnalyzer ).getSubTransMeta( KettleAnalyzerUtil.normalizeFilePath( "/etl/sub/" + TEST_FILE_NAME ) );
+    // the job is shared by the analyses of its other entries, it is left alone
+    verify( mockParentJobMeta, never() ).activateParameters();
+    verify( mockParentJobMeta, never() ).setVariable( anyString(), anyString() );
+  }
+
   @Test( expected = MetaverseAnalyzerException.class )
   public void testAnalyzeNullParentJob() throws Exception {
     when( jobEntryTrans.getParentJob() ).thenReturn( null );
@@ -172,7 +189,7 @@ public class TransJobEntryAnalyzerTest {
 
   @Test( expected = MetaverseAnalyzerException.class )
   public void testAnalyzeWithException() throws Exception {
-    when( mockParentJobMeta.environmentSubstitute( anyString() ) ).thenThrow( new RuntimeException() );
+    when( jobEntryTrans.getFilename() ).thenThrow( new RuntimeException() );
     spyAnalyzer.analyze( descriptor, jobEntryTrans );
   }
 
@@ -35,6 +35,7 @@ import org.pentaho.di.trans.steps.tableoutput.TableOutputMeta;
 import org.pentaho.metaverse.api.analyzer.kettle.step.IStepAnalyzer;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -98,6 +99,29 @@ public class StepAnalyzerProviderTest {
     assertEquals( analyzers.size(), 1 );
   }
 
+  @Test
+  public void testGetAnalyzersForSubclass() throws Exception {
+    IStepAnalyzer baseStepAnalyzer = mock( IStepAnalyzer.class );
+    when( baseStepAnalyzer.getSupportedSteps() ).thenReturn( Sets.newSet( BaseStepMeta.class ) );
+    provider.setStepAnalyzers( Lists.newArrayList( baseStepAnalyzer ) );
+
+    // TableOutputMeta has no analyzer of its own, it gets the analyzer of its superclass
+    List<IStepAnalyzer> analyzers = provider.getAnalyzers( Collections.<Class<?>>singleton( TableOutputMeta.class ) );
+    assertEquals( Lists.newArrayList( baseStepAnalyzer ), analyzers );
+    assertSame( analyzers, provider.getAnalyzers( Collections.<Class<?>>singleton( TableOutputMeta.class ) ) );
+
+    // adding and removing analyzers invalidates the resolved analyzers
+    IStepAnalyzer tableOutputStepAnalyzer = mock( IStepAnalyzer.class );
+    when( tableOutputStepAnalyzer.getSupportedSteps() ).thenReturn( Sets.newSet( TableOutputMeta.class ) );
+    provider.addAnalyzer( tableOutputStepAnalyzer );
+    assertEquals( Lists.newArrayList( tableOutputStepAnalyzer ),
+      provider.getAnalyzers( Collections.<Class<?>>singleton( TableOutputMeta.class ) ) );
+
+    provider.removeAnalyzer( tableOutputStepAnalyzer );
+    assertEquals( Lists.newArrayList( baseStepAnalyzer ),
+      provider.getAnalyzers( Collections.<Class<?>>singleton( TableOutputMeta.class ) ) );
+  }
+
   @Test
   public void testSetStepAnalyzersNull() throws Exception {
     assertNotNull( provider.stepAnalyzers );
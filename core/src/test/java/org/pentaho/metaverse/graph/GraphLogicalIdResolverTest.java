@@ -0,0 +1,85 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.graph;
+
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import org.junit.After;
+import org.junit.Test;
+import org.pentaho.dictionary.DictionaryConst;
+import org.pentaho.dictionary.MetaverseTransientNode;
+import org.pentaho.metaverse.api.HashedLogicalIdGenerator;
+import org.pentaho.metaverse.api.Namespace;
+import org.pentaho.metaverse.impl.MetaverseBuilder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class GraphLogicalIdResolverTest {
+
+  @After
+  public void tearDown() throws Exception {
+    HashedLogicalIdGenerator.clearResolvedIds();
+    HashedLogicalIdGenerator.setResolver( null );
+  }
+
+  @Test
+  public void testResolveFromVertices() throws Exception {
+    HashedLogicalIdGenerator idGenerator = new HashedLogicalIdGenerator( true, DictionaryConst.PROPERTY_NAMESPACE,
+      DictionaryConst.PROPERTY_TYPE, DictionaryConst.PROPERTY_NAME );
+    MetaverseTransientNode parent = createNode( "locator", "Locator", null );
+    parent.setLogicalIdGenerator( idGenerator );
+    String parentId = parent.getLogicalId();
+    MetaverseTransientNode child = createNode( "trans", "Transformation", parentId );
+    child.setLogicalIdGenerator( idGenerator );
+    String childId = child.getLogicalId();
+
+    MetaverseBuilder builder = new MetaverseBuilder( SynchronizedGraphFactory.wrapGraph( new TinkerGraph() ) );
+    builder.addNode( parent );
+    builder.addNode( child );
+
+    // the digests generated before a restart are gone, the JSON is on the vertices
+    HashedLogicalIdGenerator.clearResolvedIds();
+    assertNull( HashedLogicalIdGenerator.resolve( childId ) );
+    GraphLogicalIdResolver resolver = new GraphLogicalIdResolver( builder.getGraph() );
+    resolver.register();
+    assertSame( resolver, HashedLogicalIdGenerator.getResolver() );
+    assertEquals( child.getProperty( DictionaryConst.PROPERTY_LOGICAL_ID_JSON ),
+      HashedLogicalIdGenerator.resolve( childId ) );
+    assertEquals( parentId, new Namespace( childId ).getParentNamespace().getNamespaceId() );
+    assertNull( resolver.resolve( "0123456789abcdef0123456789abcdef" ) );
+
+    resolver.unregister();
+    assertNull( HashedLogicalIdGenerator.getResolver() );
+  }
+
+  private static MetaverseTransientNode createNode( String name, String type, String namespace ) {
+    MetaverseTransientNode node = new MetaverseTransientNode( name + ":" + type );
+    node.setName( name );
+    node.setType( type );
+    if ( namespace != null ) {
+      node.setProperty( DictionaryConst.PROPERTY_NAMESPACE, namespace );
+    }
+    return node;
+  }
+}
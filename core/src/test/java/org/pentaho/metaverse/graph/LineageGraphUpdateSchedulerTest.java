@@ -0,0 +1,112 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.metaverse.graph;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LineageGraphUpdateSchedulerTest {
+
+  @Test
+  public void testBurstIsCoalesced() throws Exception {
+    LineageGraphUpdateScheduler scheduler = new LineageGraphUpdateScheduler( 10 );
+    Object document = new Object();
+    AtomicInteger first = new AtomicInteger();
+    AtomicInteger last = new AtomicInteger();
+
+    // the updates run one at a time, none of the burst can run before the update of another document is done
+    final CountDownLatch blocked = new CountDownLatch( 1 );
+    scheduler.schedule( new Object(), new Runnable() {
+      @Override
+      public void run() {
+        try {
+          blocked.await();
+        } catch ( InterruptedException e ) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    } );
+    ScheduledFuture<?> update = null;
+    for ( int i = 0; i < 10; i++ ) {
+      update = scheduler.schedule( document, new Counter( i < 9 ? first : last ) );
+    }
+    assertTrue( scheduler.isPending( document ) );
+    blocked.countDown();
+    update.get();
+
+    assertEquals( 0, first.get() );
+    assertEquals( 1, last.get() );
+    assertFalse( scheduler.isPending( document ) );
+  }
+
+  @Test
+  public void testDocumentsAreUpdatedSeparately() throws Exception {
+    LineageGraphUpdateScheduler scheduler = new LineageGraphUpdateScheduler( 10 );
+    AtomicInteger count = new AtomicInteger();
+
+    ScheduledFuture<?> update1 = scheduler.schedule( new Object(), new Counter( count ) );
+    ScheduledFuture<?> update2 = scheduler.schedule( new Object(), new Counter( count ) );
+    update1.get();
+    update2.get();
+
+    assertEquals( 2, count.get() );
+  }
+
+  @Test
+  public void testFailedUpdate() throws Exception {
+    LineageGraphUpdateScheduler scheduler = new LineageGraphUpdateScheduler( 10 );
+    Object document = new Object();
+    scheduler.schedule( document, new Runnable() {
+      @Override
+      public void run() {
+        throw new IllegalStateException( "broken" );
+      }
+    } ).get();
+
+    // the scheduler keeps going
+    AtomicInteger count = new AtomicInteger();
+    scheduler.schedule( document, new Counter( count ) ).get();
+    assertEquals( 1, count.get() );
+  }
+
+  private static class Counter implements Runnable {
+    private final AtomicInteger count;
+
+    Counter( AtomicInteger count ) {
+      this.count = count;
+    }
+
+    @Override
+    public void run() {
+      count.incrementAndGet();
+    }
+  }
+}
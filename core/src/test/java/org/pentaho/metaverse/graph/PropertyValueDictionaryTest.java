@@ -0,0 +1,153 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.graph;
+
+import com.tinkerpop.blueprints.Graph;
+import com.tinkerpop.blueprints.KeyIndexableGraph;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.dictionary.DictionaryConst;
+import org.pentaho.dictionary.MetaverseTransientNode;
+import org.pentaho.metaverse.impl.MetaverseBuilder;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PropertyValueDictionaryTest {
+
+  @Before
+  public void setUp() throws Exception {
+    PropertyValueDictionary.clear();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    PropertyValueDictionary.clear();
+  }
+
+  @Test
+  public void testEncode() throws Exception {
+    String type = new String( "Transformation Step" );
+    String copy = new String( "Transformation Step" );
+    assertSame( type, PropertyValueDictionary.encode( DictionaryConst.PROPERTY_TYPE, type ) );
+    assertSame( type, PropertyValueDictionary.encode( DictionaryConst.PROPERTY_TYPE, copy ) );
+    // the values of other keys are stored as they are
+    assertSame( copy, PropertyValueDictionary.encode( DictionaryConst.PROPERTY_NAME, copy ) );
+    assertEquals( 42, PropertyValueDictionary.encode( DictionaryConst.PROPERTY_TYPE, 42 ) );
+    assertNull( PropertyValueDictionary.encode( DictionaryConst.PROPERTY_TYPE, null ) );
+    assertEquals( 1, PropertyValueDictionary.size() );
+  }
+
+  @Test
+  public void testCanonicalize_bounded() throws Exception {
+    for ( int i = 0; i < PropertyValueDictionary.MAX_SIZE; i++ ) {
+      PropertyValueDictionary.canonicalize( "value" + i );
+    }
+    String value = new String( "one too many" );
+    assertSame( value, PropertyValueDictionary.canonicalize( value ) );
+    assertNotSame( value, PropertyValueDictionary.canonicalize( new String( "one too many" ) ) );
+    assertEquals( PropertyValueDictionary.MAX_SIZE, PropertyValueDictionary.size() );
+  }
+
+  @Test
+  public void testBuilderSharesValues() throws Exception {
+    Graph graph = new TinkerGraph();
+    MetaverseBuilder builder = new MetaverseBuilder( graph );
+    // steps of the same plugin, analyzed from separate documents
+    MetaverseTransientNode step1 = createStep( 1 );
+    MetaverseTransientNode step2 = createStep( 4 );
+    builder.addNode( step1 );
+    builder.addNode( step2 );
+
+    Vertex v1 = graph.getVertex( step1.getStringID() );
+    Vertex v2 = graph.getVertex( step2.getStringID() );
+    assertSame( v1.getProperty( DictionaryConst.PROPERTY_STEP_TYPE ), v2.getProperty(
+      DictionaryConst.PROPERTY_STEP_TYPE ) );
+    assertSame( v1.getProperty( DictionaryConst.PROPERTY_TYPE ), v2.getProperty( DictionaryConst.PROPERTY_TYPE ) );
+    assertNotSame( v1.getProperty( DictionaryConst.PROPERTY_NAME ), v2.getProperty( DictionaryConst.PROPERTY_NAME ) );
+  }
+
+  @Test
+  public void testBuilderSharesValues_manySteps() throws Exception {
+    int steps = 3000;
+    IdGraph<KeyIndexableGraph> idGraph = new IdGraph<KeyIndexableGraph>( new TinkerGraph() );
+    idGraph.createKeyIndex( DictionaryConst.PROPERTY_LOGICAL_ID, Vertex.class );
+    Graph graph = new SynchronizedGraph( idGraph );
+    MetaverseBuilder builder = new MetaverseBuilder( graph );
+    for ( int i = 0; i < steps; i++ ) {
+      builder.addNode( createStep( i ) );
+    }
+
+    // however many steps there are, the graph only holds one instance of each shared value
+    Set<Object> stepTypes = Collections.newSetFromMap( new IdentityHashMap<Object, Boolean>() );
+    Set<Object> categories = Collections.newSetFromMap( new IdentityHashMap<Object, Boolean>() );
+    for ( Vertex vertex : graph.getVertices() ) {
+      stepTypes.add( vertex.getProperty( DictionaryConst.PROPERTY_STEP_TYPE ) );
+      categories.add( vertex.getProperty( DictionaryConst.PROPERTY_CATEGORY ) );
+    }
+    assertEquals( steps, count( graph.getVertices() ) );
+    assertEquals( 3, stepTypes.size() );
+    assertEquals( 1, categories.size() );
+    assertTrue( PropertyValueDictionary.size() < steps );
+  }
+
+  /**
+   * Creates a step node the way analyzing a separate document would: every value is its own String instance
+   */
+  private static MetaverseTransientNode createStep( int i ) {
+    String[][] plugins = {
+      { "TableInput", "Table input", "TableInputStepAnalyzer" },
+      { "SelectValues", "Select values", "SelectValuesStepAnalyzer" },
+      { "TextFileOutput", "Text file output", "TextFileOutputStepAnalyzer" } };
+    String[] plugin = plugins[ i % plugins.length ];
+    MetaverseTransientNode node = new MetaverseTransientNode( "step" + i );
+    node.setName( "step" + i );
+    node.setType( new String( "test step" ) );
+    node.setProperty( DictionaryConst.PROPERTY_NAMESPACE, "trans" + i / 10 );
+    node.setProperty( DictionaryConst.PROPERTY_CATEGORY, new String( "Document element" ) );
+    node.setProperty( DictionaryConst.PROPERTY_COLOR, new String( "#3D8BB1" ) );
+    node.setProperty( DictionaryConst.PROPERTY_PLUGIN_ID, new String( plugin[ 0 ] ) );
+    node.setProperty( DictionaryConst.PROPERTY_STEP_TYPE, new String( plugin[ 1 ] ) );
+    node.setProperty( DictionaryConst.PROPERTY_ANALYZER, new String( plugin[ 2 ] ) );
+    return node;
+  }
+
+  private static int count( Iterable<?> elements ) {
+    int count = 0;
+    for ( Object ignored : elements ) {
+      count++;
+    }
+    return count;
+  }
+}
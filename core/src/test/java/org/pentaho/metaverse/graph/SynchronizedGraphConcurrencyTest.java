@@ -0,0 +1,251 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.graph;
+
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.KeyIndexableGraph;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
+import org.junit.Test;
+import org.pentaho.dictionary.DictionaryConst;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Exercises {@link SynchronizedGraph} from many threads at once
+ */
+public class SynchronizedGraphConcurrencyTest {
+
+  private static final int THREADS = 8;
+  private static final int DISTINCT_VERTICES = 500;
+  private static final int ITERATIONS = 5000;
+
+  @Test
+  public void testConcurrentAddsAndLookups() throws Exception {
+    final SynchronizedGraph graph = (SynchronizedGraph) SynchronizedGraphFactory.wrapGraph( new TinkerGraph() );
+
+    runConcurrently( graph, new Operation() {
+      @Override
+      public void run( SynchronizedGraph graph, int thread, int i ) {
+        final int n = ( thread * 31 + i ) % DISTINCT_VERTICES;
+        final Vertex from = graph.addVertex( "v" + n );
+        graph.executeInLock( new Runnable() {
+          @Override
+          public void run() {
+            from.setProperty( DictionaryConst.PROPERTY_LOGICAL_ID, "logical" + n );
+          }
+        } );
+        Vertex to = graph.addVertex( "v" + ( ( n + 1 ) % DISTINCT_VERTICES ) );
+        graph.addEdge( "e" + n, from, to, "next" );
+
+        // lookups interleaved with the writes of the other threads
+        assertNotNull( graph.getVertex( "v" + n ) );
+        for ( Vertex v : graph.getVertices( DictionaryConst.PROPERTY_LOGICAL_ID, "logical" + n ) ) {
+          assertEquals( "v" + n, v.getId() );
+        }
+        if ( i % 500 == 0 ) {
+          for ( Vertex v : graph.getVertices() ) {
+            assertNotNull( v.getId() );
+          }
+          for ( Edge e : graph.getEdges() ) {
+            assertNotNull( e.getId() );
+          }
+        }
+      }
+    } );
+
+    assertEquals( DISTINCT_VERTICES, count( graph.getVertices() ) );
+    assertEquals( DISTINCT_VERTICES, count( graph.getEdges() ) );
+    for ( int n = 0; n < DISTINCT_VERTICES; n++ ) {
+      assertEquals( 1, count( graph.getVertices( DictionaryConst.PROPERTY_LOGICAL_ID, "logical" + n ) ) );
+    }
+  }
+
+  @Test
+  public void testConcurrentAddsAndRemoves() throws Exception {
+    final SynchronizedGraph graph = (SynchronizedGraph) SynchronizedGraphFactory.wrapGraph( new TinkerGraph() );
+
+    runConcurrently( graph, new Operation() {
+      @Override
+      public void run( SynchronizedGraph graph, int thread, int i ) {
+        // every thread works on its own vertices, so each one removes exactly what it added
+        Vertex v = graph.addVertex( "t" + thread + "-" + i );
+        Vertex shared = graph.addVertex( "shared" );
+        graph.addEdge( "t" + thread + "-" + i + "-shared", v, shared, "uses" );
+        if ( i % 2 == 0 ) {
+          graph.removeVertex( v );
+        }
+      }
+    } );
+
+    assertEquals( THREADS * ITERATIONS / 2 + 1, count( graph.getVertices() ) );
+    assertEquals( THREADS * ITERATIONS / 2, count( graph.getEdges() ) );
+  }
+
+  @Test
+  public void testExclusiveAcquisitions() throws Exception {
+    CountingReadWriteLock lock = new CountingReadWriteLock();
+    final SynchronizedGraph graph =
+      new SynchronizedGraph( new IdGraph<KeyIndexableGraph>( new TinkerGraph() ), lock );
+    final AtomicInteger calls = new AtomicInteger();
+
+    // the analysis pattern: the same vertices are added again and again, and looked up in between
+    runConcurrently( graph, new Operation() {
+      @Override
+      public void run( SynchronizedGraph graph, int thread, int i ) {
+        int n = ( thread * 31 + i ) % DISTINCT_VERTICES;
+        graph.addVertex( "v" + n );
+        graph.getVertex( "v" + ( ( n + 1 ) % DISTINCT_VERTICES ) );
+        graph.getVertices( DictionaryConst.PROPERTY_LOGICAL_ID, "logical" + n );
+        calls.addAndGet( 3 );
+      }
+    } );
+
+    // a wrapper with a single monitor takes it exclusively for every call. Here only the adds of vertices that are not
+    // in the graph yet take the write lock, at most once per thread and vertex when the threads race to add it.
+    assertEquals( DISTINCT_VERTICES, count( graph.getVertices() ) );
+    assertEquals( THREADS * ITERATIONS * 3, calls.get() );
+    assertTrue( lock.writeLocks.get() >= DISTINCT_VERTICES );
+    assertTrue( lock.writeLocks.get() <= DISTINCT_VERTICES * THREADS );
+    assertTrue( lock.writeLocks.get() * 10 < calls.get() );
+  }
+
+  private interface Operation {
+    void run( SynchronizedGraph graph, int thread, int i );
+  }
+
+  /**
+   * Runs the operation ITERATIONS times on each of THREADS threads, all starting at the same time. Any failure on one
+   * of the threads fails the test.
+   */
+  private void runConcurrently( final SynchronizedGraph graph, final Operation operation ) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool( THREADS );
+    final CountDownLatch start = new CountDownLatch( 1 );
+    List<Future<Void>> futures = new ArrayList<Future<Void>>();
+    try {
+      for ( int t = 0; t < THREADS; t++ ) {
+        final int thread = t;
+        futures.add( executor.submit( new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            start.await();
+            for ( int i = 0; i < ITERATIONS; i++ ) {
+              operation.run( graph, thread, i );
+            }
+            return null;
+          }
+        } ) );
+      }
+      start.countDown();
+      for ( Future<Void> future : futures ) {
+        future.get( 60, TimeUnit.SECONDS );
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * A read/write lock that counts how many times its write lock is taken
+   */
+  private static class CountingReadWriteLock implements ReadWriteLock {
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicInteger writeLocks = new AtomicInteger();
+    private final Lock writeLock = new Lock() {
+      @Override
+      public void lock() {
+        lock.writeLock().lock();
+        writeLocks.incrementAndGet();
+      }
+
+      @Override
+      public void lockInterruptibly() throws InterruptedException {
+        lock.writeLock().lockInterruptibly();
+        writeLocks.incrementAndGet();
+      }
+
+      @Override
+      public boolean tryLock() {
+        boolean locked = lock.writeLock().tryLock();
+        if ( locked ) {
+          writeLocks.incrementAndGet();
+        }
+        return locked;
+      }
+
+      @Override
+      public boolean tryLock( long time, TimeUnit unit ) throws InterruptedException {
+        boolean locked = lock.writeLock().tryLock( time, unit );
+        if ( locked ) {
+          writeLocks.incrementAndGet();
+        }
+        return locked;
+      }
+
+      @Override
+      public void unlock() {
+        lock.writeLock().unlock();
+      }
+
+      @Override
+      public Condition newCondition() {
+        return lock.writeLock().newCondition();
+      }
+    };
+
+    @Override
+    public Lock readLock() {
+      return lock.readLock();
+    }
+
+    @Override
+    public Lock writeLock() {
+      return writeLock;
+    }
+  }
+
+  private static int count( Iterable<?> elements ) {
+    int count = 0;
+    for ( Object ignored : elements ) {
+      count++;
+    }
+    return count;
+  }
+}
@@ -24,15 +24,24 @@ package org.pentaho.metaverse.graph;
 
 import com.tinkerpop.blueprints.Graph;
 import com.tinkerpop.blueprints.KeyIndexableGraph;
+import com.tinkerpop.blueprints.Vertex;
 import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
 import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
 import org.apache.commons.configuration.Configuration;
 import org.apache.commons.configuration.PropertiesConfiguration;
 import org.junit.Test;
+import org.pentaho.dictionary.DictionaryConst;
+import org.pentaho.dictionary.MetaverseTransientNode;
+import org.pentaho.metaverse.api.IMetaverseNode;
+import org.pentaho.metaverse.impl.MetaverseBuilder;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
@@ -87,5 +96,62 @@ public class SynchronizedGraphFactoryTest {
 
   }
 
+  @Test
+  public void testWrapGraph_indexesLogicalId() throws Exception {
+    SynchronizedGraph wrapped = (SynchronizedGraph) SynchronizedGraphFactory.wrapGraph( new TinkerGraph() );
+    assertTrue( wrapped.graph.getIndexedKeys( Vertex.class ).contains( DictionaryConst.PROPERTY_LOGICAL_ID ) );
+    assertTrue( wrapped.graph.getIndexedKeys( Vertex.class ).contains( DictionaryConst.PROPERTY_PATH ) );
+
+    Vertex v = wrapped.addVertex( "id" );
+    v.setProperty( DictionaryConst.PROPERTY_LOGICAL_ID, "logical" );
+    assertEquals( v, wrapped.getVertices( DictionaryConst.PROPERTY_LOGICAL_ID, "logical" ).iterator().next() );
+  }
+
+  @Test
+  public void testWrapGraph_logicalIdLookupUsesIndex() throws Exception {
+    ScanCountingGraph baseGraph = new ScanCountingGraph();
+    Graph wrapped = SynchronizedGraphFactory.wrapGraph( baseGraph );
+    MetaverseBuilder builder = new MetaverseBuilder( wrapped );
+    List<IMetaverseNode> nodes = new ArrayList<IMetaverseNode>();
+    for ( int i = 0; i < 1000; i++ ) {
+      // adding a node looks its vertex up by logical id, since the string id of a new node is not in the graph
+      IMetaverseNode node = createFieldNode( i );
+      builder.addNode( node );
+      nodes.add( node );
+    }
+    for ( IMetaverseNode node : nodes ) {
+      assertTrue( wrapped.getVertices( DictionaryConst.PROPERTY_LOGICAL_ID, node.getLogicalId() ).iterator()
+        .hasNext() );
+    }
+    // every lookup was answered by the key index, none of them scanned the vertices
+    assertEquals( 0, baseGraph.scans );
+  }
+
+  @Test
+  public void testWrapGraph_alreadyIndexed() throws Exception {
+    TinkerGraph g = new TinkerGraph();
+    g.createKeyIndex( DictionaryConst.PROPERTY_LOGICAL_ID, Vertex.class );
+    SynchronizedGraph wrapped = (SynchronizedGraph) SynchronizedGraphFactory.wrapGraph( g );
+    assertTrue( wrapped.graph.getIndexedKeys( Vertex.class ).contains( DictionaryConst.PROPERTY_LOGICAL_ID ) );
+  }
 
+  private static IMetaverseNode createFieldNode( int i ) {
+    MetaverseTransientNode fieldNode = new MetaverseTransientNode( UUID.randomUUID().toString() );
+    fieldNode.setName( "field" + i );
+    fieldNode.setType( DictionaryConst.NODE_TYPE_TRANS_FIELD );
+    return fieldNode;
+  }
+
+  /**
+   * Counts the full scans of its vertices
+   */
+  private static class ScanCountingGraph extends TinkerGraph {
+    int scans;
+
+    @Override
+    public Iterable<Vertex> getVertices() {
+      scans++;
+      return super.getVertices();
+    }
+  }
 }
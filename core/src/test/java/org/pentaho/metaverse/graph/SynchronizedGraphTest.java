@@ -31,6 +31,13 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 
 @RunWith( MockitoJUnitRunner.class )
@@ -65,7 +72,8 @@ public class SynchronizedGraphTest {
   public void testAddVertex_withNewId() throws Exception {
     when( mockGraph.getVertex( "id" ) ).thenReturn( null );
     synchronizedGraph.addVertex( "id" );
-    verify( mockGraph, times( 1 ) ).getVertex( "id" );
+    // once without the write lock, and once more after acquiring it
+    verify( mockGraph, times( 2 ) ).getVertex( "id" );
     verify( mockGraph, times( 1 ) ).addVertex( "id" );
   }
 
@@ -87,7 +95,7 @@ public class SynchronizedGraphTest {
   public void testAddEdge_withNewId() throws Exception {
     when( mockGraph.getEdge( "id" ) ).thenReturn( null );
     synchronizedGraph.addEdge( "id", mockVertex, mockVertex, "self link" );
-    verify( mockGraph, times( 1 ) ).getEdge( "id" );
+    verify( mockGraph, times( 2 ) ).getEdge( "id" );
     verify( mockGraph, times( 1 ) ).addEdge( "id", mockVertex, mockVertex, "self link" );
   }
 
@@ -126,4 +134,39 @@ public class SynchronizedGraphTest {
     synchronizedGraph.shutdown();
     verify( mockGraph, times( 1 ) ).shutdown();
   }
+
+  @Test
+  public void testIterablesAreCopied() throws Exception {
+    List<Vertex> vertices = new ArrayList<Vertex>( Arrays.asList( mockVertex ) );
+    when( mockGraph.getVertices( "key", "value" ) ).thenReturn( vertices );
+
+    Iterable<Vertex> result = synchronizedGraph.getVertices( "key", "value" );
+    vertices.clear();
+    assertEquals( mockVertex, result.iterator().next() );
+  }
+
+  @Test
+  public void testIsEmpty() throws Exception {
+    List<Vertex> vertices = new ArrayList<Vertex>();
+    when( mockGraph.getVertices() ).thenReturn( vertices );
+    assertTrue( synchronizedGraph.isEmpty() );
+    vertices.add( mockVertex );
+    assertFalse( synchronizedGraph.isEmpty() );
+  }
+
+  @Test
+  public void testExecuteInLock() throws Exception {
+    final boolean[] ran = new boolean[1];
+    synchronizedGraph.executeInLock( new Runnable() {
+      @Override
+      public void run() {
+        // reads and writes are reentrant within the lock
+        synchronizedGraph.getVertex( "id" );
+        synchronizedGraph.addVertex( "id" );
+        ran[0] = true;
+      }
+    } );
+    assertTrue( ran[0] );
+    verify( mockGraph, times( 1 ) ).addVertex( "id" );
+  }
 }
@@ -0,0 +1,332 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.graph.compact;
+
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Graph;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.dictionary.DictionaryConst;
+import org.pentaho.dictionary.MetaverseTransientNode;
+import org.pentaho.metaverse.graph.SynchronizedGraph;
+import org.pentaho.metaverse.graph.SynchronizedGraphFactory;
+import org.pentaho.metaverse.impl.MetaverseBuilder;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CompactGraphTest {
+
+  private CompactGraph graph;
+
+  @Before
+  public void setUp() throws Exception {
+    graph = new CompactGraph();
+  }
+
+  @Test
+  public void testVertices() throws Exception {
+    Vertex v1 = graph.addVertex( "ignored" );
+    Vertex v2 = graph.addVertex( null );
+
+    assertEquals( v1, graph.getVertex( v1.getId() ) );
+    assertEquals( v2, graph.getVertex( v2.getId().toString() ) );
+    assertNull( graph.getVertex( "not a handle" ) );
+    assertEquals( 2, count( graph.getVertices() ) );
+
+    graph.removeVertex( v1 );
+    assertNull( graph.getVertex( v1.getId() ) );
+    assertEquals( 1, count( graph.getVertices() ) );
+  }
+
+  @Test
+  public void testProperties() throws Exception {
+    Vertex v = graph.addVertex( null );
+    v.setProperty( "name", "field" );
+    v.setProperty( "type", "Field" );
+    assertEquals( "field", v.getProperty( "name" ) );
+    assertEquals( new HashSet<String>( Arrays.asList( "name", "type" ) ), v.getPropertyKeys() );
+
+    v.setProperty( "name", "renamed" );
+    assertEquals( "renamed", v.getProperty( "name" ) );
+
+    assertEquals( "Field", v.removeProperty( "type" ) );
+    assertNull( v.getProperty( "type" ) );
+    assertNull( v.removeProperty( "type" ) );
+    assertEquals( Collections.singleton( "name" ), v.getPropertyKeys() );
+  }
+
+  @Test
+  public void testPropertyValuesAreShared() throws Exception {
+    Vertex v1 = graph.addVertex( null );
+    Vertex v2 = graph.addVertex( null );
+    v1.setProperty( "type", "Field" );
+    v2.setProperty( "type", "Field" );
+
+    // both vertices reference the one dictionary entry, removing one of them keeps the value for the other
+    v1.removeProperty( "type" );
+    assertEquals( "Field", v2.getProperty( "type" ) );
+    assertEquals( 1, count( graph.getVertices( "type", "Field" ) ) );
+  }
+
+  @Test
+  public void testKeyIndex() throws Exception {
+    Vertex v1 = graph.addVertex( null );
+    v1.setProperty( "logicalId", "a" );
+    graph.createKeyIndex( "logicalId", Vertex.class );
+    Vertex v2 = graph.addVertex( null );
+    v2.setProperty( "logicalId", "b" );
+
+    assertEquals( Collections.singleton( "logicalId" ), graph.getIndexedKeys( Vertex.class ) );
+    assertTrue( graph.getIndexedKeys( Edge.class ).isEmpty() );
+    assertEquals( v1, graph.getVertices( "logicalId", "a" ).iterator().next() );
+    assertEquals( v2, graph.getVertices( "logicalId", "b" ).iterator().next() );
+
+    v2.setProperty( "logicalId", "a" );
+    assertEquals( 2, count( graph.getVertices( "logicalId", "a" ) ) );
+    assertEquals( 0, count( graph.getVertices( "logicalId", "b" ) ) );
+
+    graph.removeVertex( v1 );
+    assertEquals( v2, graph.getVertices( "logicalId", "a" ).iterator().next() );
+
+    graph.dropKeyIndex( "logicalId", Vertex.class );
+    assertTrue( graph.getIndexedKeys( Vertex.class ).isEmpty() );
+    assertEquals( v2, graph.getVertices( "logicalId", "a" ).iterator().next() );
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testKeyIndex_notIndexable() throws Exception {
+    graph.createKeyIndex( "key", null );
+  }
+
+  @Test
+  public void testEdges() throws Exception {
+    Vertex trans = graph.addVertex( null );
+    Vertex step1 = graph.addVertex( null );
+    Vertex step2 = graph.addVertex( null );
+    Edge contains1 = graph.addEdge( null, trans, step1, "contains" );
+    Edge contains2 = trans.addEdge( "contains", step2 );
+    Edge hops = graph.addEdge( null, step1, step2, "hops_to" );
+    hops.setProperty( "text", "hops_to" );
+
+    assertEquals( "contains", contains1.getLabel() );
+    assertEquals( trans, contains1.getVertex( Direction.OUT ) );
+    assertEquals( step1, contains1.getVertex( Direction.IN ) );
+    assertEquals( hops, graph.getEdge( hops.getId() ) );
+    assertEquals( hops, graph.getEdges( "text", "hops_to" ).iterator().next() );
+
+    assertEquals( 2, count( trans.getEdges( Direction.OUT, "contains" ) ) );
+    assertEquals( 0, count( trans.getEdges( Direction.OUT, "hops_to" ) ) );
+    assertEquals( 0, count( trans.getEdges( Direction.IN ) ) );
+    assertEquals( 2, count( step1.getEdges( Direction.BOTH ) ) );
+    assertEquals( step2, step1.getVertices( Direction.OUT, "hops_to" ).iterator().next() );
+    assertEquals( 2, count( step2.getVertices( Direction.IN ) ) );
+
+    graph.removeEdge( contains2 );
+    assertNull( graph.getEdge( contains2.getId() ) );
+    assertEquals( 1, count( trans.getEdges( Direction.OUT ) ) );
+
+    // removing a vertex removes its edges
+    graph.removeVertex( step1 );
+    assertEquals( 0, count( graph.getEdges() ) );
+    assertEquals( 0, count( trans.getEdges( Direction.OUT ) ) );
+    assertEquals( 0, count( step2.getEdges( Direction.IN ) ) );
+  }
+
+  @Test
+  public void testSelfLoop() throws Exception {
+    Vertex v = graph.addVertex( null );
+    graph.addEdge( null, v, v, "self" );
+    assertEquals( 2, count( v.getEdges( Direction.BOTH ) ) );
+    graph.removeVertex( v );
+    assertEquals( 0, count( graph.getEdges() ) );
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testAddEdge_foreignVertex() throws Exception {
+    graph.addEdge( null, graph.addVertex( null ), new TinkerGraph().addVertex( null ), "label" );
+  }
+
+  @Test
+  public void testOpenFromSynchronizedGraphFactory() throws Exception {
+    Map<String, String> config = new HashMap<String, String>();
+    config.put( SynchronizedGraphFactory.GRAPH_CLASS_KEY, CompactGraph.class.getName() );
+    Graph g = SynchronizedGraphFactory.open( config );
+    assertTrue( g instanceof SynchronizedGraph );
+
+    MetaverseBuilder builder = new MetaverseBuilder( g );
+    MetaverseTransientNode step = createNode( "step", "test step", "trans" );
+    MetaverseTransientNode field = createNode( "field", "test field", "step" );
+    builder.addNode( step );
+    builder.addLink( step, DictionaryConst.LINK_OUTPUTS, field );
+
+    Vertex stepVertex = g.getVertex( step.getStringID() );
+    assertNotNull( stepVertex );
+    assertEquals( "step", stepVertex.getProperty( DictionaryConst.PROPERTY_NAME ) );
+    assertFalse( (Boolean) stepVertex.getProperty( DictionaryConst.NODE_VIRTUAL ) );
+    Vertex fieldVertex = stepVertex.getVertices( Direction.OUT, DictionaryConst.LINK_OUTPUTS ).iterator().next();
+    assertEquals( field.getStringID(), fieldVertex.getId() );
+    assertTrue( (Boolean) fieldVertex.getProperty( DictionaryConst.NODE_VIRTUAL ) );
+    assertEquals( fieldVertex,
+      g.getVertices( DictionaryConst.PROPERTY_LOGICAL_ID, field.getLogicalId() ).iterator().next() );
+  }
+
+  @Test
+  public void testRemovedHandlesAreReused() throws Exception {
+    Vertex step = graph.addVertex( null );
+    for ( int round = 0; round < 10; round++ ) {
+      for ( int i = 0; i < 100; i++ ) {
+        Vertex field = graph.addVertex( null );
+        field.setProperty( "name", "field" + i );
+        graph.addEdge( null, step, field, "outputs" ).setProperty( "round", round );
+      }
+      for ( Vertex field : step.getVertices( Direction.OUT, "outputs" ) ) {
+        graph.removeVertex( field );
+      }
+    }
+
+    // ten rounds of adding and retracting 100 fields only ever need the handles of the first round
+    assertEquals( 101, graph.getVertexHandleCount() );
+    assertEquals( 100, graph.getEdgeHandleCount() );
+    assertEquals( 1, count( graph.getVertices() ) );
+    assertEquals( 0, count( graph.getEdges() ) );
+
+    Vertex field = graph.addVertex( null );
+    assertTrue( field.getPropertyKeys().isEmpty() );
+    assertEquals( 0, count( field.getEdges( Direction.BOTH ) ) );
+  }
+
+  @Test
+  public void testUniqueValuesAreNotDictionaryEncoded() throws Exception {
+    for ( int i = 0; i < 1000; i++ ) {
+      Vertex v = graph.addVertex( null );
+      v.setProperty( "type", "Field" );
+      v.setProperty( "name", "field" + i );
+    }
+    graph.createKeyIndex( "name", Vertex.class );
+
+    PropertyColumn types = graph.getVertexColumn( "type" );
+    assertTrue( types.isDictionaryEncoded() );
+    assertEquals( 1, types.getDictionarySize() );
+
+    PropertyColumn names = graph.getVertexColumn( "name" );
+    assertFalse( names.isDictionaryEncoded() );
+    assertEquals( 0, names.getDictionarySize() );
+
+    Vertex v = graph.getVertices( "name", "field500" ).iterator().next();
+    assertEquals( "field500", v.getProperty( "name" ) );
+    v.setProperty( "name", "renamed" );
+    assertEquals( 0, count( graph.getVertices( "name", "field500" ) ) );
+    assertEquals( v, graph.getVertices( "name", "renamed" ).iterator().next() );
+    assertEquals( 1000, count( graph.getVertices( "type", "Field" ) ) );
+  }
+
+  @Test
+  public void testReadsDuringWrites() throws Exception {
+    final Vertex reader = graph.addVertex( null );
+    reader.setProperty( "name", "reader" );
+    reader.addEdge( "contains", graph.addVertex( null ) );
+    final AtomicBoolean writing = new AtomicBoolean( true );
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+    // the writer grows the shared columns and makes the name column drop its dictionary while the readers read
+    Thread writer = new Thread( new Runnable() {
+      @Override
+      public void run() {
+        try {
+          for ( int i = 0; i < 20000; i++ ) {
+            Vertex v = graph.addVertex( null );
+            v.setProperty( "name", "field" + i );
+            v.setProperty( "type", "Field" );
+            reader.addEdge( "derives", v );
+          }
+        } catch ( Throwable t ) {
+          failure.compareAndSet( null, t );
+        } finally {
+          writing.set( false );
+        }
+      }
+    } );
+    Thread[] readers = new Thread[ 4 ];
+    for ( int i = 0; i < readers.length; i++ ) {
+      readers[ i ] = new Thread( new Runnable() {
+        @Override
+        public void run() {
+          try {
+            while ( writing.get() ) {
+              if ( !"reader".equals( reader.getProperty( "name" ) ) ) {
+                throw new AssertionError( "read " + reader.getProperty( "name" ) );
+              }
+              reader.getPropertyKeys();
+              count( reader.getEdges( Direction.OUT ) );
+            }
+          } catch ( Throwable t ) {
+            failure.compareAndSet( null, t );
+          }
+        }
+      } );
+    }
+    for ( Thread thread : readers ) {
+      thread.start();
+    }
+    writer.start();
+    writer.join();
+    for ( Thread thread : readers ) {
+      thread.join();
+    }
+
+    assertNull( failure.get() );
+    assertFalse( graph.getVertexColumn( "name" ).isDictionaryEncoded() );
+    assertEquals( 20001, count( reader.getEdges( Direction.OUT ) ) );
+  }
+
+  private static MetaverseTransientNode createNode( String name, String type, String namespace ) {
+    MetaverseTransientNode node = new MetaverseTransientNode( name + ":" + namespace );
+    node.setName( name );
+    node.setType( type );
+    node.setProperty( DictionaryConst.PROPERTY_NAMESPACE, namespace );
+    return node;
+  }
+
+  private static int count( Iterable<?> elements ) {
+    int count = 0;
+    for ( Object ignored : elements ) {
+      count++;
+    }
+    return count;
+  }
+}
@@ -0,0 +1,392 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.graph.durable;
+
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Graph;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.apache.commons.io.FileUtils;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.dictionary.DictionaryConst;
+import org.pentaho.dictionary.MetaverseTransientNode;
+import org.pentaho.metaverse.graph.SynchronizedGraph;
+import org.pentaho.metaverse.graph.SynchronizedGraphFactory;
+import org.pentaho.metaverse.graph.compact.CompactGraph;
+import org.pentaho.metaverse.impl.MetaverseBuilder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DurableGraphTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = new File( folder.getRoot(), "graph" );
+  }
+
+  @Test
+  public void testOpenEmpty() throws Exception {
+    DurableGraph graph = DurableGraph.open( new TinkerGraph(), directory );
+    assertTrue( directory.isDirectory() );
+    assertEquals( 0, count( graph.getVertices() ) );
+    assertTrue( graph.getFeatures().isPersistent );
+    graph.shutdown();
+  }
+
+  @Test
+  public void testReopenAfterShutdown() throws Exception {
+    DurableGraph graph = DurableGraph.open( new TinkerGraph(), directory );
+    populate( graph );
+    graph.shutdown();
+
+    DurableGraph reopened = DurableGraph.open( new TinkerGraph(), directory );
+    verifyPopulated( reopened );
+    reopened.shutdown();
+
+    // only the files of the current epoch are kept
+    assertEquals( 3, directory.list().length );
+  }
+
+  @Test
+  public void testReplayLog() throws Exception {
+    DurableGraph graph = DurableGraph.open( new TinkerGraph(), directory );
+    populate( graph );
+    // the graph is never shut down, the changes are only in the mutation log
+    graph.flush();
+
+    DurableGraph reopened = DurableGraph.open( new TinkerGraph(), directory );
+    verifyPopulated( reopened );
+  }
+
+  @Test
+  public void testReplayRemovals() throws Exception {
+    DurableGraph graph = DurableGraph.open( new TinkerGraph(), directory );
+    populate( graph );
+    graph.checkpoint();
+
+    Vertex trans = graph.getVertices( "name", "trans" ).iterator().next();
+    Vertex step1 = graph.getVertices( "name", "step1" ).iterator().next();
+    Vertex step2 = graph.getVertices( "name", "step2" ).iterator().next();
+    trans.removeProperty( "modified" );
+    graph.removeVertex( step1 );
+    for ( Edge edge : trans.getEdges( Direction.OUT ) ) {
+      edge.remove();
+    }
+    step2.setProperty( "name", "renamed" );
+    graph.flush();
+
+    DurableGraph reopened = DurableGraph.open( new TinkerGraph(), directory );
+    assertEquals( 2, count( reopened.getVertices() ) );
+    assertEquals( 0, count( reopened.getEdges() ) );
+    trans = reopened.getVertices( "name", "trans" ).iterator().next();
+    assertNull( trans.getProperty( "modified" ) );
+    assertEquals( 1, count( reopened.getVertices( "name", "renamed" ) ) );
+  }
+
+  @Test
+  public void testIncompleteLogRecord() throws Exception {
+    DurableGraph graph = DurableGraph.open( new TinkerGraph(), directory );
+    Vertex vertex = graph.addVertex( null );
+    vertex.setProperty( "name", "complete" );
+    graph.flush();
+    File log = new File( directory, "mutations-" + graph.getEpoch() + ".log" );
+    long length = log.length();
+    vertex.setProperty( "description", "this record is cut off" );
+    graph.flush();
+
+    RandomAccessFile file = new RandomAccessFile( log, "rw" );
+    file.setLength( length + 5 );
+    file.close();
+
+    DurableGraph reopened = DurableGraph.open( new TinkerGraph(), directory );
+    Vertex restored = reopened.getVertices().iterator().next();
+    assertEquals( "complete", restored.getProperty( "name" ) );
+    assertNull( restored.getProperty( "description" ) );
+  }
+
+  @Test
+  public void testAddAfterReopen() throws Exception {
+    DurableGraph graph = DurableGraph.open( new TinkerGraph(), directory );
+    populate( graph );
+    graph.shutdown();
+
+    DurableGraph reopened = DurableGraph.open( new TinkerGraph(), directory );
+    Vertex trans = reopened.getVertices( "name", "trans" ).iterator().next();
+    for ( int i = 0; i < 10; i++ ) {
+      Vertex field = reopened.addVertex( null );
+      field.setProperty( "name", "field" + i );
+      reopened.addEdge( null, trans, field, "contains" );
+    }
+    // none of the new elements took the id of a loaded one
+    assertEquals( 13, count( reopened.getVertices() ) );
+    assertEquals( 13, count( reopened.getEdges() ) );
+    assertEquals( 12, count( trans.getVertices( Direction.OUT, "contains" ) ) );
+    reopened.flush();
+
+    DurableGraph replayed = DurableGraph.open( new TinkerGraph(), directory );
+    assertEquals( 13, count( replayed.getVertices() ) );
+    assertEquals( 13, count( replayed.getEdges() ) );
+    assertEquals( "field9", replayed.getVertices( "name", "field9" ).iterator().next().getProperty( "name" ) );
+    replayed.shutdown();
+  }
+
+  @Test
+  public void testCheckpointByLogSize() throws Exception {
+    DurableGraph graph = DurableGraph.open( new TinkerGraph(), directory );
+    assertEquals( DurableGraph.DEFAULT_CHECKPOINT_LOG_SIZE, graph.getCheckpointLogSize() );
+    long epoch = graph.getEpoch();
+    graph.setCheckpointLogSize( 1024 );
+    for ( int i = 0; i < 100; i++ ) {
+      graph.addVertex( null ).setProperty( "name", "vertex" + i );
+    }
+    // the change that filled the log does not take the checkpoint
+    assertTrue( graph.isCheckpointDue() );
+    assertEquals( epoch, graph.getEpoch() );
+
+    graph.checkpoint();
+    assertFalse( graph.isCheckpointDue() );
+    assertTrue( graph.getEpoch() > epoch );
+    assertTrue( new File( directory, "mutations-" + graph.getEpoch() + ".log" ).length() < 1024 );
+    assertEquals( 3, directory.list().length );
+    graph.flush();
+
+    DurableGraph reopened = DurableGraph.open( new TinkerGraph(), directory );
+    assertEquals( 100, count( reopened.getVertices() ) );
+    reopened.shutdown();
+  }
+
+  @Test
+  public void testCommitFromSynchronizedGraph() throws Exception {
+    Map<String, String> config = new HashMap<String, String>();
+    config.put( SynchronizedGraphFactory.GRAPH_CLASS_KEY, TinkerGraph.class.getName() );
+    config.put( SynchronizedGraphFactory.GRAPH_DIRECTORY_KEY, directory.getAbsolutePath() );
+    config.put( SynchronizedGraphFactory.GRAPH_CHECKPOINT_LOG_SIZE_KEY, "1024" );
+    SynchronizedGraph graph = (SynchronizedGraph) SynchronizedGraphFactory.open( config );
+    long epoch = currentEpoch();
+    for ( int i = 0; i < 100; i++ ) {
+      graph.addVertex( "vertex" + i ).setProperty( "name", "vertex" + i );
+    }
+    assertEquals( epoch, currentEpoch() );
+
+    // committing writes the log to disk and takes the checkpoint that is due
+    graph.commit();
+    assertTrue( currentEpoch() > epoch );
+    graph.addVertex( "committed" );
+    graph.commit();
+
+    // the graph is never shut down, what was committed is there after a restart
+    Graph reopened = SynchronizedGraphFactory.open( config );
+    assertEquals( 101, count( reopened.getVertices() ) );
+    assertNotNull( reopened.getVertex( "committed" ) );
+    reopened.shutdown();
+  }
+
+  @Test
+  public void testUnreadableLogTail() throws Exception {
+    DurableGraph graph = DurableGraph.open( new TinkerGraph(), directory );
+    graph.addVertex( null ).setProperty( "name", "complete" );
+    graph.commit();
+    File log = new File( directory, "mutations-" + graph.getEpoch() + ".log" );
+    RandomAccessFile file = new RandomAccessFile( log, "rw" );
+    file.seek( file.length() );
+    // an operation that was never written, left by a torn write
+    file.write( new byte[] { 99, 1, 2, 3 } );
+    file.close();
+
+    DurableGraph reopened = DurableGraph.open( new TinkerGraph(), directory );
+    assertEquals( 1, count( reopened.getVertices() ) );
+    assertEquals( "complete", reopened.getVertices().iterator().next().getProperty( "name" ) );
+    reopened.shutdown();
+  }
+
+  @Test
+  public void testTornLogHeaderFallsBackToPreviousEpoch() throws Exception {
+    DurableGraph graph = DurableGraph.open( new TinkerGraph(), directory );
+    populate( graph );
+    graph.shutdown();
+    // a crash while the next checkpoint created its log: the segments are there, the log header is cut off
+    File[] current = directory.listFiles();
+    for ( File source : current ) {
+      String name = source.getName().replace( "-" + epochOf( source ) + ".", "-" + ( epochOf( source ) + 1 ) + "." );
+      FileUtils.copyFile( source, new File( directory, name ) );
+    }
+    File torn = new File( directory, "mutations-" + ( epochOf( current[0] ) + 1 ) + ".log" );
+    RandomAccessFile file = new RandomAccessFile( torn, "rw" );
+    file.setLength( 6 );
+    file.close();
+
+    DurableGraph reopened = DurableGraph.open( new TinkerGraph(), directory );
+    verifyPopulated( reopened );
+    assertEquals( epochOf( torn ) + 1, reopened.getEpoch() );
+    assertEquals( 3, directory.list().length );
+    reopened.shutdown();
+  }
+
+  @Test
+  public void testUnreadableGraphOpensEmpty() throws Exception {
+    DurableGraph graph = DurableGraph.open( new TinkerGraph(), directory );
+    populate( graph );
+    graph.shutdown();
+    File segment = new File( directory, "vertices-" + graph.getEpoch() + ".seg" );
+    RandomAccessFile file = new RandomAccessFile( segment, "rw" );
+    file.setLength( 10 );
+    file.close();
+
+    DurableGraph reopened = DurableGraph.open( new TinkerGraph(), directory );
+    assertEquals( 0, count( reopened.getVertices() ) );
+    // the files that could not be loaded are kept aside
+    assertTrue( new File( directory, segment.getName() + ".unreadable" ).isFile() );
+    reopened.shutdown();
+  }
+
+  @Test
+  public void testSerializedPropertyValues() throws Exception {
+    DurableGraph graph = DurableGraph.open( new TinkerGraph(), directory );
+    Vertex vertex = graph.addVertex( null );
+    vertex.setProperty( "names", new ArrayList<String>( Arrays.asList( "a", "b" ) ) );
+    vertex.setProperty( "custom", new CustomValue() );
+    graph.shutdown();
+
+    DurableGraph reopened = DurableGraph.open( new TinkerGraph(), directory );
+    Vertex restored = reopened.getVertices().iterator().next();
+    assertEquals( Arrays.asList( "a", "b" ), restored.getProperty( "names" ) );
+    // a class outside the JDK value types is only kept as its string representation
+    assertEquals( "custom value", restored.getProperty( "custom" ) );
+    reopened.shutdown();
+  }
+
+  @Test
+  public void testOpenFromSynchronizedGraphFactory() throws Exception {
+    Map<String, String> config = new HashMap<String, String>();
+    config.put( SynchronizedGraphFactory.GRAPH_CLASS_KEY, CompactGraph.class.getName() );
+    config.put( SynchronizedGraphFactory.GRAPH_DIRECTORY_KEY, directory.getAbsolutePath() );
+
+    Graph graph = SynchronizedGraphFactory.open( config );
+    MetaverseBuilder builder = new MetaverseBuilder( graph );
+    MetaverseTransientNode step = createNode( "step", "test step", "trans" );
+    MetaverseTransientNode field = createNode( "field", "test field", "step" );
+    builder.addNode( step );
+    builder.addLink( step, DictionaryConst.LINK_OUTPUTS, field );
+    graph.shutdown();
+
+    Graph reopened = SynchronizedGraphFactory.open( config );
+    Vertex stepVertex = reopened.getVertex( step.getStringID() );
+    assertNotNull( stepVertex );
+    assertEquals( "step", stepVertex.getProperty( DictionaryConst.PROPERTY_NAME ) );
+    assertFalse( (Boolean) stepVertex.getProperty( DictionaryConst.NODE_VIRTUAL ) );
+    Vertex fieldVertex = stepVertex.getVertices( Direction.OUT, DictionaryConst.LINK_OUTPUTS ).iterator().next();
+    assertEquals( field.getStringID(), fieldVertex.getId() );
+    assertEquals( fieldVertex,
+      reopened.getVertices( DictionaryConst.PROPERTY_LOGICAL_ID, field.getLogicalId() ).iterator().next() );
+    reopened.shutdown();
+  }
+
+  private long currentEpoch() {
+    for ( File file : directory.listFiles() ) {
+      if ( file.getName().startsWith( "mutations-" ) ) {
+        return epochOf( file );
+      }
+    }
+    return -1;
+  }
+
+  private static long epochOf( File file ) {
+    String name = file.getName();
+    return Long.parseLong( name.substring( name.indexOf( '-' ) + 1, name.indexOf( '.' ) ) );
+  }
+
+  private static void populate( Graph graph ) {
+    Vertex trans = graph.addVertex( null );
+    trans.setProperty( "name", "trans" );
+    trans.setProperty( "modified", new Date( 1000L ) );
+    trans.setProperty( "copies", 3 );
+    trans.setProperty( "virtual", false );
+    Vertex step1 = graph.addVertex( null );
+    step1.setProperty( "name", "step1" );
+    Vertex step2 = graph.addVertex( null );
+    step2.setProperty( "name", "step2" );
+    graph.addEdge( null, trans, step1, "contains" );
+    graph.addEdge( null, trans, step2, "contains" );
+    Edge hops = graph.addEdge( null, step1, step2, "hops_to" );
+    hops.setProperty( "text", "hops_to" );
+  }
+
+  private static void verifyPopulated( Graph graph ) {
+    assertEquals( 3, count( graph.getVertices() ) );
+    assertEquals( 3, count( graph.getEdges() ) );
+    Vertex trans = graph.getVertices( "name", "trans" ).iterator().next();
+    assertEquals( new Date( 1000L ), trans.getProperty( "modified" ) );
+    assertEquals( Integer.valueOf( 3 ), trans.getProperty( "copies" ) );
+    assertEquals( Boolean.FALSE, trans.getProperty( "virtual" ) );
+    assertEquals( 2, count( trans.getVertices( Direction.OUT, "contains" ) ) );
+    Vertex step1 = graph.getVertices( "name", "step1" ).iterator().next();
+    Edge hops = step1.getEdges( Direction.OUT, "hops_to" ).iterator().next();
+    assertEquals( "hops_to", hops.getProperty( "text" ) );
+    assertEquals( "step2", hops.getVertex( Direction.IN ).getProperty( "name" ) );
+  }
+
+  private static MetaverseTransientNode createNode( String name, String type, String namespace ) {
+    MetaverseTransientNode node = new MetaverseTransientNode( name + ":" + namespace );
+    node.setName( name );
+    node.setType( type );
+    node.setProperty( DictionaryConst.PROPERTY_NAMESPACE, namespace );
+    return node;
+  }
+
+  private static class CustomValue implements Serializable {
+    @Override
+    public String toString() {
+      return "custom value";
+    }
+  }
+
+  private static int count( Iterable<?> elements ) {
+    int count = 0;
+    for ( Object ignored : elements ) {
+      count++;
+    }
+    return count;
+  }
+}
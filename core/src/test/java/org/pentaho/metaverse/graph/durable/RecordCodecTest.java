@@ -0,0 +1,121 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.graph.durable;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RecordCodecTest {
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    Map<String, Object> map = new HashMap<String, Object>();
+    map.put( "list", Arrays.asList( 1, 2L, "three" ) );
+    map.put( "array", new int[] { 1, 2 } );
+    Object[] values = { "string", 1, 2L, 3.0, 4.0f, true, map, new String[] { "a", "b" } };
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream( bytes );
+    for ( Object value : values ) {
+      RecordCodec.writeValue( out, value );
+    }
+    out.close();
+
+    ByteBuffer in = ByteBuffer.wrap( bytes.toByteArray() );
+    for ( int i = 0; i < 6; i++ ) {
+      assertEquals( values[ i ], RecordCodec.readValue( in ) );
+    }
+    Map<?, ?> restored = (Map<?, ?>) RecordCodec.readValue( in );
+    assertEquals( map.get( "list" ), restored.get( "list" ) );
+    assertTrue( Arrays.equals( (int[]) map.get( "array" ), (int[]) restored.get( "array" ) ) );
+    assertTrue( Arrays.equals( (Object[]) values[ 7 ], (Object[]) RecordCodec.readValue( in ) ) );
+  }
+
+  @Test
+  public void testUnlistedClassIsWrittenAsString() throws Exception {
+    Map<String, Object> map = new HashMap<String, Object>();
+    map.put( "key", new Payload() );
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream( bytes );
+    RecordCodec.writeValue( out, map );
+    out.close();
+
+    assertEquals( map.toString(), RecordCodec.readValue( ByteBuffer.wrap( bytes.toByteArray() ) ) );
+  }
+
+  @Test
+  public void testUnlistedClassIsNotRead() throws Exception {
+    // a serialized value written by something other than the codec, as a tampered graph file would hold it
+    ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+    ObjectOutputStream objects = new ObjectOutputStream( serialized );
+    objects.writeObject( new Payload() );
+    objects.close();
+    ByteBuffer in = ByteBuffer.allocate( serialized.size() + 5 );
+    in.put( (byte) 8 ).putInt( serialized.size() ).put( serialized.toByteArray() );
+    in.flip();
+
+    try {
+      RecordCodec.readValue( in );
+      fail( "The payload should have been rejected" );
+    } catch ( IOException e ) {
+      assertTrue( e instanceof InvalidClassException );
+    }
+    assertFalse( Payload.created );
+  }
+
+  @Test
+  public void testIsSerializable() throws Exception {
+    assertTrue( RecordCodec.isSerializable( "java.util.HashMap" ) );
+    assertTrue( RecordCodec.isSerializable( "[I" ) );
+    assertTrue( RecordCodec.isSerializable( "[[Ljava.lang.String;" ) );
+    assertTrue( RecordCodec.isSerializable( "[Ljava.lang.Object;" ) );
+    assertFalse( RecordCodec.isSerializable( "java.lang.Object" ) );
+    assertFalse( RecordCodec.isSerializable( Payload.class.getName() ) );
+    assertFalse( RecordCodec.isSerializable( "[L" + Payload.class.getName() + ";" ) );
+  }
+
+  private static class Payload implements Serializable {
+    private static boolean created;
+
+    private void readObject( java.io.ObjectInputStream in ) throws IOException, ClassNotFoundException {
+      created = true;
+      in.defaultReadObject();
+    }
+  }
+}
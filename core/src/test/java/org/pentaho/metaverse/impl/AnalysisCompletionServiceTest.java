@@ -0,0 +1,189 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.metaverse.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AnalysisCompletionServiceTest {
+
+  private MetaverseCompletionService service;
+
+  @Before
+  public void setUp() throws Exception {
+    service = new MetaverseCompletionService( new AnalysisExecutor( 2, 100, AnalysisExecutor.POLICY_BLOCK ) );
+  }
+
+  @Test
+  public void testProgress() throws Exception {
+    CountDownLatch release = new CountDownLatch( 1 );
+    service.submit( block( release ), "doc1" );
+    service.submit( new Callable<String>() {
+      @Override
+      public String call() throws Exception {
+        throw new IllegalStateException( "failed" );
+      }
+    } );
+    service.submit( new Runnable() {
+      @Override
+      public void run() {
+      }
+    }, "doc2" );
+
+    assertFalse( service.waitTillEmpty( 100, TimeUnit.MILLISECONDS ) );
+    AnalysisProgress progress = service.getProgress();
+    assertEquals( 3, progress.getSubmitted() );
+    assertEquals( 1, progress.getRunning() );
+    assertEquals( 0, progress.getQueued() );
+
+    release.countDown();
+    assertTrue( service.waitTillEmpty( 5, TimeUnit.SECONDS ) );
+    progress = service.getProgress();
+    assertEquals( 2, progress.getCompleted() );
+    assertEquals( 1, progress.getFailed() );
+    assertEquals( 0, progress.getRunning() );
+    // the tasks that are done were taken from the service
+    assertNull( service.poll() );
+  }
+
+  @Test
+  public void testCancel() throws Exception {
+    CountDownLatch release = new CountDownLatch( 1 );
+    Future<String> task = service.submit( block( release ), "doc1" );
+    assertTrue( service.cancel( "doc1", true ) );
+    assertTrue( task.isCancelled() );
+    assertFalse( service.cancel( "doc1", true ) );
+    assertFalse( service.cancel( "unknown", true ) );
+    assertFalse( service.cancel( null, true ) );
+
+    assertTrue( service.waitTillEmpty( 5, TimeUnit.SECONDS ) );
+    assertEquals( 1, service.getProgress().getCancelled() );
+    assertEquals( 0, service.getProgress().getCompleted() );
+  }
+
+  @Test
+  public void testTaskTimeout() throws Exception {
+    service.setTaskTimeout( -1 );
+    assertEquals( 0, service.getTaskTimeout() );
+    service.setTaskTimeout( 100 );
+    assertEquals( 100, service.getTaskTimeout() );
+
+    Future<String> task = service.submit( block( new CountDownLatch( 1 ) ), "slow" );
+    assertTrue( service.waitTillEmpty( 5, TimeUnit.SECONDS ) );
+    assertTrue( task.isCancelled() );
+    assertEquals( 1, service.getProgress().getFailed() );
+  }
+
+  @Test
+  public void testCancelledTaskIsDoneWhenItReturns() throws Exception {
+    CountDownLatch started = new CountDownLatch( 1 );
+    CountDownLatch release = new CountDownLatch( 1 );
+    Future<String> task = service.submit( ignoreInterrupts( started, release ), "doc1" );
+    started.await();
+    assertTrue( service.cancel( "doc1", true ) );
+    assertTrue( task.isCancelled() );
+
+    // the analysis ignores the interrupt, it still runs and the service is not empty
+    assertFalse( service.waitTillEmpty( 100, TimeUnit.MILLISECONDS ) );
+    assertEquals( 1, service.getProgress().getRunning() );
+    assertEquals( 0, service.getProgress().getCancelled() );
+
+    release.countDown();
+    assertTrue( service.waitTillEmpty( 5, TimeUnit.SECONDS ) );
+    assertEquals( 0, service.getProgress().getRunning() );
+    assertEquals( 1, service.getProgress().getCancelled() );
+  }
+
+  @Test
+  public void testCancelEverySubmissionOfAResult() throws Exception {
+    CountDownLatch release = new CountDownLatch( 1 );
+    Future<String> first = service.submit( block( release ), "doc1" );
+    Future<String> second = service.submit( block( release ), "doc1" );
+    assertTrue( service.cancel( "doc1", true ) );
+    assertTrue( first.isCancelled() );
+    assertTrue( second.isCancelled() );
+
+    assertTrue( service.waitTillEmpty( 5, TimeUnit.SECONDS ) );
+    assertEquals( 2, service.getProgress().getCancelled() );
+  }
+
+  @Test
+  public void testTake() throws Exception {
+    int tasks = 2000;
+    for ( int i = 0; i < tasks; i++ ) {
+      service.submit( new Runnable() {
+        @Override
+        public void run() {
+        }
+      }, "doc" + i );
+    }
+    for ( int i = 0; i < tasks; i++ ) {
+      service.take().get();
+    }
+    assertTrue( service.waitTillEmpty( 5, TimeUnit.SECONDS ) );
+    assertEquals( tasks, service.getProgress().getCompleted() );
+    assertNull( service.poll() );
+  }
+
+  private static Runnable ignoreInterrupts( final CountDownLatch started, final CountDownLatch release ) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        started.countDown();
+        boolean released = false;
+        while ( !released ) {
+          try {
+            release.await();
+            released = true;
+          } catch ( InterruptedException e ) {
+            // keeps running, like an analysis that does not check for interrupts
+          }
+        }
+      }
+    };
+  }
+
+  private static Runnable block( final CountDownLatch release ) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        try {
+          release.await();
+        } catch ( InterruptedException e ) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+  }
+}
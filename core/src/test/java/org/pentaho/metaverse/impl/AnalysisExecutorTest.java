@@ -0,0 +1,235 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.metaverse.impl;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AnalysisExecutorTest {
+
+  @Test
+  public void testConfiguration() throws Exception {
+    AnalysisExecutor executor = new AnalysisExecutor( 3, 10, "abort" );
+    assertEquals( 3, executor.getPoolSize() );
+    assertEquals( 10, executor.getQueueSize() );
+    assertEquals( AnalysisExecutor.POLICY_ABORT, executor.getRejectionPolicy() );
+
+    executor.setPoolSize( 0 );
+    assertTrue( executor.getPoolSize() >= 2 );
+    executor.setPoolSize( 1 );
+    assertEquals( 1, executor.getPoolSize() );
+    executor.setQueueSize( 0 );
+    assertEquals( 1, executor.getQueueSize() );
+    executor.setRejectionPolicy( "CALLERRUNS" );
+    assertEquals( AnalysisExecutor.POLICY_CALLER_RUNS, executor.getRejectionPolicy() );
+    executor.setRejectionPolicy( "unknown" );
+    assertEquals( AnalysisExecutor.POLICY_BLOCK, executor.getRejectionPolicy() );
+  }
+
+  @Test
+  public void testPriorities() throws Exception {
+    AnalysisExecutor executor = new AnalysisExecutor( 1, 100, AnalysisExecutor.POLICY_BLOCK );
+    CountDownLatch release = new CountDownLatch( 1 );
+    Future<?> blocker = block( executor, release );
+    List<String> order = Collections.synchronizedList( new ArrayList<String>() );
+
+    List<Future<?>> tasks = new ArrayList<Future<?>>();
+    tasks.add( record( executor, order, "background1", AnalysisExecutor.PRIORITY_BACKGROUND ) );
+    tasks.add( record( executor, order, "runtime", AnalysisExecutor.PRIORITY_RUNTIME ) );
+    tasks.add( record( executor, order, "background2", AnalysisExecutor.PRIORITY_BACKGROUND ) );
+    tasks.add( record( executor, order, "interactive", AnalysisExecutor.PRIORITY_INTERACTIVE ) );
+    release.countDown();
+    blocker.get( 5, TimeUnit.SECONDS );
+    for ( Future<?> task : tasks ) {
+      task.get( 5, TimeUnit.SECONDS );
+    }
+
+    // interactive requests first, then the lineage of executions, then the scans in the order they were submitted
+    assertEquals( "[interactive, runtime, background1, background2]", order.toString() );
+  }
+
+  @Test
+  public void testAbortWhenFull() throws Exception {
+    AnalysisExecutor executor = new AnalysisExecutor( 1, 2, AnalysisExecutor.POLICY_ABORT );
+    CountDownLatch release = new CountDownLatch( 1 );
+    block( executor, release );
+    List<String> order = Collections.synchronizedList( new ArrayList<String>() );
+    record( executor, order, "queued1", AnalysisExecutor.PRIORITY_BACKGROUND );
+    record( executor, order, "queued2", AnalysisExecutor.PRIORITY_BACKGROUND );
+    try {
+      record( executor, order, "rejected", AnalysisExecutor.PRIORITY_BACKGROUND );
+      fail( "the queue is full" );
+    } catch ( RejectedExecutionException e ) {
+      // expected
+    }
+    // interactive requests are never held back
+    Future<?> interactive = record( executor, order, "interactive", AnalysisExecutor.PRIORITY_INTERACTIVE );
+    release.countDown();
+    interactive.get( 5, TimeUnit.SECONDS );
+    assertFalse( order.contains( "rejected" ) );
+  }
+
+  @Test
+  public void testCallerRunsWhenFull() throws Exception {
+    AnalysisExecutor executor = new AnalysisExecutor( 1, 1, AnalysisExecutor.POLICY_CALLER_RUNS );
+    CountDownLatch release = new CountDownLatch( 1 );
+    block( executor, release );
+    final List<Thread> threads = Collections.synchronizedList( new ArrayList<Thread>() );
+    Runnable task = new Runnable() {
+      @Override
+      public void run() {
+        threads.add( Thread.currentThread() );
+      }
+    };
+    executor.execute( task );
+    executor.execute( task );
+    // the second task did not fit in the queue, it was run by the submitter
+    assertEquals( 1, threads.size() );
+    assertSame( Thread.currentThread(), threads.get( 0 ) );
+    release.countDown();
+  }
+
+  @Test
+  public void testBlockWhenFull() throws Exception {
+    final AnalysisExecutor executor = new AnalysisExecutor( 1, 1, AnalysisExecutor.POLICY_BLOCK );
+    CountDownLatch release = new CountDownLatch( 1 );
+    block( executor, release );
+    final List<String> order = Collections.synchronizedList( new ArrayList<String>() );
+    record( executor, order, "queued", AnalysisExecutor.PRIORITY_BACKGROUND );
+
+    final CountDownLatch submitted = new CountDownLatch( 1 );
+    Thread submitter = new Thread() {
+      @Override
+      public void run() {
+        record( executor, order, "waited", AnalysisExecutor.PRIORITY_BACKGROUND );
+        submitted.countDown();
+      }
+    };
+    submitter.start();
+    // the submitter waits until there is room in the queue
+    assertFalse( submitted.await( 200, TimeUnit.MILLISECONDS ) );
+    release.countDown();
+    assertTrue( submitted.await( 5, TimeUnit.SECONDS ) );
+    submitter.join();
+  }
+
+  @Test
+  public void testRuntimeTasksAreNotHeldBack() throws Exception {
+    AnalysisExecutor executor = new AnalysisExecutor( 1, 1, AnalysisExecutor.POLICY_BLOCK );
+    executor.setRuntimeReserve( 1 );
+    assertEquals( 1, executor.getRuntimeReserve() );
+    CountDownLatch release = new CountDownLatch( 1 );
+    block( executor, release );
+    List<String> order = Collections.synchronizedList( new ArrayList<String>() );
+    Future<?> queued = record( executor, order, "queued", AnalysisExecutor.PRIORITY_BACKGROUND );
+
+    // the queue is full, the task of an execution takes the reserve instead of blocking its submitter
+    Future<?> runtime = record( executor, order, "runtime", AnalysisExecutor.PRIORITY_RUNTIME );
+    try {
+      record( executor, order, "rejected", AnalysisExecutor.PRIORITY_RUNTIME );
+      fail( "the runtime reserve is full" );
+    } catch ( RejectedExecutionException e ) {
+      // expected, the submitter defers the analysis
+    }
+    release.countDown();
+    runtime.get( 5, TimeUnit.SECONDS );
+    queued.get( 5, TimeUnit.SECONDS );
+    assertEquals( "[runtime, queued]", order.toString() );
+  }
+
+  @Test
+  public void testBoundedThreads() throws Exception {
+    int poolSize = 4;
+    int documents = 500;
+    AnalysisExecutor executor = new AnalysisExecutor( poolSize, 100, AnalysisExecutor.POLICY_BLOCK );
+    MetaverseCompletionService completionService = new MetaverseCompletionService( executor );
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger peak = new AtomicInteger();
+
+    for ( int i = 0; i < documents; i++ ) {
+      completionService.submit( new Callable<String>() {
+        @Override
+        public String call() throws Exception {
+          int now = running.incrementAndGet();
+          synchronized ( peak ) {
+            peak.set( Math.max( peak.get(), now ) );
+          }
+          Thread.sleep( 1 );
+          running.decrementAndGet();
+          return "document";
+        }
+      } );
+    }
+    completionService.waitTillEmpty();
+
+    assertTrue( peak.get() <= poolSize );
+    assertEquals( 0, executor.getQueuedTasks() );
+  }
+
+  private static Future<?> block( AnalysisExecutor executor, final CountDownLatch release ) throws Exception {
+    final CountDownLatch started = new CountDownLatch( 1 );
+    Callable<Object> blocking = new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        started.countDown();
+        release.await( 10, TimeUnit.SECONDS );
+        return null;
+      }
+    };
+    AnalysisExecutor.PrioritizedTask<Object> blocker =
+      new AnalysisExecutor.PrioritizedTask<Object>( blocking, AnalysisExecutor.PRIORITY_INTERACTIVE );
+    executor.execute( blocker );
+    assertTrue( started.await( 5, TimeUnit.SECONDS ) );
+    return blocker;
+  }
+
+  private static Future<?> record( AnalysisExecutor executor, final List<String> order, final String name,
+    int priority ) {
+    Callable<Object> recording = new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        order.add( name );
+        return null;
+      }
+    };
+    AnalysisExecutor.PrioritizedTask<Object> task = new AnalysisExecutor.PrioritizedTask<Object>( recording, priority );
+    executor.execute( task );
+    return task;
+  }
+}
@@ -0,0 +1,253 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.metaverse.impl;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.pentaho.di.base.AbstractMeta;
+import org.pentaho.di.core.variables.VariableSpace;
+import org.pentaho.di.core.variables.Variables;
+import org.pentaho.di.job.JobMeta;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.dictionary.DictionaryConst;
+import org.pentaho.metaverse.api.IComponentDescriptor;
+import org.pentaho.metaverse.api.IDocument;
+import org.pentaho.metaverse.api.IDocumentAnalyzer;
+import org.pentaho.metaverse.api.ILineageWriter;
+import org.pentaho.metaverse.api.model.IExecutionProfile;
+import org.pentaho.metaverse.api.model.LineageHolder;
+import org.pentaho.metaverse.impl.model.ExecutionProfile;
+
+import java.io.File;
+import java.io.InputStream;
+import java.sql.Timestamp;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DeferredLineageAnalyzerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private DeferredLineageAnalyzer deferredAnalyzer;
+  private IDocumentAnalyzer transAnalyzer;
+  private IDocumentAnalyzer jobAnalyzer;
+  private ILineageWriter lineageWriter;
+  private TransMeta transMeta;
+  private JobMeta jobMeta;
+  private File queueFolder;
+  private AnalysisExecutor executor;
+
+  @Before
+  public void setUp() throws Exception {
+    executor = new AnalysisExecutor( 1, 10, AnalysisExecutor.POLICY_BLOCK );
+    transMeta = mock( TransMeta.class );
+    when( transMeta.getName() ).thenReturn( "trans" );
+    when( transMeta.getXML() ).thenReturn( "<transformation/>" );
+    jobMeta = mock( JobMeta.class );
+    when( jobMeta.getName() ).thenReturn( "job" );
+    when( jobMeta.getXML() ).thenReturn( "<job/>" );
+
+    deferredAnalyzer = new DeferredLineageAnalyzer() {
+      @Override
+      protected AbstractMeta loadMeta( boolean job, InputStream xml, VariableSpace variables ) {
+        return job ? jobMeta : transMeta;
+      }
+
+      @Override
+      protected AnalysisExecutor getExecutor() {
+        return executor;
+      }
+    };
+    queueFolder = new File( folder.getRoot(), "deferred" );
+    deferredAnalyzer.setQueueFolder( queueFolder.getPath() );
+    transAnalyzer = mock( IDocumentAnalyzer.class );
+    jobAnalyzer = mock( IDocumentAnalyzer.class );
+    lineageWriter = mock( ILineageWriter.class );
+    deferredAnalyzer.setTransformationAnalyzer( transAnalyzer );
+    deferredAnalyzer.setJobAnalyzer( jobAnalyzer );
+    deferredAnalyzer.setLineageWriter( lineageWriter );
+  }
+
+  @Test
+  public void testSetQueueFolder() throws Exception {
+    deferredAnalyzer.setQueueFolder( null );
+    assertEquals( new File( DeferredLineageAnalyzer.DEFAULT_QUEUE_FOLDER ).getPath(),
+      deferredAnalyzer.getQueueFolder() );
+    deferredAnalyzer.setQueueFolder( " " + queueFolder.getPath() + " " );
+    assertEquals( queueFolder.getPath(), deferredAnalyzer.getQueueFolder() );
+  }
+
+  @Test
+  public void testEnqueueAndProcess() throws Exception {
+    assertEquals( 0, deferredAnalyzer.getQueueSize() );
+    deferredAnalyzer.enqueue( createProfile( "/etl/trans.ktr", "trans", DictionaryConst.NODE_TYPE_TRANS ), transMeta );
+    assertEquals( 1, deferredAnalyzer.getQueueSize() );
+    // nothing is analyzed until the queue is processed
+    verify( transAnalyzer, never() ).analyze( any( IComponentDescriptor.class ), any( IDocument.class ) );
+
+    assertEquals( 1, deferredAnalyzer.processQueue() );
+    assertEquals( 0, deferredAnalyzer.getQueueSize() );
+    assertEquals( 0, queueFolder.list().length );
+
+    // the document is analyzed with the variables of the execution
+    verify( transMeta ).setVariable( "input.dir", "/data" );
+    ArgumentCaptor<IDocument> document = ArgumentCaptor.forClass( IDocument.class );
+    verify( transAnalyzer ).analyze( any( IComponentDescriptor.class ), document.capture() );
+    assertEquals( transMeta, document.getValue().getContent() );
+    assertEquals( "/etl/trans.ktr", document.getValue().getStringID() );
+    verify( jobAnalyzer, never() ).analyze( any( IComponentDescriptor.class ), any( IDocument.class ) );
+
+    // the graph is written where the runtime would have written it
+    ArgumentCaptor<LineageHolder> holder = ArgumentCaptor.forClass( LineageHolder.class );
+    verify( lineageWriter ).outputLineageGraph( holder.capture() );
+    IExecutionProfile profile = holder.getValue().getExecutionProfile();
+    assertEquals( "/etl/trans.ktr", profile.getPath() );
+    assertEquals( "/etl/trans.ktr", holder.getValue().getId() );
+    assertEquals( "trans", profile.getName() );
+    assertEquals( 1000L, profile.getExecutionData().getStartTime().getTime() );
+    assertEquals( "/data", profile.getExecutionData().getVariables().get( "input.dir" ) );
+    assertNotNull( holder.getValue().getMetaverseBuilder() );
+  }
+
+  @Test
+  public void testProcessJob() throws Exception {
+    deferredAnalyzer.enqueue( createProfile( "/etl/job.kjb", "job", DictionaryConst.NODE_TYPE_JOB ), jobMeta );
+    assertEquals( 1, deferredAnalyzer.processQueue() );
+    verify( jobAnalyzer ).analyze( any( IComponentDescriptor.class ), any( IDocument.class ) );
+    verify( transAnalyzer, never() ).analyze( any( IComponentDescriptor.class ), any( IDocument.class ) );
+    verify( lineageWriter ).outputLineageGraph( any( LineageHolder.class ) );
+  }
+
+  @Test
+  public void testProcessFailed() throws Exception {
+    deferredAnalyzer.enqueue( createProfile( "/etl/trans.ktr", "trans", DictionaryConst.NODE_TYPE_TRANS ), transMeta );
+    doThrow( new RuntimeException( "analysis failed" ) ).when( transAnalyzer )
+      .analyze( any( IComponentDescriptor.class ), any( IDocument.class ) );
+
+    assertEquals( 0, deferredAnalyzer.processQueue() );
+    verify( lineageWriter, never() ).outputLineageGraph( any( LineageHolder.class ) );
+    // the entry is kept aside, it is not processed again
+    assertEquals( 0, deferredAnalyzer.getQueueSize() );
+    String[] failed = queueFolder.list();
+    assertEquals( 2, failed.length );
+    boolean kept = false;
+    for ( String name : failed ) {
+      kept |= name.endsWith( DeferredLineageAnalyzer.FAILED_EXTENSION );
+    }
+    assertTrue( kept );
+    assertEquals( 0, deferredAnalyzer.processQueue() );
+  }
+
+  @Test
+  public void testProcessClaimed() throws Exception {
+    deferredAnalyzer.enqueue( createProfile( "/etl/trans.ktr", "trans", DictionaryConst.NODE_TYPE_TRANS ), transMeta );
+    // another node claims the entry
+    for ( File entry : queueFolder.listFiles() ) {
+      if ( entry.getName().endsWith( DeferredLineageAnalyzer.ENTRY_EXTENSION ) ) {
+        String name = entry.getName();
+        assertTrue( entry.renameTo( new File( queueFolder, name.substring( 0,
+          name.length() - DeferredLineageAnalyzer.ENTRY_EXTENSION.length() ) + DeferredLineageAnalyzer.CLAIMED_EXTENSION
+        ) ) );
+      }
+    }
+    assertEquals( 0, deferredAnalyzer.processQueue() );
+    verify( transAnalyzer, never() ).analyze( any( IComponentDescriptor.class ), any( IDocument.class ) );
+  }
+
+  @Test
+  public void testProcessNoAnalyzer() throws Exception {
+    deferredAnalyzer.setJobAnalyzer( null );
+    deferredAnalyzer.enqueue( createProfile( "/etl/job.kjb", "job", DictionaryConst.NODE_TYPE_JOB ), jobMeta );
+    assertEquals( 0, deferredAnalyzer.processQueue() );
+    assertFalse( queueFolder.list().length == 0 );
+    verify( lineageWriter, never() ).outputLineageGraph( any( LineageHolder.class ) );
+  }
+
+  @Test
+  public void testEnqueueVariableSpace() throws Exception {
+    VariableSpace variables = new Variables();
+    variables.setVariable( "input.dir", "/ignored" );
+    variables.setVariable( "output.dir", "/out" );
+    deferredAnalyzer.enqueue( createProfile( "/etl/trans.ktr", "trans", DictionaryConst.NODE_TYPE_TRANS ), transMeta,
+      variables );
+    assertEquals( 1, deferredAnalyzer.processQueue() );
+    // the variables of the execution are kept, those of the profile win
+    verify( transMeta ).setVariable( "output.dir", "/out" );
+    verify( transMeta ).setVariable( "input.dir", "/data" );
+    verify( transMeta, never() ).setVariable( "input.dir", "/ignored" );
+  }
+
+  @Test
+  public void testRequeueAbandonedClaim() throws Exception {
+    deferredAnalyzer.enqueue( createProfile( "/etl/trans.ktr", "trans", DictionaryConst.NODE_TYPE_TRANS ), transMeta );
+    File claimed = null;
+    for ( File entry : queueFolder.listFiles() ) {
+      if ( entry.getName().endsWith( DeferredLineageAnalyzer.ENTRY_EXTENSION ) ) {
+        String name = entry.getName();
+        claimed = new File( queueFolder, name.substring( 0,
+          name.length() - DeferredLineageAnalyzer.ENTRY_EXTENSION.length() ) + DeferredLineageAnalyzer.CLAIMED_EXTENSION );
+        assertTrue( entry.renameTo( claimed ) );
+      }
+    }
+    assertNotNull( claimed );
+    // the node that claimed it stopped two hours ago
+    assertTrue( claimed.setLastModified( System.currentTimeMillis() - 2L * 60L * 60L * 1000L ) );
+
+    assertEquals( 1, deferredAnalyzer.processQueue() );
+    verify( transAnalyzer ).analyze( any( IComponentDescriptor.class ), any( IDocument.class ) );
+    assertEquals( 0, queueFolder.list().length );
+  }
+
+  @Test
+  public void testProcessQueueAsync() throws Exception {
+    deferredAnalyzer.enqueue( createProfile( "/etl/trans.ktr", "trans", DictionaryConst.NODE_TYPE_TRANS ), transMeta );
+    Future<Integer> processing = deferredAnalyzer.processQueueAsync();
+    assertEquals( 1, processing.get( 10, TimeUnit.SECONDS ).intValue() );
+    verify( lineageWriter ).outputLineageGraph( any( LineageHolder.class ) );
+    // a processing that is over is not handed out again
+    assertFalse( processing == deferredAnalyzer.processQueueAsync() );
+  }
+
+  private static ExecutionProfile createProfile( String path, String name, String type ) {
+    ExecutionProfile profile = new ExecutionProfile( name, path, type, null );
+    profile.getExecutionData().setStartTime( new Timestamp( 1000L ) );
+    profile.getExecutionData().getVariables().put( "input.dir", "/data" );
+    return profile;
+  }
+}
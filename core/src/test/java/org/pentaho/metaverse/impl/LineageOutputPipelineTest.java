@@ -0,0 +1,220 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.metaverse.impl;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LineageOutputPipelineTest {
+
+  @Test
+  public void testConfiguration() throws Exception {
+    LineageOutputPipeline pipeline = new LineageOutputPipeline( 3, 10, "PROFILEONLY" );
+    assertEquals( 3, pipeline.getPoolSize() );
+    assertEquals( 10, pipeline.getQueueSize() );
+    assertEquals( LineageOutputPipeline.POLICY_PROFILE_ONLY, pipeline.getOverflowPolicy() );
+
+    pipeline.setPoolSize( 0 );
+    assertEquals( 1, pipeline.getPoolSize() );
+    pipeline.setPoolSize( 5 );
+    assertEquals( 5, pipeline.getPoolSize() );
+    pipeline.setQueueSize( 0 );
+    assertEquals( 1, pipeline.getQueueSize() );
+    pipeline.setOverflowPolicy( "unknown" );
+    assertEquals( LineageOutputPipeline.POLICY_BLOCK, pipeline.getOverflowPolicy() );
+    pipeline.setShutdownTimeout( -1L );
+    assertEquals( 0L, pipeline.getShutdownTimeout() );
+    pipeline.shutdown();
+  }
+
+  @Test
+  public void testProfileOnlyWhenFull() throws Exception {
+    LineageOutputPipeline pipeline = new LineageOutputPipeline( 1, 1, LineageOutputPipeline.POLICY_PROFILE_ONLY );
+    CountDownLatch release = new CountDownLatch( 1 );
+    block( pipeline, release );
+    final List<String> written = Collections.synchronizedList( new ArrayList<String>() );
+    final List<Thread> threads = Collections.synchronizedList( new ArrayList<Thread>() );
+    pipeline.submit( "queued", record( written, threads, "queued" ), record( written, threads, "queued profile" ) );
+    pipeline.submit( "full", record( written, threads, "full" ), record( written, threads, "full profile" ) );
+
+    // only the profile of the output that did not fit in the queue was written, right away, by the submitter
+    assertEquals( "[full profile]", written.toString() );
+    assertSame( Thread.currentThread(), threads.get( 0 ) );
+    assertEquals( 1, pipeline.getQueueDepth() );
+    assertEquals( 1, pipeline.getProfileOnlyCount() );
+
+    release.countDown();
+    assertTrue( pipeline.flush( 5, TimeUnit.SECONDS ) );
+    assertEquals( "[full profile, queued]", written.toString() );
+    pipeline.shutdown();
+  }
+
+  @Test
+  public void testBlockWhenFull() throws Exception {
+    final LineageOutputPipeline pipeline = new LineageOutputPipeline( 1, 1, LineageOutputPipeline.POLICY_BLOCK );
+    CountDownLatch release = new CountDownLatch( 1 );
+    block( pipeline, release );
+    final List<String> written = Collections.synchronizedList( new ArrayList<String>() );
+    final List<Thread> threads = Collections.synchronizedList( new ArrayList<Thread>() );
+    pipeline.submit( "queued", record( written, threads, "queued" ), record( written, threads, "queued profile" ) );
+
+    final CountDownLatch submitted = new CountDownLatch( 1 );
+    Thread submitter = new Thread() {
+      @Override
+      public void run() {
+        pipeline.submit( "waited", record( written, threads, "waited" ), record( written, threads, "waited profile" ) );
+        submitted.countDown();
+      }
+    };
+    submitter.start();
+    // the submitter waits until there is room in the queue
+    assertFalse( submitted.await( 200, TimeUnit.MILLISECONDS ) );
+    release.countDown();
+    assertTrue( submitted.await( 5, TimeUnit.SECONDS ) );
+    submitter.join();
+    assertTrue( pipeline.flush( 5, TimeUnit.SECONDS ) );
+    assertEquals( "[queued, waited]", written.toString() );
+    assertEquals( 0, pipeline.getProfileOnlyCount() );
+    pipeline.shutdown();
+  }
+
+  @Test
+  public void testShutdownFlushes() throws Exception {
+    LineageOutputPipeline pipeline = new LineageOutputPipeline( 1, 10, LineageOutputPipeline.POLICY_BLOCK );
+    final List<String> written = Collections.synchronizedList( new ArrayList<String>() );
+    final List<Thread> threads = Collections.synchronizedList( new ArrayList<Thread>() );
+    for ( int i = 0; i < 5; i++ ) {
+      pipeline.submit( "output" + i, sleep( record( written, threads, "output" + i ) ), null );
+    }
+    pipeline.shutdown();
+    // the queued outputs were written before the pipeline stopped
+    assertEquals( 5, written.size() );
+    assertEquals( 0, pipeline.getQueueDepth() );
+    assertEquals( 0, pipeline.getActiveWrites() );
+    assertEquals( 5, pipeline.getWrittenCount() );
+    assertTrue( pipeline.getMaxWriteMillis() >= pipeline.getAverageWriteMillis() );
+
+    // the outputs submitted afterwards are written by the submitter
+    pipeline.submit( "late", record( written, threads, "late" ), null );
+    assertEquals( "late", written.get( 5 ) );
+    assertSame( Thread.currentThread(), threads.get( 5 ) );
+  }
+
+  @Test
+  public void testFailedOutput() throws Exception {
+    LineageOutputPipeline pipeline = new LineageOutputPipeline( 1, 10, LineageOutputPipeline.POLICY_BLOCK );
+    pipeline.submit( "failed", new Runnable() {
+      @Override
+      public void run() {
+        throw new IllegalStateException( "disk full" );
+      }
+    }, null );
+    assertTrue( pipeline.flush( 5, TimeUnit.SECONDS ) );
+    assertEquals( 1, pipeline.getWrittenCount() );
+    pipeline.shutdown();
+  }
+
+  @Test
+  public void testBoundedThreads() throws Exception {
+    int poolSize = 2;
+    int executions = 2000;
+    LineageOutputPipeline pipeline = new LineageOutputPipeline( poolSize, 100, LineageOutputPipeline.POLICY_BLOCK );
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger peak = new AtomicInteger();
+    final AtomicInteger maxDepth = new AtomicInteger();
+
+    for ( int i = 0; i < executions; i++ ) {
+      pipeline.submit( "execution" + i, new Runnable() {
+        @Override
+        public void run() {
+          int now = running.incrementAndGet();
+          synchronized ( peak ) {
+            peak.set( Math.max( peak.get(), now ) );
+          }
+          running.decrementAndGet();
+        }
+      }, null );
+      int depth = pipeline.getQueueDepth();
+      synchronized ( maxDepth ) {
+        maxDepth.set( Math.max( maxDepth.get(), depth ) );
+      }
+    }
+    assertTrue( pipeline.flush( 10, TimeUnit.SECONDS ) );
+    assertTrue( peak.get() <= poolSize );
+    assertTrue( maxDepth.get() <= 100 );
+    assertEquals( executions, pipeline.getWrittenCount() );
+    pipeline.shutdown();
+  }
+
+  private static void block( LineageOutputPipeline pipeline, final CountDownLatch release ) throws Exception {
+    final CountDownLatch started = new CountDownLatch( 1 );
+    pipeline.submit( "blocker", new Runnable() {
+      @Override
+      public void run() {
+        started.countDown();
+        try {
+          release.await( 10, TimeUnit.SECONDS );
+        } catch ( InterruptedException e ) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }, null );
+    assertTrue( started.await( 5, TimeUnit.SECONDS ) );
+  }
+
+  private static Runnable record( final List<String> written, final List<Thread> threads, final String name ) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        written.add( name );
+        threads.add( Thread.currentThread() );
+      }
+    };
+  }
+
+  private static Runnable sleep( final Runnable output ) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep( 10 );
+        } catch ( InterruptedException e ) {
+          Thread.currentThread().interrupt();
+        }
+        output.run();
+      }
+    };
+  }
+}
@@ -0,0 +1,170 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.metaverse.impl;
+
+import com.tinkerpop.blueprints.Graph;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.pentaho.dictionary.MetaverseLink;
+import org.pentaho.dictionary.MetaverseTransientNode;
+import org.pentaho.metaverse.api.IMetaverseBuilder;
+import org.pentaho.metaverse.api.IMetaverseLink;
+import org.pentaho.metaverse.api.IMetaverseNode;
+import org.pentaho.metaverse.api.IMetaverseObjectFactory;
+import org.pentaho.metaverse.api.MetaverseObjectFactory;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.*;
+
+@RunWith( MockitoJUnitRunner.class )
+public class MetaverseBatchBuilderTest {
+
+  @Mock IMetaverseBuilder delegate;
+  @Mock Graph graph;
+
+  MetaverseBatchBuilder batchBuilder;
+  MetaverseTransientNode from;
+  MetaverseTransientNode to;
+
+  @Before
+  public void setUp() throws Exception {
+    when( delegate.getMetaverseObjectFactory() ).thenReturn( new MetaverseObjectFactory() );
+    batchBuilder = new MetaverseBatchBuilder( delegate );
+    from = new MetaverseTransientNode( "from" );
+    from.setName( "from" );
+    to = new MetaverseTransientNode( "to" );
+    to.setName( "to" );
+  }
+
+  @Test
+  public void testAddsAreBufferedUntilCommit() throws Exception {
+    batchBuilder.addNode( from );
+    batchBuilder.addNode( to );
+    batchBuilder.addLink( from, "uses", to );
+    verify( delegate, never() ).addNode( any( IMetaverseNode.class ) );
+    verify( delegate, never() ).addLink( any( IMetaverseLink.class ) );
+    verify( delegate, never() ).addAll( anyCollectionOf( IMetaverseNode.class ),
+      anyCollectionOf( IMetaverseLink.class ) );
+
+    assertSame( delegate, batchBuilder.commit() );
+    assertTrue( batchBuilder.isCommitted() );
+    ArgumentCaptor<Collection> links = ArgumentCaptor.forClass( Collection.class );
+    verify( delegate ).addAll( eq( Arrays.<IMetaverseNode>asList( from, to ) ), links.capture() );
+    assertEquals( 1, links.getValue().size() );
+    IMetaverseLink link = (IMetaverseLink) links.getValue().iterator().next();
+    assertSame( from, link.getFromNode() );
+    assertEquals( "uses", link.getLabel() );
+    assertSame( to, link.getToNode() );
+  }
+
+  @Test
+  public void testCommit_empty() throws Exception {
+    batchBuilder.commit();
+    verify( delegate, never() ).addAll( anyCollectionOf( IMetaverseNode.class ),
+      anyCollectionOf( IMetaverseLink.class ) );
+  }
+
+  @Test
+  public void testPassThroughAfterCommit() throws Exception {
+    batchBuilder.commit();
+    IMetaverseLink link = new MetaverseLink( from, "uses", to );
+    batchBuilder.addNode( from );
+    batchBuilder.addLink( link );
+    Collection<IMetaverseNode> nodes = Collections.<IMetaverseNode>singletonList( to );
+    batchBuilder.addAll( nodes, null );
+    verify( delegate ).addNode( from );
+    verify( delegate ).addLink( link );
+    verify( delegate ).addAll( nodes, null );
+  }
+
+  @Test
+  public void testAddAll_buffered() throws Exception {
+    batchBuilder.addAll( Collections.<IMetaverseNode>singletonList( from ), null );
+    batchBuilder.addAll( null, null );
+    batchBuilder.addNode( null );
+    batchBuilder.addLink( (IMetaverseLink) null );
+    batchBuilder.commit();
+    verify( delegate ).addAll( eq( Collections.<IMetaverseNode>singletonList( from ) ),
+      eq( Collections.<IMetaverseLink>emptyList() ) );
+  }
+
+  @Test
+  public void testNonAddOperationsFlushFirst() throws Exception {
+    IMetaverseLink link = new MetaverseLink( from, "uses", to );
+
+    batchBuilder.addNode( from );
+    batchBuilder.updateNode( from );
+    verify( delegate ).addAll( eq( Collections.<IMetaverseNode>singletonList( from ) ),
+      eq( Collections.<IMetaverseLink>emptyList() ) );
+    verify( delegate ).updateNode( from );
+
+    batchBuilder.deleteNode( from );
+    batchBuilder.deleteLink( link );
+    batchBuilder.updateLinkLabel( link, "new" );
+    verify( delegate ).deleteNode( from );
+    verify( delegate ).deleteLink( link );
+    verify( delegate ).updateLinkLabel( link, "new" );
+    // nothing new was buffered, so nothing else was flushed
+    verify( delegate, times( 1 ) ).addAll( anyCollectionOf( IMetaverseNode.class ),
+      anyCollectionOf( IMetaverseLink.class ) );
+    assertFalse( batchBuilder.isCommitted() );
+  }
+
+  @Test
+  public void testDelegateMethods() throws Exception {
+    assertSame( delegate, batchBuilder.getDelegate() );
+
+    when( delegate.getGraph() ).thenReturn( graph );
+    assertSame( graph, batchBuilder.getGraph() );
+    batchBuilder.setGraph( graph );
+    verify( delegate ).setGraph( graph );
+
+    IMetaverseObjectFactory factory = mock( IMetaverseObjectFactory.class );
+    batchBuilder.setMetaverseObjectFactory( factory );
+    verify( delegate ).setMetaverseObjectFactory( factory );
+  }
+
+  @Test
+  public void testBatchIsAppliedToGraph() throws Exception {
+    MetaverseBuilder metaverseBuilder = new MetaverseBuilder( new TinkerGraph() );
+    batchBuilder = new MetaverseBatchBuilder( metaverseBuilder );
+    batchBuilder.addNode( from );
+    batchBuilder.addLink( from, "uses", to );
+    assertNull( metaverseBuilder.getGraph().getVertex( "from" ) );
+
+    batchBuilder.commit();
+    assertNotNull( metaverseBuilder.getGraph().getVertex( "from" ) );
+    assertNotNull( metaverseBuilder.getGraph().getVertex( "to" ) );
+  }
+}
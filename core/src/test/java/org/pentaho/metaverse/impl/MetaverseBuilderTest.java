@@ -36,9 +36,22 @@ import org.pentaho.metaverse.api.IDocument;
 import org.pentaho.metaverse.api.IMetaverseLink;
 import org.pentaho.metaverse.api.IMetaverseNode;
 import org.pentaho.metaverse.api.IMetaverseObjectFactory;
+import org.pentaho.metaverse.graph.SynchronizedGraph;
+import org.pentaho.metaverse.graph.SynchronizedGraphFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -556,4 +569,205 @@ public class MetaverseBuilderTest {
     Vertex newVertex = builder.getVertexForNode( node );
     assertEquals( vertex, newVertex );
   }
+
+  @Test
+  public void testAddAll() {
+    MetaverseTransientNode node2 = new MetaverseTransientNode( "node2" );
+    node2.setName( "node2 name" );
+    node2.setType( "test type" );
+    MetaverseTransientNode virtualNode = new MetaverseTransientNode( "virtual" );
+    virtualNode.setName( "virtual name" );
+
+    // a second node object that is logically the same as the first one
+    MetaverseTransientNode sameAsNode = new MetaverseTransientNode( "another id" );
+    sameAsNode.setName( node.getName() );
+    sameAsNode.setType( node.getType() );
+    sameAsNode.setProperty( "extra", "value" );
+
+    List<IMetaverseNode> nodes = Arrays.<IMetaverseNode>asList( node, node2, sameAsNode, node );
+    List<IMetaverseLink> links = Arrays.<IMetaverseLink>asList(
+      new MetaverseLink( node, "uses", node2 ),
+      new MetaverseLink( sameAsNode, "uses", virtualNode ),
+      new MetaverseLink( node, "uses", node2 ) );
+
+    builder.addAll( nodes, links );
+
+    Vertex v1 = graph.getVertex( "node1" );
+    Vertex v2 = graph.getVertex( "node2" );
+    Vertex virtual = graph.getVertex( "virtual" );
+    assertNull( graph.getVertex( "another id" ) );
+    assertEquals( "value", v1.getProperty( "extra" ) );
+    assertFalse( (Boolean) v1.getProperty( DictionaryConst.NODE_VIRTUAL ) );
+    assertFalse( (Boolean) v2.getProperty( DictionaryConst.NODE_VIRTUAL ) );
+    assertTrue( (Boolean) virtual.getProperty( DictionaryConst.NODE_VIRTUAL ) );
+
+    int count = 0;
+    for ( Edge e : v1.getEdges( Direction.OUT, "uses" ) ) {
+      count++;
+    }
+    assertEquals( 2, count );
+    assertNotNull( graph.getEdge( builder.getEdgeId( v1, "uses", v2 ) ) );
+    assertNotNull( graph.getEdge( builder.getEdgeId( v1, "uses", virtual ) ) );
+  }
+
+  @Test
+  public void testAddAll_nulls() {
+    builder.addAll( null, null );
+    assertNull( graph.getVertex( node.getStringID() ) );
+  }
+
+  @Test
+  public void testAddAll_synchronizedGraph() {
+    Map<String, String> config = new HashMap<String, String>();
+    config.put( "blueprints.graph", "com.tinkerpop.blueprints.impls.tg.TinkerGraph" );
+    SynchronizedGraph synchronizedGraph = spy( (SynchronizedGraph) SynchronizedGraphFactory.open( config ) );
+    builder.setGraph( synchronizedGraph );
+    builder.addAll( Collections.<IMetaverseNode>singletonList( node ), null );
+    verify( synchronizedGraph ).executeInLock( any( Runnable.class ) );
+    assertNotNull( synchronizedGraph.getVertex( node.getStringID() ) );
+  }
+
+  @Test
+  public void testAddNode_copiesOnlyDirtyProperties() {
+    CountingBuilder countingBuilder = new CountingBuilder( graph );
+    node.setProperty( "a", "1" );
+    countingBuilder.addNode( node );
+    Vertex v = graph.getVertex( node.getStringID() );
+    assertEquals( "1", v.getProperty( "a" ) );
+
+    // re-adding an unchanged node copies nothing
+    countingBuilder.writes = 0;
+    countingBuilder.addNode( node );
+    assertEquals( 0, countingBuilder.writes );
+
+    node.setProperty( "a", "2" );
+    countingBuilder.addNode( node );
+    assertEquals( 1, countingBuilder.writes );
+    assertEquals( "2", v.getProperty( "a" ) );
+    assertEquals( "node1 name", v.getProperty( DictionaryConst.PROPERTY_NAME ) );
+  }
+
+  @Test
+  public void testAddNode_copiesAllPropertiesToAnotherVertex() {
+    CountingBuilder countingBuilder = new CountingBuilder( graph );
+    countingBuilder.addNode( node );
+    countingBuilder.deleteNode( node );
+
+    // the vertex is new, so every property is copied even though the node has not changed
+    countingBuilder.addNode( node );
+    Vertex v = graph.getVertex( node.getStringID() );
+    assertEquals( "node1 name", v.getProperty( DictionaryConst.PROPERTY_NAME ) );
+    assertEquals( "test type", v.getProperty( DictionaryConst.PROPERTY_TYPE ) );
+
+    countingBuilder.setGraph( new TinkerGraph() );
+    countingBuilder.addNode( node );
+    v = countingBuilder.getGraph().getVertex( node.getStringID() );
+    assertEquals( "node1 name", v.getProperty( DictionaryConst.PROPERTY_NAME ) );
+  }
+
+  @Test
+  public void testAddNode_changesSeenByEachBuilder() {
+    Graph otherGraph = new TinkerGraph();
+    CountingBuilder builderA = new CountingBuilder( graph );
+    CountingBuilder builderB = new CountingBuilder( otherGraph );
+    builderA.addNode( node );
+
+    // builder B copying the change must not hide it from builder A
+    node.setProperty( "a", "1" );
+    builderB.addNode( node );
+    builderA.writes = 0;
+    builderA.addNode( node );
+    assertEquals( 1, builderA.writes );
+    assertEquals( "1", graph.getVertex( node.getStringID() ).getProperty( "a" ) );
+    assertEquals( "1", otherGraph.getVertex( node.getStringID() ).getProperty( "a" ) );
+
+    builderB.writes = 0;
+    builderB.addNode( node );
+    assertEquals( 0, builderB.writes );
+  }
+
+  @Test
+  public void testPropertyWritesPerStep() {
+    int steps = 200;
+    int fields = 20;
+    CountingBuilder allKeysBuilder = new CountingBuilder( new TinkerGraph() ) {
+      @Override
+      protected Collection<String> getPropertyKeysToCopy( IMetaverseNode node, Vertex v ) {
+        return node.getPropertyKeys();
+      }
+    };
+    CountingBuilder dirtyKeysBuilder = new CountingBuilder( new TinkerGraph() );
+    analyzeSteps( allKeysBuilder, steps, fields );
+    analyzeSteps( dirtyKeysBuilder, steps, fields );
+
+    assertTrue( dirtyKeysBuilder.writes < allKeysBuilder.writes / 2 );
+    assertEquals( count( allKeysBuilder.getGraph().getVertices() ),
+      count( dirtyKeysBuilder.getGraph().getVertices() ) );
+  }
+
+  /**
+   * Adds the nodes and links of a step the way a step analyzer does: the input and output fields are linked to the
+   * step, then each output field is linked to the input field it derives from and updated with the operations on it
+   */
+  private void analyzeSteps( MetaverseBuilder metaverseBuilder, int steps, int fields ) {
+    for ( int s = 0; s < steps; s++ ) {
+      MetaverseTransientNode step = new MetaverseTransientNode( "step" + s );
+      step.setName( "step" + s );
+      step.setType( DictionaryConst.NODE_TYPE_TRANS_STEP );
+      step.setProperty( DictionaryConst.PROPERTY_STEP_TYPE, "Select values" );
+      step.setProperty( DictionaryConst.PROPERTY_PLUGIN_ID, "SelectValues" );
+      metaverseBuilder.addNode( step );
+
+      List<MetaverseTransientNode> inputs = new ArrayList<MetaverseTransientNode>();
+      List<MetaverseTransientNode> outputs = new ArrayList<MetaverseTransientNode>();
+      for ( int f = 0; f < fields; f++ ) {
+        MetaverseTransientNode input = createStepField( "in" + f, "step" + s + "-in" );
+        metaverseBuilder.addLink( input, DictionaryConst.LINK_INPUTS, step );
+        inputs.add( input );
+        MetaverseTransientNode output = createStepField( "out" + f, "step" + s );
+        metaverseBuilder.addLink( step, DictionaryConst.LINK_OUTPUTS, output );
+        outputs.add( output );
+      }
+      for ( int f = 0; f < fields; f++ ) {
+        metaverseBuilder.addLink( inputs.get( f ), DictionaryConst.LINK_DERIVES, outputs.get( f ) );
+        outputs.get( f ).setProperty( DictionaryConst.PROPERTY_OPERATIONS, "{\"metadata\":[\"rename\"]}" );
+        metaverseBuilder.updateNode( outputs.get( f ) );
+        metaverseBuilder.addLink( step, DictionaryConst.LINK_USES, outputs.get( f ) );
+      }
+    }
+  }
+
+  private MetaverseTransientNode createStepField( String name, String namespace ) {
+    MetaverseTransientNode field = new MetaverseTransientNode( namespace + "~" + name );
+    field.setName( name );
+    field.setType( DictionaryConst.NODE_TYPE_TRANS_FIELD );
+    field.setProperty( DictionaryConst.PROPERTY_NAMESPACE, namespace );
+    field.setProperty( DictionaryConst.PROPERTY_KETTLE_TYPE, "String" );
+    return field;
+  }
+
+  private static int count( Iterable<?> elements ) {
+    int count = 0;
+    for ( Object ignored : elements ) {
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Counts the properties copied from nodes and links to the graph
+   */
+  private static class CountingBuilder extends MetaverseBuilder {
+    int writes;
+
+    CountingBuilder( Graph graph ) {
+      super( graph );
+    }
+
+    @Override
+    protected Object encodePropertyValue( String key, Object value ) {
+      writes++;
+      return super.encodePropertyValue( key, value );
+    }
+  }
 }
@@ -126,6 +126,36 @@ public class ExecutionDataTest {
     assertEquals( executionData.getExternalResources().get( "testStep" ).size(), 1 );
   }
 
+  @Test
+  public void testAddExternalResource_concurrent() throws Exception {
+    final int steps = 4;
+    final int resources = 500;
+    List<Thread> threads = new ArrayList<Thread>();
+    for ( int t = 0; t < steps * 2; t++ ) {
+      // two threads (copies) per step
+      final String stepName = "step" + ( t % steps );
+      Thread thread = new Thread( new Runnable() {
+        @Override
+        public void run() {
+          for ( int i = 0; i < resources; i++ ) {
+            BaseResourceInfo resource = new BaseResourceInfo();
+            resource.setName( "resource" + i );
+            executionData.addExternalResource( stepName, resource );
+          }
+        }
+      } );
+      thread.start();
+      threads.add( thread );
+    }
+    for ( Thread thread : threads ) {
+      thread.join();
+    }
+    assertEquals( steps, executionData.getExternalResources().size() );
+    for ( List<IExternalResourceInfo> stepResources : executionData.getExternalResources().values() ) {
+      assertEquals( resources, stepResources.size() );
+    }
+  }
+
   @Test
   public void testAddExternalResource() {
     IExternalResourceInfo externalResource = new BaseResourceInfo();
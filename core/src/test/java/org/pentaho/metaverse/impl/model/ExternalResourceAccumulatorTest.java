@@ -0,0 +1,167 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.metaverse.impl.model;
+
+import org.junit.Test;
+import org.pentaho.metaverse.api.model.BaseResourceInfo;
+import org.pentaho.metaverse.api.model.IExternalResourceInfo;
+import org.pentaho.metaverse.api.model.WebServiceResourceInfo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ExternalResourceAccumulatorTest {
+
+  @Test
+  public void testAdd() throws Exception {
+    ExternalResourceAccumulator accumulator = new ExternalResourceAccumulator( "REST client", 10 );
+    assertTrue( accumulator.add( createWebResource( "http://example.com/a", "1" ) ) );
+    assertFalse( accumulator.add( createWebResource( "http://example.com/a", "1" ) ) );
+    assertTrue( accumulator.add( createWebResource( "http://example.com/a", "2" ) ) );
+    assertTrue( accumulator.add( createWebResource( "http://example.com/b", "1" ) ) );
+    assertTrue( accumulator.add( createFileResource( "/tmp/a.txt", true ) ) );
+    assertTrue( accumulator.add( createFileResource( "/tmp/a.txt", false ) ) );
+    assertFalse( accumulator.add( null ) );
+
+    assertEquals( 5, accumulator.size() );
+    assertEquals( "http://example.com/a", accumulator.get( 0 ).getName() );
+    assertEquals( 1, accumulator.getDuplicateCount() );
+    assertEquals( 0, accumulator.getOverflowCount() );
+    assertEquals( "REST client", accumulator.getStepName() );
+
+    accumulator.clear();
+    assertTrue( accumulator.isEmpty() );
+    assertTrue( accumulator.add( createWebResource( "http://example.com/a", "1" ) ) );
+  }
+
+  @Test
+  public void testMaxResources() throws Exception {
+    ExternalResourceAccumulator accumulator = new ExternalResourceAccumulator( "Text file output", 3 );
+    assertEquals( 3, accumulator.getMaxResources() );
+    for ( int i = 0; i < 10; i++ ) {
+      accumulator.add( createFileResource( "/tmp/file" + i + ".txt", false ) );
+    }
+    accumulator.add( createFileResource( "/tmp/file0.txt", false ) );
+
+    assertEquals( 3, accumulator.size() );
+    assertEquals( 7, accumulator.getOverflowCount() );
+    assertEquals( 1, accumulator.getDuplicateCount() );
+    assertEquals( ExternalResourceAccumulator.DEFAULT_MAX_RESOURCES,
+      new ExternalResourceAccumulator( "step" ).getMaxResources() );
+  }
+
+  @Test
+  public void testForStep() throws Exception {
+    Map<String, List<IExternalResourceInfo>> resourceMap = new HashMap<String, List<IExternalResourceInfo>>();
+    List<IExternalResourceInfo> recorded = new LinkedList<IExternalResourceInfo>();
+    recorded.add( createFileResource( "/tmp/a.txt", true ) );
+    recorded.add( createFileResource( "/tmp/a.txt", true ) );
+    resourceMap.put( "step", recorded );
+
+    ExternalResourceAccumulator accumulator = ExternalResourceAccumulator.forStep( resourceMap, "step" );
+    assertSame( accumulator, resourceMap.get( "step" ) );
+    assertSame( accumulator, ExternalResourceAccumulator.forStep( resourceMap, "step" ) );
+    assertEquals( 1, accumulator.size() );
+    assertEquals( 0, ExternalResourceAccumulator.forStep( resourceMap, "other" ).size() );
+  }
+
+  @Test
+  public void testAdd_concurrent() throws Exception {
+    final ExternalResourceAccumulator accumulator = new ExternalResourceAccumulator( "step", 50 );
+    final CountDownLatch start = new CountDownLatch( 1 );
+    List<Thread> copies = new ArrayList<Thread>();
+    for ( int c = 0; c < 4; c++ ) {
+      Thread copy = new Thread( new Runnable() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch ( InterruptedException e ) {
+            return;
+          }
+          for ( int i = 0; i < 10000; i++ ) {
+            accumulator.add( createWebResource( "http://example.com/" + ( i % 100 ), "1" ) );
+          }
+        }
+      } );
+      copy.start();
+      copies.add( copy );
+    }
+    start.countDown();
+    for ( Thread copy : copies ) {
+      copy.join();
+    }
+    assertEquals( 50, accumulator.size() );
+    assertEquals( 40000, accumulator.size() + accumulator.getDuplicateCount() + accumulator.getOverflowCount() );
+  }
+
+  @Test
+  public void testManyRows() throws Exception {
+    // a REST lookup step calling a handful of urls, one resource per row. This checks what the accumulator keeps and
+    // counts, the per-row overhead is not measured
+    int rows = 100000;
+    ExternalResourceAccumulator accumulator = new ExternalResourceAccumulator( "REST client" );
+    for ( int i = 0; i < rows; i++ ) {
+      accumulator.addAll( getResourcesFromRow( i ) );
+    }
+    assertEquals( 5, accumulator.size() );
+    assertEquals( rows - 5, accumulator.getDuplicateCount() );
+  }
+
+  /**
+   * Builds the resources of a row the way a web service step consumer does
+   */
+  private static Collection<IExternalResourceInfo> getResourcesFromRow( int row ) {
+    return Collections.<IExternalResourceInfo>singletonList(
+      createWebResource( "http://example.com/lookup", Integer.toString( row % 5 ) ) );
+  }
+
+  private static IExternalResourceInfo createWebResource( String url, String id ) {
+    WebServiceResourceInfo resource = new WebServiceResourceInfo();
+    resource.setName( url );
+    resource.setMethod( "GET" );
+    resource.addHeader( "Accept", "application/json" );
+    resource.addParameter( "id", id );
+    return resource;
+  }
+
+  private static IExternalResourceInfo createFileResource( String path, boolean input ) {
+    BaseResourceInfo resource = new BaseResourceInfo();
+    resource.setType( "File" );
+    resource.setName( path );
+    resource.setInput( input );
+    return resource;
+  }
+}
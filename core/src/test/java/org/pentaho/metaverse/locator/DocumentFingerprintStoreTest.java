@@ -0,0 +1,123 @@
+/*! ******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2017 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+
+package org.pentaho.metaverse.locator;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.di.core.xml.XMLInterface;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DocumentFingerprintStoreTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testSaveAndOpen() throws Exception {
+    File file = new File( folder.getRoot(), "lineage/fingerprints.properties" );
+    DocumentFingerprintStore store = DocumentFingerprintStore.open( file );
+    assertEquals( 0, store.size() );
+    store.put( "/home/admin/my trans.ktr", store.createFingerprint( 10, 1000L, "<transformation/>" ) );
+    store.put( "/home/admin/job.kjb", store.createFingerprint( 20, 2000L, new Object() ) );
+    store.save();
+    assertTrue( file.isFile() );
+
+    DocumentFingerprintStore reopened = DocumentFingerprintStore.open( file );
+    assertEquals( 2, reopened.size() );
+    DocumentFingerprintStore.Fingerprint fingerprint = reopened.get( "/home/admin/my trans.ktr" );
+    assertEquals( 10, fingerprint.getSize() );
+    assertEquals( 1000L, fingerprint.getLastModified() );
+    assertEquals( DocumentFingerprintStore.hash( "<transformation/>" ), fingerprint.getHash() );
+    assertEquals( DocumentFingerprintStore.ANALYSIS_VERSION, fingerprint.getAnalysisVersion() );
+    // contents that cannot be hashed have no hash
+    assertNull( reopened.get( "/home/admin/job.kjb" ).getHash() );
+
+    reopened.remove( "/home/admin/job.kjb" );
+    reopened.save();
+    assertEquals( 1, DocumentFingerprintStore.open( file ).size() );
+  }
+
+  @Test
+  public void testOpenUnreadable() throws Exception {
+    File file = folder.newFile( "fingerprints.properties" );
+    FileOutputStream out = new FileOutputStream( file );
+    out.write( "/a.ktr=not a fingerprint\n/b.ktr=1,2,abc,1\n".getBytes( "UTF-8" ) );
+    out.close();
+
+    DocumentFingerprintStore store = DocumentFingerprintStore.open( file );
+    assertNull( store.get( "/a.ktr" ) );
+    assertNotNull( store.get( "/b.ktr" ) );
+    assertNull( store.get( null ) );
+  }
+
+  @Test
+  public void testIsUnmodified() throws Exception {
+    DocumentFingerprintStore store = new DocumentFingerprintStore( new File( folder.getRoot(), "f" ), 2 );
+    DocumentFingerprintStore.Fingerprint fingerprint = store.createFingerprint( 10, 1000L, "contents" );
+    assertTrue( store.isUnmodified( fingerprint, 10, 1000L ) );
+    assertFalse( store.isUnmodified( fingerprint, 11, 1000L ) );
+    assertFalse( store.isUnmodified( fingerprint, 10, 1001L ) );
+    assertFalse( store.isUnmodified( null, 10, 1000L ) );
+    // without a size and modification time the contents have to be compared
+    DocumentFingerprintStore.Fingerprint unknown = store.createFingerprint( -1, -1, "contents" );
+    assertFalse( store.isUnmodified( unknown, -1, -1 ) );
+    // documents analyzed by another version of the analysis are analyzed again
+    DocumentFingerprintStore.Fingerprint older = new DocumentFingerprintStore.Fingerprint( 10, 1000L,
+      DocumentFingerprintStore.hash( "contents" ), 1 );
+    assertFalse( store.isUnmodified( older, 10, 1000L ) );
+    assertFalse( store.isUnchanged( older, fingerprint ) );
+  }
+
+  @Test
+  public void testIsUnchanged() throws Exception {
+    DocumentFingerprintStore store = new DocumentFingerprintStore( new File( folder.getRoot(), "f" ), 1 );
+    DocumentFingerprintStore.Fingerprint fingerprint = store.createFingerprint( 10, 1000L, "contents" );
+    assertTrue( store.isUnchanged( fingerprint, store.createFingerprint( 10, 5000L, "contents" ) ) );
+    assertFalse( store.isUnchanged( fingerprint, store.createFingerprint( 10, 5000L, "changed" ) ) );
+    assertFalse( store.isUnchanged( null, fingerprint ) );
+    DocumentFingerprintStore.Fingerprint unhashed = store.createFingerprint( 10, 1000L, null );
+    assertFalse( store.isUnchanged( unhashed, unhashed ) );
+  }
+
+  @Test
+  public void testHash() throws Exception {
+    XMLInterface transMeta = mock( XMLInterface.class );
+    when( transMeta.getXML() ).thenReturn( "<transformation/>" );
+    assertEquals( DocumentFingerprintStore.hash( "<transformation/>" ), DocumentFingerprintStore.hash( transMeta ) );
+    assertEquals( 40, DocumentFingerprintStore.hash( "" ).length() );
+    assertFalse( DocumentFingerprintStore.hash( "a" ).equals( DocumentFingerprintStore.hash( "b" ) ) );
+    assertNull( DocumentFingerprintStore.hash( null ) );
+  }
+}
@@ -22,24 +22,40 @@
 
 package org.pentaho.metaverse.locator;
 
+import com.tinkerpop.blueprints.Graph;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
+import org.pentaho.dictionary.DictionaryConst;
+import org.pentaho.metaverse.analyzer.kettle.ParsedMetaCache;
 import org.pentaho.metaverse.api.IDocument;
 import org.pentaho.metaverse.api.IDocumentEvent;
+import org.pentaho.metaverse.api.IDocumentListener;
 import org.pentaho.metaverse.api.IMetaverseBuilder;
 import org.pentaho.metaverse.api.IMetaverseObjectFactory;
 import org.pentaho.metaverse.api.INamespace;
 import org.pentaho.metaverse.api.MetaverseAnalyzerException;
 import org.pentaho.metaverse.api.MetaverseDocument;
 import org.pentaho.metaverse.api.MetaverseException;
+import org.pentaho.metaverse.impl.DocumentEvent;
+import org.pentaho.metaverse.impl.MetaverseBuilder;
+import org.pentaho.metaverse.testutils.MetaverseTestUtils;
+import org.pentaho.metaverse.util.MetaverseUtil;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
@@ -63,6 +79,9 @@ public class LocatorRunnerTest {
   @Mock
   INamespace namespace;
 
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
   @Before
   public void setUp() throws Exception {
     when( baseLocator.getMetaverseBuilder() ).thenReturn( metaverseBuilder );
@@ -161,4 +180,205 @@ public class LocatorRunnerTest {
     when( baseLocator.getContents( any( Object.class ) ) ).thenThrow( MetaverseException.class );
     stringLocatorRunner.processFile( namespace, "test.ktr", "myKTR", spyFile );
   }
+
+  @Test
+  public void testScanWithFingerprints() throws Exception {
+    MetaverseUtil.setDocumentController( MetaverseTestUtils.getDocumentController() );
+    File root = folder.newFolder( "repo" );
+    File changed = write( new File( root, "changed.ktr" ), "<transformation>1</transformation>" );
+    File touched = write( new File( root, "touched.ktr" ), "<transformation>2</transformation>" );
+    File deleted = write( new File( root, "deleted.kjb" ), "<job>3</job>" );
+    write( new File( root, "unchanged.ktr" ), "<transformation>4</transformation>" );
+
+    Graph graph = new TinkerGraph();
+    FileSystemLocator locator = new FileSystemLocator( new ArrayList<IDocumentListener>() );
+    locator.setMetaverseBuilder( new MetaverseBuilder( graph ) );
+    locator.setRepositoryId( "test repo" );
+    locator.setFingerprintDirectory( folder.getRoot().getAbsolutePath() );
+    final List<String> analyzed = new ArrayList<String>();
+    locator.addDocumentListener( new IDocumentListener() {
+      @Override
+      public void onEvent( IDocumentEvent event ) {
+        analyzed.add( event.getDocument().getName() );
+        ( (DocumentEvent) event ).analysisFinished( true );
+      }
+    } );
+
+    FileSystemLocatorRunner runner = scan( locator, root );
+    assertEquals( 4, analyzed.size() );
+    assertEquals( 4, runner.getAnalyzedDocuments() );
+    assertTrue( new File( folder.getRoot(), "fingerprints-test_repo.properties" ).isFile() );
+    addDocument( graph, changed.getCanonicalPath(), DictionaryConst.NODE_TYPE_TRANS );
+    addDocument( graph, deleted.getCanonicalPath(), DictionaryConst.NODE_TYPE_JOB );
+
+    write( changed, "<transformation>changed</transformation>" );
+    changed.setLastModified( changed.lastModified() + 10000 );
+    touched.setLastModified( touched.lastModified() + 10000 );
+    assertTrue( deleted.delete() );
+
+    // the fingerprints are read back from the file
+    analyzed.clear();
+    locator.setFingerprintDirectory( folder.getRoot().getAbsolutePath() );
+    runner = scan( locator, root );
+    assertEquals( Arrays.asList( "changed.ktr" ), analyzed );
+    assertEquals( 2, runner.getSkippedDocuments() );
+    assertEquals( 2, runner.getRemovedDocuments() );
+
+    // the steps and fields of the changed document are gone, the document and the shared data source are kept
+    assertNotNull( graph.getVertex( changed.getCanonicalPath() ) );
+    assertNull( graph.getVertex( changed.getCanonicalPath() + "/step" ) );
+    assertNull( graph.getVertex( changed.getCanonicalPath() + "/step/field" ) );
+    assertNotNull( graph.getVertex( changed.getCanonicalPath() + "/datasource" ) );
+    // the deleted document is gone altogether
+    assertNull( graph.getVertex( deleted.getCanonicalPath() ) );
+    assertNull( graph.getVertex( deleted.getCanonicalPath() + "/step" ) );
+
+    analyzed.clear();
+    runner = scan( locator, root );
+    assertTrue( analyzed.isEmpty() );
+    assertEquals( 3, runner.getSkippedDocuments() );
+  }
+
+  @Test
+  public void testRescanOfManyDocuments() throws Exception {
+    MetaverseUtil.setDocumentController( MetaverseTestUtils.getDocumentController() );
+    int documents = 500;
+    File root = folder.newFolder( "large" );
+    StringBuilder contents = new StringBuilder( "<transformation>" );
+    for ( int i = 0; i < 200; i++ ) {
+      contents.append( "<step><name>step" ).append( i ).append( "</name></step>" );
+    }
+    contents.append( "</transformation>" );
+    for ( int i = 0; i < documents; i++ ) {
+      write( new File( root, "trans" + i + ".ktr" ), contents.toString() );
+    }
+    FileSystemLocator locator = new FileSystemLocator( new ArrayList<IDocumentListener>() );
+    locator.setMetaverseBuilder( new MetaverseBuilder( new TinkerGraph() ) );
+    locator.setRepositoryId( "large" );
+    locator.setFingerprintDirectory( folder.getRoot().getAbsolutePath() );
+    locator.addDocumentListener( new SucceedingListener() );
+
+    LocatorRunner<File> runner = scan( locator, root );
+    assertEquals( documents, runner.getAnalyzedDocuments() );
+    runner = scan( locator, root );
+    assertEquals( 0, runner.getAnalyzedDocuments() );
+    assertEquals( documents, runner.getSkippedDocuments() );
+  }
+
+  @Test
+  public void testFailedAnalysisIsRepeated() throws Exception {
+    MetaverseUtil.setDocumentController( MetaverseTestUtils.getDocumentController() );
+    File root = folder.newFolder( "failing" );
+    write( new File( root, "failing.ktr" ), "<transformation>1</transformation>" );
+    FileSystemLocator locator = new FileSystemLocator( new ArrayList<IDocumentListener>() );
+    locator.setMetaverseBuilder( new MetaverseBuilder( new TinkerGraph() ) );
+    locator.setRepositoryId( "failing" );
+    locator.setFingerprintDirectory( folder.getRoot().getAbsolutePath() );
+    final List<DocumentEvent> events = new ArrayList<DocumentEvent>();
+    locator.addDocumentListener( new IDocumentListener() {
+      @Override
+      public void onEvent( IDocumentEvent event ) {
+        // the analysis finishes after the scan, the way an asynchronous one does
+        events.add( (DocumentEvent) event );
+      }
+    } );
+
+    scan( locator, root );
+    assertEquals( 1, events.size() );
+    assertTrue( locator.getFingerprintStore().getIds().isEmpty() );
+    events.get( 0 ).analysisFinished( false );
+    assertTrue( locator.getFingerprintStore().getIds().isEmpty() );
+
+    // the document whose analysis failed is analyzed again, its fingerprint is saved once that analysis succeeds
+    events.clear();
+    LocatorRunner<File> runner = scan( locator, root );
+    assertEquals( 1, runner.getAnalyzedDocuments() );
+    events.get( 0 ).analysisFinished( true );
+    locator.setFingerprintDirectory( folder.getRoot().getAbsolutePath() );
+    assertEquals( 1, locator.getFingerprintStore().getIds().size() );
+
+    events.clear();
+    runner = scan( locator, root );
+    assertTrue( events.isEmpty() );
+    assertEquals( 1, runner.getSkippedDocuments() );
+  }
+
+  @Test
+  public void testScanEndsOnceDocumentsAreAnalyzed() throws Exception {
+    MetaverseUtil.setDocumentController( MetaverseTestUtils.getDocumentController() );
+    File root = folder.newFolder( "scanned" );
+    write( new File( root, "first.ktr" ), "<transformation>1</transformation>" );
+    write( new File( root, "second.kjb" ), "<job>2</job>" );
+    FileSystemLocator locator = new FileSystemLocator( new ArrayList<IDocumentListener>() );
+    locator.setMetaverseBuilder( new MetaverseBuilder( new TinkerGraph() ) );
+    locator.setRepositoryId( "scanned" );
+    final List<DocumentEvent> events = new ArrayList<DocumentEvent>();
+    locator.addDocumentListener( new IDocumentListener() {
+      @Override
+      public void onEvent( IDocumentEvent event ) {
+        events.add( (DocumentEvent) event );
+      }
+    } );
+    ParsedMetaCache cache = ParsedMetaCache.getInstance();
+    int scans = cache.getScans();
+
+    // the scan keeps the metas it loads until the analyses of its documents have finished
+    scan( locator, root );
+    assertEquals( 2, events.size() );
+    assertEquals( scans + 1, cache.getScans() );
+    events.get( 0 ).analysisFinished( true );
+    assertEquals( scans + 1, cache.getScans() );
+    events.get( 1 ).analysisFinished( false );
+    assertEquals( scans, cache.getScans() );
+    events.get( 1 ).analysisFinished( true );
+    assertEquals( scans, cache.getScans() );
+
+    // a scan that finds nothing to analyze ends at once
+    scan( locator, folder.newFolder( "empty" ) );
+    assertEquals( scans, cache.getScans() );
+  }
+
+  private static FileSystemLocatorRunner scan( FileSystemLocator locator, File root ) {
+    FileSystemLocatorRunner runner = new FileSystemLocatorRunner();
+    runner.setRoot( root );
+    runner.setLocator( locator );
+    runner.setFingerprintStore( locator.getFingerprintStore() );
+    runner.run();
+    return runner;
+  }
+
+  private static File write( File file, String contents ) throws Exception {
+    FileUtils.writeStringToFile( file, contents );
+    return file;
+  }
+
+  /**
+   * Adds what analyzing a document would: the document, a step in its namespace, a field in the namespace of the step
+   * and a data source shared with other documents
+   */
+  private static void addDocument( Graph graph, String path, String type ) {
+    Vertex document = addVertex( graph, path, "root" );
+    document.setProperty( DictionaryConst.PROPERTY_PATH, path );
+    document.setProperty( DictionaryConst.PROPERTY_TYPE, type );
+    Vertex step = addVertex( graph, path + "/step", path );
+    Vertex field = addVertex( graph, path + "/step/field", path + "/step" );
+    Vertex datasource = addVertex( graph, path + "/datasource", "root" );
+    graph.addEdge( null, document, step, DictionaryConst.LINK_CONTAINS );
+    graph.addEdge( null, step, field, DictionaryConst.LINK_OUTPUTS );
+    graph.addEdge( null, datasource, step, DictionaryConst.LINK_POPULATES );
+  }
+
+  private static class SucceedingListener implements IDocumentListener {
+    @Override
+    public void onEvent( IDocumentEvent event ) {
+      ( (DocumentEvent) event ).analysisFinished( true );
+    }
+  }
+
+  private static Vertex addVertex( Graph graph, String logicalId, String namespace ) {
+    Vertex vertex = graph.addVertex( logicalId );
+    vertex.setProperty( DictionaryConst.PROPERTY_LOGICAL_ID, logicalId );
+    vertex.setProperty( DictionaryConst.PROPERTY_NAMESPACE, namespace );
+    return vertex;
+  }
 }
@@ -22,6 +22,7 @@
 
 package org.pentaho.metaverse.service;
 
+import com.tinkerpop.blueprints.Graph;
 import org.codehaus.enunciate.Facet;
 import org.codehaus.enunciate.jaxrs.ResponseCode;
 import org.codehaus.enunciate.jaxrs.StatusCodes;
@@ -32,6 +33,8 @@ import org.pentaho.metaverse.api.ILineageCollector;
 import org.pentaho.metaverse.api.IMetaverseReader;
 import org.pentaho.metaverse.api.MetaverseLocatorException;
 import org.pentaho.metaverse.api.model.LineageRequest;
+import org.pentaho.metaverse.graph.SynchronizedGraph;
+import org.pentaho.metaverse.impl.DeferredLineageAnalyzer;
 import org.pentaho.metaverse.impl.MetaverseCompletionService;
 import org.pentaho.metaverse.messages.Messages;
 
@@ -66,6 +69,7 @@ public class MetaverseService {
   private int count;
 
   public static final int OK = 200;
+  public static final int ACCEPTED = 202;
   public static final int BAD_REQUEST = 400;
   public static final int SERVER_ERROR = 500;
 
@@ -361,12 +365,77 @@ public class MetaverseService {
     }
   }
 
+  /**
+   * Reports the progress of the analysis of the documents found by the locators and of the executions.
+   *
+   * <p><b>Example Request:</b><br />
+   *    GET pentaho-di/osgi/cxf/lineage/api/progress
+   * </p>
+   *
+   * @return the progress of the analyses
+   *
+   * <p><b>Example Response:</b></p>
+   *    <pre function="syntax.js">
+   *      { submitted: 2000, queued: 1200, running: 8, completed: 790, failed: 2, cancelled: 0 }
+   *    </pre>
+   */
+  @GET
+  @Path( "/progress" )
+  @Produces( { MediaType.APPLICATION_JSON } )
+  @StatusCodes ( {
+    @ResponseCode ( code = OK, condition = "Successfully returned the progress of the analyses." ),
+    @ResponseCode ( code = SERVER_ERROR, condition = "Server Error." )
+  } )
+  public Response getProgress() {
+    return Response.ok( getCompletionService().getProgress() ).build();
+  }
+
+  protected MetaverseCompletionService getCompletionService() {
+    return MetaverseCompletionService.getInstance();
+  }
 
   /**
-   * Makes sure that the metaverse is fully populated.
+   * Starts building the lineage graphs of the executions that were queued in the profile-only runtime mode
+   * (lineage.execution.runtime=profile). It can be called outside of the busy hours, or on another server that shares
+   * the deferred lineage folder. The graphs are built in the background, on the analysis threads; a request made while
+   * they are being built does not start another run.
+   *
+   * <p><b>Example Request:</b><br />
+   *    POST pentaho-di/osgi/cxf/lineage/api/deferred/process
+   * </p>
+   *
+   * @return the number of executions that were waiting to be processed
+   *
+   * <p><b>Example Response:</b></p>
+   *    <pre function="syntax.js">
+   *      12
+   *    </pre>
+   */
+  @POST
+  @Path( "/deferred/process" )
+  @Produces( { MediaType.APPLICATION_JSON } )
+  @StatusCodes ( {
+    @ResponseCode ( code = ACCEPTED, condition = "Started building the deferred lineage graphs." ),
+    @ResponseCode ( code = SERVER_ERROR, condition = "Server Error." )
+  } )
+  public Response processDeferredLineage() {
+    DeferredLineageAnalyzer deferredLineageAnalyzer = getDeferredLineageAnalyzer();
+    int queued = deferredLineageAnalyzer.getQueueSize();
+    deferredLineageAnalyzer.processQueueAsync();
+    return Response.status( ACCEPTED ).entity( queued ).build();
+  }
+
+  protected DeferredLineageAnalyzer getDeferredLineageAnalyzer() {
+    return DeferredLineageAnalyzer.getInstance();
+  }
+
+  /**
+   * Makes sure that the metaverse is fully populated. A metaverse that was restored from disk is served as it is while
+   * the documents are scanned (and re-analyzed) in the background.
    */
   protected void prepareMetaverse() {
     if ( count++ == 0 ) {
+      boolean restored = isMetaverseRestored();
       try {
         if ( documentLocatorProvider != null ) {
           Set<IDocumentLocator> locators = documentLocatorProvider.getDocumentLocators();
@@ -377,7 +446,9 @@ public class MetaverseService {
           }
         }
 
-        MetaverseCompletionService.getInstance().waitTillEmpty();
+        if ( !restored ) {
+          getCompletionService().waitTillEmpty();
+        }
       } catch ( MetaverseLocatorException e ) {
         e.printStackTrace();
       } catch ( InterruptedException e ) {
@@ -387,4 +458,19 @@ public class MetaverseService {
       }
     }
   }
+
+  /**
+   * @return true if the metaverse already holds a graph when it is first prepared, i.e. it was restored from disk
+   */
+  protected boolean isMetaverseRestored() {
+    if ( metaverseReader == null ) {
+      return false;
+    }
+    Graph metaverse = metaverseReader.getMetaverse();
+    if ( metaverse instanceof SynchronizedGraph ) {
+      // getVertices() would copy the whole graph
+      return !( (SynchronizedGraph) metaverse ).isEmpty();
+    }
+    return metaverse != null && metaverse.getVertices().iterator().hasNext();
+  }
 }
@@ -22,6 +22,8 @@
 
 package org.pentaho.metaverse.service;
 
+import com.tinkerpop.blueprints.Graph;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -33,6 +35,9 @@ import org.pentaho.metaverse.api.ILineageCollector;
 import org.pentaho.metaverse.api.IMetaverseReader;
 import org.pentaho.metaverse.api.MetaverseLocatorException;
 import org.pentaho.metaverse.api.model.LineageRequest;
+import org.pentaho.metaverse.graph.SynchronizedGraph;
+import org.pentaho.metaverse.impl.AnalysisProgress;
+import org.pentaho.metaverse.impl.DeferredLineageAnalyzer;
 import org.pentaho.metaverse.messages.Messages;
 
 import javax.ws.rs.BadRequestException;
@@ -46,7 +51,9 @@ import java.util.Set;
 import java.util.concurrent.ExecutionException;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.*;
 
@@ -221,6 +228,34 @@ public class MetaverseServiceTest {
     service.prepareMetaverse();
   }
 
+  @Test
+  public void testPrepareMetaverse_restored() throws Exception {
+    Graph graph = new TinkerGraph();
+    graph.addVertex( null );
+    when( mockReader.getMetaverse() ).thenReturn( graph );
+    when( mockProvider.getDocumentLocators() ).thenReturn( locators );
+
+    assertTrue( service.isMetaverseRestored() );
+    service.prepareMetaverse();
+    // the restored graph is served right away, the documents are still scanned
+    verify( mockLocator ).startScan();
+  }
+
+  @Test
+  public void testIsMetaverseRestored() {
+    assertFalse( service.isMetaverseRestored() );
+    when( mockReader.getMetaverse() ).thenReturn( new TinkerGraph() );
+    assertFalse( service.isMetaverseRestored() );
+    assertFalse( new MetaverseService( null, mockProvider ).isMetaverseRestored() );
+
+    SynchronizedGraph synchronizedGraph = mock( SynchronizedGraph.class );
+    when( synchronizedGraph.isEmpty() ).thenReturn( false );
+    when( mockReader.getMetaverse() ).thenReturn( synchronizedGraph );
+    assertTrue( service.isMetaverseRestored() );
+    // the vertices are not copied just to find out whether there are any
+    verify( synchronizedGraph, never() ).getVertices();
+  }
+
   @Test
   public void testPrepareMetaverse_Exception() {
     service = new MetaverseService( mockReader, mockProvider );
@@ -245,6 +280,35 @@ public class MetaverseServiceTest {
     service.prepareMetaverse();
   }
 
+  @Test
+  public void testGetProgress() throws Exception {
+    Response response = service.getProgress();
+    assertEquals( Response.Status.OK.getStatusCode(), response.getStatus() );
+    assertTrue( response.getEntity() instanceof AnalysisProgress );
+
+    AnalysisProgress progress = (AnalysisProgress) response.getEntity();
+    assertTrue( progress.getSubmitted() >= progress.getCompleted() + progress.getFailed() + progress.getCancelled() );
+  }
+
+  @Test
+  public void testProcessDeferredLineage() throws Exception {
+    final DeferredLineageAnalyzer deferredAnalyzer = mock( DeferredLineageAnalyzer.class );
+    when( deferredAnalyzer.getQueueSize() ).thenReturn( 3 );
+    MetaverseService deferredService = new MetaverseService( mockReader, mockProvider ) {
+      @Override
+      protected DeferredLineageAnalyzer getDeferredLineageAnalyzer() {
+        return deferredAnalyzer;
+      }
+    };
+
+    Response response = deferredService.processDeferredLineage();
+    // the request does not wait for the graphs to be built
+    assertEquals( Response.Status.ACCEPTED.getStatusCode(), response.getStatus() );
+    assertEquals( 3, response.getEntity() );
+    verify( deferredAnalyzer ).processQueueAsync();
+    verify( deferredAnalyzer, never() ).processQueue();
+  }
+
   @Test
   public void testDownload() throws Exception {
     service.setLineageCollector( mockCollector );